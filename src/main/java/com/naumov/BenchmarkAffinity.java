@@ -0,0 +1,97 @@
+package com.naumov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Tasks updating blocks of a shared array, with and without the block number as the affinity hint.
+// With hints every block stays in the cache of its home consumer, otherwise blocks bounce between cores.
+// Each op submits a batch of tasks and waits for all of them, so consumer throughput is measured.
+// $ java -jar target/benchmarks.jar BenchmarkAffinity -w 5s -wi 5 -r 5s -i 10 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkAffinity {
+
+    // only for runs from IDE
+    private static final int nProducers = 1;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"true", "false"})
+        public boolean hinted;
+
+        @Param({"4"})
+        public int nConsumers;
+
+        @Param({"4"})
+        public int blocksPerConsumer;
+
+        @Param({"16384"})
+        public int blockSize; // ints, 64 KB
+
+        @Param({"64"})
+        public int batchSize;
+
+        TaskPoolExecutor service;
+        int[] array;
+        int nBlocks;
+        final AtomicInteger pending = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void up() {
+            service = (TaskPoolExecutor) MyExecutors.newSalsaThreadPool(nProducers, nConsumers, 100, 1, 0);
+            nBlocks = nConsumers * blocksPerConsumer;
+            array = new int[nBlocks * blockSize];
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            service.shutdown();
+        }
+    }
+
+    @Benchmark
+    public int updateBlocks(ExecutorWrapper e) {
+        final int[] array = e.array;
+        final int blockSize = e.blockSize;
+        final AtomicInteger pending = e.pending;
+        pending.set(e.batchSize);
+
+        for (int i = 0; i < e.batchSize; i++) {
+            final int block = ThreadLocalRandom.current().nextInt(e.nBlocks);
+            Runnable task = () -> {
+                int from = block * blockSize;
+                for (int j = from; j < from + blockSize; j++) array[j]++;
+                pending.decrementAndGet();
+            };
+
+            if (e.hinted) e.service.execute(task, block);
+            else e.service.execute(task);
+        }
+
+        while (pending.get() > 0) Thread.onSpinWait();
+        return array[0];
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkAffinity.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .threads(nProducers)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,138 @@
+package com.naumov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// CPU-bound tasks, mixed with tasks that block (sleep) for blockMicros, one in blockEvery. The benchmark thread
+// inserts a batch and waits for all of it:
+//   PLAIN        - SALSA, a blocking task holds its consumer and the tasks of its SCPool wait
+//   MANAGED      - SALSA, blocking through TaskPoolExecutor.managedBlock, a spare worker takes over the SCPool
+//   FJP_MANAGED  - ForkJoinPool, blocking through ForkJoinPool.managedBlock
+// $ java -jar target/benchmarks.jar BenchmarkBlocking -w 2s -wi 5 -r 2s -i 5 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkBlocking {
+    private static final int producers = 1; // benchmark threads, run with -t 1
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"PLAIN", "MANAGED", "FJP_MANAGED"})
+        public String type;
+
+        @Param({"1000"})
+        public int batch;
+
+        @Param({"10", "100"})
+        public int blockEvery;
+
+        @Param({"1000"})
+        public int blockMicros;
+
+        @Param({"256"})
+        public int workTokens;
+
+        @Param({"4"})
+        public int nConsumers;
+
+        final AtomicLong finished = new AtomicLong();
+        ExecutorService executor;
+
+        @Setup(Level.Trial)
+        public void up() {
+            switch (type) {
+                case "PLAIN":
+                case "MANAGED":
+                    executor = MyExecutors.newSalsaThreadPool(producers, nConsumers, 64, 1, 0);
+                    break;
+                case "FJP_MANAGED":
+                    executor = new ForkJoinPool(nConsumers);
+                    break;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            executor.shutdown();
+        }
+
+        void block() throws InterruptedException {
+            SleepBlocker blocker = new SleepBlocker(TimeUnit.MICROSECONDS.toNanos(blockMicros));
+            switch (type) {
+                case "PLAIN":
+                    while (!blocker.isReleasable()) blocker.block();
+                    break;
+                case "MANAGED":
+                    ((TaskPoolExecutor) executor).managedBlock(blocker);
+                    break;
+                case "FJP_MANAGED":
+                    ForkJoinPool.managedBlock(blocker);
+                    break;
+            }
+        }
+    }
+
+    static class SleepBlocker implements ForkJoinPool.ManagedBlocker {
+        private final long deadline;
+
+        SleepBlocker(long sleepNanos) {
+            this.deadline = System.nanoTime() + sleepNanos;
+        }
+
+        @Override
+        public boolean block() {
+            LockSupport.parkNanos(deadline - System.nanoTime());
+            return isReleasable();
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return System.nanoTime() - deadline >= 0;
+        }
+    }
+
+    @Benchmark
+    public void mixedBatch(ExecutorWrapper e) {
+        final long target = e.finished.get() + e.batch;
+        final int tokens = e.workTokens;
+        for (int i = 0; i < e.batch; i++) {
+            final boolean blocking = i % e.blockEvery == 0;
+            e.executor.execute(() -> {
+                try {
+                    if (blocking) e.block();
+                    else Blackhole.consumeCPU(tokens);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    e.finished.incrementAndGet();
+                }
+            });
+        }
+        while (e.finished.get() < target) Thread.onSpinWait();
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkBlocking.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementTime(TimeValue.seconds(2))
+                .threads(producers)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
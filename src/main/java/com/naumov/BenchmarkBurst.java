@@ -0,0 +1,90 @@
+package com.naumov;
+
+import com.naumov.taskpool.TaskPoolConfig;
+import com.naumov.taskpool.salsa.SalsaTaskPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bursts of tasks with idle gaps: memory retained by the SALSA chunks after the burst, with and without trimming.
+// Retained bytes are printed after every iteration, once consumers have been idle for a while.
+// $ java -jar target/benchmarks.jar BenchmarkBurst -w 5s -wi 3 -r 5s -i 5 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkBurst {
+
+    // only for runs from IDE
+    private static final int nProducers = 1;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"OFF", "ON"})
+        public String trimming;
+
+        @Param({"4"})
+        public int nConsumers;
+
+        @Param({"1000"})
+        public int chunkSize;
+
+        @Param({"100000"})
+        public int burstSize;
+
+        SalsaTaskPool taskPool;
+        TaskPoolExecutor service;
+        final LongAdder completed = new LongAdder();
+
+        @Setup(Level.Trial)
+        public void up() {
+            TaskPoolConfig config = "ON".equals(trimming)
+                    ? TaskPoolConfig.defaults().withSpareChunks(1, 8)
+                    : TaskPoolConfig.defaults();
+            taskPool = new SalsaTaskPool(nProducers, nConsumers, chunkSize, 1, config);
+            service = new TaskPoolExecutor(taskPool, nConsumers, 0);
+        }
+
+        @TearDown(Level.Iteration)
+        public void report() throws InterruptedException {
+            TimeUnit.MILLISECONDS.sleep(100); // let consumers go idle
+            System.out.printf("%n[trimming %s] retained by chunks: %d KB%n", trimming, taskPool.retainedBytes() >> 10);
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            service.shutdown();
+        }
+    }
+
+    @Benchmark
+    public long burst(ExecutorWrapper e) {
+        final LongAdder completed = e.completed;
+        long target = completed.sum() + e.burstSize;
+        for (int i = 0; i < e.burstSize; i++) {
+            e.service.execute(completed::increment);
+        }
+
+        while (completed.sum() < target) Thread.onSpinWait();
+        return target;
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkBurst.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .threads(nProducers)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,106 @@
+package com.naumov;
+
+import com.naumov.taskpool.durable.Durability;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Submission throughput cost of every durability level of DurableTaskPool: NONE is the plain SALSA pool
+// (plus the decorator), ASYNC adds serialization and a copy into the mapped log, CHUNK adds a force per chunk,
+// TASK a force per task. Logs go to a temp directory, set -Djava.io.tmpdir to the device to measure.
+// $ java -jar target/benchmarks.jar BenchmarkDurable -w 5s -wi 3 -r 10s -i 5 -t 4 -f 1
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkDurable {
+
+    // only for runs from IDE
+    private static final int nProducers = 4;
+    private static final int SEGMENT_BYTES = 64 << 20;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"NONE", "ASYNC", "CHUNK", "TASK"})
+        public String durability;
+
+        @Param({"100", "1000"})
+        public int chunkSize;
+
+        @Param({"4"})
+        public int nConsumers;
+
+        TaskPoolExecutor service;
+        Path logDir;
+
+        @Setup(Level.Trial)
+        public void up() throws IOException {
+            logDir = Files.createTempDirectory("salsa-durable");
+            service = MyExecutors.newDurableSalsaThreadPool(nProducers, nConsumers, chunkSize, 1, 0, logDir,
+                    Durability.valueOf(durability), SEGMENT_BYTES);
+        }
+
+        @TearDown(Level.Trial)
+        public void down() throws IOException {
+            service.shutdown();
+            try (Stream<Path> files = Files.walk(logDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        }
+    }
+
+    private static class NoopTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+
+        private NoopTask(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Counter {
+        long next = 0;
+    }
+
+    @Benchmark
+    public void durableSubmission(ExecutorWrapper e, Counter counter) {
+        e.service.execute(new NoopTask(counter.next++));
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkDurable.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(10))
+                .threads(nProducers)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,187 @@
+package com.naumov;
+
+import com.naumov.taskpool.TaskPoolConfig;
+import com.naumov.taskpool.salsa.SalsaTaskPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Queueing latency spread between producers with one noisy producer. Background producer 0 submits at full rate
+// (at most WINDOW tasks in flight), the other background producers submit at a moderate rate. Every task measures
+// its queueing delay, the mean and max delay per producer are printed after every iteration, along with
+// the spread: the worst mean over the best one. The benchmark thread registers last, so it gets the highest
+// producer id, and its probe latency is the score.
+// SALSA_TENANTS puts the noisy producer into tenant 0 and the rest into tenant 1 with equal weights, and also
+// prints the backlog of both tenants.
+// $ java -jar target/benchmarks.jar BenchmarkFairness -w 5s -wi 3 -r 10s -i 5 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.SampleTime)
+public class BenchmarkFairness {
+    private static final int probeThreads = 1; // benchmark threads, run with -t 1
+    private static final int WINDOW = 4096;
+    private static final int WORK_TOKENS = 64;
+    private static final int QUIET_THINK_TOKENS = 2048;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"SALSA", "SALSA_TENANTS", "MSQ", "FJP"})
+        public String type;
+
+        @Param({"8"})
+        public int nProducers; // background, the first one is noisy
+
+        @Param({"2"})
+        public int nConsumers;
+
+        ExecutorService service;
+        SalsaTaskPool tenantPool; // SALSA_TENANTS only
+        final List<Thread> producers = new ArrayList<>();
+        LongAdder[] delaySums;
+        LongAdder[] counts;
+        AtomicLong[] maxDelays;
+        volatile boolean running = true;
+
+        @Setup(Level.Trial)
+        public void up() throws InterruptedException {
+            switch (type) {
+                case "SALSA":
+                    service = MyExecutors.newSalsaThreadPool(nProducers + probeThreads, nConsumers, 100, 1, 0);
+                    break;
+                case "SALSA_TENANTS":
+                    tenantPool = new SalsaTaskPool(nProducers + probeThreads, nConsumers, 100, 1,
+                            TaskPoolConfig.defaults().withTenants(1, 1));
+                    service = new TaskPoolExecutor(tenantPool, nConsumers, 0);
+                    break;
+                case "MSQ":
+                    service = MyExecutors.newMichealScottThreadPool(nProducers + probeThreads, nConsumers);
+                    break;
+                case "FJP":
+                    service = Executors.newWorkStealingPool(nConsumers);
+                    break;
+            }
+
+            delaySums = new LongAdder[nProducers];
+            counts = new LongAdder[nProducers];
+            maxDelays = new AtomicLong[nProducers];
+            for (int pId = 0; pId < nProducers; pId++) {
+                delaySums[pId] = new LongAdder();
+                counts[pId] = new LongAdder();
+                maxDelays[pId] = new AtomicLong();
+            }
+
+            for (int pId = 0; pId < nProducers; pId++) {
+                final int id = pId;
+                Thread producer = new Thread(() -> produce(id), "load-producer-" + pId);
+                producer.setDaemon(true);
+                producers.add(producer);
+                producer.start();
+                TimeUnit.MILLISECONDS.sleep(1); // register in order, producer ids follow pId
+            }
+        }
+
+        private void produce(int pId) {
+            if (tenantPool != null) ((TaskPoolExecutor) service).joinTenant(pId == 0 ? 0 : 1);
+            final AtomicInteger inFlight = new AtomicInteger(0);
+            while (running) {
+                while (inFlight.get() >= WINDOW) {
+                    if (!running) return;
+                    Thread.yield();
+                }
+
+                inFlight.incrementAndGet();
+                final long submitted = System.nanoTime();
+                service.execute(() -> {
+                    long delay = System.nanoTime() - submitted;
+                    delaySums[pId].add(delay);
+                    counts[pId].increment();
+                    long max;
+                    while (delay > (max = maxDelays[pId].get()) && !maxDelays[pId].compareAndSet(max, delay)) ;
+                    Blackhole.consumeCPU(WORK_TOKENS);
+                    inFlight.decrementAndGet();
+                });
+                if (pId != 0) Blackhole.consumeCPU(QUIET_THINK_TOKENS);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void report() {
+            double best = Double.MAX_VALUE;
+            double worst = 0;
+            StringBuilder sb = new StringBuilder(String.format("%n[%s] mean/max queueing delay per producer, us:", type));
+            for (int pId = 0; pId < nProducers; pId++) {
+                long count = counts[pId].sumThenReset();
+                double mean = count == 0 ? 0 : delaySums[pId].sumThenReset() / 1000.0 / count;
+                long max = maxDelays[pId].getAndSet(0) / 1000;
+                sb.append(String.format(" p%d=%.1f/%d", pId, mean, max));
+                if (pId != 0) { // the noisy one waits for its own backlog
+                    best = Math.min(best, mean);
+                    worst = Math.max(worst, mean);
+                }
+            }
+            sb.append(String.format(", spread of quiet producers: %.2f", best == 0 ? 0 : worst / best));
+            if (tenantPool != null) {
+                sb.append(String.format(", backlog of tenants: %d/%d",
+                        tenantPool.tenantBacklog(0), tenantPool.tenantBacklog(1)));
+            }
+            System.out.println(sb);
+        }
+
+        @TearDown(Level.Trial)
+        public void down() throws InterruptedException {
+            running = false;
+            for (Thread producer : producers) producer.join();
+            service.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Probe implements Runnable {
+        private volatile boolean done;
+
+        @Setup(Level.Trial)
+        public void up(ExecutorWrapper e) {
+            if (e.tenantPool != null) ((TaskPoolExecutor) e.service).joinTenant(1); // the probe is quiet
+        }
+
+        @Override
+        public void run() {
+            done = true;
+        }
+    }
+
+    @Benchmark
+    public boolean probeLatency(ExecutorWrapper e, Probe probe) {
+        probe.done = false;
+        e.service.execute(probe);
+        while (!probe.done) Thread.onSpinWait();
+        return true;
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkFairness.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(10))
+                .threads(probeThreads)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,98 @@
+package com.naumov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Fan-out/fan-in of a request handler: the benchmark thread splits a request into fanOut subtasks and waits
+// for all of them, on the same SALSA executor:
+//   GROUP       - TaskGroup, bulk insertion and a single await
+//   INVOKE_ALL  - invokeAll, a FutureTask and a blocking get() per subtask
+//   ALL_OF      - CompletableFuture.allOf over runAsync, a future per subtask
+// $ java -jar target/benchmarks.jar BenchmarkFanOut -w 2s -wi 5 -r 2s -i 5 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkFanOut {
+    private static final int producers = 1; // benchmark threads, run with -t 1
+    private static final int CHUNK_SIZE = 64;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"GROUP", "INVOKE_ALL", "ALL_OF"})
+        public String type;
+
+        @Param({"50", "500"})
+        public int fanOut;
+
+        @Param({"64"})
+        public int workTokens;
+
+        @Param({"4"})
+        public int nConsumers;
+
+        TaskPoolExecutor executor;
+        Runnable subtask;
+        List<Callable<Object>> callables;
+
+        @Setup(Level.Trial)
+        public void up() {
+            executor = (TaskPoolExecutor) MyExecutors.newSalsaThreadPool(producers, nConsumers, CHUNK_SIZE, 1, 0);
+            final int tokens = workTokens;
+            subtask = () -> Blackhole.consumeCPU(tokens);
+            callables = new ArrayList<>(fanOut);
+            for (int i = 0; i < fanOut; i++) callables.add(() -> {
+                Blackhole.consumeCPU(tokens);
+                return null;
+            });
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void fanOutFanIn(ExecutorWrapper e) throws Exception {
+        switch (e.type) {
+            case "GROUP":
+                TaskGroup group = e.executor.newGroup(CHUNK_SIZE);
+                for (int i = 0; i < e.fanOut; i++) group.add(e.subtask);
+                group.await();
+                break;
+            case "INVOKE_ALL":
+                e.executor.invokeAll(e.callables);
+                break;
+            case "ALL_OF":
+                CompletableFuture<?>[] futures = new CompletableFuture<?>[e.fanOut];
+                for (int i = 0; i < e.fanOut; i++) futures[i] = CompletableFuture.runAsync(e.subtask, e.executor);
+                CompletableFuture.allOf(futures).get();
+                break;
+        }
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkFanOut.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementTime(TimeValue.seconds(2))
+                .threads(producers)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
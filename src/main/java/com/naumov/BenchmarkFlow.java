@@ -0,0 +1,147 @@
+package com.naumov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Reactive streams into and out of the task pool, every op streams nItems items and waits for the last one.
+// SUBMISSION_PUBLISHER: a SubmissionPublisher, that delivers items to a plain subscriber, handling them one by one;
+// POOL_SUBSCRIBER: the same SubmissionPublisher, feeding a TaskPoolSubscriber, that handles items in the pool;
+// POOL_PUBLISHER: a TaskPoolPublisher, running the work in the pool and publishing results.
+// $ java -jar target/benchmarks.jar BenchmarkFlow -w 5s -wi 5 -r 5s -i 10 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkFlow {
+
+    // only for runs from IDE
+    private static final int nProducers = 1;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"SUBMISSION_PUBLISHER", "POOL_SUBSCRIBER", "POOL_PUBLISHER"})
+        public String type;
+
+        @Param({"4"})
+        public int nConsumers;
+
+        @Param({"100"})
+        public int chunkSize;
+
+        @Param({"10000"})
+        public int nItems;
+
+        TaskPoolExecutor service;
+        ExecutorService deliveryThread; // a single thread, delivering items of the SubmissionPublisher
+
+        @Setup(Level.Trial)
+        public void up() {
+            // the benchmark thread and the delivery thread
+            service = (TaskPoolExecutor) MyExecutors.newSalsaThreadPool(nProducers + 1, nConsumers, chunkSize, 1, 0);
+            deliveryThread = Executors.newSingleThreadExecutor();
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            service.shutdown();
+            deliveryThread.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Object stream(ExecutorWrapper e) throws InterruptedException, ExecutionException {
+        switch (e.type) {
+            case "SUBMISSION_PUBLISHER": {
+                CountingSubscriber subscriber = new CountingSubscriber(true);
+                try (SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>(e.deliveryThread, e.chunkSize)) {
+                    publisher.subscribe(subscriber);
+                    for (int i = 0; i < e.nItems; i++) publisher.submit(i);
+                }
+                return subscriber.done.get();
+            }
+            case "POOL_SUBSCRIBER": {
+                TaskPoolSubscriber<Integer> subscriber = new TaskPoolSubscriber<>(e.service, e.chunkSize, BenchmarkFlow::work);
+                try (SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>(e.deliveryThread, e.chunkSize)) {
+                    publisher.subscribe(subscriber);
+                    for (int i = 0; i < e.nItems; i++) publisher.submit(i);
+                }
+                return subscriber.whenDone().get();
+            }
+            case "POOL_PUBLISHER": {
+                CountingSubscriber subscriber = new CountingSubscriber(false); // the work is done by the tasks
+                try (TaskPoolPublisher<Integer> publisher = new TaskPoolPublisher<>(e.service, e.chunkSize * 4)) {
+                    publisher.subscribe(subscriber);
+                    for (int i = 0; i < e.nItems; i++) {
+                        final int item = i;
+                        publisher.submit(() -> {
+                            work(item);
+                            return item;
+                        });
+                    }
+                }
+                return subscriber.done.get();
+            }
+            default:
+                throw new IllegalArgumentException(e.type);
+        }
+    }
+
+    private static void work(int item) {
+        Blackhole.consumeCPU(256);
+    }
+
+    // handles items in the delivery thread, as a typical SubmissionPublisher subscriber does
+    static class CountingSubscriber implements Flow.Subscriber<Integer> {
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+        final LongAdder count = new LongAdder();
+        final boolean handleItems;
+        Flow.Subscription subscription;
+
+        CountingSubscriber(boolean handleItems) {
+            this.handleItems = handleItems;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            if (handleItems) work(item);
+            count.increment();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(count.sum());
+        }
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkFlow.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .threads(nProducers)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
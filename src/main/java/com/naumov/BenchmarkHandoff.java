@@ -0,0 +1,115 @@
+package com.naumov;
+
+import com.naumov.taskpool.TaskPoolConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Dispatch latency at low utilization, where consumers are mostly idle and a task waits for a consumer to notice it,
+// rather than behind other tasks. A background producer (not a benchmark thread) keeps the consumers busy for
+// about `utilization` percent of the time, the benchmark thread submits a probe task and waits until a consumer
+// runs it. SALSA_HANDOFF is SALSA with TaskPoolConfig.withHandoff(true).
+// $ java -jar target/benchmarks.jar BenchmarkHandoff -w 5s -wi 3 -r 10s -i 5 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.SampleTime)
+public class BenchmarkHandoff {
+    private static final int probeThreads = 1; // benchmark threads, run with -t 1
+    private static final int WORK_TOKENS = 1024; // cost of a load task
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"SALSA", "SALSA_HANDOFF", "MSQ", "FJP", "TPE"})
+        public String type;
+
+        @Param({"1", "10"})
+        public int utilization; // percent
+
+        @Param({"4"})
+        public int nConsumers;
+
+        ExecutorService service;
+        Thread producer;
+        volatile boolean running = true;
+
+        @Setup(Level.Trial)
+        public void up() {
+            switch (type) {
+                case "SALSA":
+                    service = MyExecutors.newSalsaThreadPool(1 + probeThreads, nConsumers, 100, 1, 0);
+                    break;
+                case "SALSA_HANDOFF":
+                    service = MyExecutors.newSalsaThreadPool(1 + probeThreads, nConsumers, 100, 1, 0,
+                            TaskPoolConfig.defaults().withHandoff(true));
+                    break;
+                case "MSQ":
+                    service = MyExecutors.newMichealScottThreadPool(1 + probeThreads, nConsumers);
+                    break;
+                case "FJP":
+                    service = Executors.newWorkStealingPool(nConsumers);
+                    break;
+                case "TPE":
+                    service = Executors.newFixedThreadPool(nConsumers);
+                    break;
+            }
+
+            // one task of WORK_TOKENS per period keeps nConsumers busy for utilization percent of the period
+            final long thinkTokens = WORK_TOKENS * 100L / ((long) utilization * nConsumers);
+            producer = new Thread(() -> {
+                while (running) {
+                    service.execute(() -> Blackhole.consumeCPU(WORK_TOKENS));
+                    Blackhole.consumeCPU(thinkTokens);
+                }
+            }, "load-producer");
+            producer.setDaemon(true);
+            producer.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void down() throws InterruptedException {
+            running = false;
+            producer.join();
+            service.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Probe implements Runnable {
+        private volatile boolean done;
+
+        @Override
+        public void run() {
+            done = true;
+        }
+    }
+
+    @Benchmark
+    public boolean dispatchLatency(ExecutorWrapper e, Probe probe) {
+        probe.done = false;
+        e.service.execute(probe);
+        while (!probe.done) Thread.onSpinWait();
+        return true;
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkHandoff.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(10))
+                .threads(probeThreads)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,111 @@
+package com.naumov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+// Keyed serial execution across key cardinalities: mailboxes, built into the pool, against
+// the common wrapper of a ConcurrentHashMap of serial executors with locks and queues.
+// $ java -jar target/benchmarks.jar BenchmarkKeyed -w 5s -wi 5 -r 5s -i 10 -t 4 -si true -f 1
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkKeyed {
+
+    // only for runs from IDE
+    private static final int nProducers = 4;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"MAILBOX", "LOCK_MAP"})
+        public String type;
+
+        @Param({"1", "16", "1024", "1000000"})
+        public int nKeys;
+
+        @Param({"4"})
+        public int nConsumers;
+
+        TaskPoolExecutor service;
+        ConcurrentHashMap<Long, SerialExecutor> serialExecutors;
+
+        @Setup(Level.Trial)
+        public void up() {
+            service = (TaskPoolExecutor) MyExecutors.newSalsaThreadPool(nProducers, nConsumers, 100, 1, 0);
+            if ("LOCK_MAP".equals(type)) serialExecutors = new ConcurrentHashMap<>();
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            service.shutdown();
+        }
+
+        void execute(long key, Runnable task) {
+            if (serialExecutors == null) {
+                service.execute(key, task);
+            } else {
+                serialExecutors.computeIfAbsent(key, k -> new SerialExecutor(service)).execute(task);
+            }
+        }
+    }
+
+    @Benchmark
+    public long keyedSubmission(ExecutorWrapper e) {
+        long key = ThreadLocalRandom.current().nextInt(e.nKeys);
+        e.execute(key, BenchmarkKeyed::work);
+        return key;
+    }
+
+    private static void work() {
+        Math.log(ThreadLocalRandom.current().nextDouble(1.21232342, 13257687.3234234));
+    }
+
+    // the "SerialExecutor" from the java.util.concurrent.Executor javadoc
+    static class SerialExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private final Executor executor;
+        private Runnable active;
+
+        SerialExecutor(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public synchronized void execute(Runnable r) {
+            tasks.add(() -> {
+                try {
+                    r.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (active == null) scheduleNext();
+        }
+
+        private synchronized void scheduleNext() {
+            if ((active = tasks.poll()) != null) executor.execute(active);
+        }
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkKeyed.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .threads(nProducers)
+                .syncIterations(true)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
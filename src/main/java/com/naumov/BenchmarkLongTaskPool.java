@@ -0,0 +1,98 @@
+package com.naumov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+// "Run handler on record id" tasks: Runnable-based SALSA pool against the primitive-specialized one.
+// Run with -prof gc to compare allocation rates per task.
+// $ java -jar target/benchmarks.jar BenchmarkLongTaskPool -w 5s -wi 5 -r 5s -i 10 -t 4 -si true -f 1 -prof gc
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkLongTaskPool {
+
+    // only for runs from IDE
+    private static final int nProducers = 4;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"RUNNABLE", "LONG"})
+        public String type;
+
+        @Param({"1", "2", "4", "8"})
+        public int nConsumers;
+
+        @Param({"100"})
+        public int chunkSize;
+
+        ExecutorService service;
+        LongTaskPoolExecutor longService;
+        final LongConsumer handler = Handler::handle;
+
+        @Setup(Level.Trial)
+        public void up() {
+            switch (type) {
+                case "RUNNABLE":
+                    service = MyExecutors.newSalsaThreadPool(nProducers, nConsumers, chunkSize, 1, 0);
+                    break;
+                case "LONG":
+                    longService = MyExecutors.newLongSalsaThreadPool(nProducers, nConsumers, chunkSize, 1, handler);
+                    break;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            if (service != null) service.shutdown();
+            if (longService != null) longService.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RecordIds {
+        long next;
+    }
+
+    @Benchmark
+    public void execute(ExecutorWrapper e, RecordIds ids) {
+        final long id = ids.next++;
+        if (e.longService != null) {
+            e.longService.execute(id);
+        } else {
+            final LongConsumer handler = e.handler;
+            e.service.execute(() -> handler.accept(id));
+        }
+    }
+
+    // handler H for record X
+    static class Handler {
+        static void handle(long recordId) {
+            Blackhole.consumeCPU(16);
+        }
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkLongTaskPool.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .threads(nProducers)
+                .syncIterations(true)
+                .forks(1)
+                .addProfiler("gc")
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,100 @@
+package com.naumov;
+
+import com.naumov.taskpool.TaskPoolConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Sustained overload: producers submit faster than consumers can run the tasks.
+// Heap usage is printed after every iteration, the unbounded pool is expected to grow until OOM on long runs.
+// $ java -jar target/benchmarks.jar BenchmarkOverload -w 5s -wi 3 -r 10s -i 5 -t 4 -f 1 -jvmArgs -Xmx2g
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkOverload {
+
+    // only for runs from IDE
+    private static final int nProducers = 4;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"SALSA", "MSQ"})
+        public String type;
+
+        @Param({"UNBOUNDED", "BLOCK", "ABORT", "CALLER_RUNS", "DROP_OLDEST_CHUNK"})
+        public String policy;
+
+        @Param({"2"})
+        public int nConsumers;
+
+        @Param({"100000"})
+        public int capacity; // per SCPool
+
+        TaskPoolExecutor service;
+
+        @Setup(Level.Trial)
+        public void up() {
+            boolean unbounded = "UNBOUNDED".equals(policy);
+            TaskPoolConfig config = unbounded ? TaskPoolConfig.defaults() : TaskPoolConfig.defaults().withCapacity(capacity);
+            RejectionPolicy rejectionPolicy = unbounded ? RejectionPolicy.BLOCK : RejectionPolicy.valueOf(policy);
+
+            switch (type) {
+                case "SALSA":
+                    service = MyExecutors.newSalsaThreadPool(nProducers, nConsumers, 1000, 1, 0, config, rejectionPolicy);
+                    break;
+                case "MSQ":
+                    service = MyExecutors.newMichealScottThreadPool(nProducers, nConsumers, config, rejectionPolicy);
+                    break;
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void report() {
+            Runtime rt = Runtime.getRuntime();
+            System.out.printf("%n[%s/%s] used heap: %d MB, dropped tasks: %d%n", type, policy,
+                    (rt.totalMemory() - rt.freeMemory()) >> 20, service.getDroppedTaskCount());
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            service.shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean overloadedSubmission(ExecutorWrapper e) {
+        try {
+            e.service.execute(BenchmarkOverload::slowTask);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            return false; // ABORT policy
+        }
+    }
+
+    // ~ a few microseconds, consumers can't keep up with producers
+    private static void slowTask() {
+        long deadline = System.nanoTime() + 2000;
+        while (System.nanoTime() < deadline) Thread.onSpinWait();
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkOverload.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(10))
+                .threads(nProducers)
+                .forks(1)
+                .jvmArgsAppend("-Xmx2g")
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,98 @@
+package com.naumov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Data-parallel loops over a range of size elements, workTokens of work per element:
+//   SALSA - TaskPoolExecutor.parallelFor / parallelReduce, range items written into chunks, split lazily
+//   FJP   - IntStream.range(...).parallel() on the common ForkJoinPool (parallelism set to nConsumers)
+// $ java -jar target/benchmarks.jar BenchmarkParallelLoop -w 2s -wi 5 -r 2s -i 5 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkParallelLoop {
+    private static final int producers = 1; // benchmark threads, run with -t 1
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"SALSA", "FJP"})
+        public String type;
+
+        @Param({"10000", "1000000"})
+        public int size;
+
+        @Param({"0", "64"})
+        public int workTokens;
+
+        @Param({"4"})
+        public int nConsumers;
+
+        @Param({"256"})
+        public int chunkSize;
+
+        TaskPoolExecutor executor;
+
+        @Setup(Level.Trial)
+        public void up() {
+            if (type.equals("SALSA")) {
+                executor = (TaskPoolExecutor) MyExecutors.newSalsaThreadPool(producers, nConsumers, chunkSize, 1, 0);
+            } else {
+                // the common pool reads the property once, at its creation, forks are fresh JVMs
+                System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism",
+                        String.valueOf(nConsumers));
+                ForkJoinPool.commonPool();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            if (executor != null) executor.shutdown();
+        }
+
+        long work(int i) {
+            Blackhole.consumeCPU(workTokens);
+            return i;
+        }
+    }
+
+    @Benchmark
+    public void parallelFor(ExecutorWrapper e, Blackhole bh) throws Exception {
+        if (e.executor != null) {
+            e.executor.parallelFor(0, e.size, i -> bh.consume(e.work(i)));
+        } else {
+            IntStream.range(0, e.size).parallel().forEach(i -> bh.consume(e.work(i)));
+        }
+    }
+
+    @Benchmark
+    public long parallelReduce(ExecutorWrapper e) throws Exception {
+        if (e.executor != null) {
+            return e.executor.parallelReduce(0, e.size, () -> new long[1],
+                    (acc, i) -> acc[0] += e.work(i), (a, b) -> new long[]{a[0] + b[0]})[0];
+        }
+        return IntStream.range(0, e.size).parallel().mapToLong(e::work).sum();
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkParallelLoop.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementTime(TimeValue.seconds(2))
+                .threads(producers)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,120 @@
+package com.naumov;
+
+import com.naumov.taskpool.TaskPoolConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Three stages (parse -> enrich -> write), the benchmark thread pushes a batch of items and waits until the last
+// stage has seen all of them:
+//   PIPELINE  - Pipeline, outputs of a stage are inserted into the next one a chunk at a time
+//   CHAINED   - a SALSA executor per stage, a task of a stage execute()s a task of the next one per item
+// $ java -jar target/benchmarks.jar BenchmarkPipeline -w 2s -wi 5 -r 2s -i 5 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkPipeline {
+    private static final int producers = 1; // benchmark threads, run with -t 1
+    private static final int CHUNK_SIZE = 64;
+    private static final int CAPACITY = 4096;
+
+    @State(Scope.Benchmark)
+    public static class PipelineWrapper {
+        @Param({"PIPELINE", "CHAINED"})
+        public String type;
+
+        @Param({"1000"})
+        public int batch;
+
+        @Param({"16"})
+        public int workTokens; // per item and stage
+
+        @Param({"2"})
+        public int nConsumers; // per stage
+
+        final AtomicLong written = new AtomicLong();
+        Pipeline<Integer> pipeline;
+        TaskPoolExecutor parse;
+        TaskPoolExecutor enrich;
+        TaskPoolExecutor write;
+
+        @Setup(Level.Trial)
+        public void up() {
+            final int tokens = workTokens;
+            switch (type) {
+                case "PIPELINE":
+                    pipeline = Pipeline.<Integer>builder(producers, CHUNK_SIZE, CAPACITY)
+                            .map("parse", nConsumers, item -> work(item, tokens))
+                            .map("enrich", nConsumers, item -> work(item, tokens))
+                            .sink("write", nConsumers, item -> written.incrementAndGet());
+                    break;
+                case "CHAINED":
+                    TaskPoolConfig config = TaskPoolConfig.defaults().withCapacity(CAPACITY);
+                    parse = MyExecutors.newSalsaThreadPool(producers, nConsumers, CHUNK_SIZE, 1, 0, config);
+                    enrich = MyExecutors.newSalsaThreadPool(nConsumers, nConsumers, CHUNK_SIZE, 1, 0, config);
+                    write = MyExecutors.newSalsaThreadPool(nConsumers, nConsumers, CHUNK_SIZE, 1, 0, config);
+                    break;
+            }
+        }
+
+        void submit(int item) {
+            if (pipeline != null) {
+                pipeline.submit(item);
+                return;
+            }
+
+            final int tokens = workTokens;
+            parse.execute(() -> {
+                int parsed = work(item, tokens);
+                enrich.execute(() -> {
+                    work(parsed, tokens);
+                    write.execute(() -> written.incrementAndGet());
+                });
+            });
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            if (pipeline != null) {
+                pipeline.close();
+            } else {
+                parse.shutdown();
+                enrich.shutdown();
+                write.shutdown();
+            }
+        }
+    }
+
+    private static int work(int item, int tokens) {
+        Blackhole.consumeCPU(tokens);
+        return item;
+    }
+
+    @Benchmark
+    public void batchThroughStages(PipelineWrapper p) {
+        final long target = p.written.get() + p.batch;
+        for (int i = 0; i < p.batch; i++) p.submit(i);
+        while (p.written.get() < target) Thread.onSpinWait();
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkPipeline.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementTime(TimeValue.seconds(2))
+                .threads(producers)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,199 @@
+package com.naumov;
+
+import com.naumov.taskpool.TaskPoolConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+// Divide-and-conquer tasks, forked from consumers: SALSA (with and without the LIFO slot) against FJP.
+// $ java -jar target/benchmarks.jar BenchmarkRecursive -w 5s -wi 5 -r 5s -i 10 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkRecursive {
+
+    // only for runs from IDE
+    private static final int nProducers = 1;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"SALSA", "SALSA_LIFO", "FJP"})
+        public String type;
+
+        @Param({"1", "2", "4", "8"})
+        public int nConsumers;
+
+        TaskPoolExecutor salsa;
+        ForkJoinPool fjp;
+
+        @Setup(Level.Trial)
+        public void up() {
+            switch (type) {
+                case "SALSA":
+                    salsa = MyExecutors.newSalsaThreadPool(nProducers, nConsumers, 100, 1, 0,
+                            TaskPoolConfig.defaults());
+                    break;
+                case "SALSA_LIFO":
+                    salsa = MyExecutors.newSalsaThreadPool(nProducers, nConsumers, 100, 1, 0,
+                            TaskPoolConfig.defaults().withLifoSlot(true));
+                    break;
+                case "FJP":
+                    fjp = new ForkJoinPool(nConsumers);
+                    break;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            if (salsa != null) salsa.shutdown();
+            if (fjp != null) fjp.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Input {
+        @Param({"30"})
+        public int fibN;
+
+        @Param({"1048576"})
+        public int arraySize;
+
+        int[] source;
+        int[] array;
+
+        @Setup(Level.Trial)
+        public void up() {
+            source = ThreadLocalRandom.current().ints(arraySize).toArray();
+            array = new int[arraySize];
+        }
+
+        @Setup(Level.Invocation)
+        public void shuffle() {
+            System.arraycopy(source, 0, array, 0, arraySize);
+        }
+    }
+
+    private static final int FIB_THRESHOLD = 15;
+    private static final int SORT_THRESHOLD = 1 << 13;
+
+    @Benchmark
+    public long fib(ExecutorWrapper e, Input in) throws InterruptedException, ExecutionException {
+        if (e.fjp != null) return e.fjp.invoke(new FibTask(in.fibN));
+        final TaskPoolExecutor salsa = e.salsa;
+        return salsa.submitAsync(() -> fib(salsa, in.fibN)).get();
+    }
+
+    @Benchmark
+    public int[] mergeSort(ExecutorWrapper e, Input in) throws InterruptedException, ExecutionException {
+        final int[] array = in.array;
+        final int[] buffer = new int[array.length];
+        if (e.fjp != null) {
+            e.fjp.invoke(new SortTask(array, buffer, 0, array.length));
+        } else {
+            final TaskPoolExecutor salsa = e.salsa;
+            salsa.submitAsync(() -> sort(salsa, array, buffer, 0, array.length)).get();
+        }
+        return array;
+    }
+
+    private static long fib(TaskPoolExecutor e, int n) throws InterruptedException, ExecutionException {
+        if (n <= FIB_THRESHOLD) return seqFib(n);
+        CompletableFuture<Long> left = e.submitAsync(() -> fib(e, n - 1)); // spawned into own SCPool
+        long right = fib(e, n - 2);
+        return right + e.join(left);
+    }
+
+    private static Void sort(TaskPoolExecutor e, int[] a, int[] buf, int from, int to)
+            throws InterruptedException, ExecutionException {
+        if (to - from <= SORT_THRESHOLD) {
+            Arrays.sort(a, from, to);
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        CompletableFuture<Void> left = e.submitAsync(() -> sort(e, a, buf, from, mid));
+        sort(e, a, buf, mid, to);
+        e.join(left);
+        merge(a, buf, from, mid, to);
+        return null;
+    }
+
+    private static long seqFib(int n) {
+        return n <= 1 ? n : seqFib(n - 1) + seqFib(n - 2);
+    }
+
+    private static void merge(int[] a, int[] buf, int from, int mid, int to) {
+        System.arraycopy(a, from, buf, from, to - from);
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) a[k++] = buf[i] <= buf[j] ? buf[i++] : buf[j++];
+        while (i < mid) a[k++] = buf[i++];
+        while (j < to) a[k++] = buf[j++];
+    }
+
+    static class FibTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final int n;
+
+        FibTask(int n) {
+            this.n = n;
+        }
+
+        @Override
+        protected Long compute() {
+            if (n <= FIB_THRESHOLD) return seqFib(n);
+            FibTask left = new FibTask(n - 1);
+            left.fork();
+            return new FibTask(n - 2).compute() + left.join();
+        }
+    }
+
+    static class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] a;
+        private final int[] buf;
+        private final int from;
+        private final int to;
+
+        SortTask(int[] a, int[] buf, int from, int to) {
+            this.a = a;
+            this.buf = buf;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SORT_THRESHOLD) {
+                Arrays.sort(a, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            SortTask left = new SortTask(a, buf, from, mid);
+            left.fork();
+            new SortTask(a, buf, mid, to).compute();
+            left.join();
+            merge(a, buf, from, mid, to);
+        }
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkRecursive.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .threads(nProducers)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
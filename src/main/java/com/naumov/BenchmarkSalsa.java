@@ -55,6 +55,25 @@ public class BenchmarkSalsa {
         public void down() {
             service.shutdown();
         }
+
+        // executors other than TaskPoolExecutor fall back to the closest standard equivalent
+        CompletableFuture<Double> submitAsync(Task task) {
+            if (service instanceof TaskPoolExecutor) return ((TaskPoolExecutor) service).submitAsync(task);
+            return CompletableFuture.supplyAsync(task::call, service);
+        }
+
+        void execute(Task task, TaskCompletionHandler<Double> handler) {
+            if (service instanceof TaskPoolExecutor) {
+                ((TaskPoolExecutor) service).execute(task, handler);
+            } else {
+                service.execute(() -> handler.completed(task.call()));
+            }
+        }
+
+        Future<Double> submit(Task task, PooledFuture<Double> future) {
+            if (service instanceof TaskPoolExecutor) return ((TaskPoolExecutor) service).submit(task, future);
+            return service.submit(task);
+        }
     }
 
     @Benchmark
@@ -69,8 +88,31 @@ public class BenchmarkSalsa {
         return e.service.submit(new Task(s)).get();
     }
 
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public double asyncThroughput(ExecutorWrapper e, final Scratch s) {
+        return e.submitAsync(new Task(s)).join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public double callbackThroughput(ExecutorWrapper e, final Scratch s) {
+        s.handler.reset();
+        e.execute(new Task(s), s.handler);
+        return s.handler.await();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public double pooledFutureThroughput(ExecutorWrapper e, final Scratch s) throws InterruptedException, ExecutionException {
+        return e.submit(new Task(s), s.future).get();
+    }
+
     @State(Scope.Thread) // other benchmark threads can't see this object (although consumers threads can)
     public static class Scratch {
+        final PooledFuture<Double> future = new PooledFuture<>();
+        final SpinHandler handler = new SpinHandler();
+
         public double doWork() {
             double p = ThreadLocalRandom.current().nextDouble(1.21232342, 13257687.3234234);
             p = Math.log(p);
@@ -91,6 +133,33 @@ public class BenchmarkSalsa {
         }
     }
 
+    // completion handler for a single in-flight task, the producer spins until the consumer reports back
+    static class SpinHandler implements TaskCompletionHandler<Double> {
+        private volatile boolean done;
+        private double result;
+
+        void reset() {
+            done = false;
+        }
+
+        double await() {
+            while (!done) Thread.onSpinWait();
+            return result;
+        }
+
+        @Override
+        public void completed(Double result) {
+            this.result = result;
+            done = true;
+        }
+
+        @Override
+        public void failed(Throwable ex) {
+            this.result = Double.NaN;
+            done = true;
+        }
+    }
+
     // to run from IDEA
     public static void main(String[] args) throws RunnerException {
         Options opt = new OptionsBuilder()
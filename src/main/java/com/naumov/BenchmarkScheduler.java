@@ -0,0 +1,85 @@
+package com.naumov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.*;
+
+// Millions of short timeouts, most of them cancelled before they fire (e.g. request timeouts):
+// the timing wheel with per-thread insertion buffers against the ScheduledThreadPoolExecutor.
+// $ java -jar target/benchmarks.jar BenchmarkScheduler -w 5s -wi 5 -r 5s -i 10 -t 8 -si true -f 1
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkScheduler {
+
+    // only for runs from IDE
+    private static final int nProducers = 8;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"SALSA", "STPE"})
+        public String type;
+
+        @Param({"4"})
+        public int nConsumers;
+
+        @Param({"10"})
+        public int timeoutMs;
+
+        ScheduledExecutorService service;
+
+        @Setup(Level.Trial)
+        public void up() {
+            switch (type) {
+                case "SALSA":
+                    service = MyExecutors.newSalsaScheduledThreadPool(nProducers, nConsumers, 100, 1, 0);
+                    break;
+                case "STPE":
+                    ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(nConsumers);
+                    stpe.setRemoveOnCancelPolicy(true); // otherwise cancelled timeouts pile up in the queue
+                    service = stpe;
+                    break;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void down() {
+            service.shutdown();
+        }
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel(ExecutorWrapper e) {
+        ScheduledFuture<?> timeout = e.service.schedule(BenchmarkScheduler::onTimeout, e.timeoutMs, TimeUnit.MILLISECONDS);
+        return timeout.cancel(false); // the request completed in time
+    }
+
+    @Benchmark
+    public ScheduledFuture<?> scheduleAndFire(ExecutorWrapper e) {
+        return e.service.schedule(BenchmarkScheduler::onTimeout, e.timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void onTimeout() {
+        // the request has timed out
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkScheduler.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(5))
+                .threads(nProducers)
+                .syncIterations(true)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,117 @@
+package com.naumov;
+
+import com.naumov.taskpool.LongTaskPool;
+import com.naumov.taskpool.salsa.LongSalsaTaskPool;
+import com.naumov.taskpool.shm.ShmTaskPool;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Two "processes" A and B with nConsumers each, all the load arrives at A. The benchmark thread inserts a batch
+// into A and waits for it to be handled:
+//   SHM          - both attach a ShmTaskPool over one file in /dev/shm, consumers of B steal chunks of A
+//   PER_PROCESS  - a LongSalsaTaskPool per process, consumers of B stay idle
+// Both halves run in one JVM to compare the pools alone, ShmTaskPoolTest covers separate processes.
+// $ java -jar target/benchmarks.jar BenchmarkShm -w 2s -wi 5 -r 2s -i 5 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.AverageTime)
+public class BenchmarkShm {
+    private static final int producers = 1; // benchmark threads, run with -t 1
+    private static final int N_CHUNKS = 1024;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"SHM", "PER_PROCESS"})
+        public String type;
+
+        @Param({"2"})
+        public int nConsumers; // per process
+
+        @Param({"64"})
+        public int chunkSize;
+
+        @Param({"1000"})
+        public int batch;
+
+        @Param({"256"})
+        public int workTokens;
+
+        final AtomicLong handled = new AtomicLong();
+        Path dir;
+        LongTaskPool poolA;
+        LongTaskPool poolB;
+        LongTaskPoolExecutor executorA;
+        LongTaskPoolExecutor executorB;
+
+        @Setup(Level.Trial)
+        public void up() throws IOException {
+            switch (type) {
+                case "SHM":
+                    Path shm = Paths.get("/dev/shm");
+                    dir = Files.isDirectory(shm) ? Files.createTempDirectory(shm, "salsa") : Files.createTempDirectory("salsa");
+                    poolA = ShmTaskPool.open(dir.resolve("pool"), 2 * nConsumers, N_CHUNKS, chunkSize);
+                    poolB = ShmTaskPool.open(dir.resolve("pool"), 2 * nConsumers, N_CHUNKS, chunkSize);
+                    break;
+                case "PER_PROCESS":
+                    poolA = new LongSalsaTaskPool(producers, nConsumers, chunkSize, 1);
+                    poolB = new LongSalsaTaskPool(producers, nConsumers, chunkSize, 1);
+                    break;
+            }
+
+            final int tokens = workTokens;
+            executorA = new LongTaskPoolExecutor(poolA, nConsumers, payload -> {
+                Blackhole.consumeCPU(tokens);
+                handled.incrementAndGet();
+            });
+            executorB = new LongTaskPoolExecutor(poolB, nConsumers, payload -> {
+                Blackhole.consumeCPU(tokens);
+                handled.incrementAndGet();
+            });
+        }
+
+        @TearDown(Level.Trial)
+        public void down() throws IOException {
+            executorA.shutdown();
+            executorB.shutdown();
+            if (dir != null) {
+                ((ShmTaskPool) poolA).close();
+                ((ShmTaskPool) poolB).close();
+                Files.delete(dir.resolve("pool"));
+                Files.delete(dir);
+            }
+        }
+    }
+
+    @Benchmark
+    public void batchToA(ExecutorWrapper e) {
+        final long target = e.handled.get() + e.batch;
+        for (int i = 0; i < e.batch; i++) e.executorA.execute(i);
+        while (e.handled.get() < target) Thread.onSpinWait();
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkShm.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementTime(TimeValue.seconds(2))
+                .threads(producers)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
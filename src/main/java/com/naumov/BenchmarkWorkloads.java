@@ -0,0 +1,169 @@
+package com.naumov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Queueing latency under different workload shapes. Background producers (a @Param, not benchmark threads) generate
+// the load, the benchmark thread submits a probe task and waits until a consumer runs it, so the sampled time is
+// the time the probe spent queued behind the load (plus the handoff).
+// Every producer keeps at most WINDOW tasks in flight, so that overload shows up as latency, not as a growing heap.
+// Shapes:
+//   BURSTY          - bursts of BURST cheap tasks with 1 ms gaps
+//   ONE_HOT         - producer 0 submits at full rate, the rest rarely
+//   PRODUCER_HEAVY  - all producers submit at full rate, consumers are the bottleneck
+//   CONSUMER_HEAVY  - producers think between submissions, consumers are mostly idle
+//   BIMODAL         - moderate rate, one task in EXPENSIVE_EVERY is EXPENSIVE_TOKENS costly
+// $ java -jar target/benchmarks.jar BenchmarkWorkloads -w 5s -wi 3 -r 10s -i 5 -t 1 -f 1
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.SampleTime)
+public class BenchmarkWorkloads {
+    private static final int probeThreads = 1; // benchmark threads, run with -t 1
+    private static final int WINDOW = 1024;
+    private static final int BURST = 256;
+    private static final int CHEAP_TOKENS = 64;
+    private static final int EXPENSIVE_TOKENS = 16384;
+    private static final int EXPENSIVE_EVERY = 20;
+    private static final int HOT_THINK_TOKENS = 0;
+    private static final int COLD_THINK_TOKENS = 16384;
+    private static final int CONSUMER_HEAVY_THINK_TOKENS = 1024;
+    private static final int BIMODAL_THINK_TOKENS = 256;
+
+    @State(Scope.Benchmark)
+    public static class ExecutorWrapper {
+        @Param({"SALSA", "MSQ", "FJP", "TPE"})
+        public String type;
+
+        @Param({"BURSTY", "ONE_HOT", "PRODUCER_HEAVY", "CONSUMER_HEAVY", "BIMODAL"})
+        public String shape;
+
+        @Param({"1", "4", "8"})
+        public int nProducers;
+
+        @Param({"4"})
+        public int nConsumers;
+
+        ExecutorService service;
+        final List<Thread> producers = new ArrayList<>();
+        volatile boolean running = true;
+
+        @Setup(Level.Trial)
+        public void up() {
+            switch (type) {
+                case "SALSA":
+                    service = MyExecutors.newSalsaThreadPool(nProducers + probeThreads, nConsumers, 100, 1, 0);
+                    break;
+                case "MSQ":
+                    service = MyExecutors.newMichealScottThreadPool(nProducers + probeThreads, nConsumers);
+                    break;
+                case "FJP":
+                    service = Executors.newWorkStealingPool(nConsumers);
+                    break;
+                case "TPE":
+                    service = Executors.newFixedThreadPool(nConsumers);
+                    break;
+            }
+
+            for (int pId = 0; pId < nProducers; pId++) {
+                final int id = pId;
+                Thread producer = new Thread(() -> produce(id), "load-producer-" + pId);
+                producer.setDaemon(true);
+                producers.add(producer);
+                producer.start();
+            }
+        }
+
+        private void produce(int pId) {
+            final AtomicInteger inFlight = new AtomicInteger(0);
+            long submitted = 0;
+            while (running) {
+                switch (shape) {
+                    case "BURSTY":
+                        for (int i = 0; i < BURST && running; i++) submit(inFlight, CHEAP_TOKENS);
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                        break;
+                    case "ONE_HOT":
+                        submit(inFlight, CHEAP_TOKENS);
+                        Blackhole.consumeCPU(pId == 0 ? HOT_THINK_TOKENS : COLD_THINK_TOKENS);
+                        break;
+                    case "PRODUCER_HEAVY":
+                        submit(inFlight, CHEAP_TOKENS);
+                        break;
+                    case "CONSUMER_HEAVY":
+                        submit(inFlight, CHEAP_TOKENS);
+                        Blackhole.consumeCPU(CONSUMER_HEAVY_THINK_TOKENS);
+                        break;
+                    case "BIMODAL":
+                        submit(inFlight, ++submitted % EXPENSIVE_EVERY == 0 ? EXPENSIVE_TOKENS : CHEAP_TOKENS);
+                        Blackhole.consumeCPU(BIMODAL_THINK_TOKENS);
+                        break;
+                }
+            }
+        }
+
+        private void submit(AtomicInteger inFlight, int tokens) {
+            while (inFlight.get() >= WINDOW) {
+                if (!running) return;
+                Thread.yield();
+            }
+
+            inFlight.incrementAndGet();
+            service.execute(() -> {
+                Blackhole.consumeCPU(tokens);
+                inFlight.decrementAndGet();
+            });
+        }
+
+        @TearDown(Level.Trial)
+        public void down() throws InterruptedException {
+            running = false;
+            for (Thread producer : producers) producer.join();
+            service.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Probe implements Runnable {
+        private volatile boolean done;
+
+        @Override
+        public void run() {
+            done = true;
+        }
+    }
+
+    @Benchmark
+    public boolean queueingLatency(ExecutorWrapper e, Probe probe) {
+        probe.done = false;
+        e.service.execute(probe);
+        while (!probe.done) Thread.onSpinWait();
+        return true;
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkWorkloads.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(5))
+                .measurementTime(TimeValue.seconds(10))
+                .threads(probeThreads)
+                .forks(1)
+                .build();
+
+        new Runner(opt).run();
+    }
+}
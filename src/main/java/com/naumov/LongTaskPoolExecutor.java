@@ -0,0 +1,65 @@
+package com.naumov;
+
+import com.naumov.taskpool.LongTaskPool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a single registered {@code handler} on every payload, inserted by {@link #execute(long)}, in consumer threads.
+ * Unlike {@link TaskPoolExecutor} no {@link Runnable} or future is created per task.
+ */
+public class LongTaskPoolExecutor {
+    private final LongTaskPool taskPool;
+    private final LongConsumer handler;
+    private final List<Worker> consumers;
+
+    public LongTaskPoolExecutor(LongTaskPool taskPool, int nConsumers, LongConsumer handler) {
+        if (handler == null) throw new NullPointerException();
+        this.taskPool = taskPool;
+        this.handler = handler;
+
+        // init consumers
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < nConsumers; i++) {
+            workers.add(new Worker(i));
+        }
+
+        consumers = Collections.unmodifiableList(workers);
+        consumers.forEach(Thread::start);
+    }
+
+    /**
+     * Consumer thread
+     */
+    private class Worker extends Thread {
+
+        public Worker(int id) {
+            super("LongTaskPool-consumer-" + id);
+        }
+
+        @Override
+        public void run() {
+            while (!this.isInterrupted()) {
+                taskPool.get(handler);
+            }
+        }
+    }
+
+    /**
+     * Passes the {@code payload} to the handler in some consumer thread.
+     *
+     * @param payload payload, e.g. a record id
+     */
+    public void execute(long payload) {
+        taskPool.put(payload);
+    }
+
+    public void shutdown() {
+        ThreadUtil.logMajorAction("shutting down workers: " + consumers.stream().map(Thread::getName).collect(Collectors.toList()));
+        consumers.forEach(Thread::interrupt);
+    }
+}
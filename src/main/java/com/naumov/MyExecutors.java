@@ -1,9 +1,16 @@
 package com.naumov;
 
+import com.naumov.taskpool.TaskPool;
+import com.naumov.taskpool.TaskPoolConfig;
+import com.naumov.taskpool.durable.Durability;
+import com.naumov.taskpool.durable.DurableTaskPool;
 import com.naumov.taskpool.ms.MSQTaskPool;
+import com.naumov.taskpool.salsa.LongSalsaTaskPool;
 import com.naumov.taskpool.salsa.SalsaTaskPool;
 
+import java.nio.file.Path;
 import java.util.concurrent.*;
+import java.util.function.LongConsumer;
 
 public final class MyExecutors {
     private MyExecutors() {
@@ -17,8 +24,103 @@ public final class MyExecutors {
         return new TaskPoolExecutor(new SalsaTaskPool(nProducers, nConsumers, chunkSize, cleanupCycles), nConsumers, backoffStartTimeout);
     }
 
+    public static TaskPoolExecutor newSalsaThreadPool(int nProducers,
+                                                      int nConsumers,
+                                                      int chunkSize,
+                                                      int cleanupCycles,
+                                                      int backoffStartTimeout,
+                                                      TaskPoolConfig config) {
+        return new TaskPoolExecutor(new SalsaTaskPool(nProducers, nConsumers, chunkSize, cleanupCycles, config), nConsumers, backoffStartTimeout);
+    }
+
+    public static TaskPoolExecutor newSalsaThreadPool(int nProducers,
+                                                      int nConsumers,
+                                                      int chunkSize,
+                                                      int cleanupCycles,
+                                                      int backoffStartTimeout,
+                                                      TaskPoolConfig config,
+                                                      RejectionPolicy rejectionPolicy) {
+        return new TaskPoolExecutor(new SalsaTaskPool(nProducers, nConsumers, chunkSize, cleanupCycles, config), nConsumers, backoffStartTimeout, rejectionPolicy);
+    }
+
+    /**
+     * @param backoffStartTimeout consumer backoff, 0 to spin: idle consumers over {@code minConsumers} should
+     *                            back off rather than spin until they retire
+     * @param keepAlive           time, an idle consumer lives over {@code minConsumers}, see
+     *                            {@link TaskPoolExecutor#TaskPoolExecutor(TaskPool, int, int, long, TimeUnit, int, RejectionPolicy)}
+     */
+    public static TaskPoolExecutor newElasticSalsaThreadPool(int nProducers,
+                                                             int minConsumers,
+                                                             int maxConsumers,
+                                                             int chunkSize,
+                                                             int cleanupCycles,
+                                                             int backoffStartTimeout,
+                                                             long keepAlive,
+                                                             TimeUnit unit) {
+        return new TaskPoolExecutor(new SalsaTaskPool(nProducers, maxConsumers, chunkSize, cleanupCycles),
+                minConsumers, maxConsumers, keepAlive, unit, backoffStartTimeout, RejectionPolicy.BLOCK);
+    }
+
+    /**
+     * Executor, whose pending {@link java.io.Serializable} tasks survive a restart, see {@link DurableTaskPool}.
+     * Unfinished tasks of the previous run are replayed before the consumers start, by a throwaway producer thread,
+     * accounted additionally to the {@code nProducers}.
+     *
+     * @param logDir       directory for the log segments
+     * @param segmentBytes size of a log segment file
+     */
+    public static TaskPoolExecutor newDurableSalsaThreadPool(int nProducers,
+                                                             int nConsumers,
+                                                             int chunkSize,
+                                                             int cleanupCycles,
+                                                             int backoffStartTimeout,
+                                                             Path logDir,
+                                                             Durability durability,
+                                                             int segmentBytes) {
+        DurableTaskPool pool = new DurableTaskPool(new SalsaTaskPool(nProducers + 1, nConsumers, chunkSize,
+                cleanupCycles), logDir, durability, chunkSize, segmentBytes);
+        FutureTask<Integer> recovery = new FutureTask<>(pool::recover);
+        new Thread(recovery, "durable-recovery").start();
+        try {
+            recovery.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while recovering the tasks from " + logDir, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Couldn't recover the tasks from " + logDir, e.getCause());
+        }
+        return new TaskPoolExecutor(pool, nConsumers, backoffStartTimeout);
+    }
+
+    /**
+     * @param nProducers number of threads, that call {@code execute()}, the timer thread is accounted additionally
+     */
+    public static ScheduledTaskPoolExecutor newSalsaScheduledThreadPool(int nProducers,
+                                                                        int nConsumers,
+                                                                        int chunkSize,
+                                                                        int cleanupCycles,
+                                                                        int backoffStartTimeout) {
+        return new ScheduledTaskPoolExecutor(new SalsaTaskPool(nProducers + 1, nConsumers, chunkSize, cleanupCycles), nConsumers, backoffStartTimeout);
+    }
+
+    public static LongTaskPoolExecutor newLongSalsaThreadPool(int nProducers,
+                                                          int nConsumers,
+                                                          int chunkSize,
+                                                          int cleanupCycles,
+                                                          LongConsumer handler) {
+        return new LongTaskPoolExecutor(new LongSalsaTaskPool(nProducers, nConsumers, chunkSize, cleanupCycles), nConsumers, handler);
+    }
+
     // for performance comparison
     public static ExecutorService newMichealScottThreadPool(int maxNProducers, int nConsumers) {
         return new TaskPoolExecutor(new MSQTaskPool(maxNProducers, nConsumers), nConsumers, 0);
     }
+
+    public static TaskPoolExecutor newMichealScottThreadPool(int maxNProducers,
+                                                             int nConsumers,
+                                                             TaskPoolConfig config,
+                                                             RejectionPolicy rejectionPolicy) {
+        return new TaskPoolExecutor(new MSQTaskPool(maxNProducers, nConsumers, config), nConsumers, 0, rejectionPolicy);
+    }
 }
@@ -0,0 +1,119 @@
+package com.naumov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Range loop behind {@link TaskPoolExecutor#parallelFor(int, int, IntConsumer)} and
+ * {@link TaskPoolExecutor#parallelReduce(int, int, Supplier, ObjIntConsumer, BinaryOperator)}.
+ * <p>
+ * The range is cut into one chunk of work items, inserted by a single bulk insertion, so a stolen chunk carries
+ * large ranges. The items are split further lazily, by binary splitting at run time: a consumer spawns the right
+ * half and goes on with the left one, while the split budget of the item lasts. Halves land in the spawn chunks
+ * of the consumer, from which idle consumers steal. An item, run by a thread other than the one that created it,
+ * has been stolen: its budget is renewed, since the thief has nothing else to split.
+ * <p>
+ * Every consumer accumulates into its own accumulator, the accumulators are combined once the loop is over.
+ *
+ * @param <A> accumulator type
+ */
+class ParallelLoop<A> {
+    private static final int SPLIT_DEPTH = 4; // binary splits per item, until it gets stolen
+
+    private final TaskPoolExecutor executor;
+    private final Supplier<A> identity;
+    private final ObjIntConsumer<A> accumulator;
+    private final ConcurrentHashMap<Thread, A> accumulators = new ConcurrentHashMap<>();
+    private final AtomicLong pending = new AtomicLong(0); // unfinished items
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    ParallelLoop(TaskPoolExecutor executor, Supplier<A> identity, ObjIntConsumer<A> accumulator) {
+        this.executor = executor;
+        this.identity = identity;
+        this.accumulator = accumulator;
+    }
+
+    static ParallelLoop<IntConsumer> forEach(TaskPoolExecutor executor, IntConsumer body) {
+        if (body == null) throw new NullPointerException();
+        return new ParallelLoop<>(executor, () -> body, IntConsumer::accept); // the body is a stateless accumulator
+    }
+
+    /**
+     * Runs the loop and waits for it to finish, see {@link TaskPoolExecutor#join(java.util.concurrent.Future)}.
+     *
+     * @param from     first index, inclusive
+     * @param to       last index, exclusive
+     * @param combiner merges two accumulators, {@code null} to skip merging
+     * @return combined accumulators, the identity for an empty range or {@code null} without combiner
+     * @throws ExecutionException with the first failure of the body
+     */
+    A run(int from, int to, BinaryOperator<A> combiner) throws InterruptedException, ExecutionException {
+        if (from < to) {
+            long size = (long) to - from;
+            int nItems = (int) Math.min(size, executor.getChunkSize());
+            List<RangeTask> items = new ArrayList<>(nItems);
+            for (int i = 0; i < nItems; i++) {
+                int itemFrom = (int) (from + size * i / nItems);
+                int itemTo = (int) (from + size * (i + 1) / nItems);
+                items.add(new RangeTask(itemFrom, itemTo, SPLIT_DEPTH));
+            }
+
+            pending.set(nItems);
+            executor.executeAll(items);
+            executor.join(done);
+        }
+
+        if (combiner == null) return null;
+        A result = identity.get();
+        for (A partial : accumulators.values()) result = combiner.apply(result, partial);
+        return result;
+    }
+
+    private void finish() {
+        if (pending.decrementAndGet() == 0) done.complete(null);
+    }
+
+    private class RangeTask implements Runnable {
+        private final Thread creator = Thread.currentThread();
+        private final int from;
+        private int to;
+        private int budget;
+
+        private RangeTask(int from, int to, int budget) {
+            this.from = from;
+            this.to = to;
+            this.budget = budget;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (done.isDone()) return; // failed, skip the rest
+
+                if (Thread.currentThread() != creator) budget = SPLIT_DEPTH; // stolen
+                while (budget > 0 && to - from > 1) {
+                    int mid = (int) (((long) from + to) >>> 1);
+                    budget--;
+                    pending.incrementAndGet();
+                    executor.execute(new RangeTask(mid, to, budget)); // a consumer spawns into its own pool
+                    to = mid;
+                }
+
+                A acc = accumulators.computeIfAbsent(Thread.currentThread(), thread -> identity.get());
+                for (int i = from; i < to; i++) accumulator.accept(acc, i);
+            } catch (Throwable ex) {
+                done.completeExceptionally(ex);
+            } finally {
+                finish();
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.naumov;
+
+import com.naumov.taskpool.TaskPoolConfig;
+import com.naumov.taskpool.salsa.SalsaTaskPool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Chain of processing stages (e.g. parse, enrich, write), each run by its own {@link TaskPoolExecutor} over
+ * a bounded {@link SalsaTaskPool}. A consumer of a stage is a registered producer of the next one: the items it
+ * emits are buffered per consumer and inserted in batches of a chunk by {@link TaskPoolExecutor#executeAll(List)},
+ * so a batch fills a whole chunk and is stolen as a whole. A partial batch is flushed once the consumer finds
+ * its own stage empty.
+ * <p>
+ * Backpressure flows upstream: when a stage is full, the consumers of the previous stage wait for space
+ * in the middle of their tasks, their own stage fills up, and eventually {@link #submit(Object)} waits.
+ * <p>
+ * An item, whose stage has thrown an exception, is dropped. Failures are not reported per item: every stage
+ * counts them and keeps the first one, see {@link #stats()}.
+ *
+ * <pre>{@code
+ * Pipeline<String> pipeline = Pipeline.<String>builder(1, 64, 4096)
+ *         .map("parse", 2, Record::parse)
+ *         .stage("enrich", 4, (record, out) -> lookup(record).forEach(out))
+ *         .sink("write", 1, store::write);
+ * }</pre>
+ *
+ * @param <I> type of the submitted items
+ */
+public class Pipeline<I> implements AutoCloseable {
+    private static final long MAX_DRAIN_PARK_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<Stage> stages;
+    private final long startNanos = System.nanoTime();
+
+    private Pipeline(List<Stage> stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * @param nProducers max number of threads, submitting items
+     * @param chunkSize  chunk size of the stage pools, also the emission batch size
+     * @param capacity   max number of pending items per consumer of a stage, see
+     *                   {@link TaskPoolConfig#withCapacity(int)}, at least {@code chunkSize} times the producers
+     *                   of the stage (the consumers of the previous one)
+     * @param <I>        type of the submitted items
+     * @return builder of the first stage
+     */
+    public static <I> Builder<I, I> builder(int nProducers, int chunkSize, int capacity) {
+        if (nProducers < 1) throw new IllegalArgumentException("nProducers must be a positive number, got " + nProducers);
+        if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be a positive number, got " + chunkSize);
+        return new Builder<>(nProducers, chunkSize, TaskPoolConfig.defaults().withCapacity(capacity),
+                Collections.emptyList());
+    }
+
+    /**
+     * Passes the item to the first stage, waiting for space if it is full.
+     *
+     * @param item item to process
+     */
+    public void submit(I item) {
+        Stage head = stages.get(0);
+        head.entered.increment();
+        head.executor.execute(head.task(item));
+    }
+
+    /**
+     * Passes the items to the first stage in bulk, see {@link TaskPoolExecutor#executeAll(List)}.
+     *
+     * @param items items to process
+     */
+    public void submitAll(List<? extends I> items) {
+        Stage head = stages.get(0);
+        List<Runnable> tasks = new ArrayList<>(items.size());
+        for (I item : items) tasks.add(head.task(item));
+        head.entered.add(tasks.size());
+        head.executor.executeAll(tasks);
+    }
+
+    /**
+     * @return statistics of the stages, in the pipeline order
+     */
+    public List<StageStats> stats() {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        List<StageStats> stats = new ArrayList<>(stages.size());
+        for (Stage stage : stages) {
+            long processed = stage.processed.sum(); // before entered, so the backlog is never negative
+            stats.add(new StageStats(stage.name, processed, stage.failed.sum(), stage.firstFailure.get(),
+                    stage.entered.sum() - processed, elapsedNanos));
+        }
+        return stats;
+    }
+
+    /**
+     * Waits until every submitted item has passed all the stages. Items, submitted meanwhile, are waited for too.
+     */
+    public void awaitDrained() throws InterruptedException {
+        long parkNs = 1000L;
+        while (!isDrained()) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            LockSupport.parkNanos(this, parkNs);
+            parkNs = Math.min(parkNs << 1, MAX_DRAIN_PARK_NS);
+        }
+    }
+
+    /**
+     * An item is entered into the next stage before it is counted as processed by the previous one,
+     * so reading all the processed counters before the entered ones can't miss an item in between.
+     */
+    private boolean isDrained() {
+        long processed = 0;
+        for (Stage stage : stages) processed += stage.processed.sum();
+        long entered = 0;
+        for (Stage stage : stages) entered += stage.entered.sum();
+        return entered == processed;
+    }
+
+    /**
+     * Waits for the submitted items to be processed, then shuts down the stages. If interrupted while waiting,
+     * shuts them down right away, leaving the interrupt status set.
+     */
+    @Override
+    public void close() {
+        try {
+            awaitDrained();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Stage stage : stages) stage.executor.shutdown();
+        }
+    }
+
+    /**
+     * Stage with its executor and counters.
+     */
+    private static class Stage {
+        private final String name;
+        private final TaskPoolExecutor executor;
+        private final BiConsumer<Object, Consumer<Object>> body;
+        private final Stage next; // null for the sink
+        private final int batchSize;
+        private final ThreadLocal<Outbox> outboxTL = ThreadLocal.withInitial(Outbox::new);
+        private final LongAdder entered = new LongAdder(); // submitted or emitted into the stage, incl. buffered
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+        private Stage(String name, int nProducers, int nConsumers, int chunkSize, TaskPoolConfig config,
+                      BiConsumer<Object, Consumer<Object>> body, Stage next) {
+            this.name = name;
+            this.body = body;
+            this.next = next;
+            this.batchSize = chunkSize;
+            // a consumer, that finds its stage empty, flushes its partial batch to the next one
+            TaskPoolConfig stageConfig = next != null ? config.withIdleHook(() -> outboxTL.get().flush()) : config;
+            this.executor = MyExecutors.newSalsaThreadPool(nProducers, nConsumers, chunkSize, 1, 0, stageConfig);
+        }
+
+        private Runnable task(Object item) {
+            return () -> {
+                try {
+                    body.accept(item, next == null ? null : outboxTL.get());
+                } catch (RuntimeException | Error ex) {
+                    failed.increment();
+                    firstFailure.compareAndSet(null, ex); // the item is dropped
+                    if (ex instanceof Error) throw ex; // left to the executor
+                } finally {
+                    processed.increment();
+                }
+            };
+        }
+
+        /**
+         * Output buffer of a consumer of the stage.
+         */
+        private class Outbox implements Consumer<Object> {
+            private List<Runnable> batch = new ArrayList<>(batchSize);
+
+            @Override
+            public void accept(Object item) {
+                next.entered.increment();
+                batch.add(next.task(item));
+                if (batch.size() == batchSize) flush();
+            }
+
+            private void flush() {
+                if (batch.isEmpty()) return;
+
+                List<Runnable> tasks = batch;
+                batch = new ArrayList<>(batchSize);
+                next.executor.executeAll(tasks); // waits for space in the next stage
+            }
+        }
+    }
+
+    /**
+     * Builder of a pipeline, whose last stage emits items of type {@code O}. Immutable, every call returns a copy.
+     *
+     * @param <I> type of the submitted items
+     * @param <O> type of the items, emitted by the last stage
+     */
+    public static final class Builder<I, O> {
+        private final int nProducers;
+        private final int chunkSize;
+        private final TaskPoolConfig config;
+        private final List<StageSpec> specs;
+
+        private Builder(int nProducers, int chunkSize, TaskPoolConfig config, List<StageSpec> specs) {
+            this.nProducers = nProducers;
+            this.chunkSize = chunkSize;
+            this.config = config;
+            this.specs = specs;
+        }
+
+        /**
+         * Adds a stage, that emits any number of items per input item.
+         *
+         * @param name       stage name for the statistics
+         * @param nConsumers consumer threads of the stage
+         * @param body       processes an item, passing the results to the consumer
+         * @param <R>        type of the emitted items
+         * @return modified copy
+         */
+        @SuppressWarnings("unchecked")
+        public <R> Builder<I, R> stage(String name, int nConsumers, BiConsumer<? super O, Consumer<R>> body) {
+            if (body == null) throw new NullPointerException();
+            List<StageSpec> copy = new ArrayList<>(specs);
+            copy.add(new StageSpec(name, nConsumers, (BiConsumer<Object, Consumer<Object>>) (BiConsumer<?, ?>) body));
+            return new Builder<>(nProducers, chunkSize, config, copy);
+        }
+
+        /**
+         * Adds a stage, that emits one item per input item.
+         */
+        public <R> Builder<I, R> map(String name, int nConsumers, Function<? super O, ? extends R> function) {
+            if (function == null) throw new NullPointerException();
+            return stage(name, nConsumers, (item, out) -> out.accept(function.apply(item)));
+        }
+
+        /**
+         * Adds the last stage and starts the pipeline.
+         *
+         * @param name       stage name for the statistics
+         * @param nConsumers consumer threads of the stage
+         * @param body       consumes an item
+         * @return running pipeline
+         */
+        @SuppressWarnings("unchecked")
+        public Pipeline<I> sink(String name, int nConsumers, Consumer<? super O> body) {
+            if (body == null) throw new NullPointerException();
+            List<StageSpec> all = new ArrayList<>(specs);
+            all.add(new StageSpec(name, nConsumers, (item, out) -> ((Consumer<Object>) body).accept(item)));
+
+            // a stage is fed by the consumers of the previous one, build from the sink backwards
+            Stage[] stages = new Stage[all.size()];
+            for (int i = all.size() - 1; i >= 0; i--) {
+                StageSpec spec = all.get(i);
+                int stageProducers = i == 0 ? nProducers : all.get(i - 1).nConsumers;
+                stages[i] = new Stage(spec.name, stageProducers, spec.nConsumers, chunkSize, config, spec.body,
+                        i + 1 < stages.length ? stages[i + 1] : null);
+            }
+            return new Pipeline<>(List.of(stages));
+        }
+    }
+
+    private static class StageSpec {
+        private final String name;
+        private final int nConsumers;
+        private final BiConsumer<Object, Consumer<Object>> body;
+
+        private StageSpec(String name, int nConsumers, BiConsumer<Object, Consumer<Object>> body) {
+            this.name = name;
+            this.nConsumers = nConsumers;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Snapshot of the counters of a stage.
+     */
+    public static final class StageStats {
+        private final String name;
+        private final long processed;
+        private final long failed;
+        private final Throwable firstFailure;
+        private final long backlog;
+        private final long elapsedNanos;
+
+        private StageStats(String name, long processed, long failed, Throwable firstFailure, long backlog,
+                           long elapsedNanos) {
+            this.name = name;
+            this.processed = processed;
+            this.failed = failed;
+            this.firstFailure = firstFailure;
+            this.backlog = backlog;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return items, processed by the stage, including failed ones
+         */
+        public long getProcessed() {
+            return processed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return exception, thrown by the stage for the first failed item, or {@code null} if none has failed
+         */
+        public Throwable getFirstFailure() {
+            return firstFailure;
+        }
+
+        /**
+         * @return items, waiting in the stage or in the output buffers of the previous stage
+         */
+        public long getBacklog() {
+            return backlog;
+        }
+
+        /**
+         * @return processed items per second since the pipeline has started
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : processed * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "StageStats{" +
+                    "name=" + name +
+                    ", processed=" + processed +
+                    ", failed=" + failed +
+                    ", backlog=" + backlog +
+                    ", throughput=" + String.format("%.0f/s", getThroughput()) +
+                    '}';
+        }
+    }
+}
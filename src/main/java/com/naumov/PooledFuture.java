@@ -0,0 +1,159 @@
+package com.naumov;
+
+import com.naumov.taskpool.CancellableTask;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reusable {@link Future}, meant for request/response loops where a producer submits a task and waits for it
+ * before submitting the next one. The same instance is re-armed by
+ * {@link TaskPoolExecutor#submit(Callable, PooledFuture)} every time it is done, so no future is allocated per call.
+ * <p>
+ * Only one thread at a time is allowed to wait for the result.
+ *
+ * @param <T> result type
+ */
+public final class PooledFuture<T> implements Future<T>, CancellableTask {
+    private static final int SPINS_BEFORE_PARK = 1 << 10;
+
+    // states
+    private static final int IDLE = 0;
+    private static final int ARMING = 1; // the task is being bound, stale insertions must not run yet
+    private static final int PENDING = 2;
+    private static final int RUNNING = 3;
+    private static final int DONE = 4;
+    private static final int FAILED = 5;
+    private static final int CANCELLED = 6;
+
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    private Callable<T> task; // published by the write of PENDING, read by the consumer
+    private Object outcome; // published by the write to state
+    private volatile Thread waiter;
+    private volatile Slot slot; // of the last insertion
+
+    /**
+     * Binds the future to a new task. Can be called only when the future is fresh or done.
+     *
+     * @param task task to run
+     * @throws IllegalStateException if the previous task is still pending
+     */
+    void arm(Callable<T> task) {
+        if (task == null) throw new NullPointerException();
+
+        int current = state.get();
+        if (current == ARMING || current == PENDING || current == RUNNING || !state.compareAndSet(current, ARMING))
+            throw new IllegalStateException(PooledFuture.class.getSimpleName() + " is still in use");
+
+        // an insertion of the previous task can still be in the pool, e.g. taken before the task was cancelled:
+        // it may run the new task, but not before the task is there
+        this.task = task;
+        this.outcome = null;
+        this.slot = null;
+        state.set(PENDING);
+    }
+
+    @Override
+    public void run() {
+        if (!state.compareAndSet(PENDING, RUNNING)) return; // cancelled
+
+        Callable<T> current = task;
+        task = null;
+        slot = null; // don't keep the chunk of the slot reachable
+        try {
+            outcome = current.call();
+            state.set(DONE);
+        } catch (Throwable ex) {
+            outcome = ex;
+            state.set(FAILED);
+        }
+
+        Thread w = waiter;
+        if (w != null) LockSupport.unpark(w);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!state.compareAndSet(PENDING, CANCELLED)) return false;
+
+        task = null;
+        Slot s = slot;
+        slot = null;
+        if (s != null) s.withdraw(); // consumers won't even take it
+        Thread w = waiter;
+        if (w != null) LockSupport.unpark(w);
+        return true;
+    }
+
+    @Override
+    public void bind(Slot slot) {
+        this.slot = slot;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return state.get() >= DONE;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        int s = awaitDone(false, 0L);
+        return report(s);
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        int s = awaitDone(true, unit.toNanos(timeout));
+        if (s < DONE) throw new TimeoutException();
+        return report(s);
+    }
+
+    private int awaitDone(boolean timed, long nanos) throws InterruptedException {
+        // short spin first: in request/response loops the result usually arrives within microseconds
+        for (int i = 0; i < SPINS_BEFORE_PARK; i++) {
+            int s = state.get();
+            if (s >= DONE) return s;
+            Thread.onSpinWait();
+        }
+
+        final long deadline = timed ? System.nanoTime() + nanos : 0L;
+        waiter = Thread.currentThread();
+        try {
+            while (true) {
+                int s = state.get();
+                if (s >= DONE) return s;
+                if (Thread.interrupted()) throw new InterruptedException();
+
+                if (timed) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0L) return s;
+                    LockSupport.parkNanos(this, left);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T report(int s) throws ExecutionException {
+        if (s == DONE) return (T) outcome;
+        if (s == CANCELLED) throw new CancellationException();
+        throw new ExecutionException((Throwable) outcome);
+    }
+
+    @Override
+    public String toString() {
+        return "PooledFuture{" +
+                "state=" + state.get() +
+                '}';
+    }
+}
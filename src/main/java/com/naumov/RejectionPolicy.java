@@ -0,0 +1,24 @@
+package com.naumov;
+
+/**
+ * What {@link TaskPoolExecutor#execute(Runnable)} does when the task pool is bounded and full.
+ */
+public enum RejectionPolicy {
+    /**
+     * Wait for consumers to free some space.
+     */
+    BLOCK,
+    /**
+     * Throw {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    ABORT,
+    /**
+     * Run the task in the submitting thread.
+     */
+    CALLER_RUNS,
+    /**
+     * Discard the oldest chunk of the submitter's own pending tasks and retry. Discarded {@link java.util.concurrent.Future}s
+     * are cancelled, keyed tasks are kept. If the submitter has nothing to discard, wait as with {@link #BLOCK}.
+     */
+    DROP_OLDEST_CHUNK
+}
@@ -0,0 +1,312 @@
+package com.naumov;
+
+import com.naumov.taskpool.TaskPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * {@link ScheduledExecutorService} on top of a {@link TaskPool}. Timers are kept in a {@link TimingWheel},
+ * owned by a single timer thread. Scheduling threads never touch the wheel: every thread pushes its timers into
+ * its own insertion buffer, that the timer thread drains. Expired timers are handed to the task pool in bulk,
+ * so the timer thread is a producer of the pool and must be accounted in its {@code nProducers}.
+ * <p>
+ * Cancelled timers are counted and purged from the wheel by the timer thread, once they make up half of it
+ * (and at least {@code MIN_PURGE} timers), so that the wheel doesn't grow with timers that will never run.
+ * Insertion buffers of exited scheduling threads are dropped by the timer thread, once drained.
+ * <p>
+ * On {@link #shutdown()} pending delayed and periodic timers are cancelled, unlike
+ * {@link ScheduledThreadPoolExecutor}, which runs delayed tasks by default: the consumers are stopped right away,
+ * so there is nobody to run them. Callers, waiting for such a timer, get a {@link CancellationException}.
+ */
+public class ScheduledTaskPoolExecutor extends TaskPoolExecutor implements ScheduledExecutorService {
+    private static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MIN_PURGE = 64; // cancelled timers, below that they are dropped on expiration
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final TimingWheel<ScheduledTimer<?>> wheel;
+    private final Thread timerThread;
+    private volatile boolean timerIdle = false; // the timer thread is parked until somebody schedules a timer
+    private volatile boolean shutdown = false;
+    private volatile boolean timerStopped = false; // timers, pushed afterwards, are cancelled by the pusher
+    private final AtomicInteger cancelledTimers = new AtomicInteger(); // since the last purge
+
+    // insertion buffers, one per scheduling thread
+    private final List<InsertionBuffer> buffers = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<InsertionBuffer> bufferTL = ThreadLocal.withInitial(() -> {
+        InsertionBuffer buffer = new InsertionBuffer(Thread.currentThread());
+        buffers.add(buffer);
+        return buffer;
+    });
+
+    public ScheduledTaskPoolExecutor(TaskPool taskPool, int nConsumers, int backoffStartTimeout) {
+        this(taskPool, nConsumers, backoffStartTimeout, DEFAULT_TICK_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param taskPool            task pool, that accounts one producer for the timer thread
+     * @param nConsumers          number of consumer threads
+     * @param backoffStartTimeout consumer backoff, see {@link TaskPoolExecutor}
+     * @param tick                timer resolution: timers never fire early, but may fire up to a tick late
+     * @param unit                unit of the {@code tick}
+     */
+    public ScheduledTaskPoolExecutor(TaskPool taskPool, int nConsumers, int backoffStartTimeout, long tick, TimeUnit unit) {
+        super(taskPool, nConsumers, backoffStartTimeout);
+        if (tick <= 0) throw new IllegalArgumentException("tick must be a positive number, got " + tick);
+
+        this.tickNanos = unit.toNanos(tick);
+        this.startNanos = System.nanoTime();
+        this.wheel = new TimingWheel<>(0);
+        this.timerThread = new Thread(this::runTimer, "TaskPool-timer");
+        this.timerThread.setDaemon(true);
+        this.timerThread.start();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        if (command == null || unit == null) throw new NullPointerException();
+        return schedule(new ScheduledTimer<Void>(command, null, triggerTime(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        if (callable == null || unit == null) throw new NullPointerException();
+        return schedule(new ScheduledTimer<>(callable, triggerTime(delay, unit), 0));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (command == null || unit == null) throw new NullPointerException();
+        if (period <= 0) throw new IllegalArgumentException("period must be a positive number, got " + period);
+        return schedule(new ScheduledTimer<Void>(command, null, triggerTime(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (command == null || unit == null) throw new NullPointerException();
+        if (delay <= 0) throw new IllegalArgumentException("delay must be a positive number, got " + delay);
+        return schedule(new ScheduledTimer<Void>(command, null, triggerTime(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    private <V> ScheduledTimer<V> schedule(ScheduledTimer<V> timer) {
+        if (shutdown) throw new RejectedExecutionException("Executor has been shut down");
+        push(timer);
+        return timer;
+    }
+
+    private void push(ScheduledTimer<?> timer) {
+        bufferTL.get().push(timer);
+        if (timerStopped) cancelBuffered(); // raced with the shutdown, the timer thread won't drain it
+        else if (timerIdle) LockSupport.unpark(timerThread);
+    }
+
+    private long triggerTime(long delay, TimeUnit unit) {
+        long delayNanos = Math.min(unit.toNanos(Math.max(delay, 0)), Long.MAX_VALUE >> 1); // avoid overflow
+        return System.nanoTime() + delayNanos;
+    }
+
+    /**
+     * @param nanos {@link System#nanoTime()} value
+     * @return the first tick, that is not before {@code nanos}
+     */
+    private long toDeadlineTick(long nanos) {
+        long elapsed = nanos - startNanos;
+        return elapsed <= 0 ? 0 : (elapsed + tickNanos - 1) / tickNanos;
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    private void runTimer() {
+        final List<Runnable> expired = new ArrayList<>();
+        final Consumer<ScheduledTimer<?>> onExpired = timer -> {
+            if (!timer.isCancelled()) expired.add(timer);
+        };
+
+        while (!timerThread.isInterrupted()) {
+            for (InsertionBuffer buffer : buffers) {
+                boolean exited = !buffer.owner.isAlive(); // checked before draining: nothing is pushed after
+                ScheduledTimer<?> timer = buffer.drain();
+                while (timer != null) {
+                    ScheduledTimer<?> next = timer.nextInBuffer;
+                    timer.nextInBuffer = null;
+                    if (!timer.isCancelled()) wheel.add(timer, onExpired);
+                    timer = next;
+                }
+                if (exited) buffers.remove(buffer);
+            }
+
+            int cancelled = cancelledTimers.get();
+            if (cancelled >= MIN_PURGE && cancelled >= wheel.size() >> 1) {
+                cancelledTimers.addAndGet(-cancelled);
+                wheel.purge(ScheduledTimer::isCancelled);
+            }
+
+            wheel.advance(currentTick(), onExpired);
+            if (!expired.isEmpty()) {
+                executeAll(expired); // a chunk at a time
+                expired.clear();
+            }
+
+            if (wheel.size() > 0) {
+                // wait for the next tick
+                long nextTickNanos = startNanos + (wheel.getCurrentTick() + 1) * tickNanos;
+                LockSupport.parkNanos(this, nextTickNanos - System.nanoTime());
+            } else {
+                // nothing to wait for, sleep until a timer is scheduled
+                timerIdle = true;
+                if (buffersEmpty()) LockSupport.park(this);
+                timerIdle = false;
+            }
+        }
+
+        // shut down: nobody waits for the pending timers forever
+        timerStopped = true;
+        cancelBuffered();
+        wheel.purge(timer -> {
+            timer.cancel(false);
+            return true;
+        });
+    }
+
+    /**
+     * Drains all insertion buffers and cancels the timers. Called once the timer thread has stopped, by any thread.
+     */
+    private void cancelBuffered() {
+        for (InsertionBuffer buffer : buffers) {
+            ScheduledTimer<?> timer = buffer.drain();
+            while (timer != null) {
+                ScheduledTimer<?> next = timer.nextInBuffer;
+                timer.nextInBuffer = null;
+                timer.cancel(false);
+                timer = next;
+            }
+        }
+    }
+
+    private boolean buffersEmpty() {
+        for (InsertionBuffer buffer : buffers) {
+            if (!buffer.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        timerThread.interrupt();
+        super.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        timerThread.interrupt();
+        return super.shutdownNow();
+    }
+
+    /**
+     * Lock-free stack of timers, pushed by one scheduling thread and drained by the timer thread.
+     * The only contention is between the owner and the timer.
+     */
+    private static class InsertionBuffer {
+        private final AtomicReference<ScheduledTimer<?>> head = new AtomicReference<>();
+        private final Thread owner;
+
+        private InsertionBuffer(Thread owner) {
+            this.owner = owner;
+        }
+
+        private void push(ScheduledTimer<?> timer) {
+            ScheduledTimer<?> current;
+            do {
+                current = head.get();
+                timer.nextInBuffer = current;
+            } while (!head.compareAndSet(current, timer));
+        }
+
+        private ScheduledTimer<?> drain() {
+            return head.get() == null ? null : head.getAndSet(null);
+        }
+
+        private boolean isEmpty() {
+            return head.get() == null;
+        }
+    }
+
+    /**
+     * The timer and its future in a single object, run by a consumer once expired.
+     */
+    private class ScheduledTimer<V> extends FutureTask<V> implements RunnableScheduledFuture<V>, TimingWheel.Timeout {
+        private volatile long deadlineNanos;
+        private volatile long deadlineTick;
+        private final long period; // 0 for one-shot, > 0 for fixed rate, < 0 for fixed delay
+        private ScheduledTimer<?> nextInBuffer; // published by the buffer CAS
+
+        private ScheduledTimer(Runnable runnable, V result, long deadlineNanos, long period) {
+            super(runnable, result);
+            this.period = period;
+            setDeadline(deadlineNanos);
+        }
+
+        private ScheduledTimer(Callable<V> callable, long deadlineNanos, long period) {
+            super(callable);
+            this.period = period;
+            setDeadline(deadlineNanos);
+        }
+
+        private void setDeadline(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+            this.deadlineTick = toDeadlineTick(deadlineNanos);
+        }
+
+        @Override
+        public long getDeadlineTick() {
+            return deadlineTick;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) cancelledTimers.incrementAndGet(); // purged by the timer thread in bulk
+            return cancelled;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other == this) return 0;
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+            } else if (runAndReset()) {
+                if (shutdown) {
+                    cancel(false); // not rescheduled
+                    return;
+                }
+                setDeadline(period > 0 ? deadlineNanos + period : System.nanoTime() - period);
+                push(this); // through the buffer of the consumer thread
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.naumov;
+
+/**
+ * Callback for {@link TaskPoolExecutor#execute(java.util.concurrent.Callable, TaskCompletionHandler)}.
+ * Both methods are invoked by the consumer thread that ran the task, so implementations must be cheap
+ * and must not block.
+ *
+ * @param <T> result type of the task
+ */
+public interface TaskCompletionHandler<T> {
+    /**
+     * Called when the task returned normally.
+     *
+     * @param result value returned by the task
+     */
+    void completed(T result);
+
+    /**
+     * Called when the task threw.
+     *
+     * @param ex thrown exception
+     */
+    void failed(Throwable ex);
+}
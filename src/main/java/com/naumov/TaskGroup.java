@@ -0,0 +1,193 @@
+package com.naumov;
+
+import com.naumov.taskpool.CancellableTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Group of tasks for fan-out/fan-in, see {@link TaskPoolExecutor#newGroup(int)}. Tasks are buffered and inserted
+ * into the pool in batches of {@code batchSize} by the bulk {@link TaskPoolExecutor#executeAll(List)}, no future
+ * is allocated per task, and a single {@link #await()} waits for the whole group.
+ * <p>
+ * Completion is counted by striped counters: consecutive tasks share a stripe, so the consumer, that takes
+ * their chunk, mostly counts down its own cache line. A stripe holds one extra count until the group is sealed
+ * by {@link #await()}, so it can't reach zero while tasks are being added. The last task of a stripe counts down
+ * the number of stripes, and the last stripe completes the group.
+ * <p>
+ * The first failure completes the group exceptionally right away: pending tasks of the group are withdrawn from
+ * their slots (see {@link CancellableTask}), and the ones taken meanwhile are skipped. Only the inserted batches,
+ * that have pending tasks, are kept for that: a batch is dropped once all of its tasks have run. Tasks are added
+ * and awaited by a single thread.
+ */
+public class TaskGroup {
+    private static final int STRIPES = 8;
+    private static final int STRIPE_STRIDE = 16; // ints per stripe, a cache line apart
+    private static final int STRIPE_BLOCK = 16; // consecutive tasks per stripe
+
+    private final TaskPoolExecutor executor;
+    private final int batchSize;
+    private final AtomicIntegerArray pending = new AtomicIntegerArray(STRIPES * STRIPE_STRIDE);
+    private final AtomicInteger pendingStripes = new AtomicInteger(STRIPES);
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final Set<Batch> batches = ConcurrentHashMap.newKeySet(); // inserted and not completed, for cancellation
+
+    // accessed only by the thread, that adds the tasks
+    private Batch batch;
+    private long added = 0;
+    private boolean sealed = false;
+
+    TaskGroup(TaskPoolExecutor executor, int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be a positive number, got " + batchSize);
+
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.batch = new Batch(batchSize);
+        for (int stripe = 0; stripe < STRIPES; stripe++) pending.set(stripe * STRIPE_STRIDE, 1); // until sealed
+    }
+
+    /**
+     * Adds the task to the group. It is inserted into the pool once the batch fills up or on {@link #await()}.
+     *
+     * @param task task to run
+     * @throws IllegalStateException if the group is sealed already
+     */
+    public void add(Runnable task) {
+        if (task == null) throw new NullPointerException();
+        if (sealed) throw new IllegalStateException(TaskGroup.class.getSimpleName() + " is sealed");
+        if (done.isDone()) return; // failed, won't run anyway
+
+        int stripe = (int) ((added++ / STRIPE_BLOCK) % STRIPES);
+        pending.incrementAndGet(stripe * STRIPE_STRIDE);
+        batch.tasks.add(new GroupTask(task, stripe, batch));
+        if (batch.tasks.size() == batchSize) flush();
+    }
+
+    public void addAll(List<? extends Runnable> tasks) {
+        for (Runnable task : tasks) add(task);
+    }
+
+    /**
+     * Inserts the buffered tasks and seals the group, then waits until all of its tasks have completed
+     * or one of them has failed. A consumer of the same executor runs other tasks while waiting,
+     * see {@link TaskPoolExecutor#join(java.util.concurrent.Future)}.
+     *
+     * @throws ExecutionException with the first failure of a task
+     */
+    public void await() throws InterruptedException, ExecutionException {
+        if (!sealed) {
+            flush();
+            sealed = true;
+            for (int stripe = 0; stripe < STRIPES; stripe++) arrive(stripe);
+        }
+        executor.join(done);
+    }
+
+    /**
+     * @return {@code true} if all the tasks have completed or one of them has failed
+     */
+    public boolean isDone() {
+        return done.isDone();
+    }
+
+    private void flush() {
+        if (batch.tasks.isEmpty()) return;
+
+        Batch inserted = batch;
+        batch = new Batch(batchSize);
+        if (done.isDone()) return;
+
+        inserted.pending.set(inserted.tasks.size());
+        batches.add(inserted); // kept for cancellation until all of its tasks have run
+        try {
+            executor.executeAll(inserted.tasks);
+        } catch (RuntimeException ex) {
+            fail(ex); // rejected, the group would never complete
+        }
+    }
+
+    private void arrive(int stripe) {
+        if (pending.decrementAndGet(stripe * STRIPE_STRIDE) == 0 && pendingStripes.decrementAndGet() == 0) {
+            done.complete(null);
+        }
+    }
+
+    private void fail(Throwable ex) {
+        if (!done.completeExceptionally(ex)) return; // not the first failure
+
+        for (Batch inserted : batches) {
+            for (GroupTask task : inserted.tasks) {
+                CancellableTask.Slot slot = task.slot;
+                if (slot != null && slot.withdraw()) task.finish();
+            }
+        }
+    }
+
+    /**
+     * @return number of inserted batches with pending tasks
+     */
+    int getPendingBatchCount() {
+        return batches.size();
+    }
+
+    /**
+     * Tasks, inserted into the pool together.
+     */
+    private class Batch {
+        private final List<GroupTask> tasks;
+        private final AtomicInteger pending = new AtomicInteger(); // tasks, that haven't run, set on insertion
+
+        private Batch(int batchSize) {
+            this.tasks = new ArrayList<>(batchSize);
+        }
+
+        private void taskDone() {
+            if (pending.decrementAndGet() == 0) batches.remove(this);
+        }
+    }
+
+    private class GroupTask implements CancellableTask {
+        private final Runnable task;
+        private final int stripe;
+        private final Batch batch;
+        private volatile Slot slot;
+
+        private GroupTask(Runnable task, int stripe, Batch batch) {
+            this.task = task;
+            this.stripe = stripe;
+            this.batch = batch;
+        }
+
+        @Override
+        public void bind(Slot slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!done.isDone()) task.run(); // skipped after a failure
+            } catch (Throwable ex) {
+                fail(ex);
+            } finally {
+                finish();
+            }
+        }
+
+        /**
+         * Accounts the task, that has run or has been withdrawn. The batch goes first, so that it is dropped
+         * by the time the group completes.
+         */
+        private void finish() {
+            slot = null; // don't keep the chunk of the slot reachable
+            batch.taskDone();
+            arrive(stripe);
+        }
+    }
+}
@@ -1,29 +1,167 @@
 package com.naumov;
 
+import com.naumov.taskpool.CancellableTask;
+import com.naumov.taskpool.ReplayableTask;
 import com.naumov.taskpool.TaskPool;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.Serializable;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class TaskPoolExecutor extends AbstractExecutorService {
+    private static final long SCALE_PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MAX_SPARE_PARK_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
     private final TaskPool taskPool;
-    private final List<Worker> consumers;
+    private final List<Worker> consumers = new CopyOnWriteArrayList<>(); // live workers
+    private final RejectionPolicy rejectionPolicy;
+    private final LongAdder droppedTasks = new LongAdder();
+
+    // elastic consumers
+    private final int backoffStartTimeout;
+    private final int minConsumers;
+    private final int maxConsumers;
+    private final long keepAliveNanos;
+    private final AtomicInteger workerCount = new AtomicInteger(0); // workers, holding or about to take an SCPool
+    private final AtomicInteger nextWorkerId = new AtomicInteger(0);
+    private final AtomicBoolean retiring = new AtomicBoolean(false); // workers retire one at a time
+    private final Thread scaler;
+
+    // compensation of blocked workers, see managedBlock()
+    private final Queue<Worker> spares = new ConcurrentLinkedQueue<>(); // parked, without an SCPool
+    // unblocked workers, waiting for an SCPool << 32 | SCPools, given up for them and not taken yet
+    private final AtomicLong returning = new AtomicLong(0);
+    private volatile Thread.UncaughtExceptionHandler taskExceptionHandler = null;
+    private final Runnable idleHook; // see TaskPoolConfig.withIdleHook()
+    private volatile boolean shutdown = false;
 
     public TaskPoolExecutor(TaskPool taskPool, int nConsumers, int backoffStartTimeout) {
+        this(taskPool, nConsumers, backoffStartTimeout, RejectionPolicy.BLOCK);
+    }
+
+    public TaskPoolExecutor(TaskPool taskPool, int nConsumers, int backoffStartTimeout, RejectionPolicy rejectionPolicy) {
+        this(taskPool, nConsumers, nConsumers, Long.MAX_VALUE, TimeUnit.NANOSECONDS, backoffStartTimeout, rejectionPolicy);
+    }
+
+    /**
+     * Creates an executor with elastic number of consumers. It starts {@code minConsumers} workers and adds one
+     * at a time, up to {@code maxConsumers}, while none of the workers has found the pool empty for a sampling
+     * period (i.e. tasks keep waiting). A worker, that has found the pool empty for {@code keepAlive}, retires,
+     * unless only {@code minConsumers} are left: it gives up its SCPool, so that producers skip it, and a new
+     * worker takes it over later.
+     *
+     * @param taskPool            task pool with at least {@code maxConsumers} consumers
+     * @param minConsumers        number of workers to keep
+     * @param maxConsumers        max number of workers
+     * @param keepAlive           time, an idle worker lives over {@code minConsumers}
+     * @param unit                unit of the {@code keepAlive}
+     * @param backoffStartTimeout consumer backoff, 0 to spin
+     * @param rejectionPolicy     what to do when a bounded pool is full
+     */
+    public TaskPoolExecutor(TaskPool taskPool, int minConsumers, int maxConsumers, long keepAlive, TimeUnit unit,
+                            int backoffStartTimeout, RejectionPolicy rejectionPolicy) {
+        if (minConsumers < 1 || maxConsumers < minConsumers)
+            throw new IllegalArgumentException("Expected 1 <= minConsumers <= maxConsumers, got minConsumers="
+                    + minConsumers + ", maxConsumers=" + maxConsumers);
+        if (keepAlive <= 0) throw new IllegalArgumentException("keepAlive must be a positive number, got " + keepAlive);
+
         this.taskPool = taskPool;
+        this.rejectionPolicy = rejectionPolicy;
+        this.backoffStartTimeout = backoffStartTimeout;
+        this.minConsumers = minConsumers;
+        this.maxConsumers = maxConsumers;
+        this.keepAliveNanos = unit.toNanos(keepAlive);
+        this.idleHook = taskPool.getConfig().getIdleHook();
 
         // init consumers
-        List<Worker> workers = new ArrayList<>();
-        for (int i = 0; i < nConsumers; i++) {
-            Worker consumer = new Worker(i, backoffStartTimeout);
-            workers.add(consumer);
+        for (int i = 0; i < minConsumers; i++) {
+            workerCount.incrementAndGet();
+            startWorker();
+        }
+
+        if (minConsumers < maxConsumers) {
+            scaler = new Thread(this::runScaler, "TaskPool-scaler");
+            scaler.setDaemon(true);
+            scaler.start();
+        } else {
+            scaler = null;
         }
+    }
+
+    private void startWorker() {
+        startWorker(false);
+    }
 
-        consumers = Collections.unmodifiableList(workers);
-        consumers.forEach(Thread::start);
+    private void startWorker(boolean spare) {
+        Worker worker = new Worker(nextWorkerId.getAndIncrement(), backoffStartTimeout, spare);
+        consumers.add(worker);
+        worker.start();
+    }
+
+    /**
+     * Adds a worker, when all the workers have been busy for the whole sampling period.
+     */
+    private void runScaler() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long periodStart = System.nanoTime();
+            LockSupport.parkNanos(this, SCALE_PERIOD_NS);
+
+            boolean saturated = true;
+            for (Worker worker : consumers) {
+                if (worker.lastIdleNanos - periodStart >= 0) {
+                    saturated = false; // found the pool empty during the period
+                    break;
+                }
+            }
+
+            int count = workerCount.get();
+            if (saturated && count < maxConsumers && workerCount.compareAndSet(count, count + 1)) startWorker();
+        }
+    }
+
+    /**
+     * @return number of consumer threads
+     */
+    public int getPoolSize() {
+        return workerCount.get();
+    }
+
+    int getLiveConsumerCount() {
+        return (int) consumers.stream().filter(Thread::isAlive).count();
+    }
+
+    /**
+     * Sets the handler for exceptions, thrown by tasks. The consumer thread survives a failed task and moves on
+     * to the next one. By default failures are reported like uncaught exceptions of the consumer thread.
+     * If the handler throws, the consumer dies and is replaced with a new one.
+     *
+     * @param handler handler, called from the consumer thread, or {@code null} for the default behavior
+     */
+    public void setTaskExceptionHandler(Thread.UncaughtExceptionHandler handler) {
+        this.taskExceptionHandler = handler;
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable ex) {
+            Thread.UncaughtExceptionHandler handler = taskExceptionHandler;
+            Thread current = Thread.currentThread();
+            if (handler != null) handler.uncaughtException(current, ex);
+            else current.getUncaughtExceptionHandler().uncaughtException(current, ex); // default one or the group
+        }
     }
 
     /**
@@ -31,41 +169,418 @@ public class TaskPoolExecutor extends AbstractExecutorService {
      */
     class Worker extends Thread {
         private final int backoffStartTimeout;
+        private volatile long lastIdleNanos; // when the worker has last found the pool empty
+        private long idleSinceNanos = 0; // start of the current idle streak, 0 when busy
+        private boolean attached = false; // owns an SCPool
+        private boolean spare; // compensates for a blocked worker, takes an SCPool by attachConsumer()
+        private volatile boolean activated = false; // a parked spare has been given an SCPool to take
+        private boolean lent = false; // has given its SCPool up in managedBlock(), takes one back after the task
 
         public Worker(int id, int backoffStartTimeout) {
+            this(id, backoffStartTimeout, false);
+        }
+
+        Worker(int id, int backoffStartTimeout, boolean spare) {
             super("TaskPool-consumer-" + id);
             this.backoffStartTimeout = backoffStartTimeout;
+            this.lastIdleNanos = System.nanoTime();
+            this.spare = spare;
+        }
+
+        TaskPoolExecutor executor() {
+            return TaskPoolExecutor.this;
         }
 
         @Override
         public void run() {
+            boolean retired = false;
+            try {
+                retired = consume();
+            } finally {
+                if (!retired) {
+                    consumers.remove(this);
+                    if (!shutdown && !isInterrupted() && attached) replace(); // died
+                    else workerCount.decrementAndGet(); // stopped, or failed to register, that a new one won't fix
+                }
+            }
+        }
+
+        /**
+         * Hands the SCPool of the dying worker over to a new one.
+         */
+        private void replace() {
+            if (attached) taskPool.detachConsumer(true);
+            startWorker(true); // takes the orphaned SCPool first, or waits, if an unblocked worker has taken it
+        }
+
+        /**
+         * @return {@code true} if the worker has retired, {@code false} if it was interrupted
+         */
+        private boolean consume() {
             if (backoffStartTimeout > 0) {
                 // back-offed run
-                Backoff backoff = new Backoff(backoffStartTimeout, backoffStartTimeout * 3, backoffStartTimeout * 2000);
+                Backoff backoff = new Backoff(backoffStartTimeout, backoffStartTimeout * 3, backoffStartTimeout * 2000,
+                        taskPool.getConfig().isHandoff());
 
                 while (!this.isInterrupted()) {
+                    if (!compensate()) break;
                     Runnable task = taskPool.get();
+                    attached = true;
                     if (task != null) {
+                        idleSinceNanos = 0;
                         backoff.flush();
-                        task.run();
+                        runTask(task);
+                        if (lent) reclaim();
                     } else {
+                        if (idle()) return true;
                         backoff.backoff();
                     }
                 }
             } else {
                 // without backoff
                 while (!this.isInterrupted()) {
+                    if (!compensate()) break;
                     Runnable task = taskPool.get();
-                    if (task != null) task.run();
+                    attached = true;
+                    if (task != null) {
+                        idleSinceNanos = 0;
+                        runTask(task);
+                        if (lent) reclaim();
+                    } else if (idle()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Gives the SCPool up to an unblocked worker, if there is one waiting, and parks as a spare until
+         * {@link #lend()} activates it. A spare then waits for an SCPool, see {@link #managedBlock}.
+         *
+         * @return {@code false} if interrupted
+         */
+        private boolean compensate() {
+            if (attached && returning.get() != 0L && claimYield()) {
+                taskPool.detachConsumer(true); // taken by the unblocked worker first, with its tasks
+                attached = false;
+                spare = true;
+                workerCount.decrementAndGet();
+
+                activated = false;
+                spares.add(this);
+                while (!activated) {
+                    if (isInterrupted()) return false;
+                    LockSupport.park(this);
                 }
             }
+
+            if (!spare || attached) return true;
+            if (taskPool.attachConsumer()) { // e.g. the SCPool, given up for the spare
+                attached = true;
+                return true;
+            }
+            return reclaim(); // taken by an unblocked worker meanwhile, another worker has to give its SCPool up
+        }
+
+        /**
+         * Gives the SCPool up to a spare, before the worker blocks.
+         */
+        private void lend() {
+            taskPool.detachConsumer(true);
+            attached = false;
+            spare = true; // takes an SCPool back by attachConsumer() afterwards
+            lent = true;
+
+            workerCount.incrementAndGet(); // the blocked worker stays counted too, so the scaler holds off
+            Worker parked = spares.poll();
+            if (parked != null) {
+                parked.activated = true;
+                LockSupport.unpark(parked);
+            } else {
+                startWorker(true);
+            }
+        }
+
+        /**
+         * Takes an SCPool back after the task, that has blocked, or takes one as a spare. Any free SCPool will do,
+         * e.g. one, left by a retired or a dead worker: then the request is withdrawn, so that no other worker gives
+         * its SCPool up in vain.
+         *
+         * @return {@code false} if interrupted or shut down
+         */
+        private boolean reclaim() {
+            lent = false;
+            returning.addAndGet(1L << 32);
+            boolean reclaimed = awaitSCPool();
+
+            long current;
+            long next;
+            do {
+                current = returning.get();
+                int nReturning = (int) (current >>> 32) - 1;
+                int nYielded = (int) current;
+                nYielded = reclaimed ? Math.max(nYielded - 1, 0) : Math.min(nYielded, nReturning);
+                next = (long) nReturning << 32 | nYielded;
+            } while (!returning.compareAndSet(current, next));
+            return reclaimed;
+        }
+
+        /**
+         * Waits until an SCPool is given up by another worker.
+         *
+         * @return {@code false} if interrupted or shut down
+         */
+        private boolean awaitSCPool() {
+            long parkNs = 1000L;
+            while (!taskPool.attachConsumer()) {
+                if (isInterrupted() || shutdown) return false;
+                LockSupport.parkNanos(this, parkNs);
+                parkNs = Math.min(parkNs << 1, MAX_SPARE_PARK_NS);
+            }
+            attached = true;
+            return true;
+        }
+
+        /**
+         * Accounts an empty poll of the pool.
+         *
+         * @return {@code true} if the worker has retired
+         */
+        private boolean idle() {
+            Runnable hook = idleHook;
+            if (hook != null) runTask(hook);
+            if (minConsumers == maxConsumers) return false; // fixed size
+
+            long now = System.nanoTime();
+            lastIdleNanos = now;
+            if (idleSinceNanos == 0) {
+                idleSinceNanos = now;
+                return false;
+            }
+
+            if (now - idleSinceNanos < keepAliveNanos || workerCount.get() <= minConsumers) return false;
+            if (!retiring.compareAndSet(false, true)) return false;
+            try {
+                if (workerCount.get() <= minConsumers || !taskPool.detachConsumer(false)) return false;
+                consumers.remove(this);
+                workerCount.decrementAndGet(); // only now the SCPool is free for a new worker
+                return true;
+            } finally {
+                retiring.set(false);
+            }
         }
     }
 
     @Override
     public void execute(Runnable task) {
         if (task == null) throw new NullPointerException();
-        taskPool.put(task);
+        enqueue(task);
+    }
+
+    /**
+     * Executes the task, preferably by the same consumer as other tasks with the same {@code affinityHint},
+     * see {@link TaskPool#put(Runnable, int)}. Like keyed tasks, these are never rejected: when the pool is bounded
+     * and full the caller waits for space regardless of the rejection policy.
+     *
+     * @param task         task to execute
+     * @param affinityHint any value, tasks with equal hints prefer the same consumer
+     */
+    public void execute(Runnable task, int affinityHint) {
+        if (task == null) throw new NullPointerException();
+        taskPool.put(task, affinityHint);
+    }
+
+    /**
+     * Executes the task after all the tasks with the same {@code key}, submitted before, and never in parallel
+     * with them. Keys are hashed to a fixed number of mailboxes, {@link TaskPoolConfig#withKeyStripes} (1024 by
+     * default): tasks with different keys run in parallel only when their keys fall into different mailboxes,
+     * otherwise they run serially too. Keyed tasks are never rejected: when the pool is bounded and full the caller
+     * waits for space regardless of the rejection policy.
+     *
+     * @param key  key, e.g. an account id
+     * @param task task to execute
+     */
+    public void execute(long key, Runnable task) {
+        if (task == null) throw new NullPointerException();
+        taskPool.put(key, task);
+    }
+
+    /**
+     * Executes all the tasks, inserting them into the pool in bulk (a chunk at a time for chunk-based pools).
+     * With a rejection policy other than {@link RejectionPolicy#BLOCK} the tasks are inserted one by one,
+     * so that the policy is applied to every task.
+     *
+     * @param tasks tasks to execute
+     */
+    public void executeAll(List<? extends Runnable> tasks) {
+        for (Runnable task : tasks) {
+            if (task == null) throw new NullPointerException();
+        }
+
+        if (rejectionPolicy == RejectionPolicy.BLOCK) {
+            taskPool.putAll(tasks);
+        } else {
+            for (Runnable task : tasks) enqueue(task);
+        }
+    }
+
+    /**
+     * Runs the {@code body} for every index of the range in the consumers, see {@link ParallelLoop} for how
+     * the range is split. When called from a consumer of this executor, the consumer takes part in the loop.
+     *
+     * @param from first index, inclusive
+     * @param to   last index, exclusive
+     * @param body loop body
+     * @throws ExecutionException with the first failure of the body, the rest of the range is skipped
+     */
+    public void parallelFor(int from, int to, IntConsumer body) throws InterruptedException, ExecutionException {
+        ParallelLoop.forEach(this, body).run(from, to, null);
+    }
+
+    /**
+     * Reduces the range in the consumers, like {@link java.util.stream.IntStream#collect}: every consumer
+     * accumulates the indices it runs into its own accumulator, and the accumulators are combined at the end,
+     * in no particular order. See {@link ParallelLoop} for how the range is split.
+     *
+     * @param from        first index, inclusive
+     * @param to          last index, exclusive
+     * @param identity    creates an empty accumulator
+     * @param accumulator adds an index to an accumulator
+     * @param combiner    merges two accumulators
+     * @param <A>         accumulator type
+     * @return combined accumulator
+     * @throws ExecutionException with the first failure of the accumulator, the rest of the range is skipped
+     */
+    public <A> A parallelReduce(int from, int to, Supplier<A> identity, ObjIntConsumer<A> accumulator,
+                                BinaryOperator<A> combiner) throws InterruptedException, ExecutionException {
+        if (identity == null || accumulator == null || combiner == null) throw new NullPointerException();
+        return new ParallelLoop<>(this, identity, accumulator).run(from, to, combiner);
+    }
+
+    int getChunkSize() {
+        return taskPool.getChunkSize();
+    }
+
+    /**
+     * Creates a group of tasks, awaited together, see {@link TaskGroup}.
+     *
+     * @param batchSize tasks per bulk insertion, a chunk size is a good choice
+     * @return new group
+     * @throws IllegalStateException with {@link RejectionPolicy#DROP_OLDEST_CHUNK}: dropped tasks would never
+     *                               complete the group
+     */
+    public TaskGroup newGroup(int batchSize) {
+        if (rejectionPolicy == RejectionPolicy.DROP_OLDEST_CHUNK)
+            throw new IllegalStateException("Task groups are not supported with " + rejectionPolicy);
+        return new TaskGroup(this, batchSize);
+    }
+
+    /**
+     * Inserts the task into the pool, applying the rejection policy if the pool is full.
+     *
+     * @param task task to insert
+     */
+    private void enqueue(Runnable task) {
+        switch (rejectionPolicy) {
+            case BLOCK:
+                taskPool.put(task);
+                break;
+            case ABORT:
+                if (!taskPool.offer(task)) throw new RejectedExecutionException("Task pool is full");
+                break;
+            case CALLER_RUNS:
+                if (!taskPool.offer(task)) task.run();
+                break;
+            case DROP_OLDEST_CHUNK:
+                while (!taskPool.offer(task)) {
+                    List<Runnable> dropped = taskPool.dropOldest();
+                    if (dropped.isEmpty()) {
+                        // nothing of our own to drop, the pool is filled by others
+                        taskPool.put(task);
+                        break;
+                    }
+
+                    droppedTasks.add(dropped.size());
+                    for (Runnable r : dropped) {
+                        if (r instanceof Future) ((Future<?>) r).cancel(false); // don't leave waiters hanging
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return number of tasks discarded by {@link RejectionPolicy#DROP_OLDEST_CHUNK} so far
+     */
+    public long getDroppedTaskCount() {
+        return droppedTasks.sum();
+    }
+
+    /**
+     * Tags the calling thread as a producer of the tenant, see {@link TaskPool#joinTenant(int)}. Must be called
+     * before the first task, submitted by the thread.
+     *
+     * @param tenant tenant id
+     */
+    public void joinTenant(int tenant) {
+        taskPool.joinTenant(tenant);
+    }
+
+    /**
+     * Executes the task and reports its outcome to the {@code handler} from the consumer thread.
+     * No future is allocated for the task.
+     *
+     * @param task    task to execute
+     * @param handler callback to report the result or the failure to
+     * @param <T>     result type
+     */
+    public <T> void execute(Callable<T> task, TaskCompletionHandler<? super T> handler) {
+        if (task == null || handler == null) throw new NullPointerException();
+        enqueue(new HandledTask<>(task, handler));
+    }
+
+    /**
+     * Submits the task and returns a {@link CompletableFuture}, completed by the consumer thread that runs the task.
+     * Unlike {@link #submit(Callable)} no {@link FutureTask} is created, and the caller is free to compose
+     * the result instead of blocking in {@link Future#get()}.
+     *
+     * @param task task to execute
+     * @param <T>  result type
+     * @return future, completed with the task result
+     */
+    public <T> CompletableFuture<T> submitAsync(Callable<T> task) {
+        if (task == null) throw new NullPointerException();
+        AsyncTask<T> future = new AsyncTask<>(task, this);
+        enqueue(future);
+        return future;
+    }
+
+    /**
+     * Submits the task, reusing the given {@code future} instead of allocating a new one.
+     *
+     * @param task   task to execute
+     * @param future future to re-arm, must be fresh or done
+     * @param <T>    result type
+     * @return the same {@code future}
+     * @throws IllegalStateException if the {@code future} is still bound to an unfinished task
+     */
+    public <T> PooledFuture<T> submit(Callable<T> task, PooledFuture<T> future) {
+        future.arm(task);
+        enqueue(future);
+        return future;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new CancellableFutureTask<>(Executors.callable(runnable, value),
+                runnable instanceof Serializable ? runnable : null);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new CancellableFutureTask<>(callable,
+                callable instanceof Serializable ? new SerializableCall(callable) : null);
     }
 
     @Override
@@ -78,14 +593,15 @@ public class TaskPoolExecutor extends AbstractExecutorService {
     public List<Runnable> shutdownNow() {
         // todo implement correctly
         ThreadUtil.logMajorAction("shutting down workers: " + consumers.stream().map(Thread::getName).collect(Collectors.toList()));
+        shutdown = true;
+        if (scaler != null) scaler.interrupt();
         consumers.forEach(Thread::interrupt);
         return null;
     }
 
     @Override
     public boolean isShutdown() {
-        // TBD
-        return false;
+        return shutdown;
     }
 
     @Override
@@ -100,18 +616,226 @@ public class TaskPoolExecutor extends AbstractExecutorService {
         return false;
     }
 
+    /**
+     * Waits for the {@code future} to complete. When called from a consumer of this executor, i.e. from a task
+     * that forked subtasks, the consumer does not block: a future from {@link #submitAsync(Callable)}, that has
+     * not been started yet, is run inline, otherwise the consumer runs other pending tasks while waiting. After
+     * an interrupt or a shutdown the consumer just blocks.
+     *
+     * @param future future to wait for
+     * @param <T>    result type
+     * @return result of the future
+     */
+    public <T> T join(Future<T> future) throws InterruptedException, ExecutionException {
+        Thread current = Thread.currentThread();
+        // a worker, that has given its SCPool up in managedBlock(), has no tasks of its own to run meanwhile
+        if (isOwnWorker(current) && ((Worker) current).attached) {
+            if (future instanceof AsyncTask && ((AsyncTask<?>) future).executor == this) {
+                ((AsyncTask<?>) future).run(); // no-op if already taken by another consumer
+            }
+
+            while (!future.isDone()) {
+                // interrupted or shut down, e.g. by shutdownNow(): the pool is not polled any more, block instead
+                if (current.isInterrupted() || shutdown) break;
+                Runnable task = taskPool.get();
+                if (task != null) runTask(task);
+                else Thread.onSpinWait();
+            }
+        }
+        return future.get();
+    }
+
+    /**
+     * Blocks until the {@code blocker} is released, like {@link ForkJoinPool#managedBlock}, e.g. on file I/O or
+     * a lock. When called from a consumer of this executor, the consumer gives its SCPool up to a spare worker,
+     * so that the tasks of the SCPool don't wait for it. The rest of the task runs without an SCPool: its subtasks
+     * go to a shared queue, and {@link #join} blocks. After the task the consumer takes an SCPool back: another
+     * worker gives its SCPool up after its current task and parks as a spare until the next block.
+     *
+     * @param blocker the blocker
+     * @throws InterruptedException if {@link ForkJoinPool.ManagedBlocker#block()} is interrupted
+     */
+    public void managedBlock(ForkJoinPool.ManagedBlocker blocker) throws InterruptedException {
+        if (blocker == null) throw new NullPointerException();
+
+        Thread current = Thread.currentThread();
+        if (!isOwnWorker(current) || !((Worker) current).attached || shutdown || blocker.isReleasable()) {
+            block(blocker); // not a worker, or one that has already given its SCPool up
+            return;
+        }
+
+        ((Worker) current).lend(); // the worker takes an SCPool back after the task, not to wait for one here
+        try {
+            block(blocker);
+        } catch (InterruptedException ex) {
+            current.interrupt(); // cleared by the exception, the worker stops after the task
+            throw ex;
+        }
+    }
+
+    private static void block(ForkJoinPool.ManagedBlocker blocker) throws InterruptedException {
+        while (!blocker.isReleasable() && !blocker.block()) ;
+    }
+
+    /**
+     * @return {@code true} if there are more unblocked workers, waiting for an SCPool, than SCPools, given up
+     * for them, and the caller has to give its SCPool up too
+     */
+    private boolean claimYield() {
+        long current;
+        do {
+            current = returning.get();
+            if ((int) (current >>> 32) <= (int) current) return false;
+        } while (!returning.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * @return number of parked spare workers, see {@link #managedBlock}
+     */
+    int getSpareCount() {
+        return spares.size();
+    }
+
+    /**
+     * @return number of tasks, handed off to idle consumers, see {@link TaskPoolConfig#withHandoff}
+     */
+    long getHandoffCount() {
+        return taskPool.getHandoffCount();
+    }
+
+    private boolean isOwnWorker(Thread thread) {
+        return thread instanceof Worker && ((Worker) thread).executor() == this;
+    }
+
+    /**
+     * {@link FutureTask}, that withdraws itself from the pool on cancellation, so that consumers skip it
+     * instead of taking it only to find it cancelled. Replayed by a durable pool without the future.
+     */
+    private static class CancellableFutureTask<T> extends FutureTask<T> implements CancellableTask, ReplayableTask {
+        private final Runnable replayable; // null unless the submitted task is serializable
+        private volatile Slot slot;
+
+        private CancellableFutureTask(Callable<T> callable, Runnable replayable) {
+            super(callable);
+            this.replayable = replayable;
+        }
+
+        @Override
+        public Runnable replayable() {
+            return replayable;
+        }
+
+        @Override
+        public void bind(Slot slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            Slot s = slot; // read before done() clears it
+            if (!super.cancel(mayInterruptIfRunning)) return false;
+            if (s != null) s.withdraw();
+            return true;
+        }
+
+        @Override
+        protected void done() {
+            slot = null; // don't keep the chunk of the slot reachable
+        }
+    }
+
+    /**
+     * Serializable {@link Callable}, run for its side effects, the result is dropped.
+     */
+    private static class SerializableCall implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Callable<?> callable;
+
+        private SerializableCall(Callable<?> callable) {
+            this.callable = callable;
+        }
+
+        @Override
+        public void run() {
+            try {
+                callable.call();
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }
+    }
+
+    private static class HandledTask<T> implements Runnable {
+        private final Callable<T> task;
+        private final TaskCompletionHandler<? super T> handler;
+
+        private HandledTask(Callable<T> task, TaskCompletionHandler<? super T> handler) {
+            this.task = task;
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            T result;
+            try {
+                result = task.call();
+            } catch (Throwable ex) {
+                handler.failed(ex);
+                return;
+            }
+            handler.completed(result);
+        }
+    }
+
+    /**
+     * The task and its future in a single object. The {@code started} flag is claimed by whoever runs it first:
+     * the consumer that took it from the pool or the consumer that joins it.
+     */
+    private static class AsyncTask<T> extends CompletableFuture<T> implements Runnable {
+        @SuppressWarnings("unchecked") // class literals are raw
+        private static final AtomicIntegerFieldUpdater<AsyncTask<?>> STARTED =
+                (AtomicIntegerFieldUpdater<AsyncTask<?>>) (AtomicIntegerFieldUpdater<?>)
+                        AtomicIntegerFieldUpdater.newUpdater(AsyncTask.class, "started");
+
+        private final Callable<T> task;
+        private final TaskPoolExecutor executor;
+        private volatile int started = 0;
+
+        private AsyncTask(Callable<T> task, TaskPoolExecutor executor) {
+            this.task = task;
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            if (isDone() || !STARTED.compareAndSet(this, 0, 1)) return; // cancelled or already run
+
+            try {
+                complete(task.call());
+            } catch (Throwable ex) {
+                completeExceptionally(ex);
+            }
+        }
+    }
+
     private static class Backoff {
         private static final int SMALL_PRIME = 7;
         private final int minStartTimeoutNs;
         private final int maxStartTimeoutNs;
         private final int maxTimeoutNs;
         private int currentTimeoutNs; // backoff value
+        private final boolean park; // a producer, handing off a task, unparks the waiting consumer
         private int i; // backoff exponent
 
-        private Backoff(int minStartTimeoutNs, int maxStartTimeoutNs, int maxTimeoutNs) {
+        private Backoff(int minStartTimeoutNs, int maxStartTimeoutNs, int maxTimeoutNs, boolean park) {
             this.minStartTimeoutNs = minStartTimeoutNs;
             this.maxStartTimeoutNs = maxStartTimeoutNs;
             this.maxTimeoutNs = maxTimeoutNs;
+            this.park = park;
             currentTimeoutNs = minStartTimeoutNs + ThreadLocalRandom.current().nextInt(maxStartTimeoutNs);
             i = 1;
         }
@@ -121,6 +845,11 @@ public class TaskPoolExecutor extends AbstractExecutorService {
                 currentTimeoutNs = Math.min((int) Math.pow(SMALL_PRIME + currentTimeoutNs, i), maxTimeoutNs);
             }
 
+            if (park) {
+                LockSupport.parkNanos(this, currentTimeoutNs);
+                return;
+            }
+
             long startTime = System.nanoTime();
             long elapsedNanos = System.nanoTime() - startTime;
             // busy wait on backoff
@@ -0,0 +1,172 @@
+package com.naumov;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Unicast {@link Flow.Publisher} of the results of tasks, submitted by {@link #submit(Callable)} and run by
+ * the consumers of a {@link TaskPoolExecutor}. There's no dedicated delivery thread: the consumer that completes
+ * a task drains the queue of ready results to the subscriber, emitting as many as the demand allows in one go,
+ * while other consumers only enqueue their results and leave. Results are published in completion order.
+ * <p>
+ * At most {@code capacity} results are kept undelivered: {@link #submit(Callable)} waits for the subscriber
+ * to catch up, so it must not be called from the consumers of the same executor.
+ *
+ * @param <T> result type
+ */
+public class TaskPoolPublisher<T> implements Flow.Publisher<T>, AutoCloseable {
+    private static final long MAX_PARK_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final TaskPoolExecutor executor;
+    private final int capacity;
+    private final Queue<T> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Flow.Subscriber<? super T>> subscriber = new AtomicReference<>();
+    private final AtomicLong requested = new AtomicLong(0);
+    private final AtomicInteger wip = new AtomicInteger(0); // drain loop guard
+    private final AtomicLong submitted = new AtomicLong(0);
+    private final AtomicLong finished = new AtomicLong(0); // tasks, whose results are in the queue or delivered
+    private final AtomicLong emitted = new AtomicLong(0);
+    private volatile Throwable failure;
+    private volatile boolean closed = false;
+    private volatile boolean cancelled = false;
+    private volatile boolean subscribed = false; // onSubscribe has returned, the subscriber may get other signals
+    private boolean terminated = false; // accessed only by the drain loop
+
+    public TaskPoolPublisher(TaskPoolExecutor executor, int capacity) {
+        if (executor == null) throw new NullPointerException();
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be a positive number, got " + capacity);
+
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> s) {
+        if (s == null) throw new NullPointerException();
+        if (!subscriber.compareAndSet(null, s)) {
+            s.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            s.onError(new IllegalStateException(TaskPoolPublisher.class.getSimpleName() + " allows only one subscriber"));
+            return;
+        }
+
+        s.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException("non-positive request: " + n));
+                    return;
+                }
+                long current;
+                do {
+                    current = requested.get();
+                    if (current == Long.MAX_VALUE) break;
+                } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+            }
+        });
+        subscribed = true;
+        drain(); // results may be ready already
+    }
+
+    /**
+     * Runs the task in the pool and publishes its result. Waits while {@code capacity} results are undelivered.
+     *
+     * @param task task, producing a non-null result
+     * @throws IllegalStateException if the publisher is closed
+     */
+    public void submit(Callable<? extends T> task) {
+        if (task == null) throw new NullPointerException();
+        if (closed) throw new IllegalStateException(TaskPoolPublisher.class.getSimpleName() + " is closed");
+
+        long parkNs = 1000L;
+        while (submitted.get() - emitted.get() >= capacity && !cancelled && failure == null) {
+            LockSupport.parkNanos(this, parkNs);
+            parkNs = Math.min(parkNs << 1, MAX_PARK_NS);
+        }
+
+        submitted.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                T result = task.call();
+                if (result == null) throw new NullPointerException("null result");
+                ready.add(result);
+            } catch (Throwable ex) {
+                fail(ex);
+            }
+            finished.incrementAndGet();
+            drain();
+        });
+    }
+
+    /**
+     * Completes the subscriber once all the submitted tasks are published.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        drain();
+    }
+
+    private void fail(Throwable ex) {
+        if (failure == null) failure = ex;
+        drain();
+    }
+
+    /**
+     * Emits ready results as long as there's demand. Only one thread at a time runs the loop, others just
+     * make it run one more round.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) return;
+
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super T> s = subscriber.get();
+            if (s != null && subscribed && !terminated) {
+                long demand = requested.get();
+                long emittedNow = 0;
+                while (emittedNow < demand && !cancelled && failure == null) {
+                    T result = ready.poll();
+                    if (result == null) break;
+                    s.onNext(result);
+                    emittedNow++;
+                }
+                if (emittedNow > 0) {
+                    emitted.addAndGet(emittedNow);
+                    if (demand != Long.MAX_VALUE) requested.addAndGet(-emittedNow);
+                }
+
+                if (cancelled) {
+                    terminated = true;
+                    ready.clear();
+                } else if (failure != null) {
+                    terminated = true;
+                    ready.clear();
+                    s.onError(failure);
+                } else if (closed && ready.isEmpty() && finished.get() == submitted.get()) {
+                    terminated = true;
+                    s.onComplete();
+                }
+            }
+
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+}
@@ -0,0 +1,154 @@
+package com.naumov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * {@link Flow.Subscriber}, that runs a {@code handler} for every received item in the consumers of
+ * a {@link TaskPoolExecutor}. Items are requested and inserted into the pool in batches of {@code batchSize}
+ * (a chunk size is a good choice), by the bulk {@link TaskPoolExecutor#executeAll(List)}. No more than
+ * {@code PREFETCH_BATCHES} batches are in flight: a batch is requested only when consumers have handled
+ * as many items, so a fast publisher can't flood the pool.
+ * <p>
+ * Items of a batch wait for the batch to fill up, unless the publisher completes, so a slow publisher
+ * should be paired with a small {@code batchSize}. On {@code onError} the items of a batch, that hasn't filled up,
+ * are dropped. The calling thread of {@code onNext} becomes a producer
+ * of the pool, so the publisher should deliver items from a single thread.
+ * <p>
+ * Demand and cancellation come from the consumers, that have drained a batch or failed, but the calls of
+ * the {@link Flow.Subscription} must not be concurrent (§2.7 of the Reactive Streams spec): consumers add
+ * to the pending demand, and only one of them at a time passes it to the subscription.
+ *
+ * @param <T> item type
+ */
+public class TaskPoolSubscriber<T> implements Flow.Subscriber<T> {
+    private static final int PREFETCH_BATCHES = 2;
+
+    private final TaskPoolExecutor executor;
+    private final int batchSize;
+    private final Consumer<? super T> handler;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final AtomicLong handled = new AtomicLong(0); // items, handled by consumers
+    private final AtomicLong pendingDemand = new AtomicLong(0); // not requested from the subscription yet
+    private final AtomicInteger wip = new AtomicInteger(0); // signal loop guard
+    private volatile boolean cancelPending = false;
+    private boolean cancelled = false; // accessed only by the signal loop
+
+    // accessed only by the publisher thread (onXXX signals are serialized)
+    private final List<Runnable> batch;
+    private Flow.Subscription subscription;
+    private long received = 0;
+
+    private volatile long receivedTotal = -1; // set once the publisher completes
+
+    public TaskPoolSubscriber(TaskPoolExecutor executor, int batchSize, Consumer<? super T> handler) {
+        if (executor == null || handler == null) throw new NullPointerException();
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be a positive number, got " + batchSize);
+
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.handler = handler;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel(); // already subscribed
+            return;
+        }
+
+        this.subscription = subscription;
+        request((long) batchSize * PREFETCH_BATCHES);
+    }
+
+    @Override
+    public void onNext(T item) {
+        received++;
+        batch.add(() -> handle(item));
+        if (batch.size() == batchSize) flush();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        batch.clear(); // the stream has failed, its buffered items are not handled
+        done.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        flush();
+        receivedTotal = received;
+        checkDone(handled.get());
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) return;
+        executor.executeAll(batch); // the tasks are copied into the pool, the list can be reused
+        batch.clear();
+    }
+
+    private void handle(T item) {
+        try {
+            handler.accept(item);
+        } catch (Throwable ex) {
+            cancel();
+            done.completeExceptionally(ex);
+        }
+
+        long handledNow = handled.incrementAndGet();
+        if (handledNow % batchSize == 0 && !done.isDone()) request(batchSize); // a batch is drained
+        checkDone(handledNow);
+    }
+
+    private void request(long n) {
+        pendingDemand.addAndGet(n);
+        signal();
+    }
+
+    private void cancel() {
+        cancelPending = true;
+        signal();
+    }
+
+    /**
+     * Passes the pending demand or the cancellation to the subscription. Only one thread at a time runs the loop,
+     * others just make it run one more round.
+     */
+    private void signal() {
+        if (wip.getAndIncrement() != 0) return;
+
+        int missed = 1;
+        do {
+            if (!cancelled) {
+                if (cancelPending) {
+                    cancelled = true;
+                    subscription.cancel();
+                } else {
+                    long n = pendingDemand.getAndSet(0);
+                    if (n > 0) subscription.request(n);
+                }
+            }
+
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void checkDone(long handledNow) {
+        long total = receivedTotal;
+        if (total >= 0 && handledNow == total) done.complete(null);
+    }
+
+    /**
+     * @return future, completed when the publisher has completed and all the items have been handled,
+     * or exceptionally on the publisher error or the first handler failure
+     */
+    public CompletableFuture<Void> whenDone() {
+        return done;
+    }
+}
@@ -0,0 +1,164 @@
+package com.naumov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Hierarchical hashed timing wheel: {@code LEVELS} wheels of {@code WHEEL_SIZE} buckets, where a bucket of level
+ * {@code k} spans {@code WHEEL_SIZE^k} ticks. A timeout is hashed into the lowest level that covers its delay and
+ * cascades down when the wheel above turns, so both adding and expiring are O(1) per timeout. Timeouts beyond
+ * the top level wait in it for more than one turn. Turning skips the ticks, where nothing can expire or cascade.
+ * <p>
+ * Not thread-safe: owned by a single timer thread.
+ *
+ * @param <E> timeout type
+ */
+final class TimingWheel<E extends TimingWheel.Timeout> {
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    /**
+     * An entry of the wheel.
+     */
+    interface Timeout {
+        /**
+         * @return tick, at which the timeout expires
+         */
+        long getDeadlineTick();
+    }
+
+    private final List<List<E>> buckets; // LEVELS * WHEEL_SIZE buckets, level by level, created lazily
+    private final List<E> cascaded = new ArrayList<>(); // scratch list for cascading
+    private final int[] levelSizes = new int[LEVELS];
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long startTick) {
+        this.currentTick = startTick;
+        this.buckets = new ArrayList<>(LEVELS * WHEEL_SIZE);
+        for (int i = 0; i < LEVELS * WHEEL_SIZE; i++) buckets.add(null);
+    }
+
+    /**
+     * Adds the timeout, or passes it to {@code expired} right away if it is due.
+     *
+     * @param timeout timeout to add
+     * @param expired receiver of the expired timeouts
+     */
+    void add(E timeout, Consumer<? super E> expired) {
+        long deadline = timeout.getDeadlineTick();
+        long delta = deadline - currentTick;
+        if (delta <= 0) {
+            expired.accept(timeout);
+            return;
+        }
+
+        int level = Math.min(LEVELS - 1, (63 - Long.numberOfLeadingZeros(delta)) / WHEEL_BITS);
+        int slot = (int) (deadline >>> (level * WHEEL_BITS)) & WHEEL_MASK;
+        bucket(level, slot).add(timeout);
+        levelSizes[level]++;
+        size++;
+    }
+
+    /**
+     * Turns the wheel up to {@code nowTick}, passing all the timeouts, expired on the way, to {@code expired}.
+     *
+     * @param nowTick current tick
+     * @param expired receiver of the expired timeouts
+     */
+    void advance(long nowTick, Consumer<? super E> expired) {
+        while (currentTick < nowTick) {
+            if (size == 0) {
+                currentTick = nowTick; // nothing to expire on the way
+                return;
+            }
+
+            int lowestLevel = 0;
+            while (levelSizes[lowestLevel] == 0) lowestLevel++;
+            if (lowestLevel > 0) {
+                // lower wheels are empty: nothing happens until the next turn of the lowest non-empty one
+                long lastQuietTick = currentTick | ((1L << (lowestLevel * WHEEL_BITS)) - 1);
+                if (lastQuietTick > currentTick) {
+                    currentTick = Math.min(lastQuietTick, nowTick);
+                    continue;
+                }
+            }
+
+            long tick = ++currentTick;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                // the wheel above turns: redistribute its current bucket among lower levels
+                if ((tick & ((1L << (level * WHEEL_BITS)) - 1)) == 0) {
+                    cascade(level, (int) (tick >>> (level * WHEEL_BITS)) & WHEEL_MASK, expired);
+                }
+            }
+
+            List<E> bucket = buckets.get((int) tick & WHEEL_MASK);
+            if (bucket != null && !bucket.isEmpty()) {
+                size -= bucket.size();
+                levelSizes[0] -= bucket.size();
+                for (E timeout : bucket) expired.accept(timeout);
+                bucket.clear();
+            }
+        }
+    }
+
+    /**
+     * Removes all the matching timeouts, e.g. cancelled ones, without waiting for them to expire. O(size).
+     *
+     * @param filter predicate of the timeouts to remove
+     * @return number of removed timeouts
+     */
+    int purge(Predicate<? super E> filter) {
+        int removed = 0;
+        for (int idx = 0; idx < buckets.size(); idx++) {
+            List<E> bucket = buckets.get(idx);
+            if (bucket == null || bucket.isEmpty()) continue;
+
+            int before = bucket.size();
+            if (bucket.removeIf(filter)) {
+                int n = before - bucket.size();
+                levelSizes[idx / WHEEL_SIZE] -= n;
+                size -= n;
+                removed += n;
+            }
+        }
+        return removed;
+    }
+
+    private void cascade(int level, int slot, Consumer<? super E> expired) {
+        List<E> bucket = buckets.get(level * WHEEL_SIZE + slot);
+        if (bucket == null || bucket.isEmpty()) return;
+
+        cascaded.addAll(bucket); // timeouts beyond the top level come back to the same bucket
+        size -= bucket.size();
+        levelSizes[level] -= bucket.size();
+        bucket.clear();
+        for (E timeout : cascaded) add(timeout, expired);
+        cascaded.clear();
+    }
+
+    private List<E> bucket(int level, int slot) {
+        int idx = level * WHEEL_SIZE + slot;
+        List<E> bucket = buckets.get(idx);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            buckets.set(idx, bucket);
+        }
+        return bucket;
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * @return number of timeouts in the wheel
+     */
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,290 @@
+package com.naumov.taskpool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Registration of producers and consumers and the emptiness check over the SCPools of a task pool, one SCPool
+ * per consumer, shared by {@link AbstractTaskPool} and {@link com.naumov.taskpool.salsa.LongSalsaTaskPool}.
+ * A thread is registered at its first call as a producer or as a consumer and keeps the role. A consumer can give
+ * its SCPool up, then another one takes it over, see {@link #releaseConsumer(boolean)}.
+ *
+ * @param <P> SCPool type
+ */
+public abstract class AbstractPoolRegistry<P extends EmptyIndicatorPool> {
+    public static final int MAX_N_PRODUCERS = 32768;
+    public static final int MAX_N_CONSUMERS = 32; // limited due to the emptyIndicator implementation
+    protected static final int DETACHED = -2; // consumer id of a thread, that has given its SCPool up
+    private static final int SLOT_FREE = 0;
+    private static final int SLOT_TAKEN = 1;
+    private static final int SLOT_ORPHANED = 2; // free, but the pool may hold tasks
+
+    // unmodifiable shared pool state
+    private final int nProducers;
+    private final int nConsumers;
+    private final List<P> allSCPools;
+
+    // shared pool state: depicts last issued producer id and taken consumer ids
+    private final AtomicInteger pCount = new AtomicInteger(0);
+    private final AtomicIntegerArray consumerSlots; // SLOT_... state of the SCPool with the same id
+
+    // ThreadLocals
+    private final ThreadLocal<Integer> pIdTL = ThreadLocal.withInitial(() -> -1); // producer id, [0 .. nProducers)
+    private final ThreadLocal<Integer> cIdTL = ThreadLocal.withInitial(() -> -1); // consumer id, [0 .. nConsumers),
+                                                                                 // or DETACHED
+    private final ThreadLocal<List<P>> pAccessListTL = ThreadLocal.withInitial(() -> null);
+    private final ThreadLocal<List<P>> cAccessListTL = ThreadLocal.withInitial(() -> null);
+    private final ThreadLocal<P> cSCPoolTL = ThreadLocal.withInitial(() -> null); // consumer's own SCPool
+
+    protected AbstractPoolRegistry(int nProducers, int nConsumers, int chunkSize, int cleanupCycles,
+                                   TaskPoolConfig config) {
+        if (nProducers < 1 || nProducers > MAX_N_PRODUCERS)
+            throw new IllegalArgumentException("nProducers cannot be less than 1 and greater than " + MAX_N_PRODUCERS
+                    + ", got " + nProducers);
+
+        if (nConsumers < 1 || nConsumers > MAX_N_CONSUMERS)
+            throw new IllegalArgumentException("nConsumers cannot be less than 1 and greater than " + MAX_N_CONSUMERS
+                    + ", got " + nConsumers);
+
+        this.nProducers = nProducers;
+        this.nConsumers = nConsumers;
+
+        final List<P> allSCPools = new ArrayList<>(nConsumers);
+        for (int cId = 0; cId < nConsumers; cId++) {
+            // create sc pools, but not bind to consumers yet
+            allSCPools.add(newSCPool(cId, nProducers, nConsumers, chunkSize, cleanupCycles, config));
+        }
+
+        this.allSCPools = Collections.unmodifiableList(allSCPools);
+        this.consumerSlots = new AtomicIntegerArray(nConsumers);
+    }
+
+    /**
+     * Successors of this class must implement this method to provide with used {@code SCPool} implementation.
+     *
+     * @param consumerId    id of the owner of a created pool
+     * @param nProducers    max number of producers this SCPool allows
+     * @param nConsumers    max number of consumer this SCPool allows
+     * @param chunkSize     chunk size
+     * @param cleanupCycles max number of deleted nodes during cleanup phase
+     * @param config        optional settings
+     * @return newly created SCPool successor
+     */
+    protected abstract P newSCPool(int consumerId,
+                                   int nProducers,
+                                   int nConsumers,
+                                   int chunkSize,
+                                   int cleanupCycles,
+                                   TaskPoolConfig config);
+
+    protected abstract void regCurrentThreadAsProducer(P scPool, int producerId);
+
+    protected abstract void regCurrentThreadAsOwner(P scPool, int consumerId);
+
+    /**
+     * Called when a consumer gives its SCPool up, see {@link #releaseConsumer(boolean)}.
+     */
+    protected void unregCurrentThreadAsOwner(P scPool) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't support detaching consumers");
+    }
+
+    /**
+     * Called after the calling thread has become the owner of the {@code scPool}.
+     */
+    protected void onConsumerRegistered(P scPool) {
+    }
+
+    protected int getNConsumers() {
+        return nConsumers;
+    }
+
+    /**
+     * @return SCPools of all consumers, in the order of consumer ids
+     */
+    protected List<P> getSCPools() {
+        return allSCPools;
+    }
+
+    /**
+     * @return id of the calling producer, -1 if it is not a registered producer
+     */
+    protected int currentProducerId() {
+        return pIdTL.get();
+    }
+
+    /**
+     * @return id of the calling consumer, -1 if it is not a registered consumer, or {@link #DETACHED}
+     */
+    protected int currentConsumerId() {
+        return cIdTL.get();
+    }
+
+    /**
+     * @return SCPool of the calling consumer
+     */
+    protected P ownSCPool() {
+        return cSCPoolTL.get();
+    }
+
+    /**
+     * @return shuffled SCPools of the calling producer
+     */
+    protected List<P> producerAccessList() {
+        return pAccessListTL.get();
+    }
+
+    /**
+     * @return shuffled SCPools of the calling consumer, its own one is left out
+     */
+    protected List<P> consumerAccessList() {
+        return cAccessListTL.get();
+    }
+
+    /**
+     * Checks whether a calling thread (producer/consumer) is registered in the task pool and register it if necessary.
+     * Thread is registered only once, at the first arrival at this method.
+     *
+     * @param fromProducerContext flag to check for specific context
+     * @throws IllegalCallerException when called by a registered producer with {@code fromProducerContext == false}
+     *                                or vice versa
+     */
+    protected void checkThreadRegistered(boolean fromProducerContext) {
+        if (pIdTL.get() == -1 && cIdTL.get() < 0) {
+            // new thread, need to register
+            if (fromProducerContext) {
+                // register as producer
+                int id = nextProducerId();
+                pIdTL.set(id);
+
+                // init access list and bind producer
+                List<P> accessList = accessList(-1);
+                pAccessListTL.set(accessList);
+                accessList.forEach(pool -> regCurrentThreadAsProducer(pool, id));
+            } else {
+                // register as consumer
+                int id = takeConsumerSlot();
+                if (id == -1) throw new IllegalStateException("Too many consumers");
+                regCurrentThreadAsConsumer(id);
+            }
+        } else if (pIdTL.get() != -1 && !fromProducerContext) {
+            // registered producer appeared in a consumer context
+            throw new IllegalCallerException("Already registered producer called from consumer context");
+        } else if (cIdTL.get() >= 0 && fromProducerContext) {
+            // registered consumer appeared in a producer context
+            throw new IllegalCallerException("Already registered consumer called from producer context");
+        }
+        // everything alright, actor is registered
+    }
+
+    /**
+     * Registers the calling thread as a consumer ahead of its first call, taking an SCPool, given up
+     * by {@link #releaseConsumer(boolean)}, first.
+     *
+     * @return {@code false} if all the SCPools are taken
+     * @throws IllegalCallerException if the calling thread is a registered producer
+     */
+    protected boolean tryRegisterConsumer() {
+        if (cIdTL.get() >= 0) return true;
+        if (pIdTL.get() != -1)
+            throw new IllegalCallerException("Already registered producer called from consumer context");
+
+        int id = takeConsumerSlot();
+        if (id == -1) return false;
+        regCurrentThreadAsConsumer(id);
+        return true;
+    }
+
+    /**
+     * Gives the SCPool of the calling consumer up, so that another thread can take it over. The thread is left
+     * {@link #DETACHED}: it can neither consume nor produce until it registers as a consumer again.
+     *
+     * @param empty the pool holds no tasks, otherwise the next consumer takes it first
+     */
+    protected void releaseConsumer(boolean empty) {
+        int id = cIdTL.get();
+        unregCurrentThreadAsOwner(cSCPoolTL.get());
+        cSCPoolTL.remove();
+        cAccessListTL.remove();
+        cIdTL.set(DETACHED);
+        consumerSlots.set(id, empty ? SLOT_FREE : SLOT_ORPHANED); // the pool can be taken by a new consumer
+    }
+
+    /**
+     * Checks all the SCPools for emptiness on behalf of the calling consumer: an SCPool, that a task has been taken
+     * from meanwhile, clears the indicator of the consumer, then the pools are not considered empty.
+     *
+     * @return {@code true} if all the SCPools have been empty at some point during the call
+     */
+    protected boolean allSCPoolsEmpty() {
+        int id = cIdTL.get();
+        for (int i = 0; i < nConsumers; i++) {
+            for (P scPool : allSCPools) {
+                if (i == 0) scPool.setIndicator(id);
+                if (!scPool.isEmpty()) return false;
+                if (!scPool.checkIndicator(id)) return false;
+            }
+        }
+        return true;
+    }
+
+    private void regCurrentThreadAsConsumer(int id) {
+        cIdTL.set(id);
+
+        // init access list and bind owner
+        P myPool = allSCPools.get(id);
+        regCurrentThreadAsOwner(myPool, id);
+        onConsumerRegistered(myPool);
+        cSCPoolTL.set(myPool);
+        cAccessListTL.set(accessList(id));
+    }
+
+    /**
+     * Inits a unique producer id in a CAS loop.
+     *
+     * @return unique id
+     * @throws IllegalStateException if all the ids have been issued
+     */
+    private int nextProducerId() {
+        int currentCount;
+        do {
+            currentCount = pCount.get();
+            if (currentCount >= nProducers) {
+                throw new IllegalStateException("Too many producers");
+            }
+        } while (!pCount.compareAndSet(currentCount, currentCount + 1)
+                && !Thread.currentThread().isInterrupted());
+
+        return currentCount;
+    }
+
+    /**
+     * Consumers take orphaned pools first, then the lowest free id, so ids of detached consumers are reused.
+     *
+     * @return id of a taken consumer slot, or -1 if all the slots are taken
+     */
+    private int takeConsumerSlot() {
+        for (int id = 0; id < nConsumers; id++) {
+            if (consumerSlots.get(id) == SLOT_ORPHANED && consumerSlots.compareAndSet(id, SLOT_ORPHANED, SLOT_TAKEN))
+                return id;
+        }
+        for (int id = 0; id < nConsumers; id++) {
+            if (consumerSlots.get(id) == SLOT_FREE && consumerSlots.compareAndSet(id, SLOT_FREE, SLOT_TAKEN))
+                return id;
+        }
+        return -1;
+    }
+
+    /**
+     * @param ownId id of the consumer, whose own pool is left out, or -1 for a producer
+     * @return shuffled copy of the pools for better workload distribution
+     */
+    private List<P> accessList(int ownId) {
+        List<P> template = new ArrayList<>(allSCPools);
+        if (ownId != -1) template.remove(ownId);
+        Collections.shuffle(template);
+        return template;
+    }
+}
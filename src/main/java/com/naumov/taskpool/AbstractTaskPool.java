@@ -3,102 +3,337 @@ package com.naumov.taskpool;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
-public abstract class AbstractTaskPool implements TaskPool {
-    private static final int MAX_N_PRODUCERS = 32768;
-    private static final int MAX_N_CONSUMERS = 32; // limited due to the emptyIndicator implementation
+public abstract class AbstractTaskPool extends AbstractPoolRegistry<SCPool> implements TaskPool {
+    private static final int FULL_POOL_SPINS = 64; // retries before a producer starts parking on a full pool
+    private static final long MAX_FULL_POOL_PARK_NS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final Object WAITING = new Object(); // waiter slot of an idle consumer, ready for a handoff
 
     // unmodifiable shared pool state
-    private final int nProducers;
-    private final int nConsumers;
-    private final CopyOnWriteArrayList<SCPool> allSCPools;
+    private final int chunkSize;
+    private final TaskPoolConfig config;
+    private final AtomicReferenceArray<Mailbox> mailboxes; // for keyed tasks, created lazily
+    private final boolean handoff;
+    private final AtomicReferenceArray<Object> waiters; // null, WAITING or a handed off task, per consumer id
+    private final AtomicReferenceArray<Thread> waiterThreads; // consumer, that has advertised the waiter slot
+    private final int nTenants;
 
-    // shared pool state: depicts last issued ids
-    private final AtomicInteger pCount = new AtomicInteger(0);
-    private final AtomicInteger cCount = new AtomicInteger(0);
+    // shared pool state
+    private final AtomicInteger nWaiting = new AtomicInteger(0); // WAITING waiter slots, producers skip scanning at 0
+    private final LongAdder handoffs = new LongAdder();
+    private final Queue<Runnable> detachedTasks = new ConcurrentLinkedQueue<>(); // inserted by detached consumers
 
     // ThreadLocals
-    private final ThreadLocal<Integer> pIdTL = ThreadLocal.withInitial(() -> -1); // producer id, [0 .. nProducers)
-    private final ThreadLocal<Integer> cIdTL = ThreadLocal.withInitial(() -> -1); // consumer id, [0 .. nConsumers)
-    private final ThreadLocal<List<SCPool>> pAccessListTL = ThreadLocal.withInitial(() -> null);
-    private final ThreadLocal<List<SCPool>> cAccessListTL = ThreadLocal.withInitial(() -> null);
-    private final ThreadLocal<SCPool> cSCPoolTL = ThreadLocal.withInitial(() -> null); // consumer's own SCPool
+    private final ThreadLocal<Integer> tenantTL = ThreadLocal.withInitial(() -> 0); // tenant of a producer
 
     public AbstractTaskPool(int nProducers, int nConsumers, int chunkSize, int cleanupCycles) {
-        if (nProducers < 1 || nProducers > MAX_N_PRODUCERS)
-            throw new IllegalArgumentException("nProducers cannot be less than 1 and greater than " + MAX_N_PRODUCERS
-                    + ", got " + nProducers);
+        this(nProducers, nConsumers, chunkSize, cleanupCycles, TaskPoolConfig.defaults());
+    }
 
-        if (nConsumers < 1 || nConsumers > MAX_N_CONSUMERS)
-            throw new IllegalArgumentException("nConsumers cannot be less than 1 and greater than " + MAX_N_CONSUMERS
-                    + ", got " + nConsumers);
+    public AbstractTaskPool(int nProducers, int nConsumers, int chunkSize, int cleanupCycles, TaskPoolConfig config) {
+        super(nProducers, nConsumers, chunkSize, cleanupCycles, config);
 
-        this.nProducers = nProducers;
-        this.nConsumers = nConsumers;
+        this.chunkSize = chunkSize;
+        this.config = config;
+        this.mailboxes = new AtomicReferenceArray<>(config.getKeyStripes());
+        this.handoff = config.isHandoff();
+        this.waiters = new AtomicReferenceArray<>(nConsumers);
+        this.waiterThreads = new AtomicReferenceArray<>(nConsumers);
+        this.nTenants = config.getTenantCount();
+    }
 
-        final List<SCPool> allSCPools = new ArrayList<>(nConsumers);
-        for (int cId = 0; cId < nConsumers; cId++) {
-            final SCPool scPool = newSCPool(cId, nProducers, nConsumers, chunkSize, cleanupCycles);
-            allSCPools.add(scPool); // create sc pools, but not bind to consumers yet
-        }
+    @Override
+    public int getChunkSize() {
+        return chunkSize;
+    }
 
-        this.allSCPools = new CopyOnWriteArrayList<>(allSCPools);
+    @Override
+    public TaskPoolConfig getConfig() {
+        return config;
+    }
+
+    @Override
+    public long getHandoffCount() {
+        return handoffs.sum();
     }
 
     /**
-     * Successors of this class must implement this method to provide with used {@code SCPool} implementation.
-     *
-     * @param consumerId    id of the owner of a created pool
-     * @param nProducers    max number of producers this SCPool allows
-     * @param nConsumers    max number of consumer this SCPool allows
-     * @param chunkSize     chunk size
-     * @param cleanupCycles max number of deleted nodes during cleanup phase
-     * @return newly created SCPool successor
+     * @throws IllegalStateException if the calling thread is already registered in the task pool
      */
-    protected abstract SCPool newSCPool(int consumerId,
-                                        int nProducers,
-                                        int nConsumers,
-                                        int chunkSize,
-                                        int cleanupCycles);
+    @Override
+    public void joinTenant(int tenant) {
+        if (tenant < 0 || tenant >= nTenants)
+            throw new IllegalArgumentException("tenant must be in range [0, " + nTenants + "), got " + tenant);
+        if (currentProducerId() != -1 || currentConsumerId() != -1)
+            throw new IllegalStateException("Calling thread is already registered in the task pool");
 
-    protected abstract void regCurrentThreadAsProducer(SCPool scPool, int producerId);
+        tenantTL.set(tenant);
+    }
 
-    protected abstract void regCurrentThreadAsOwner(SCPool scPool, int consumerId);
+    /**
+     * @return tenant of the calling producer thread, for {@link #regCurrentThreadAsProducer(SCPool, int)}
+     */
+    protected int currentTenant() {
+        return tenantTL.get();
+    }
+
+    /**
+     * Producers prefer active pools, i.e. the ones with an owner.
+     */
+    @Override
+    protected void onConsumerRegistered(SCPool scPool) {
+        scPool.setActive(true);
+    }
 
     @Override
     public void put(Runnable task) {
+        if (offer(task)) return;
+
+        try {
+            awaitOffer(task, Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for space in the task pool");
+        }
+    }
+
+    @Override
+    public void put(Runnable task, int affinityHint) {
+        int cId = currentConsumerId();
+        if (cId >= 0) {
+            // a consumer keeps subtasks local anyway
+            ownSCPool().spawn(task);
+            return;
+        }
+        if (cId == DETACHED) {
+            detachedTasks.add(task);
+            return;
+        }
+
+        checkThreadRegistered(true);
+
+        SCPool homePool = getSCPools().get(Math.floorMod(affinityHint, getNConsumers()));
+        if (!homePool.isActive() || !homePool.produce(task)) put(task); // no owner or full, go anywhere
+    }
+
+    @Override
+    public void put(long key, Runnable task) {
+        if (task == null) throw new NullPointerException();
+
+        int hash = Long.hashCode(key) * 0x9E3779B9; // spread sequential keys
+        int idx = (hash ^ (hash >>> 16)) & (mailboxes.length() - 1);
+        Mailbox mailbox = mailboxes.get(idx);
+        if (mailbox == null) {
+            mailboxes.compareAndSet(idx, null, new Mailbox(this));
+            mailbox = mailboxes.get(idx);
+        }
+        mailbox.add(task);
+    }
+
+    @Override
+    public void putAll(List<? extends Runnable> tasks) {
+        int cId = currentConsumerId();
+        if (cId >= 0) {
+            SCPool myPool = ownSCPool();
+            for (Runnable task : tasks) myPool.spawn(task);
+            return;
+        }
+        if (cId == DETACHED) {
+            detachedTasks.addAll(tasks);
+            return;
+        }
+
         checkThreadRegistered(true);
 
-        List<SCPool> accessList = pAccessListTL.get();
+        List<SCPool> accessList = producerAccessList();
         int accessListSize = accessList.size();
         int startIdx = ThreadLocalRandom.current().nextInt(accessListSize); // [0, accessListSize)
 
-        // try produce to all pools, traversing from a random start
+        // keep the batch in as few pools as possible, consumers will steal whole chunks of it
+        int inserted = 0;
+        for (int i = startIdx; i < accessListSize + startIdx && inserted < tasks.size(); i++) {
+            SCPool scPool = accessList.get(i % accessListSize);
+            if (scPool.isActive()) inserted += scPool.produceAll(tasks, inserted);
+        }
+
+        // bounded and full or no active pools, wait for space
+        for (int i = inserted; i < tasks.size(); i++) put(tasks.get(i));
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        int cId = currentConsumerId();
+        if (cId >= 0) {
+            // a consumer forks a subtask: keep it in the own pool, other consumers can steal it from there
+            ownSCPool().spawn(task);
+            return true;
+        }
+        if (cId == DETACHED) {
+            // a consumer, that has given its SCPool up, e.g. for a block, can't register as a producer
+            detachedTasks.add(task);
+            return true;
+        }
+
+        checkThreadRegistered(true);
+        if (handoff && tryHandoff(task)) return true;
+
+        List<SCPool> accessList = producerAccessList();
+        int accessListSize = accessList.size();
+        int startIdx = ThreadLocalRandom.current().nextInt(accessListSize); // [0, accessListSize)
+
+        // try produce to all active pools, traversing from a random start
+        for (int i = startIdx; i < accessListSize + startIdx; i++) {
+            SCPool scPool = accessList.get(i % accessListSize);
+            if (scPool.isActive() && scPool.tryProduce(task)) return true;
+        }
+
+        // all active pools are out of spare chunks, expand the first one (unless it has reached its capacity)
+        for (int i = startIdx; i < accessListSize + startIdx; i++) {
+            SCPool scPool = accessList.get(i % accessListSize);
+            if (scPool.isActive() && scPool.produce(task)) return true;
+        }
+
+        // no active pools (consumers haven't started yet or are being replaced) or all of them are full:
+        // any pool will do, tasks in pools without owner are stolen
         for (int i = startIdx; i < accessListSize + startIdx; i++) {
             SCPool scPool = accessList.get(i % accessListSize);
-            if (scPool.tryProduce(task)) return;
+            if (!scPool.isActive() && scPool.produce(task)) return true;
         }
 
-        // all pools are full, expand the first pool
-        SCPool firstSCPool = accessList.get(startIdx);
-        firstSCPool.produce(task);
+        return false; // bounded and full
+    }
+
+    /**
+     * Transfers the task to a waiting consumer, like {@link java.util.concurrent.LinkedTransferQueue#tryTransfer}.
+     *
+     * @param task a task
+     * @return {@code true} if a consumer has been waiting and got the task
+     */
+    private boolean tryHandoff(Runnable task) {
+        if (nWaiting.get() == 0) return false; // common case under load
+
+        int nConsumers = getNConsumers();
+        int startIdx = ThreadLocalRandom.current().nextInt(nConsumers);
+        for (int i = startIdx; i < nConsumers + startIdx; i++) {
+            int id = i % nConsumers;
+            if (waiters.get(id) == WAITING && waiters.compareAndSet(id, WAITING, task)) {
+                nWaiting.decrementAndGet();
+                handoffs.increment();
+                LockSupport.unpark(waiterThreads.get(id)); // the consumer may be parked on backoff
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Takes the task, handed off to the current consumer, and withdraws its advertisement.
+     *
+     * @param id consumer id
+     * @return handed off task or {@code null}
+     */
+    private Runnable takeHandoff(int id) {
+        Object slot = waiters.get(id);
+        if (slot == null) return null;
+        if (slot == WAITING) {
+            if (waiters.compareAndSet(id, WAITING, null)) {
+                nWaiting.decrementAndGet();
+                return null;
+            }
+            slot = waiters.get(id); // a producer has just handed off a task
+        }
+
+        waiters.set(id, null); // only the producer, that saw WAITING, writes a task
+        return (Runnable) slot;
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offer(task)) return true;
+        return awaitOffer(task, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Retries to insert the task into a full pool until the deadline. Spins shortly first, since consumers
+     * free a whole chunk at once, then parks with exponentially growing timeouts.
+     *
+     * @param task       a task
+     * @param deadlineNs {@link System#nanoTime()} deadline or {@link Long#MAX_VALUE} to wait forever
+     * @return {@code true} if the task was inserted
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean awaitOffer(Runnable task, long deadlineNs) throws InterruptedException {
+        long parkNs = 1000L;
+        for (int attempt = 0; ; attempt++) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            if (deadlineNs != Long.MAX_VALUE && System.nanoTime() - deadlineNs >= 0) return false;
+
+            if (attempt < FULL_POOL_SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, parkNs);
+                parkNs = Math.min(parkNs << 1, MAX_FULL_POOL_PARK_NS);
+            }
+
+            if (offer(task)) return true;
+        }
+    }
+
+    /**
+     * Mailboxes of keyed tasks are not discarded, but inserted again: a dropped mailbox would stay scheduled
+     * and block its key stripe forever.
+     */
+    @Override
+    public List<Runnable> dropOldest() {
+        checkThreadRegistered(true);
+
+        List<SCPool> accessList = producerAccessList();
+        int accessListSize = accessList.size();
+        int startIdx = ThreadLocalRandom.current().nextInt(accessListSize); // [0, accessListSize)
+
+        for (int i = startIdx; i < accessListSize + startIdx; i++) {
+            List<Runnable> dropped = accessList.get(i % accessListSize).dropOldest();
+            if (!dropped.isEmpty()) return reinsertMailboxes(dropped);
+        }
+
+        return Collections.emptyList();
+    }
+
+    private List<Runnable> reinsertMailboxes(List<Runnable> dropped) {
+        List<Runnable> tasks = new ArrayList<>(dropped.size());
+        for (Runnable task : dropped) {
+            if (task instanceof Mailbox) put(task); // keyed tasks are never rejected, the chunk has made room
+            else tasks.add(task);
+        }
+        return tasks;
     }
 
     @Override
     public Runnable get() {
         checkThreadRegistered(false);
 
-        SCPool myPool = cSCPoolTL.get();
+        SCPool myPool = ownSCPool();
+        int id = currentConsumerId();
         while (!Thread.currentThread().isInterrupted()) {
+            // a task, handed off directly, goes first: it was given to this consumer only
+            Runnable task = handoff ? takeHandoff(id) : null;
+            if (task != null) return task;
+
             // first try to get a task from the local pool
-            Runnable task = myPool.consume();
+            task = myPool.consume();
             if (task != null) return task;
 
             // failed to get a task from the local pool - steal
-            List<SCPool> accessList = cAccessListTL.get();
+            List<SCPool> accessList = consumerAccessList();
             int accessListSize = accessList.size();
             if (accessListSize > 0) {
                 int startIdx = ThreadLocalRandom.current().nextInt(accessListSize); // [0, accessListSize)
@@ -109,8 +344,21 @@ public abstract class AbstractTaskPool implements TaskPool {
                 }
             }
 
+            // tasks of detached consumers go after the SCPools
+            task = detachedTasks.poll();
+            if (task != null) return task;
+
             // no tasks found - validate emptiness
-            if (isEmpty()) return null; // todo unused when consumers always retry to take a task
+            if (isEmpty()) {
+                myPool.trim(); // idle, release what the last burst left behind
+                if (handoff && myPool.isActive()) {
+                    waiterThreads.set(id, Thread.currentThread()); // unparked by the producer, that hands off
+                    if (waiters.compareAndSet(id, null, WAITING)) {
+                        nWaiting.incrementAndGet(); // wait for a handoff, taken by the next call
+                    }
+                }
+                return null; // todo unused when consumers always retry to take a task
+            }
         }
 
         return null;
@@ -119,81 +367,41 @@ public abstract class AbstractTaskPool implements TaskPool {
     @Override
     public boolean isEmpty() {
         checkThreadRegistered(false);
+        if (!detachedTasks.isEmpty()) return false;
 
-        for (int i = 0; i < nConsumers; i++) {
-            for (SCPool scPool : allSCPools) {
-                if (i == 0) scPool.setIndicator(cIdTL.get());
-                if (!scPool.isEmpty()) return false;
-                if (!scPool.checkIndicator(cIdTL.get())) return false;
+        if (handoff) {
+            for (int id = 0; id < getNConsumers(); id++) {
+                Object slot = waiters.get(id);
+                if (slot != null && slot != WAITING) return false; // handed off, not taken yet
             }
         }
-        return true;
+
+        return allSCPoolsEmpty();
     }
 
-    /**
-     * Checks whether a calling thread (producer/consumer) is registered in the task pool and register it if necessary.
-     * Thread is registered only once, at the first arrival at this method.
-     *
-     * @param fromProducerContext flag to check for specific context
-     * @throws IllegalCallerException when called by a registered producer with {@code fromProducerContext == false}
-     *                                or vice versa
-     */
-    private void checkThreadRegistered(boolean fromProducerContext) {
-        if (pIdTL.get() == -1 && cIdTL.get() == -1) {
-            // new thread, need to register
-            if (fromProducerContext) {
-                // register as producer
-                int id = tryInitId(true);
-                pIdTL.set(id);
-
-                // init access list and bind producer
-                List<SCPool> template = new ArrayList<>(allSCPools);
-                Collections.shuffle(template); // shuffle for better workload distribution
-                pAccessListTL.set(new CopyOnWriteArrayList<>(template));
-                pAccessListTL.get().forEach(pool -> regCurrentThreadAsProducer(pool, id));
-            } else {
-                // register as consumer
-                int id = tryInitId(false);
-                cIdTL.set(id);
-
-                // init access list and bind owner
-                List<SCPool> template = new ArrayList<>(allSCPools);
-                SCPool myPool = template.remove(id);
-                regCurrentThreadAsOwner(myPool, id);
-                cSCPoolTL.set(myPool);
-                Collections.shuffle(template);
-                cAccessListTL.set(new CopyOnWriteArrayList<>(template));
-            }
-        } else if (pIdTL.get() != -1 && !fromProducerContext) {
-            // registered producer appeared in a consumer context
-            throw new IllegalCallerException("Already registered producer called from consumer context");
-        } else if (cIdTL.get() != -1 && fromProducerContext) {
-            // registered consumer appeared in a producer context
-            throw new IllegalCallerException("Already registered consumer called from producer context");
+    @Override
+    public boolean detachConsumer(boolean force) {
+        int id = currentConsumerId();
+        if (id < 0) throw new IllegalCallerException("Calling thread is not a registered consumer");
+
+        SCPool myPool = ownSCPool();
+        myPool.setActive(false); // producers stop choosing the pool
+        Runnable handedOff = handoff ? takeHandoff(id) : null;
+        if (handedOff != null) myPool.spawn(handedOff); // keep it in the pool, it passes to the next owner
+        boolean empty = handedOff == null && myPool.isEmpty();
+        if (!empty && !force) {
+            // tasks have arrived meanwhile
+            myPool.setActive(true);
+            return false;
         }
-        // everything alright, actor is registered
-    }
 
-    /**
-     * Inits a unique id for the current thread.
-     *
-     * @param isProducer producer/consumer flag
-     * @return unique id for producer/consumer
-     */
-    private int tryInitId(boolean isProducer) {
-        AtomicInteger count = isProducer ? pCount : cCount;
-        int max = isProducer ? nProducers : nConsumers;
-
-        // init id in a CAS loop
-        int currentCount;
-        do {
-            currentCount = count.get();
-            if (currentCount >= max) {
-                throw new IllegalStateException("Too many " + (isProducer ? "producers" : "consumers"));
-            }
-        } while (!count.compareAndSet(currentCount, currentCount + 1)
-                && !Thread.currentThread().isInterrupted());
+        // tasks, inserted by producers that haven't noticed the flag yet, are stolen by the other consumers
+        releaseConsumer(empty); // its insertions go to the detachedTasks until it attaches again
+        return true;
+    }
 
-        return currentCount;
+    @Override
+    public boolean attachConsumer() {
+        return tryRegisterConsumer();
     }
 }
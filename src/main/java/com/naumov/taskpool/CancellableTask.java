@@ -0,0 +1,27 @@
+package com.naumov.taskpool;
+
+/**
+ * Task, that can be withdrawn from the pool while it is still pending, e.g. a future, that gets cancelled.
+ * On every insertion the pool binds the task to the {@link Slot} it occupies. A cancelled task withdraws itself
+ * from the slot, so that consumers skip it without running it.
+ */
+public interface CancellableTask extends Runnable {
+    /**
+     * Called by the pool before the task is published. Replaces the slot of a previous insertion, if any.
+     *
+     * @param slot the slot, holding the task
+     */
+    void bind(Slot slot);
+
+    /**
+     * Place of a task in the pool.
+     */
+    interface Slot {
+        /**
+         * Removes the task from the pool, unless a consumer has taken it already.
+         *
+         * @return {@code true} if the task has been removed and won't be run
+         */
+        boolean withdraw();
+    }
+}
@@ -0,0 +1,30 @@
+package com.naumov.taskpool;
+
+/**
+ * Part of a single-consumer pool, that the emptiness check of a task pool relies on: a consumer sets its indicator
+ * bit up in every pool, checks the pools for emptiness, and rechecks the bits, that are cleared by every taken task.
+ */
+public interface EmptyIndicatorPool {
+    /**
+     * Lets consumers check the emptiness of the pool. When it is called by a producer
+     * the {@link IllegalCallerException} may be thrown (depends on the implementation).
+     *
+     * @return {@code true} when the pool contained any tasks during this method call interval
+     */
+    boolean isEmpty();
+
+    /**
+     * Sets the empty indicator bit up for the consumer {@code consumerId} in the current pool.
+     *
+     * @param consumerId consumer to set indicator for
+     */
+    void setIndicator(int consumerId);
+
+    /**
+     * Checks if the empty indicator bit for the consumer {@code consumerId} is up in the current pool.
+     *
+     * @param consumerId consumer to check indicator for
+     * @return the empty indicator value
+     */
+    boolean checkIndicator(int consumerId);
+}
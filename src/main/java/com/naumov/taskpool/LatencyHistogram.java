@@ -0,0 +1,122 @@
+package com.naumov.taskpool;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of durations in nanoseconds: every power of two is split into {@code SUB_BUCKETS} linear
+ * buckets, so a recorded value is off by at most 1/{@code SUB_BUCKETS} of itself, in about 4 KB of counters.
+ * <p>
+ * Lock-free, but has a single writer: {@link #record(long)} must be called by one thread only, while any thread
+ * can take a {@link #snapshot()}. A snapshot is not atomic: values recorded concurrently may or may not be counted.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records a duration. Negative values (possible with a non-monotonic clock source) count as zero.
+     *
+     * @param nanos duration
+     */
+    public void record(long nanos) {
+        int idx = bucketOf(Math.max(nanos, 0));
+        counts.lazySet(idx, counts.get(idx) + 1); // single writer, no need to CAS
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) copy[i] = counts.get(i);
+        return new Snapshot(copy);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BUCKET_BITS
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value, that falls into the bucket
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Immutable copy of the histogram counters.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0;
+            for (long count : counts) total += count;
+            this.totalCount = total;
+        }
+
+        public static Snapshot empty() {
+            return new Snapshot(new long[BUCKETS]);
+        }
+
+        /**
+         * @return snapshot, holding the values of both snapshots
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) merged[i] = counts[i] + other.counts[i];
+            return new Snapshot(merged);
+        }
+
+        public long getCount() {
+            return totalCount;
+        }
+
+        /**
+         * @param percentile percentile in range [0, 100]
+         * @return upper bound of the bucket, holding the value at the percentile, or 0 for empty snapshot
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100)
+                throw new IllegalArgumentException("percentile must be in range [0, 100], got " + percentile);
+            if (totalCount == 0) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) return highestValueOf(i);
+            }
+            return getMax();
+        }
+
+        /**
+         * @return upper bound of the highest non-empty bucket, or 0 for empty snapshot
+         */
+        public long getMax() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (counts[i] != 0) return highestValueOf(i);
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "count=" + totalCount +
+                    ", p50=" + getValueAtPercentile(50) +
+                    ", p99=" + getValueAtPercentile(99) +
+                    ", p99.9=" + getValueAtPercentile(99.9) +
+                    ", max=" + getMax() +
+                    '}';
+        }
+    }
+}
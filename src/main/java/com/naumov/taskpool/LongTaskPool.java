@@ -0,0 +1,33 @@
+package com.naumov.taskpool;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Primitive-specialized producer-consumer task pool: an unordered collection of {@code long} payloads
+ * (e.g. record ids), that consumers pass to a handler instead of running {@link Runnable}s.
+ * Inserting and retrieving payloads allocates nothing per task.
+ */
+public interface LongTaskPool {
+    /**
+     * Adds new payload to the pool. The thread that calls this method is considered a <b>producer</b>.
+     * Implementations may throw any kind of {@link RuntimeException} if needed (i.e. for pool management purposes).
+     * @param payload a payload for consumers
+     */
+    void put(long payload);
+
+    /**
+     * Extracts a payload (without any order) from the pool and passes it to the {@code action}.
+     * The thread that calls this method is considered a <b>consumer</b>. Implementations may throw any kind of
+     * {@link RuntimeException} if needed (i.e. for pool management purposes).
+     * @param action handler to pass the payload to
+     * @return {@code false} if the pool was empty during some point in this method execution
+     */
+    boolean get(LongConsumer action);
+
+    /**
+     * Emptiness check that returns {@code true} only when there's no payloads in the pool at some point during
+     * this method execution.
+     * @return {@code false} result of emptiness check
+     */
+    boolean isEmpty();
+}
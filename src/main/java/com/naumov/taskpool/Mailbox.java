@@ -0,0 +1,48 @@
+package com.naumov.taskpool;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serial queue of keyed tasks, inserted into the task pool as a single task. At most one consumer runs
+ * the mailbox at a time, so tasks of the same key run one by one, in the order of insertion.
+ * The mailbox runs a batch of its backlog at once and re-inserts itself if more tasks are left,
+ * letting other mailboxes and tasks through.
+ */
+class Mailbox implements Runnable {
+    static final int MAX_BATCH = 64;
+
+    private final TaskPool taskPool;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // lock-free MPSC in fact
+    private final AtomicBoolean scheduled = new AtomicBoolean(false); // the mailbox is in the pool or running
+
+    Mailbox(TaskPool taskPool) {
+        this.taskPool = taskPool;
+    }
+
+    /**
+     * Adds the task to the mailbox and inserts the mailbox into the pool, unless it's there already.
+     *
+     * @param task keyed task
+     */
+    void add(Runnable task) {
+        tasks.add(task);
+        if (!scheduled.get() && scheduled.compareAndSet(false, true)) taskPool.put(this);
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (int i = 0; i < MAX_BATCH; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) break;
+                task.run();
+            }
+        } finally {
+            // even if a task has failed, the rest of the backlog must not get stuck
+            scheduled.set(false);
+            if (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) taskPool.put(this);
+        }
+    }
+}
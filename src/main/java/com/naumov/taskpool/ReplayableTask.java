@@ -0,0 +1,17 @@
+package com.naumov.taskpool;
+
+import com.naumov.taskpool.durable.DurableTaskPool;
+
+import java.io.Serializable;
+
+/**
+ * Task, that is not {@link Serializable} itself, but wraps one, that is, e.g. a future of a submitted task.
+ * {@link DurableTaskPool} logs the wrapped task and replays it without the wrapper: nobody waits for the future
+ * of the previous run.
+ */
+public interface ReplayableTask extends Runnable {
+    /**
+     * @return serializable task, that does the same work, or {@code null} if the wrapped task is not serializable
+     */
+    Runnable replayable();
+}
@@ -1,9 +1,11 @@
 package com.naumov.taskpool;
 
+import java.util.List;
+
 /**
  * Single-consumer pool abstraction. Only owner of the pool normally can retrieve tasks.
  */
-public interface SCPool {
+public interface SCPool extends EmptyIndicatorPool {
     /**
      * Lets a producer thread try to insert a task to the pool: returns {@code false} if no space is available.
      * When it is called by a consumer, the {@link IllegalCallerException} may be thrown (depends on the implementation).
@@ -18,8 +20,38 @@ public interface SCPool {
      * When it is called by a consumer, the {@link IllegalCallerException} may be thrown (depends on the implementation).
      *
      * @param task task to be inserted
+     * @return result of the insertion: it is {@code false} only when the pool is bounded and reached its capacity
+     */
+    boolean produce(Runnable task);
+
+    /**
+     * Lets a producer thread insert the tasks {@code tasks[from..]} to the pool in bulk, expanding it if
+     * no space is available. When it is called by a consumer, the {@link IllegalCallerException} may be thrown
+     * (depends on the implementation).
+     *
+     * @param tasks tasks to be inserted
+     * @param from  index of the first task to insert
+     * @return number of inserted tasks: less than requested only when the pool is bounded and reached its capacity
+     */
+    int produceAll(List<? extends Runnable> tasks, int from);
+
+    /**
+     * Lets a producer thread discard the oldest of its own pending tasks in the pool (a whole chunk
+     * for chunk-based implementations) to make room for new ones. When it is called by a consumer,
+     * the {@link IllegalCallerException} may be thrown (depends on the implementation).
+     *
+     * @return discarded tasks, empty if the producer has no pending tasks in the pool
      */
-    void produce(Runnable task);
+    List<Runnable> dropOldest();
+
+    /**
+     * Lets the consumer thread, that owns the pool, insert a task into its own pool, i.e. to fork a subtask
+     * from a running task. Spawned tasks can be stolen by other consumers. When it is called by another consumer
+     * or a producer the {@link IllegalCallerException} may be thrown (depends on the implementation).
+     *
+     * @param task task to be inserted
+     */
+    void spawn(Runnable task);
 
     /**
      * Lets the consumer thread, that owns the pool, retrieve a task from it. When it is called by another consumer
@@ -40,25 +72,22 @@ public interface SCPool {
     Runnable steal(SCPool from);
 
     /**
-     * Lets consumers check the emptiness of the pool. When it is called by a producer
-     * the {@link IllegalCallerException} may be thrown (depends on the implementation).
-     *
-     * @return {@code true} when the pool contained any tasks during this method call interval
+     * Lets the consumer thread, that owns the pool, release the memory retained after a burst of tasks
+     * (e.g. spare buffers). Called when the owner finds no tasks, so it must be cheap if there's nothing to release.
+     * When it is called by another consumer or a producer the {@link IllegalCallerException} may be thrown
+     * (depends on the implementation).
      */
-    boolean isEmpty();
+    void trim();
 
     /**
-     * Sets the empty indicator bit up for the consumer {@code consumerId} in the current pool.
-     *
-     * @param consumerId consumer to set indicator for
+     * @return {@code true} if the pool has an owner consumer, producers prefer active pools
      */
-    void setIndicator(int consumerId);
+    boolean isActive();
 
     /**
-     * Checks if the empty indicator bit for the consumer {@code consumerId} is up in the current pool.
+     * Marks the pool as (in)active, called by the task pool, when a consumer takes or gives up the pool.
      *
-     * @param consumerId consumer to check indicator for
-     * @return the empty indicator value
+     * @param active flag
      */
-    boolean checkIndicator(int consumerId);
+    void setActive(boolean active);
 }
@@ -1,16 +1,71 @@
 package com.naumov.taskpool;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Producer-consumer task pool abstraction. Represents an unordered collection of {@link Runnable} items.
  */
 public interface TaskPool {
     /**
-     * Adds new task to the pool. The thread that calls this method is considered a <b>producer</b>.
+     * Adds new task to the pool. The thread that calls this method is considered a <b>producer</b>, unless it is
+     * already registered as a consumer: then the task is spawned into the consumer's own pool (fork-join style).
+     * If the pool is bounded and full, waits for consumers to free some space.
      * Implementations may throw any kind of {@link RuntimeException} if needed (i.e. for pool management purposes).
      * @param task a task, that can be executed
      */
     void put(Runnable task);
 
+    /**
+     * Same as {@link #put(Runnable)}, but routes tasks with the same {@code affinityHint} to the same home consumer,
+     * e.g. tasks working on the same part of a shared structure, to keep it in the cache of one core. The tasks can
+     * still be stolen by other consumers, so the hint gives no ordering or exclusiveness guarantees.
+     * @param task         a task, that can be executed
+     * @param affinityHint any value, tasks with equal hints prefer the same consumer
+     */
+    void put(Runnable task, int affinityHint);
+
+    /**
+     * Adds new keyed task to the pool. Tasks with the same key run one at a time, in the order they were added
+     * by the same thread, while tasks with different keys may run in parallel. Tasks with the same key are kept
+     * in a mailbox, that is added to the pool as a single task, see {@link #put(Runnable)}. Keys are striped over
+     * {@link TaskPoolConfig#withKeyStripes} mailboxes, different keys of one stripe run serially as well.
+     * @param key  key, e.g. an account id
+     * @param task a task, that can be executed
+     */
+    void put(long key, Runnable task);
+
+    /**
+     * Adds all the tasks to the pool, same as {@link #put(Runnable)} for each of them. Producers insert
+     * the tasks in bulk, a chunk at a time where the implementation is chunk-based.
+     * @param tasks tasks, that can be executed
+     */
+    void putAll(List<? extends Runnable> tasks);
+
+    /**
+     * Same as {@link #put(Runnable)}, but never waits.
+     * @param task a task, that can be executed
+     * @return {@code false} if the pool is bounded and full
+     */
+    boolean offer(Runnable task);
+
+    /**
+     * Same as {@link #put(Runnable)}, but waits for free space no longer than the given timeout.
+     * @param task    a task, that can be executed
+     * @param timeout how long to wait
+     * @param unit    unit of the {@code timeout}
+     * @return {@code false} if the pool was still full when the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Lets a producer discard the oldest chunk of its own pending tasks to make room for new ones.
+     * Keyed tasks, see {@link #put(long, Runnable)}, are kept.
+     * @return discarded tasks, empty if the calling producer has no pending tasks, or only keyed ones
+     */
+    List<Runnable> dropOldest();
+
     /**
      * Extracts and returns a task (without any order) from the pool, if it contains any or {@code null} if it is empty.
      * The thread that calls this method is considered a <b>consumer</b>. Implementations may throw any kind of
@@ -26,4 +81,56 @@ public interface TaskPool {
      * @return {@code false} result of emptiness check
      */
     boolean isEmpty();
-}
\ No newline at end of file
+
+    /**
+     * Lets the calling consumer give its SCPool up, e.g. when it retires. Producers stop inserting into the pool,
+     * and whatever they still manage to insert is stolen by the other consumers. The SCPool is picked up by
+     * the next thread, that calls {@link #get()}: a forcibly detached one is picked up first. Until it attaches
+     * again, tasks, inserted by the detached consumer, go to a shared queue, that every consumer polls.
+     * @param force detach even if the pool is not empty (e.g. the consumer is dying), the tasks are left
+     *              to the next owner of the pool
+     * @return {@code true} if the consumer has been detached, {@code false} if its pool is not empty
+     * and {@code force} is not set
+     * @throws IllegalCallerException if the calling thread is not a registered consumer
+     */
+    boolean detachConsumer(boolean force);
+
+    /**
+     * Registers the calling thread as a consumer ahead of its first {@link #get()}, taking an SCPool, given up
+     * by {@link #detachConsumer(boolean)}, first. Unlike {@link #get()}, does not fail when all SCPools are taken.
+     * @return {@code true} if the calling thread is a registered consumer, {@code false} if all SCPools are taken
+     * @throws IllegalCallerException if the calling thread is a registered producer
+     */
+    boolean attachConsumer();
+
+    /**
+     * Tags the calling thread as a producer of the tenant, see {@link TaskPoolConfig#withTenants(int...)}.
+     * Must be called before the first insertion by the thread. Untagged producers belong to tenant 0.
+     * @param tenant tenant id
+     * @throws UnsupportedOperationException if the pool has no tenants and {@code tenant} is not 0
+     */
+    default void joinTenant(int tenant) {
+        if (tenant != 0) throw new UnsupportedOperationException(getClass().getSimpleName() + " has no tenants");
+    }
+
+    /**
+     * @return number of tasks per chunk, the unit of bulk insertion and stealing, 1 for pools without chunks
+     */
+    default int getChunkSize() {
+        return 1;
+    }
+
+    /**
+     * @return settings of the pool
+     */
+    default TaskPoolConfig getConfig() {
+        return TaskPoolConfig.defaults();
+    }
+
+    /**
+     * @return number of tasks, transferred straight to waiting consumers, see {@link TaskPoolConfig#withHandoff}
+     */
+    default long getHandoffCount() {
+        return 0;
+    }
+}
@@ -0,0 +1,239 @@
+package com.naumov.taskpool;
+
+import java.util.Arrays;
+
+/**
+ * Optional task pool settings, shared by the pool and all of its {@link SCPool}s. Instances are immutable:
+ * every {@code with...} method returns a modified copy.
+ */
+public final class TaskPoolConfig {
+    private static final TaskPoolConfig DEFAULTS = new TaskPoolConfig();
+
+    private boolean lifoSlot = false;
+    private int capacity = Integer.MAX_VALUE;
+    private int spareChunksLowWater = Integer.MAX_VALUE;
+    private int spareChunksHighWater = Integer.MAX_VALUE;
+    private int keyStripes = 1024;
+    private boolean tracing = false;
+    private boolean handoff = false;
+    private int[] tenantWeights = null; // null unless tenants are configured
+    private Runnable idleHook = null;
+
+    private TaskPoolConfig() {
+    }
+
+    private TaskPoolConfig(TaskPoolConfig other) {
+        this.lifoSlot = other.lifoSlot;
+        this.capacity = other.capacity;
+        this.spareChunksLowWater = other.spareChunksLowWater;
+        this.spareChunksHighWater = other.spareChunksHighWater;
+        this.keyStripes = other.keyStripes;
+        this.tracing = other.tracing;
+        this.handoff = other.handoff;
+        this.tenantWeights = other.tenantWeights;
+        this.idleHook = other.idleHook;
+    }
+
+    /**
+     * @return config with all optional features disabled
+     */
+    public static TaskPoolConfig defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Enables a "next" slot for tasks, spawned by consumers: the latest spawned task is kept there
+     * and run next by the same consumer, while older ones are published to the stealable spawn chunks.
+     * Other consumers steal the task in the slot only when the pool has no stealable chunks.
+     *
+     * @param lifoSlot flag
+     * @return modified copy
+     */
+    public TaskPoolConfig withLifoSlot(boolean lifoSlot) {
+        TaskPoolConfig copy = new TaskPoolConfig(this);
+        copy.lifoSlot = lifoSlot;
+        return copy;
+    }
+
+    public boolean isLifoSlot() {
+        return lifoSlot;
+    }
+
+    /**
+     * Limits the number of pending tasks per {@link SCPool}. Chunk-based pools account capacity in whole chunks,
+     * so the limit is rounded up to a multiple of the chunk size. Tasks, spawned by consumers, are never rejected,
+     * but take up capacity. Unbounded by default. {@link com.naumov.taskpool.salsa.SalsaTaskPool} requires at least
+     * a chunk per producer, since a partially filled chunk takes up capacity too.
+     *
+     * @param capacity max number of tasks per SCPool
+     * @return modified copy
+     */
+    public TaskPoolConfig withCapacity(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be a positive number, got " + capacity);
+        TaskPoolConfig copy = new TaskPoolConfig(this);
+        copy.capacity = capacity;
+        return copy;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isBounded() {
+        return capacity != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Limits the number of spare (recycled) chunks, kept by a chunk-based {@link SCPool} for future insertions.
+     * A retired chunk is not recycled while the pool holds {@code highWater} spare chunks or more,
+     * and an idle owner consumer trims the spare chunks down to {@code lowWater}. Unlimited by default.
+     *
+     * @param lowWater  number of spare chunks to keep after trimming
+     * @param highWater max number of spare chunks
+     * @return modified copy
+     */
+    public TaskPoolConfig withSpareChunks(int lowWater, int highWater) {
+        if (lowWater < 0 || highWater < lowWater)
+            throw new IllegalArgumentException("Expected 0 <= lowWater <= highWater, got lowWater=" + lowWater
+                    + ", highWater=" + highWater);
+        TaskPoolConfig copy = new TaskPoolConfig(this);
+        copy.spareChunksLowWater = lowWater;
+        copy.spareChunksHighWater = highWater;
+        return copy;
+    }
+
+    public int getSpareChunksLowWater() {
+        return spareChunksLowWater;
+    }
+
+    public int getSpareChunksHighWater() {
+        return spareChunksHighWater;
+    }
+
+    /**
+     * Sets the number of mailboxes for keyed tasks, see {@link TaskPool#put(long, Runnable)}. Keys are hashed
+     * to mailboxes, so different keys, sharing a mailbox, run serially too. 1024 by default.
+     *
+     * @param keyStripes number of mailboxes, a power of two
+     * @return modified copy
+     */
+    public TaskPoolConfig withKeyStripes(int keyStripes) {
+        if (keyStripes < 1 || Integer.bitCount(keyStripes) != 1)
+            throw new IllegalArgumentException("keyStripes must be a positive power of two, got " + keyStripes);
+        TaskPoolConfig copy = new TaskPoolConfig(this);
+        copy.keyStripes = keyStripes;
+        return copy;
+    }
+
+    public int getKeyStripes() {
+        return keyStripes;
+    }
+
+    /**
+     * Enables queueing delay tracing: chunk-based pools stamp every inserted task with {@link System#nanoTime()}
+     * and record the time it spent in the pool into per-consumer {@link LatencyHistogram}s, separately for
+     * the tasks taken locally and stolen. Costs a clock read per insertion and per retrieval. Disabled by default.
+     *
+     * @param tracing flag
+     * @return modified copy
+     */
+    public TaskPoolConfig withTracing(boolean tracing) {
+        TaskPoolConfig copy = new TaskPoolConfig(this);
+        copy.tracing = tracing;
+        return copy;
+    }
+
+    public boolean isTracing() {
+        return tracing;
+    }
+
+    /**
+     * Enables direct handoff: a consumer, that has found the pool empty, advertises itself in its waiter slot
+     * of the pool (one per consumer id, next to the SCPools), and a producer transfers the next task straight into
+     * the slot instead of inserting it into a chunk, and unparks the consumer, if it is parked on backoff. Tasks are
+     * inserted into chunks only when nobody is waiting. Cuts the dispatch latency at low load, costs a read of
+     * the waiter counter per insertion at high load. Handed off tasks are not traced.
+     * Disabled by default.
+     *
+     * @param handoff flag
+     * @return modified copy
+     */
+    public TaskPoolConfig withHandoff(boolean handoff) {
+        TaskPoolConfig copy = new TaskPoolConfig(this);
+        copy.handoff = handoff;
+        return copy;
+    }
+
+    public boolean isHandoff() {
+        return handoff;
+    }
+
+    /**
+     * Enables weighted fair share among tenants: producers are tagged with a tenant
+     * (see {@link TaskPool#joinTenant(int)}, untagged producers belong to tenant 0), and an owner consumer
+     * takes chunks of different tenants by deficit round-robin, {@code weights[tenant]} chunks of a tenant per round.
+     * A tenant, flooding the pool, can't delay the others by more than a round. Chunk-based pools also count
+     * inserted and taken tasks per tenant. Disabled by default: chunks are taken round-robin among producers.
+     *
+     * @param weights positive weight of every tenant, tenant ids are the indices
+     * @return modified copy
+     */
+    public TaskPoolConfig withTenants(int... weights) {
+        if (weights.length < 1) throw new IllegalArgumentException("at least one tenant weight is expected");
+        for (int weight : weights) {
+            if (weight < 1) throw new IllegalArgumentException("weights must be positive numbers, got " + weight);
+        }
+        TaskPoolConfig copy = new TaskPoolConfig(this);
+        copy.tenantWeights = weights.clone();
+        return copy;
+    }
+
+    /**
+     * @return weights of the tenants or {@code null} if tenants are not configured
+     */
+    public int[] getTenantWeights() {
+        return tenantWeights != null ? tenantWeights.clone() : null;
+    }
+
+    /**
+     * @return number of tenants, 1 if tenants are not configured
+     */
+    public int getTenantCount() {
+        return tenantWeights != null ? tenantWeights.length : 1;
+    }
+
+    /**
+     * Sets the action, a consumer of an executor over the pool runs every time it finds the pool empty,
+     * e.g. to flush its buffered output. Not set by default.
+     *
+     * @param idleHook action, run in the consumer thread, or {@code null}
+     * @return modified copy
+     */
+    public TaskPoolConfig withIdleHook(Runnable idleHook) {
+        TaskPoolConfig copy = new TaskPoolConfig(this);
+        copy.idleHook = idleHook;
+        return copy;
+    }
+
+    /**
+     * @return idle action of the consumers or {@code null} if not set
+     */
+    public Runnable getIdleHook() {
+        return idleHook;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskPoolConfig{" +
+                "lifoSlot=" + lifoSlot +
+                ", capacity=" + capacity +
+                ", spareChunksLowWater=" + spareChunksLowWater +
+                ", spareChunksHighWater=" + spareChunksHighWater +
+                ", keyStripes=" + keyStripes +
+                ", tracing=" + tracing +
+                ", handoff=" + handoff +
+                ", tenantWeights=" + Arrays.toString(tenantWeights) +
+                ", idleHook=" + idleHook +
+                '}';
+    }
+}
@@ -0,0 +1,26 @@
+package com.naumov.taskpool.durable;
+
+/**
+ * How hard {@link DurableTaskPool} tries to keep the logged tasks over a crash. Levels are ordered from the cheapest
+ * to the safest.
+ */
+public enum Durability {
+    /**
+     * Nothing is logged, the pool behaves like its delegate.
+     */
+    NONE,
+    /**
+     * Tasks are written to the memory-mapped log, the OS writes the pages back when it decides to. Survives a process
+     * crash, but not a power loss.
+     */
+    ASYNC,
+    /**
+     * Group commit: the log is forced to the storage every time a producer has appended a whole chunk of tasks.
+     * A power loss can lose the tail of a chunk, that is not full yet, unless {@link DurableTaskPool#sync()} is called.
+     */
+    CHUNK,
+    /**
+     * The log is forced to the storage after every task.
+     */
+    TASK
+}
@@ -0,0 +1,346 @@
+package com.naumov.taskpool.durable;
+
+import com.naumov.taskpool.ReplayableTask;
+import com.naumov.taskpool.TaskPool;
+import com.naumov.taskpool.TaskPoolConfig;
+
+import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link TaskPool} decorator, that logs the tasks of producers to memory-mapped files, so that the tasks, left
+ * unfinished by a crash or a restart, can be run again by the next instance over the same directory,
+ * see {@link #recover()}. Every producer appends to its own log segment, so producers never contend
+ * for the log, and with {@link Durability#CHUNK} forces it once per chunk of tasks (group commit).
+ * A consumer marks the record of a task done after the task has run (or failed), without forcing.
+ * <p>
+ * Logged tasks must be {@link Serializable}, or {@link ReplayableTask}s, that wrap serializable ones.
+ * Tasks, put by consumers (subtasks), are not logged. Delivery is at-least-once: a task, that has finished
+ * right before a crash, may be replayed, so tasks should be idempotent. Replayed tasks are deserialized
+ * through an {@link ObjectInputFilter}, since the log directory is as trusted as the classes it may name.
+ */
+public class DurableTaskPool implements TaskPool {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int MAX_GRAPH_DEPTH = 64;
+
+    private final TaskPool delegate;
+    private final Path dir;
+    private final Durability durability;
+    private final int chunkSize;
+    private final int segmentBytes;
+    private final AtomicLong nextSegmentId;
+    private final List<Path> previousSegments; // left by the previous run, in the order of creation
+    private final ObjectInputFilter classFilter; // null for the JVM-wide one
+
+    private final ThreadLocal<ProducerLog> producerLogTL = ThreadLocal.withInitial(() -> null);
+    private final ThreadLocal<Boolean> consumerTL = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * @param delegate     pool, that holds and distributes the tasks
+     * @param dir          directory for the log segments, shared with the previous runs
+     * @param durability   durability level
+     * @param chunkSize    tasks per group commit, the chunk size of the {@code delegate} is a good choice
+     * @param segmentBytes size of a log segment file
+     */
+    public DurableTaskPool(TaskPool delegate, Path dir, Durability durability, int chunkSize, int segmentBytes) {
+        this(delegate, dir, durability, chunkSize, segmentBytes, null);
+    }
+
+    /**
+     * @param classFilter decides on the classes of the replayed tasks, {@code null} for the JVM-wide filter
+     *                    ({@code jdk.serialFilter}); graphs, deeper than {@code MAX_GRAPH_DEPTH} or larger than
+     *                    a segment, are rejected anyway
+     * @see #DurableTaskPool(TaskPool, Path, Durability, int, int)
+     */
+    public DurableTaskPool(TaskPool delegate, Path dir, Durability durability, int chunkSize, int segmentBytes,
+                           ObjectInputFilter classFilter) {
+        if (delegate == null || dir == null || durability == null) throw new NullPointerException();
+        if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be a positive number, got " + chunkSize);
+        if (LogSegment.maxPayload(segmentBytes) < 1)
+            throw new IllegalArgumentException("segmentBytes is too small, got " + segmentBytes);
+
+        this.delegate = delegate;
+        this.dir = dir;
+        this.durability = durability;
+        this.chunkSize = chunkSize;
+        this.segmentBytes = segmentBytes;
+        this.classFilter = classFilter;
+
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't create log directory " + dir, e);
+        }
+        this.previousSegments = listSegments(dir);
+        long lastId = previousSegments.isEmpty() ? -1 : segmentId(previousSegments.get(previousSegments.size() - 1));
+        this.nextSegmentId = new AtomicLong(lastId + 1);
+    }
+
+    /**
+     * Puts the unfinished tasks of the previous run into the pool. The calling thread becomes a producer
+     * (the tasks are logged again) and should be called before the consumers start, if the order matters.
+     * The segments of the previous run are deleted only after the tasks are logged with the current
+     * {@code durability}, so a crash during the recovery loses nothing. A torn record, left by a crash
+     * in the middle of an append, ends its segment.
+     *
+     * @return number of replayed tasks
+     * @throws IllegalStateException if a logged task can't be deserialized, e.g. its class is rejected
+     * by the filter
+     */
+    public int recover() {
+        int replayed = 0;
+        for (Path segment : previousSegments) {
+            for (byte[] bytes : LogSegment.readPending(segment)) {
+                put(deserialize(bytes));
+                replayed++;
+            }
+        }
+
+        sync();
+        for (Path segment : previousSegments) {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't delete replayed log segment " + segment, e);
+            }
+        }
+        previousSegments.clear();
+        return replayed;
+    }
+
+    /**
+     * Forces the log segment of the calling producer to the storage, e.g. to commit the tail of a chunk
+     * with {@link Durability#CHUNK}. No-op for {@link Durability#NONE} or a thread, that has logged nothing.
+     */
+    public void sync() {
+        ProducerLog log = producerLogTL.get();
+        if (log != null && log.segment != null) {
+            log.segment.force();
+            log.sinceForce = 0;
+        }
+    }
+
+    @Override
+    public void put(Runnable task) {
+        delegate.put(log(task));
+    }
+
+    @Override
+    public void put(Runnable task, int affinityHint) {
+        delegate.put(log(task), affinityHint);
+    }
+
+    @Override
+    public void put(long key, Runnable task) {
+        delegate.put(key, log(task));
+    }
+
+    @Override
+    public void putAll(List<? extends Runnable> tasks) {
+        List<Runnable> logged = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) logged.add(log(task));
+        delegate.putAll(logged);
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        Runnable logged = log(task);
+        if (delegate.offer(logged)) return true;
+        discard(logged); // rejected, must not be replayed
+        return false;
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        Runnable logged = log(task);
+        try {
+            if (delegate.offer(logged, timeout, unit)) return true;
+        } catch (InterruptedException e) {
+            discard(logged);
+            throw e;
+        }
+        discard(logged);
+        return false;
+    }
+
+    @Override
+    public List<Runnable> dropOldest() {
+        List<Runnable> dropped = delegate.dropOldest();
+        List<Runnable> unwrapped = new ArrayList<>(dropped.size());
+        for (Runnable task : dropped) unwrapped.add(discard(task));
+        return unwrapped;
+    }
+
+    @Override
+    public Runnable get() {
+        if (!consumerTL.get()) consumerTL.set(true);
+        return delegate.get(); // a logged task marks itself done when run
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public boolean detachConsumer(boolean force) {
+        return delegate.detachConsumer(force);
+    }
+
+    @Override
+    public boolean attachConsumer() {
+        return delegate.attachConsumer();
+    }
+
+    @Override
+    public void joinTenant(int tenant) {
+        delegate.joinTenant(tenant);
+    }
+
+    @Override
+    public int getChunkSize() {
+        return delegate.getChunkSize();
+    }
+
+    @Override
+    public TaskPoolConfig getConfig() {
+        return delegate.getConfig();
+    }
+
+    @Override
+    public long getHandoffCount() {
+        return delegate.getHandoffCount();
+    }
+
+    /**
+     * Appends the task to the log of the calling producer.
+     *
+     * @param task a task
+     * @return task, that marks its record done after running, or the task itself if it is not logged
+     */
+    private Runnable log(Runnable task) {
+        if (task == null) throw new NullPointerException();
+        if (durability == Durability.NONE || consumerTL.get()) return task;
+        Runnable replayable = task instanceof ReplayableTask ? ((ReplayableTask) task).replayable() : task;
+        if (!(replayable instanceof Serializable))
+            throw new IllegalArgumentException("Durable tasks must be Serializable, got " + task.getClass().getName());
+
+        byte[] bytes = serialize(replayable);
+        if (bytes.length > LogSegment.maxPayload(segmentBytes))
+            throw new IllegalArgumentException("Serialized task of " + bytes.length
+                    + " bytes doesn't fit into a log segment of " + segmentBytes + " bytes");
+
+        ProducerLog log = producerLogTL.get();
+        if (log == null) {
+            log = new ProducerLog();
+            producerLogTL.set(log);
+        }
+
+        int offset = log.segment != null ? log.segment.append(bytes) : -1;
+        if (offset == -1) {
+            // the segment is full, roll over to a new one
+            if (log.segment != null) {
+                if (durability != Durability.ASYNC) log.segment.force();
+                log.segment.seal();
+            }
+            log.segment = LogSegment.create(dir.resolve(SEGMENT_PREFIX + nextSegmentId.getAndIncrement()
+                    + SEGMENT_SUFFIX), segmentBytes);
+            log.sinceForce = 0;
+            offset = log.segment.append(bytes);
+        }
+
+        if (durability == Durability.TASK || (durability == Durability.CHUNK && ++log.sinceForce == chunkSize)) {
+            log.segment.force();
+            log.sinceForce = 0;
+        }
+        return new LoggedTask(task, log.segment, offset);
+    }
+
+    private static Runnable discard(Runnable task) {
+        if (!(task instanceof LoggedTask)) return task;
+        LoggedTask logged = (LoggedTask) task;
+        logged.segment.markDone(logged.offset);
+        return logged.task;
+    }
+
+    private static byte[] serialize(Runnable task) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(task);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't serialize task " + task, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Runnable deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            in.setObjectInputFilter(this::checkInput);
+            return (Runnable) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Couldn't deserialize logged task", e);
+        }
+    }
+
+    /**
+     * A filter of a stream replaces the JVM-wide one, so the latter is consulted explicitly.
+     */
+    private ObjectInputFilter.Status checkInput(ObjectInputFilter.FilterInfo info) {
+        if (info.depth() > MAX_GRAPH_DEPTH || info.streamBytes() > segmentBytes || info.arrayLength() > segmentBytes)
+            return ObjectInputFilter.Status.REJECTED;
+        ObjectInputFilter filter = classFilter != null ? classFilter : ObjectInputFilter.Config.getSerialFilter();
+        return filter != null ? filter.checkInput(info) : ObjectInputFilter.Status.UNDECIDED;
+    }
+
+    private static List<Path> listSegments(Path dir) {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) segments.add(segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't list log directory " + dir, e);
+        }
+        segments.sort((a, b) -> Long.compare(segmentId(a), segmentId(b)));
+        return segments;
+    }
+
+    private static long segmentId(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Log state of a producer thread.
+     */
+    private static class ProducerLog {
+        private LogSegment segment;
+        private int sinceForce = 0; // tasks appended since the last force
+    }
+
+    private static class LoggedTask implements Runnable {
+        private final Runnable task;
+        private final LogSegment segment;
+        private final int offset;
+
+        private LoggedTask(Runnable task, LogSegment segment, int offset) {
+            this.task = task;
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                segment.markDone(offset); // a failed task is not replayed either
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.naumov.taskpool.durable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped append log file of a single producer. Layout: a header ({@code MAGIC}), then records of
+ * {@code [state: byte][length: int][CRC32 of the task: int][serialized task: length bytes]}, then zeros.
+ * A record is appended with the state written last, but the pages of a mapped file reach the storage in any
+ * order, so the state of a record may survive a crash without its task: a record, that fails its checksum,
+ * reads as the end of the log. Consumers overwrite the state of a finished record with {@code DONE}.
+ * <p>
+ * Appends are done by the owner producer only, {@link #markDone(int)} by any thread. Once the segment is sealed
+ * and all its records are done, the file is deleted.
+ */
+final class LogSegment {
+    private static final int MAGIC = 0x53414c53;
+    private static final int HEADER_BYTES = Integer.BYTES;
+    private static final int RECORD_HEADER_BYTES = 1 + Integer.BYTES + Integer.BYTES;
+    private static final byte EMPTY = 0;
+    private static final byte PENDING = 1;
+    private static final byte DONE = 2;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer appendView; // position is the append offset, used by the producer only
+    private int appended = 0; // producer only
+    private volatile int sealedCount = -1; // number of records once sealed
+    private final AtomicInteger doneCount = new AtomicInteger(0);
+    private final AtomicBoolean deleted = new AtomicBoolean(false);
+
+    private LogSegment(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        this.appendView = buffer.duplicate();
+        this.appendView.position(HEADER_BYTES);
+    }
+
+    /**
+     * Creates a new segment file of the given size.
+     */
+    static LogSegment create(Path path, int segmentBytes) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            buffer.putInt(0, MAGIC);
+            return new LogSegment(path, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't create log segment " + path, e);
+        }
+    }
+
+    /**
+     * Reads the records, that have not been marked done, from a segment of the previous run, up to the first
+     * torn one.
+     *
+     * @return serialized tasks in the order of appending
+     */
+    static List<byte[]> readPending(Path path) {
+        List<byte[]> pending = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+                throw new IllegalStateException(path + " is not a log segment");
+
+            int offset = HEADER_BYTES;
+            while (offset + RECORD_HEADER_BYTES <= buffer.limit()) {
+                byte state = buffer.get(offset);
+                if (state == EMPTY) break; // end of the log
+                int length = buffer.getInt(offset + 1);
+                int payload = offset + RECORD_HEADER_BYTES;
+                if (length < 0 || payload + length > buffer.limit()) break; // torn record
+
+                byte[] bytes = new byte[length];
+                ByteBuffer view = buffer.duplicate();
+                view.position(payload);
+                view.get(bytes);
+                if (checksum(bytes) != buffer.getInt(offset + 1 + Integer.BYTES)) break; // torn record
+
+                if (state == PENDING) pending.add(bytes);
+                offset = payload + length;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read log segment " + path, e);
+        }
+        return pending;
+    }
+
+    /**
+     * @return largest serialized task, that fits into an empty segment of the given size
+     */
+    static int maxPayload(int segmentBytes) {
+        return segmentBytes - HEADER_BYTES - RECORD_HEADER_BYTES;
+    }
+
+    /**
+     * Appends a record. Called by the owner producer only.
+     *
+     * @param payload serialized task
+     * @return offset of the record, or -1 if the segment has no room for it
+     */
+    int append(byte[] payload) {
+        int offset = appendView.position();
+        if (RECORD_HEADER_BYTES + payload.length > appendView.remaining()) return -1;
+
+        appendView.position(offset + 1);
+        appendView.putInt(payload.length);
+        appendView.putInt(checksum(payload));
+        appendView.put(payload);
+        buffer.put(offset, PENDING); // <-- commit
+        appended++;
+        return offset;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Marks the record as finished, so that it is not replayed. The mark is not forced to the storage:
+     * after a power loss a finished task may be replayed.
+     *
+     * @param offset offset of the record
+     */
+    void markDone(int offset) {
+        buffer.put(offset, DONE);
+        int done = doneCount.incrementAndGet();
+        if (done == sealedCount) delete();
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Stops appending to the segment. Called by the owner producer only.
+     */
+    void seal() {
+        sealedCount = appended;
+        if (doneCount.get() == appended) delete();
+    }
+
+    private void delete() {
+        if (!deleted.compareAndSet(false, true)) return;
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // all the records are done, a left over file is just skipped by the recovery
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LogSegment{" +
+                "path=" + path +
+                ", sealedCount=" + sealedCount +
+                ", doneCount=" + doneCount +
+                '}';
+    }
+}
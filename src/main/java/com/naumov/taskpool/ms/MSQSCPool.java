@@ -1,36 +1,96 @@
 package com.naumov.taskpool.ms;
 
+import com.naumov.taskpool.CancellableTask;
 import com.naumov.taskpool.SCPool;
+
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MSQSCPool implements SCPool {
 
     // unmodifiable shared state
     private final ConcurrentLinkedQueue<Runnable> container = new ConcurrentLinkedQueue<>();
     private final int nConsumers;
+    private final int capacity; // Integer.MAX_VALUE for unbounded pool
 
     // shared state
     private final AtomicIntegerArray emptyIndicators; // shared among all consumers
+    private final AtomicInteger size = new AtomicInteger(0); // only tracked for bounded pool
+    private volatile boolean active = false;
 
     public MSQSCPool(int nConsumers) {
+        this(nConsumers, Integer.MAX_VALUE);
+    }
+
+    public MSQSCPool(int nConsumers, int capacity) {
         this.nConsumers = nConsumers;
+        this.capacity = capacity;
         this.emptyIndicators = new AtomicIntegerArray(nConsumers);
     }
 
     @Override
     public boolean tryProduce(Runnable task) {
-        return container.add(task);
+        return produce(task);
+    }
+
+    @Override
+    public boolean produce(Runnable task) {
+        if (capacity != Integer.MAX_VALUE) {
+            int current;
+            do {
+                current = size.get();
+                if (current >= capacity) return false;
+            } while (!size.compareAndSet(current, current + 1));
+        }
+        return container.add(wrap(task));
     }
 
     @Override
-    public void produce(Runnable task) {
-        container.add(task);
+    public int produceAll(List<? extends Runnable> tasks, int from) {
+        for (int i = from; i < tasks.size(); i++) {
+            if (!produce(tasks.get(i))) return i - from;
+        }
+        return tasks.size() - from;
+    }
+
+    @Override
+    public List<Runnable> dropOldest() {
+        Runnable r = consume();
+        return r != null ? Collections.singletonList(r) : Collections.emptyList();
+    }
+
+    @Override
+    public void spawn(Runnable task) {
+        if (capacity != Integer.MAX_VALUE) size.incrementAndGet();
+        container.add(wrap(task));
+    }
+
+    /**
+     * Wraps a {@link CancellableTask}, so that it can withdraw itself from the queue in O(1).
+     */
+    private Runnable wrap(Runnable task) {
+        if (!(task instanceof CancellableTask)) return task;
+
+        CancellableMSQTask wrapper = new CancellableMSQTask(task);
+        ((CancellableTask) task).bind(wrapper);
+        return wrapper;
     }
 
     @Override
     public Runnable consume() {
-        Runnable r = container.poll();
+        Runnable r;
+        while ((r = container.poll()) != null) {
+            if (r instanceof CancellableMSQTask) {
+                r = ((CancellableMSQTask) r).take();
+                if (r == null) continue; // withdrawn, already uncounted
+            }
+            if (capacity != Integer.MAX_VALUE) size.decrementAndGet();
+            break;
+        }
         if (container.isEmpty()) clearIndicators();
         return r;
     }
@@ -40,6 +100,11 @@ public class MSQSCPool implements SCPool {
         return from.consume();
     }
 
+    @Override
+    public void trim() {
+        // intentionally left blank: queue nodes are released as soon as tasks are consumed
+    }
+
     @Override
     public boolean isEmpty() {
         return container.isEmpty();
@@ -55,9 +120,52 @@ public class MSQSCPool implements SCPool {
         return emptyIndicators.get(consumerId) == 1;
     }
 
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
     private void clearIndicators() {
         for (int i = 0; i < nConsumers; i++) {
             emptyIndicators.set(i, 0);
         }
     }
+
+    /**
+     * Queue node of a {@link CancellableTask}. Withdrawal clears the task in place by CAS, exactly like a consumer,
+     * so either the consumer or the cancellation wins. The emptied node stays in the queue until a consumer
+     * polls it, instead of a linear {@link ConcurrentLinkedQueue#remove} on every cancellation.
+     */
+    private class CancellableMSQTask implements Runnable, CancellableTask.Slot {
+        private final AtomicReference<Runnable> task;
+
+        private CancellableMSQTask(Runnable task) {
+            this.task = new AtomicReference<>(task);
+        }
+
+        /**
+         * @return the task, or {@code null} if it has been withdrawn
+         */
+        private Runnable take() {
+            return task.getAndSet(null);
+        }
+
+        @Override
+        public boolean withdraw() {
+            if (task.getAndSet(null) == null) return false; // taken already
+            if (capacity != Integer.MAX_VALUE) size.decrementAndGet();
+            return true;
+        }
+
+        @Override
+        public void run() {
+            Runnable r = take();
+            if (r != null) r.run();
+        }
+    }
 }
@@ -2,6 +2,7 @@ package com.naumov.taskpool.ms;
 
 import com.naumov.taskpool.AbstractTaskPool;
 import com.naumov.taskpool.SCPool;
+import com.naumov.taskpool.TaskPoolConfig;
 
 public class MSQTaskPool extends AbstractTaskPool {
 
@@ -9,9 +10,19 @@ public class MSQTaskPool extends AbstractTaskPool {
         super(nProducers, nConsumers, 0, 0);
     }
 
+    public MSQTaskPool(int nProducers, int nConsumers, TaskPoolConfig config) {
+        super(nProducers, nConsumers, 0, 0, config);
+    }
+
+    @Override
+    protected SCPool newSCPool(int consumerId, int nProducers, int nConsumers, int chunkSize, int cleanupCycles,
+                               TaskPoolConfig config) {
+        return new MSQSCPool(nConsumers, config.getCapacity());
+    }
+
     @Override
-    protected SCPool newSCPool(int consumerId, int nProducers, int nConsumers, int chunkSize, int cleanupCycles) {
-        return new MSQSCPool(nConsumers);
+    public int getChunkSize() {
+        return 1; // no chunks
     }
 
     @Override
@@ -23,4 +34,9 @@ public class MSQTaskPool extends AbstractTaskPool {
     protected void regCurrentThreadAsOwner(SCPool scPool, int consumerId) {
         // intentionally left blank
     }
+
+    @Override
+    protected void unregCurrentThreadAsOwner(SCPool scPool) {
+        // intentionally left blank
+    }
 }
@@ -0,0 +1,34 @@
+package com.naumov.taskpool.salsa;
+
+import java.util.concurrent.atomic.AtomicStampedReference;
+
+/**
+ * Part of a chunk, shared by {@link Chunk} and {@link LongChunk}: the size and the stamped owner, that
+ * the stealing protocol of {@link SalsaSCPool} and {@link LongSalsaSCPool} synchronizes on.
+ */
+public abstract class AbstractChunk {
+    protected final int chunkSize;
+    /*
+     * Owner is stamped to prevent ABA during steal-back.
+     * Allows only values from constant pool: [-128, 127] since boxed Integers
+     * are compared by reference. Initial stamp is 0.
+     */
+    protected final AtomicStampedReference<Integer> owner;
+
+    protected AbstractChunk(int chunkSize, int owner) {
+        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be a positive number");
+        if (owner < Byte.MIN_VALUE || owner > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("Only byte values are allowed for owner field: [-128, 127].");
+
+        this.chunkSize = chunkSize;
+        this.owner = new AtomicStampedReference<>(owner, 0);
+    }
+
+    public AtomicStampedReference<Integer> getOwner() {
+        return owner;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+}
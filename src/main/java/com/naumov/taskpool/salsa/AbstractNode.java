@@ -0,0 +1,86 @@
+package com.naumov.taskpool.salsa;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Represents a chunk wrapper with field {@code idx}, which points to the last taken (or about to be taken) slot
+ * of the {@code chunk}, shared by {@link Node} and {@link LongNode}. Must not override {@link Object#equals(Object)}
+ * and {@link Object#hashCode()} methods since reference comparison is used for deletion from its containers.
+ * <p>
+ * Fields are accessed through {@link VarHandle}s: a node is published by the release write of the list, that holds
+ * it, so initial values are plain writes. Only the owner's {@link #setIdx(int)} is a volatile write, since
+ * the owner must announce the index before re-reading the chunk owner (see {@code SalsaSCPool.takeTask}).
+ *
+ * @param <C> chunk type
+ */
+public abstract class AbstractNode<C extends AbstractChunk> {
+    private static final VarHandle IDX;
+    private static final VarHandle CHUNK;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            IDX = lookup.findVarHandle(AbstractNode.class, "idx", int.class);
+            CHUNK = lookup.findVarHandle(AbstractNode.class, "chunk", AbstractChunk.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /*
+     * Index of the last taken slot in the chunk. Needed to sync consumers during stealing. Initialized by the thread
+     * that created the node (producer/stealer), modified only by the owner of the containing SCPool (consumer)
+     */
+    private int idx = -1;
+    private C chunk;
+
+    protected AbstractNode(C chunk) {
+        this.chunk = chunk;
+    }
+
+    /**
+     * Copying constructor with the given index, for the node not published yet. Copying is not atomic.
+     *
+     * @param other node to copy
+     * @param idx   index of the last taken slot
+     */
+    protected AbstractNode(AbstractNode<C> other, int idx) {
+        if (other == null) throw new IllegalArgumentException(getClass().getSimpleName() +
+                " copying constructor called with null argument");
+
+        this.chunk = other.getChunk(); // Copy reference, otherwise chunk can be lost during stealing
+        this.idx = idx;
+    }
+
+    @SuppressWarnings("unchecked")
+    public C getChunk() {
+        return (C) CHUNK.getAcquire(this);
+    }
+
+    /**
+     * Release write: readers, that see the new chunk (or {@code null}), see everything written before.
+     */
+    public void setChunk(C chunk) {
+        CHUNK.setRelease(this, chunk);
+    }
+
+    public int getIdx() {
+        return (int) IDX.getVolatile(this);
+    }
+
+    /**
+     * Volatile write, ordered before the following reads. Used by the owner to announce the slot it is going to take.
+     */
+    public void setIdx(int idx) {
+        IDX.setVolatile(this, idx);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+                "chunk=" + getChunk() +
+                ", idx=" + getIdx() +
+                '}';
+    }
+}
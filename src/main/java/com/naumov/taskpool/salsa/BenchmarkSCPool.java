@@ -0,0 +1,196 @@
+package com.naumov.taskpool.salsa;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// SalsaSCPool building blocks in isolation, without executor, futures and thread handoff: every benchmark thread
+// gets its own pools and is their producer and owner. Contention comes from background stealers, that keep stealing
+// from the pools of the benchmark thread. Scores are per task (per list node, per CAS).
+// Run with -prof gc to watch allocation per operation.
+// $ java -jar target/benchmarks.jar BenchmarkSCPool -w 2s -wi 5 -r 2s -i 5 -t 1 -f 1 -prof gc
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.Throughput)
+public class BenchmarkSCPool {
+    private static final int BATCH = 1024; // tasks per invocation
+    private static final int LIST_SIZE = 16; // nodes in the iterated list
+    private static final Runnable TASK = () -> {
+    };
+    private static final Predicate<Node> DEAD_NODE = aNode -> aNode.getChunk() == null;
+
+    @State(Scope.Thread)
+    public static class PoolWrapper {
+        @Param({"100", "1000"})
+        public int chunkSize;
+
+        @Param({"1", "2147483647"})
+        public int cleanupCycles;
+
+        @Param({"1", "16"})
+        public int nProducers;
+
+        @Param({"0", "2"})
+        public int stealers; // contention level
+
+        SalsaSCPool pool; // the benchmark thread is its producer and owner
+        SalsaSCPool victim; // the benchmark thread is its producer, nobody consumes it, only steals
+        SalsaSCPool thief; // the benchmark thread is its owner
+        SWMRLinkedListImpl<Node> addedList;
+        SWMRLinkedListImpl<Node> iteratedList;
+        Node lastAdded;
+        Chunk chunk;
+
+        final List<Thread> stealerThreads = new ArrayList<>();
+        volatile boolean running = true;
+
+        @Setup(Level.Trial)
+        public void up() {
+            int nConsumers = 3 + stealers;
+            pool = new SalsaSCPool(0, nProducers, nConsumers, chunkSize, cleanupCycles);
+            thief = new SalsaSCPool(1, nProducers, nConsumers, chunkSize, cleanupCycles);
+            victim = new SalsaSCPool(2, nProducers, nConsumers, chunkSize, cleanupCycles);
+
+            // the other producers are idle, but their chunk lists are scanned
+            pool.registerCurrentThreadAsProducer(nProducers - 1);
+            pool.registerCurrentThreadAsOwner();
+            victim.registerCurrentThreadAsProducer(nProducers - 1);
+            thief.registerCurrentThreadAsOwner();
+
+            chunk = new Chunk(chunkSize, 0);
+            addedList = new SWMRLinkedListImpl<>(cleanupCycles);
+            lastAdded = new Node(chunk);
+            addedList.add(lastAdded);
+            iteratedList = new SWMRLinkedListImpl<>(cleanupCycles);
+            for (int i = 0; i < LIST_SIZE; i++) iteratedList.add(new Node(chunk));
+
+            for (int i = 0; i < stealers; i++) {
+                SalsaSCPool own = new SalsaSCPool(3 + i, nProducers, nConsumers, chunkSize, cleanupCycles);
+                Thread stealer = new Thread(() -> steal(own), "stealer-" + i);
+                stealer.setDaemon(true);
+                stealerThreads.add(stealer);
+                stealer.start();
+            }
+        }
+
+        private void steal(SalsaSCPool own) {
+            own.registerCurrentThreadAsOwner();
+            while (running) {
+                Runnable task = own.steal(pool);
+                if (task == null) task = own.steal(victim);
+                if (task == null) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+
+                do {
+                    task.run();
+                } while ((task = own.consume()) != null);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void down() throws InterruptedException {
+            running = false;
+            for (Thread stealer : stealerThreads) stealer.join();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void produceConsume(PoolWrapper w, Blackhole bh) {
+        final SalsaSCPool pool = w.pool;
+        for (int i = 0; i < BATCH; i++) {
+            pool.produce(TASK);
+        }
+
+        Runnable task;
+        while ((task = pool.consume()) != null) bh.consume(task); // stealers may have taken some
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void tryProduceConsume(PoolWrapper w, Blackhole bh) {
+        final SalsaSCPool pool = w.pool;
+        for (int i = 0; i < BATCH; i++) {
+            if (!pool.tryProduce(TASK)) pool.produce(TASK); // out of spare chunks
+        }
+
+        Runnable task;
+        while ((task = pool.consume()) != null) bh.consume(task);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void stealConsume(PoolWrapper w, Blackhole bh) {
+        final SalsaSCPool victim = w.victim;
+        final SalsaSCPool thief = w.thief;
+        for (int i = 0; i < BATCH; i++) {
+            victim.produce(TASK);
+        }
+
+        // steal a chunk and drain it, until the victim runs out of chunks
+        do {
+            Runnable task = thief.steal(victim);
+            if (task != null) bh.consume(task);
+            while ((task = thief.consume()) != null) bh.consume(task);
+        } while (!victim.isEmpty());
+    }
+
+    @Benchmark
+    public boolean isEmpty(PoolWrapper w) {
+        return w.pool.isEmpty(); // the pool is empty, so all the lists are scanned
+    }
+
+    // the way producers add chunks: lazy cleanup of a dead node, then add
+    @Benchmark
+    public void listAddCleanup(PoolWrapper w) {
+        final SWMRLinkedListImpl<Node> list = w.addedList;
+        list.cleanup(DEAD_NODE);
+        Node node = new Node(w.chunk);
+        list.add(node);
+        w.lastAdded.setChunk(null);
+        w.lastAdded = node;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LIST_SIZE)
+    public void listIterate(PoolWrapper w, Blackhole bh) {
+        SWMRLinkedListIterator<Node> it = w.iteratedList.consistentIterator();
+        Node node;
+        while ((node = it.next()) != null) bh.consume(node.getChunk());
+    }
+
+    // ownership transfer, as done by a steal
+    @Benchmark
+    public boolean chunkOwnerCas(PoolWrapper w) {
+        final Chunk chunk = w.chunk;
+        int stamp = chunk.getOwner().getStamp();
+        Integer owner = chunk.getOwner().getReference();
+        return chunk.getOwner().compareAndSet(owner, owner ^ 1, stamp, stamp + 1);
+    }
+
+    // to run from IDEA
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchmarkSCPool.class.getSimpleName())
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementTime(TimeValue.seconds(2))
+                .threads(1)
+                .forks(1)
+                .addProfiler("gc")
+                .build();
+
+        new Runner(opt).run();
+    }
+}
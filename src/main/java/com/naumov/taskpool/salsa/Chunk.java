@@ -1,42 +1,100 @@
 package com.naumov.taskpool.salsa;
 
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReferenceArray;
-import java.util.concurrent.atomic.AtomicStampedReference;
 
 /**
  * Wrapper for an array of tasks, which is a minimal unit of task stealing. Field {@code owner} represents
  * the consumer, owning this chunk, and is used for synchronization during stealing. Chunks are created only by
- * producers when they call {@link com.naumov.taskpool.SCPool#produce(Runnable)} on empty pool.
+ * producers when they call {@link com.naumov.taskpool.SCPool#produce(Runnable)} on empty pool, or by the owner
+ * consumer when it calls {@link com.naumov.taskpool.SCPool#spawn(Runnable)}.
  */
-public class Chunk {
-    private final int chunkSize;
+public class Chunk extends AbstractChunk {
+    static final int NO_TENANT = -1; // spawned tasks
+
     /*
-     * Owner is stamped to prevent ABA during steal-back.
-     * Allows only values from constant pool: [-128, 127] since boxed Integers
-     * are compared by reference. Initial stamp is 0.
+     * Slots are written with release (setRelease) and read with acquire (getAcquire): a task is published
+     * by its single write, CAS is used only where the owner and a stealer race for the same slot.
      */
-    private final AtomicStampedReference<Integer> owner;
     private final AtomicReferenceArray<Runnable> tasks;
+    /*
+     * Insertion time of the task in every slot, null unless tracing is enabled. Plain array: a slot is stamped
+     * before the task is published by the release write to the tasks array, and read after it.
+     */
+    private final long[] enqueueNanos;
+    /*
+     * Live chunk counter of the SCPool, this chunk was added to. Set before the chunk is published.
+     * Decremented exactly once, by whoever retires the chunk first (the consumer that took the last task,
+     * or the producer that dropped the chunk).
+     */
+    private AtomicInteger liveChunks;
+    private final AtomicBoolean retired = new AtomicBoolean(false);
+    private final AtomicInteger cancelled = new AtomicInteger(0); // slots, withdrawn by cancelled tasks
+    private int tenant = NO_TENANT; // tenant of the producer, set before the chunk is published
 
     public Chunk(int chunkSize, int owner) {
-        if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be a positive number");
-        if (owner < Byte.MIN_VALUE || owner > Byte.MAX_VALUE)
-            throw new IllegalArgumentException("Only byte values are allowed for owner field: [-128, 127].");
-
-        this.chunkSize = chunkSize;
-        this.owner = new AtomicStampedReference<>(owner, 0);
-        this.tasks = new AtomicReferenceArray<>(chunkSize);
+        this(chunkSize, owner, false);
     }
 
-    public AtomicStampedReference<Integer> getOwner() {
-        return owner;
+    public Chunk(int chunkSize, int owner, boolean traced) {
+        super(chunkSize, owner);
+        this.tasks = new AtomicReferenceArray<>(chunkSize);
+        this.enqueueNanos = traced ? new long[chunkSize] : null;
     }
 
     public AtomicReferenceArray<Runnable> getTasks() {
         return tasks;
     }
 
+    /**
+     * @return insertion times of the tasks, {@code null} for untraced chunk
+     */
+    long[] getEnqueueNanos() {
+        return enqueueNanos;
+    }
+
+    void bindLiveChunks(AtomicInteger liveChunks) {
+        this.liveChunks = liveChunks;
+    }
+
+    int getTenant() {
+        return tenant;
+    }
+
+    void bindTenant(int tenant) {
+        this.tenant = tenant;
+    }
+
+    /**
+     * Marks the chunk as retired, i.e. holding no more tasks for consumers.
+     *
+     * @return {@code true} for the first call only
+     */
+    boolean retire() {
+        if (!retired.compareAndSet(false, true)) return false;
+        if (liveChunks != null) liveChunks.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * Accounts a slot, withdrawn by a cancelled task. A chunk, whose every slot has been withdrawn, is retired
+     * right away, its node is removed when the owner or a producer comes across it.
+     *
+     * @return {@code true} if the chunk has been retired by this call
+     */
+    boolean cancelSlot() {
+        return cancelled.incrementAndGet() == chunkSize && retire();
+    }
+
+    /**
+     * @return {@code true} if every slot has been withdrawn by a cancelled task
+     */
+    boolean isFullyCancelled() {
+        return cancelled.get() == chunkSize;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) return true;
@@ -0,0 +1,135 @@
+package com.naumov.taskpool.salsa;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Chunk lists of a single SCPool, shared by {@link SalsaSCPool} and {@link LongSalsaSCPool}: a list per producer,
+ * followed by the steal list and the extra lists of the owner (e.g. the spawn list). Each list is written by a single
+ * thread: the producer or the owner, and read by all the consumers.
+ *
+ * @param <C> chunk type
+ * @param <N> node type
+ */
+class ChunkLists<C extends AbstractChunk, N extends AbstractNode<C>> implements Iterable<SWMRLinkedList<N>> {
+    private final Predicate<N> deadNode = aNode -> aNode.getChunk() == null;
+    private final int nProducers;
+    private final CopyOnWriteArrayList<SWMRLinkedList<N>> lists; // shared among all actors
+
+    /**
+     * @param nProducers    number of producer lists
+     * @param nOwnerLists   number of lists after the steal list, written by the owner
+     * @param cleanupCycles see {@link SWMRLinkedListImpl}
+     */
+    ChunkLists(int nProducers, int nOwnerLists, int cleanupCycles) {
+        this.nProducers = nProducers;
+
+        final List<SWMRLinkedList<N>> template = new ArrayList<>(nProducers + 1 + nOwnerLists);
+        for (int i = 0; i < nProducers; i++) template.add(new SWMRLinkedListImpl<>(cleanupCycles));
+        template.add(new SWMRLinkedListImpl<>(cleanupCycles)); // add steal list
+        for (int i = 0; i < nOwnerLists; i++) template.add(new SWMRLinkedListImpl<>(cleanupCycles));
+        this.lists = new CopyOnWriteArrayList<>(template);
+    }
+
+    SWMRLinkedList<N> get(int listIdx) {
+        return lists.get(listIdx);
+    }
+
+    SWMRLinkedList<N> stealList() {
+        return lists.get(nProducers);
+    }
+
+    int size() {
+        return lists.size();
+    }
+
+    /**
+     * @return predicate of the nodes, whose chunk has been used up or stolen
+     */
+    Predicate<N> deadNode() {
+        return deadNode;
+    }
+
+    /**
+     * Appends the node to the list after a lazy cleanup of the dead nodes. Must be called by the writer of the list.
+     *
+     * @param list list to add the node to
+     * @param node node to add
+     */
+    void add(SWMRLinkedList<N> list, N node) {
+        list.cleanup(deadNode); // lazy cleanup
+        list.add(node); // <-- visible to consumers
+    }
+
+    /**
+     * Searches for a node with possibly not empty chunk, belonging to {@code ownerId}, traversing the lists
+     * from a random start. The steal list is skipped: stolen chunks are never stolen again.
+     *
+     * @param ownerId   owner of the chunk
+     * @param stealable extra condition for the node
+     * @return found node or {@code null}
+     */
+    N findStealable(int ownerId, Predicate<? super N> stealable) {
+        int size = lists.size();
+        int startIdx = ThreadLocalRandom.current().nextInt(size);
+
+        // traverse all entries from a random start circularly to find not empty node
+        for (int i = startIdx; i < size + startIdx; i++) {
+            if (i % size == nProducers) continue; // todo: Temporary silver bullet. Find out why stealing from
+                                                  //  other consumer's steal-list messes the things up and delete this
+            SWMRLinkedListIterator<N> it = lists.get(i % size).consistentIterator();
+            N node = it.next();
+            while (node != null) {
+                C chunk = node.getChunk();
+                if (chunk != null && node.getIdx() + 1 < chunk.getChunkSize()
+                        && chunk.getOwner().getReference() == ownerId && stealable.test(node)) {
+                    // the chunk belongs to the pool owner, we can try to steal it from this node
+                    return node;
+                }
+
+                node = it.next();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param pending test of a slot, that holds an element not taken yet
+     * @return {@code true} if no chunk has pending elements after the index of its node
+     */
+    boolean isEmpty(SlotTest<? super C> pending) {
+        for (SWMRLinkedList<N> list : lists) {
+            SWMRLinkedListIterator<N> it = list.consistentIterator();
+            N node = it.next();
+            while (node != null) {
+                C chunk = node.getChunk();
+                if (chunk != null) {
+                    for (int i = node.getIdx() + 1; i < chunk.getChunkSize(); i++) {
+                        if (pending.test(chunk, i)) return false; // found non empty slot
+                    }
+                }
+
+                node = it.next();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Iterator<SWMRLinkedList<N>> iterator() {
+        return lists.iterator();
+    }
+
+    /**
+     * Test of a chunk slot.
+     */
+    @FunctionalInterface
+    interface SlotTest<C> {
+        boolean test(C chunk, int idx);
+    }
+}
@@ -0,0 +1,30 @@
+package com.naumov.taskpool.salsa;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bit per consumer, that has seen the SCPool empty, shared by {@link SalsaSCPool} and {@link LongSalsaSCPool}.
+ * Any change of the pool, that may make it non-empty for a checking consumer, clears all the bits,
+ * so that a consumer, that finds its bit still set on the second pass, knows the pool has stayed empty.
+ */
+class EmptyIndicator {
+    private final AtomicInteger bits = new AtomicInteger(0); // all bits are unset, shared only among consumers
+
+    void set(int consumerId) {
+        int indicator;
+        int upBit;
+        do {
+            indicator = bits.get();
+            upBit = indicator | (1 << consumerId);
+        } while (!bits.compareAndSet(indicator, upBit) && !Thread.currentThread().isInterrupted());
+    }
+
+    boolean check(int consumerId) {
+        int indicator = bits.get();
+        return ((indicator >> consumerId) & 1) == 1;
+    }
+
+    void clear() {
+        bits.set(0);
+    }
+}
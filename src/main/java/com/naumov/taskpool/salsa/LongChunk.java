@@ -0,0 +1,75 @@
+package com.naumov.taskpool.salsa;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Primitive counterpart of the {@link Chunk}: a dense array of {@code long} payloads with a parallel array
+ * of slot states. A slot goes {@link #EMPTY} -> {@link #FULL} (by the producer, publishing the payload)
+ * -> {@link #TAKEN} (by the owner or a stealer). Chunks are never reused, so a state can't go back
+ * and no uniqueness wrapper is needed to detect ABA.
+ */
+public class LongChunk extends AbstractChunk {
+    static final int EMPTY = 0;
+    static final int FULL = 1;
+    static final int TAKEN = 2;
+
+    private final long[] payloads; // written once per slot before the slot becomes FULL
+    private final AtomicIntegerArray states;
+
+    public LongChunk(int chunkSize, int owner) {
+        super(chunkSize, owner);
+        this.payloads = new long[chunkSize];
+        this.states = new AtomicIntegerArray(chunkSize);
+    }
+
+    /**
+     * Publishes the payload at {@code idx}. Called only by the producer, filling the chunk.
+     *
+     * @param idx     empty slot
+     * @param payload payload
+     */
+    void put(int idx, long payload) {
+        payloads[idx] = payload;
+        states.set(idx, FULL); // <-- visible to consumers
+    }
+
+    /**
+     * @param idx slot index
+     * @return payload at {@code idx}, valid only after the slot has been seen {@link #FULL}
+     */
+    long getPayload(int idx) {
+        return payloads[idx];
+    }
+
+    int getState(int idx) {
+        return states.get(idx);
+    }
+
+    /**
+     * Marks the slot taken without synchronization, when the caller is the only one to take it.
+     *
+     * @param idx slot index
+     */
+    void markTaken(int idx) {
+        states.set(idx, TAKEN);
+    }
+
+    /**
+     * Competes for the slot with other consumers.
+     *
+     * @param idx slot index
+     * @return {@code true} if the slot was {@link #FULL} and the caller has taken it
+     */
+    boolean take(int idx) {
+        return states.compareAndSet(idx, FULL, TAKEN);
+    }
+
+    @Override
+    public String toString() {
+        return "LongChunk{" +
+                "owner=" + owner +
+                ", chunkSize=" + chunkSize +
+                ", states=" + states +
+                '}';
+    }
+}
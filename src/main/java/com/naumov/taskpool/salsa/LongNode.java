@@ -0,0 +1,22 @@
+package com.naumov.taskpool.salsa;
+
+/**
+ * Represents a {@link LongChunk} wrapper with field {@code idx}, which points to the last taken (or about to be taken)
+ * payload in a {@code chunk}, see {@link AbstractNode}.
+ */
+public class LongNode extends AbstractNode<LongChunk> {
+
+    public LongNode(LongChunk chunk) {
+        super(chunk);
+    }
+
+    /**
+     * Copying constructor with the given index, for the node not published yet. Copying is not atomic.
+     *
+     * @param other node to copy
+     * @param idx   index of the last taken payload
+     */
+    public LongNode(LongNode other, int idx) {
+        super(other, idx);
+    }
+}
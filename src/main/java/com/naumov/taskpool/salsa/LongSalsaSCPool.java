@@ -0,0 +1,350 @@
+package com.naumov.taskpool.salsa;
+
+import com.naumov.taskpool.EmptyIndicatorPool;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongConsumer;
+
+import static com.naumov.taskpool.salsa.LongChunk.EMPTY;
+import static com.naumov.taskpool.salsa.LongChunk.FULL;
+
+/**
+ * Primitive-specialized {@link SalsaSCPool}: the same chunk ownership and stealing protocol, applied to
+ * {@link LongChunk}s. Payloads are stored in place, so producing and consuming allocate nothing, except for
+ * a chunk and a node per {@code chunkSize} payloads. Chunk lists and the empty indicator are shared with
+ * {@link SalsaSCPool}, see {@link ChunkLists} and {@link EmptyIndicator}.
+ */
+public class LongSalsaSCPool implements EmptyIndicatorPool {
+    // unmodifiable shared state
+    private final int consumerId;
+    private final int chunkSize;
+
+    // shared state
+    private final ChunkLists<LongChunk, LongNode> chunkLists; // shared among all actors
+    private final EmptyIndicator emptyIndicator; // shared only among consumers
+    private final Queue<LongChunk> chunkPool; // M-S queue for spare chunks, shared among owner and producers
+
+    // ThreadLocals
+    private final ThreadLocal<ProducerContext> pContextTL = ThreadLocal.withInitial(() -> null);
+    private final ThreadLocal<OwnerContext> ownerContextTL = ThreadLocal.withInitial(() -> null);
+
+    public LongSalsaSCPool(int consumerId, int nProducers, int nConsumers, int chunkSize, int cleanupCycles) {
+        if (consumerId < 0 || consumerId > 31) throw new IllegalArgumentException("Available consumer ids are [0, 31]");
+        if (nConsumers > 32) throw new IllegalArgumentException("Maximum number of consumers is 32");
+
+        this.consumerId = consumerId;
+        this.chunkSize = chunkSize;
+
+        this.chunkLists = new ChunkLists<>(nProducers, 0, cleanupCycles);
+        this.emptyIndicator = new EmptyIndicator();
+        this.chunkPool = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Init thread-local variables for the new producer.
+     */
+    void registerCurrentThreadAsProducer(int pId) {
+        if (pContextTL.get() != null)
+            throw new IllegalCallerException("Trying to register producer " + pId +
+                    " that is already registered in this " + LongSalsaSCPool.class.getSimpleName());
+
+        pContextTL.set(new ProducerContext(pId));
+    }
+
+    /**
+     * Init thread-local variables for the owner consumer.
+     */
+    void registerCurrentThreadAsOwner() {
+        if (ownerContextTL.get() != null)
+            throw new IllegalCallerException("Trying to register owner for already owned " +
+                    LongSalsaSCPool.class.getSimpleName());
+
+        ownerContextTL.set(new OwnerContext());
+    }
+
+    private void checkProducerRegistration() {
+        if (pContextTL.get() == null)
+            throw new IllegalCallerException("Calling thread wasn't registered as producer.");
+    }
+
+    private void checkOwnerRegistration() {
+        if (ownerContextTL.get() == null)
+            throw new IllegalCallerException("Calling thread wasn't registered as owner consumer.");
+    }
+
+    /**
+     * Lets a producer thread try to insert a payload to the pool.
+     *
+     * @param payload payload to be inserted
+     * @return {@code false} if no spare chunks are available
+     */
+    public boolean tryProduce(long payload) {
+        return insert(payload, false);
+    }
+
+    /**
+     * Lets a producer thread insert a payload to the pool, allocating a new chunk if no spare chunks are available.
+     *
+     * @param payload payload to be inserted
+     */
+    public void produce(long payload) {
+        insert(payload, true);
+    }
+
+    private boolean insert(long payload, boolean force) {
+        checkProducerRegistration();
+        ProducerContext producerContext = pContextTL.get();
+
+        if (producerContext.chunk == null) {
+            // allocate new chunk, put it into producer context
+            if (!getChunk(force)) return false;
+        }
+
+        producerContext.chunk.put(producerContext.prodIdx, payload);
+        producerContext.prodIdx++;
+
+        if (producerContext.prodIdx == chunkSize) {
+            // the chunk is full
+            producerContext.chunk = null;
+        }
+
+        return true;
+    }
+
+    private boolean getChunk(boolean force) {
+        ProducerContext producerContext = pContextTL.get();
+
+        LongChunk newChunk = chunkPool.poll();
+        if (newChunk == null) {
+            // no available chunks in the pool
+            if (!force) return false;
+            newChunk = new LongChunk(chunkSize, consumerId);
+        }
+
+        // add new node to producer's own chunk list
+        chunkLists.add(chunkLists.get(producerContext.producerId), new LongNode(newChunk));
+
+        producerContext.chunk = newChunk;
+        producerContext.prodIdx = 0;
+        return true;
+    }
+
+    /**
+     * Lets the consumer thread, that owns the pool, retrieve a payload from it.
+     *
+     * @param action handler to pass the payload to
+     * @return {@code false} when no payloads are detected
+     */
+    public boolean consume(LongConsumer action) {
+        checkOwnerRegistration();
+        OwnerContext ownerContext = ownerContextTL.get();
+
+        if (ownerContext.currentNode != null) {
+            // common case
+            if (takeTask(ownerContext.currentNode, ownerContext)) {
+                action.accept(ownerContext.payload);
+                return true;
+            }
+        }
+
+        // wasn't able to get a payload from the currentNode (null/empty/stolen), traverse chunkLists
+        for (SWMRLinkedList<LongNode> chunkList : chunkLists) {
+            SWMRLinkedListIterator<LongNode> it = chunkList.consistentIterator();
+            LongNode node = it.next();
+            while (node != null) {
+                LongChunk chunk = node.getChunk();
+                if (chunk != null && chunk.getOwner().getReference() == consumerId) {
+                    // found owned chunk
+                    if (takeTask(node, ownerContext)) {
+                        ownerContext.currentNode = node;
+                        action.accept(ownerContext.payload);
+                        return true;
+                    }
+                }
+
+                node = it.next();
+            }
+        }
+
+        // failed to take a payload from owned SCPool
+        ownerContext.currentNode = null;
+        return false;
+    }
+
+    /**
+     * Tries to extract a payload from the given node into {@code ownerContext.payload}, see
+     * {@link SalsaSCPool}{@code .takeTask(Node)}. Can be called only by scPool owner.
+     *
+     * @param node         some node to retrieve a payload from
+     * @param ownerContext context of the owner
+     * @return {@code true} if the payload is taken
+     */
+    private boolean takeTask(LongNode node, OwnerContext ownerContext) {
+        LongChunk chunk = node.getChunk();
+        if (chunk == null) return false; // chunk has been stolen
+
+        int state = getStateAt(chunk, node.getIdx() + 1);
+        if (state == EMPTY) return false; // no payloads in this chunk
+
+        if (chunk.getOwner().getReference() != consumerId) return false; // chunk is stolen
+
+        node.setIdx(node.getIdx() + 1); // tell the world you're going to take a payload from idx + 1
+                                        // atomicity is not needed since only the owner of the SCPool can update idx
+        int idx = node.getIdx();
+        long payload = chunk.getPayload(idx);
+
+        if (chunk.getOwner().getReference() == consumerId) {
+            // common case
+            int nextState = getStateAt(chunk, idx + 1); // for checkLast()
+            chunk.markTaken(idx);
+            checkLast(node, nextState);
+            ownerContext.payload = payload;
+            return state == FULL;
+        }
+
+        // owner changed, the chunk has been stolen, CAS the last payload and go away
+        int nextState = getStateAt(chunk, idx + 1); // for checkLast()
+        boolean success = state == FULL && chunk.take(idx);
+
+        if (success) checkLast(node, nextState);
+        ownerContext.currentNode = null; // chunk from this node was stolen
+        ownerContext.payload = payload;
+
+        return success;
+    }
+
+    private int getStateAt(LongChunk chunk, int idx) {
+        return idx < chunkSize ? chunk.getState(idx) : EMPTY;
+    }
+
+    /**
+     * If the {@code node.getChunk()} is used up, the caller (pool owner) will recycle this chunk and flush
+     * its {@code currentNode} field. Only owner of the current pool can execute this method.
+     *
+     * @param node             node to check for being completely used up
+     * @param nextToCurrentState state of the slot next to the current one
+     */
+    private void checkLast(LongNode node, int nextToCurrentState) {
+        if (node.getIdx() + 1 == chunkSize) {
+            // finished the chunk
+            node.setChunk(null);
+            chunkPool.add(new LongChunk(chunkSize, consumerId));
+            ownerContextTL.get().currentNode = null;
+            clearIndicator();
+        }
+
+        if (nextToCurrentState == EMPTY) clearIndicator(); // pool could have become empty, tell others to check this
+    }
+
+    /**
+     * Called by pool owner to steal a payload (and a chunk, holding it) from another consumer.
+     *
+     * @param otherSCPool other's consumer pool
+     * @param action      handler to pass the stolen payload to
+     * @return {@code false} if stealing was not successful
+     */
+    public boolean steal(LongSalsaSCPool otherSCPool, LongConsumer action) {
+        checkOwnerRegistration();
+        if (otherSCPool == this) throw new IllegalArgumentException("Stealing from yourself is not supported");
+        OwnerContext ownerContext = ownerContextTL.get();
+
+        LongNode prevNode = otherSCPool.chunkLists.findStealable(otherSCPool.consumerId, aNode -> true);
+        if (prevNode == null) return false; // no chunks found
+
+        LongChunk chunk = prevNode.getChunk();
+        if (chunk == null) return false;
+        int stamp = chunk.getOwner().getStamp(); // before reading prevIdx, remember the stamp to detect possible
+                                                 // ABA later by CAS (if stamp has changed, prevIdx is obsolete)
+
+        int prevIdx = prevNode.getIdx();
+        if (prevIdx + 1 == chunkSize || getStateAt(chunk, prevIdx + 1) == EMPTY) return false; // no payloads
+
+        SWMRLinkedList<LongNode> myStealList = chunkLists.stealList();
+        chunkLists.add(myStealList, prevNode); // make it stealable from my list
+
+        if (!chunk.getOwner().compareAndSet(otherSCPool.consumerId, consumerId, stamp, stamp + 1)) {
+            myStealList.remove(prevNode); // failed to steal (somebody else stole it), remove it
+            return false;
+        }
+
+        otherSCPool.clearIndicator(); // for isEmpty()
+
+        int idx = prevNode.getIdx();
+        if (idx + 1 == chunkSize) {
+            // stole used chunk
+            myStealList.remove(prevNode);
+            return false;
+        }
+
+        int state = chunk.getState(idx + 1);
+        if (state != EMPTY) {
+            // found the payload
+            if (chunk.getOwner().getReference() != consumerId && idx != prevIdx) {
+                myStealList.remove(prevNode);
+                return false;
+            }
+            idx++;
+        }
+
+        LongNode newNode = new LongNode(prevNode, idx); // make snapshot copy, published by the replace
+
+        myStealList.replace(prevNode, newNode);
+
+        prevNode.setChunk(null); // remove chunk from consumer's list
+
+        // done stealing chunk, take one payload from it
+        if (state == EMPTY) return false; // still no payload at idx
+        long payload = chunk.getPayload(idx);
+        int nextState = getStateAt(chunk, idx + 1); // for isEmpty()
+        boolean success = state == FULL && chunk.take(idx);
+
+        checkLast(newNode, nextState);
+
+        if (chunk.getOwner().getReference() == consumerId) ownerContext.currentNode = newNode;
+        if (success) action.accept(payload);
+        return success;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return chunkLists.isEmpty((chunk, idx) -> chunk.getState(idx) == FULL);
+    }
+
+    @Override
+    public void setIndicator(int consumerId) {
+        emptyIndicator.set(consumerId);
+    }
+
+    @Override
+    public boolean checkIndicator(int consumerId) {
+        return emptyIndicator.check(consumerId);
+    }
+
+    private void clearIndicator() {
+        emptyIndicator.clear();
+    }
+
+    /**
+     * Thread-local producer variables.
+     */
+    private static class ProducerContext {
+        private final int producerId;
+        private LongChunk chunk; // current chunk to work with
+        private int prodIdx; // where to add next payload
+
+        public ProducerContext(int producerId) {
+            this.producerId = producerId;
+            this.chunk = null;
+            this.prodIdx = 0;
+        }
+    }
+
+    /**
+     * Thread-local owner consumer variables.
+     */
+    private static class OwnerContext {
+        private LongNode currentNode = null;
+        private long payload; // the last taken payload, returned from takeTask() without boxing
+    }
+}
@@ -0,0 +1,87 @@
+package com.naumov.taskpool.salsa;
+
+import com.naumov.taskpool.AbstractPoolRegistry;
+import com.naumov.taskpool.AbstractTaskPool;
+import com.naumov.taskpool.LongTaskPool;
+import com.naumov.taskpool.TaskPoolConfig;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongConsumer;
+
+/**
+ * {@link LongTaskPool} on top of {@link LongSalsaSCPool}s. Registration of producers and consumers and
+ * the emptiness check are shared with {@link AbstractTaskPool}, see {@link AbstractPoolRegistry}.
+ * Consumers can't insert payloads and never give their SCPools up.
+ */
+public class LongSalsaTaskPool extends AbstractPoolRegistry<LongSalsaSCPool> implements LongTaskPool {
+
+    public LongSalsaTaskPool(int nProducers, int nConsumers, int chunkSize, int cleanupCycles) {
+        super(nProducers, nConsumers, chunkSize, cleanupCycles, TaskPoolConfig.defaults());
+    }
+
+    @Override
+    protected LongSalsaSCPool newSCPool(int consumerId, int nProducers, int nConsumers, int chunkSize,
+                                        int cleanupCycles, TaskPoolConfig config) {
+        return new LongSalsaSCPool(consumerId, nProducers, nConsumers, chunkSize, cleanupCycles);
+    }
+
+    @Override
+    protected void regCurrentThreadAsProducer(LongSalsaSCPool scPool, int producerId) {
+        scPool.registerCurrentThreadAsProducer(producerId);
+    }
+
+    @Override
+    protected void regCurrentThreadAsOwner(LongSalsaSCPool scPool, int consumerId) {
+        scPool.registerCurrentThreadAsOwner();
+    }
+
+    @Override
+    public void put(long payload) {
+        checkThreadRegistered(true);
+
+        List<LongSalsaSCPool> accessList = producerAccessList();
+        int accessListSize = accessList.size();
+        int startIdx = ThreadLocalRandom.current().nextInt(accessListSize); // [0, accessListSize)
+
+        // try produce to all pools, traversing from a random start
+        for (int i = startIdx; i < accessListSize + startIdx; i++) {
+            if (accessList.get(i % accessListSize).tryProduce(payload)) return;
+        }
+
+        // all pools are out of spare chunks, expand the first pool
+        accessList.get(startIdx).produce(payload);
+    }
+
+    @Override
+    public boolean get(LongConsumer action) {
+        checkThreadRegistered(false);
+
+        LongSalsaSCPool myPool = ownSCPool();
+        while (!Thread.currentThread().isInterrupted()) {
+            // first try to get a payload from the local pool
+            if (myPool.consume(action)) return true;
+
+            // failed to get a payload from the local pool - steal
+            List<LongSalsaSCPool> accessList = consumerAccessList();
+            int accessListSize = accessList.size();
+            if (accessListSize > 0) {
+                int startIdx = ThreadLocalRandom.current().nextInt(accessListSize); // [0, accessListSize)
+                for (int i = startIdx; i < accessListSize + startIdx; i++) {
+                    if (myPool.steal(accessList.get(i % accessListSize), action)) return true;
+                }
+            }
+
+            // no payloads found - validate emptiness
+            if (isEmpty()) return false;
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        checkThreadRegistered(false);
+        return allSCPoolsEmpty();
+    }
+}
@@ -31,6 +31,12 @@ public interface SWMRLinkedList<E> extends Iterable<E> {
      */
     void cleanup(Predicate<E> cleanupPredicate);
 
+    /**
+     * Deletes all items by given {@code cleanupPredicate} condition, ignoring the limit of deletions per cleanup.
+     * @param cleanupPredicate condition
+     */
+    void compact(Predicate<E> cleanupPredicate);
+
     /**
      * Looks for the item in the list.
      * @param item item to detect
@@ -43,4 +49,9 @@ public interface SWMRLinkedList<E> extends Iterable<E> {
      * @return an iterator
      */
     SWMRLinkedListIterator<E> consistentIterator();
+
+    /**
+     * Lets the writer give the list up: the next thread to modify the list becomes its writer.
+     */
+    void releaseOwnership();
 }
@@ -1,11 +1,33 @@
 package com.naumov.taskpool.salsa;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
+/*
+ * Memory ordering: the owner reads and writes the fields of list nodes with plain accesses, but every write, visible
+ * to readers (a commit), is a release write, and readers read with acquire. A node is fully initialized before
+ * it is linked, so a reader, that sees the node, sees its item. No store has to be ordered before a later load,
+ * so there are no full fences.
+ */
 public class SWMRLinkedListImpl<E> implements SWMRLinkedList<E> {
+    private static final VarHandle NEXT;
+    private static final VarHandle ITEM;
+    private static final VarHandle DELETED;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            NEXT = lookup.findVarHandle(SWMRLinkedListImpl.ListNode.class, "next", SWMRLinkedListImpl.ListNode.class);
+            ITEM = lookup.findVarHandle(SWMRLinkedListImpl.ListNode.class, "item", Object.class);
+            DELETED = lookup.findVarHandle(SWMRLinkedListImpl.ListNode.class, "deleted", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     private final AtomicLong ownerId = new AtomicLong(-1L); // owner id
     private final ListNode head;
@@ -37,14 +59,14 @@ public class SWMRLinkedListImpl<E> implements SWMRLinkedList<E> {
         listNode.next = tail;
         listNode.prev = tail.prev;
         tail.prev = listNode;
-        listNode.prev.next = listNode; // <--- commit #1
+        NEXT.setRelease(listNode.prev, listNode); // <--- commit #1
 
         // physically delete deletion-pending node if exists
         if (listNode.prev != head && listNode.prev.deleted) {
             ListNode beforeDeleted = listNode.prev.prev;
             listNode.prev.prev = null; // unlink deleted node backwards
             listNode.prev = beforeDeleted;
-            beforeDeleted.next = listNode; // <--- commit #2
+            NEXT.setRelease(beforeDeleted, listNode); // <--- commit #2
         }
     }
 
@@ -58,12 +80,12 @@ public class SWMRLinkedListImpl<E> implements SWMRLinkedList<E> {
         while (beforeDeleted.next != tail) {
             if (!beforeDeleted.next.deleted && beforeDeleted.next.item.equals(item)) {
                 // found not deleted node with the item
-                beforeDeleted.next.deleted = true; // <-- commit #1
+                DELETED.setRelease(beforeDeleted.next, true); // <-- commit #1
                 if (beforeDeleted.next.next != tail) {
                     // not last node - remove physically
                     beforeDeleted.next.prev = null; // unlink deleted node backwards
                     beforeDeleted.next.next.prev = beforeDeleted;
-                    beforeDeleted.next = beforeDeleted.next.next; // <-- commit #2
+                    NEXT.setRelease(beforeDeleted, beforeDeleted.next.next); // <-- commit #2
                 }
                 return true;
             }
@@ -84,7 +106,7 @@ public class SWMRLinkedListImpl<E> implements SWMRLinkedList<E> {
         while (current != tail) {
             if (!current.deleted && current.item.equals(item)) {
                 // found not deleted node with the item
-                current.item = replacement; // <--- commit
+                ITEM.setRelease(current, replacement); // <--- commit
                 return true;
             }
             current = current.next;
@@ -96,20 +118,29 @@ public class SWMRLinkedListImpl<E> implements SWMRLinkedList<E> {
 
     @Override
     public void cleanup(Predicate<E> cleanupPredicate) {
+        cleanup(cleanupPredicate, this.cleanupCycles);
+    }
+
+    @Override
+    public void compact(Predicate<E> cleanupPredicate) {
+        cleanup(cleanupPredicate, Integer.MAX_VALUE);
+    }
+
+    private void cleanup(Predicate<E> cleanupPredicate, int cleanupCycles) {
         checkOwner();
 
         ListNode beforeDeleted = head;
         int deletedCount = 0;
-        while (beforeDeleted.next != tail && deletedCount < this.cleanupCycles) {
+        while (beforeDeleted.next != tail && deletedCount < cleanupCycles) {
             if (beforeDeleted.next.deleted || cleanupPredicate.test(beforeDeleted.next.item)) {
                 // found node to delete
-                beforeDeleted.next.deleted = true; // <-- commit 1
+                DELETED.setRelease(beforeDeleted.next, true); // <-- commit 1
                 deletedCount++;
                 if (beforeDeleted.next.next != tail) {
                     // not last node - remove physically
                     beforeDeleted.next.prev = null; // unlink deleted node backwards
                     beforeDeleted.next.next.prev = beforeDeleted;
-                    beforeDeleted.next = beforeDeleted.next.next; // <-- commit 2
+                    NEXT.setRelease(beforeDeleted, beforeDeleted.next.next); // <-- commit 2
                 } else {
                     return;
                 }
@@ -124,19 +155,26 @@ public class SWMRLinkedListImpl<E> implements SWMRLinkedList<E> {
         if (item == null) return false;
 
         // find node containing the item
-        ListNode current = head.next;
+        ListNode current = head.nextAcquire();
         while (current != tail) {
-            if (!current.deleted && current.item.equals(item)) {
+            if (!current.deletedAcquire() && current.itemAcquire().equals(item)) {
                 // found not deleted node with the item
                 return true;
             }
-            current = current.next;
+            current = current.nextAcquire();
         }
 
         // node with the item not found
         return false;
     }
 
+    @Override
+    public void releaseOwnership() {
+        if (ownerId.get() == -1L) return; // never written
+        checkOwner();
+        ownerId.set(-1L); // publishes the list state to the next writer, that claims it by CAS
+    }
+
     private void checkOwner() {
         if (Thread.currentThread().getId() == ownerId.get()) return;
         if (ownerId.get() == -1L && ownerId.compareAndSet(-1L, Thread.currentThread().getId())) return;
@@ -156,30 +194,45 @@ public class SWMRLinkedListImpl<E> implements SWMRLinkedList<E> {
     }
 
     private class ListNode {
-        private volatile ListNode next; // for owner and iterators
-        private ListNode prev; // non-volatile since only for owner thread
-        private volatile E item; // volatile since can be replaced in method replace(...)
-        private volatile boolean deleted = false; // for owner and iterators
+        // written by the owner with release, read by iterators with acquire (via *Acquire methods)
+        ListNode next;
+        ListNode prev; // only for owner thread
+        E item; // can be replaced in method replace(...)
+        boolean deleted = false;
 
         public ListNode(E item) {
             this.item = item;
         }
+
+        @SuppressWarnings("unchecked")
+        ListNode nextAcquire() {
+            return (ListNode) NEXT.getAcquire(this);
+        }
+
+        @SuppressWarnings("unchecked")
+        E itemAcquire() {
+            return (E) ITEM.getAcquire(this);
+        }
+
+        boolean deletedAcquire() {
+            return (boolean) DELETED.getAcquire(this);
+        }
     }
 
     private class ConsistentIterator implements SWMRLinkedListIterator<E> {
-        private ListNode returnCandidate = head.next;
+        private ListNode returnCandidate = head.nextAcquire();
 
         @Override
         public E next() {
-            while (returnCandidate.deleted && returnCandidate != tail) {
-                returnCandidate = returnCandidate.next;
+            while (returnCandidate.deletedAcquire() && returnCandidate != tail) {
+                returnCandidate = returnCandidate.nextAcquire();
             }
 
             // came to the tail or not deleted node
             if (returnCandidate == tail) return null;
 
-            E item = returnCandidate.item;
-            returnCandidate = returnCandidate.next;
+            E item = returnCandidate.itemAcquire();
+            returnCandidate = returnCandidate.nextAcquire();
 
             return item;
         }
@@ -188,18 +241,18 @@ public class SWMRLinkedListImpl<E> implements SWMRLinkedList<E> {
     // weakly consistent iterator
     private class WeakIterator implements Iterator<E> {
         private ListNode current = head; // look to next from here when calling hasNext()
-        private ListNode currentNext = head.next; // item to return from next() method
+        private ListNode currentNext = head.nextAcquire(); // item to return from next() method
 
         @Override
         public boolean hasNext() {
             // next никогда не будет == tail
-            currentNext = current.next; // обновляем next чтобы с ним работать
+            currentNext = current.nextAcquire(); // обновляем next чтобы с ним работать
             if (currentNext == tail) return false; // дошли до конца, next вернет Exception
 
             // skip logically deleted nodes
-            while (currentNext.deleted && currentNext != tail) {
+            while (currentNext.deletedAcquire() && currentNext != tail) {
                 current = currentNext;
-                currentNext = current.next;
+                currentNext = current.nextAcquire();
             }
 
             // наткнулись на не удаленный либо на конец
@@ -211,9 +264,9 @@ public class SWMRLinkedListImpl<E> implements SWMRLinkedList<E> {
         public E next() {
             if (currentNext == tail) throw new NoSuchElementException("No more elements to traverse");
 
-            E item = currentNext.item; // get the item to return
+            E item = currentNext.itemAcquire(); // get the item to return
             current = currentNext; // move one step forward
-            currentNext = currentNext.next;
+            currentNext = currentNext.nextAcquire();
 
             return item;
         }
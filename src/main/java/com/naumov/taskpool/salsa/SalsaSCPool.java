@@ -1,57 +1,122 @@
 package com.naumov.taskpool.salsa;
 
+import com.naumov.taskpool.CancellableTask;
+import com.naumov.taskpool.LatencyHistogram;
 import com.naumov.taskpool.SCPool;
+import com.naumov.taskpool.TaskPoolConfig;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
 
 public class SalsaSCPool implements SCPool {
+    private static final int DROPPED = -1; // owner of dropped chunks
+    private static final Predicate<Node> STEALABLE = aNode -> {
+        Chunk chunk = aNode.getChunk();
+        return chunk != null && !chunk.isFullyCancelled();
+    };
+    // shallow size of an empty chunk with compressed oops: Chunk, owner with its pair, tasks array with its wrapper
+    // and the retired flag; each task slot adds a reference
+    private static final long CHUNK_OVERHEAD_BYTES = 160;
+    private static final long REFERENCE_BYTES = 4;
 
     // unmodifiable shared state
     private final int consumerId;
     private final int chunkSize;
     private final int nProducers;
+    private final boolean lifoSlot;
+    private final int maxChunks; // capacity in chunks, Integer.MAX_VALUE for unbounded pool
+    private final int spareLowWater; // spare chunks to keep after trimming
+    private final int spareHighWater; // max spare chunks
+    private final boolean tracing;
+    private final LatencyHistogram localDelays; // written by the owner, null unless tracing
+    private final LatencyHistogram stolenDelays; // written by the owner, null unless tracing
+    private final int[] tenantWeights; // chunks per round of the fair share, null unless tenants are configured
 
     // shared state
-    private final CopyOnWriteArrayList<SWMRLinkedList<Node>> chunkLists; // shared among all actors
-    private final AtomicInteger emptyIndicator; // shared only among consumers
+    private final ChunkLists<Chunk, Node> chunkLists; // shared among all actors
+    private final EmptyIndicator emptyIndicator; // shared only among consumers
     private final Queue<Chunk> chunkPool; // M-S queue for spare chunks, shared among owner and producers
+    private final AtomicInteger liveChunks; // producer chunks, added to chunkLists and not retired yet
+    private final AtomicInteger spawnChunks; // the same for spawned chunks, which don't take up the capacity
+    private final AtomicInteger spareChunks; // approximate size of the chunkPool
+    private final AtomicIntegerArray compactRequests; // per producer, set by the owner, cleared by the producer
+    private final AtomicIntegerArray producerTenants; // per producer, set at the registration
+    private final AtomicLongArray producedTasks; // per producer, written by the producer, null without tenants
+    private final AtomicLongArray takenTasks; // per tenant, written by the owner, null without tenants
+    private final AtomicLongArray withdrawnTasks; // per tenant, written by cancelling threads, null without tenants
+    private final AtomicReference<Runnable> nextTask; // LIFO slot, written by the owner, emptied by thieves too
+    private volatile boolean active = false; // has an owner
+    private volatile OwnerContext releasedOwnerContext = null; // left by the previous owner for the next one
 
     // ThreadLocals
     private final ThreadLocal<ProducerContext> pContextTL = ThreadLocal.withInitial(() -> null);
     private final ThreadLocal<OwnerContext> ownerContextTL = ThreadLocal.withInitial(() -> null);
 
     public SalsaSCPool(int consumerId, int nProducers, int nConsumers, int chunkSize, int cleanupCycles) {
+        this(consumerId, nProducers, nConsumers, chunkSize, cleanupCycles, TaskPoolConfig.defaults());
+    }
+
+    public SalsaSCPool(int consumerId, int nProducers, int nConsumers, int chunkSize, int cleanupCycles,
+                       TaskPoolConfig config) {
         if (consumerId < 0 || consumerId > 31) throw new IllegalArgumentException("Available consumer ids are [0, 31]");
         if (nConsumers > 32) throw new IllegalArgumentException("Maximum number of consumers is 32");
 
         this.consumerId = consumerId;
         this.chunkSize = chunkSize;
         this.nProducers = nProducers;
-
-        final List<SWMRLinkedList<Node>> chunkListsTemplate = new ArrayList<>(nProducers + 1);
-        for (int i = 0; i < nProducers; i++) chunkListsTemplate.add(new SWMRLinkedListImpl<>(cleanupCycles));
-        chunkListsTemplate.add(new SWMRLinkedListImpl<>(cleanupCycles)); // add steal list
-
-        this.chunkLists = new CopyOnWriteArrayList<>(chunkListsTemplate);
-        this.emptyIndicator = new AtomicInteger(0); // all bits are unset
+        this.lifoSlot = config.isLifoSlot();
+        this.maxChunks = config.isBounded()
+                ? (int) (((long) config.getCapacity() + chunkSize - 1) / chunkSize) // round up to whole chunks
+                : Integer.MAX_VALUE;
+        this.spareLowWater = config.getSpareChunksLowWater();
+        this.spareHighWater = config.getSpareChunksHighWater();
+        this.tracing = config.isTracing();
+        this.localDelays = tracing ? new LatencyHistogram() : null;
+        this.stolenDelays = tracing ? new LatencyHistogram() : null;
+        this.tenantWeights = config.getTenantWeights();
+
+        this.chunkLists = new ChunkLists<>(nProducers, 1, cleanupCycles); // with the spawn list, written by the owner
+        this.emptyIndicator = new EmptyIndicator();
         this.chunkPool = new ConcurrentLinkedQueue<>();
+        this.liveChunks = new AtomicInteger(0);
+        this.spawnChunks = new AtomicInteger(0);
+        this.spareChunks = new AtomicInteger(0);
+        this.compactRequests = new AtomicIntegerArray(nProducers);
+        this.producerTenants = new AtomicIntegerArray(nProducers);
+        this.producedTasks = tenantWeights != null ? new AtomicLongArray(nProducers) : null;
+        this.takenTasks = tenantWeights != null ? new AtomicLongArray(tenantWeights.length) : null;
+        this.withdrawnTasks = tenantWeights != null ? new AtomicLongArray(tenantWeights.length) : null;
+        this.nextTask = new AtomicReference<>(null);
     }
 
     /**
-     * Init thread-local variables for the new producer.
+     * Init thread-local variables for the new producer of tenant 0.
      */
     void registerCurrentThreadAsProducer(int pId) {
+        registerCurrentThreadAsProducer(pId, 0);
+    }
+
+    /**
+     * Init thread-local variables for the new producer.
+     */
+    void registerCurrentThreadAsProducer(int pId, int tenant) {
         if (pContextTL.get() != null)
             throw new IllegalCallerException("Trying to register producer " + pId +
                     " that is already registered in this " + SalsaSCPool.class.getSimpleName());
+        if (tenant < 0 || tenant >= (tenantWeights != null ? tenantWeights.length : 1))
+            throw new IllegalArgumentException("Unknown tenant " + tenant);
 
-        pContextTL.set(new ProducerContext(pId));
+        producerTenants.set(pId, tenant);
+        pContextTL.set(new ProducerContext(pId, tenant));
     }
 
     /**
@@ -62,7 +127,23 @@ public class SalsaSCPool implements SCPool {
             throw new IllegalCallerException("Trying to register owner for already owned " +
                     SalsaSCPool.class.getSimpleName());
 
-        ownerContextTL.set(new OwnerContext());
+        OwnerContext released = releasedOwnerContext;
+        releasedOwnerContext = null;
+        ownerContextTL.set(released != null ? released : new OwnerContext());
+    }
+
+    /**
+     * Releases the owner state of the current thread, so that another thread can register as the owner.
+     * The next owner takes over the released state: its current node and spawn chunk, so the pool
+     * doesn't have to be empty.
+     */
+    void unregisterCurrentThreadAsOwner() {
+        checkOwnerRegistration();
+
+        chunkLists.stealList().releaseOwnership();
+        chunkLists.get(nProducers + 1).releaseOwnership(); // spawn list
+        releasedOwnerContext = ownerContextTL.get(); // published by the volatile write
+        ownerContextTL.remove();
     }
 
     private void checkProducerRegistration() {
@@ -81,24 +162,25 @@ public class SalsaSCPool implements SCPool {
     }
 
     @Override
-    public void produce(Runnable task) {
-        insert(task, true);
+    public boolean produce(Runnable task) {
+        return insert(task, true);
     }
 
     private boolean insert(Runnable task, boolean force) {
         checkProducerRegistration();
         ProducerContext producerContext = pContextTL.get();
 
-        task = new SalsaTask(task); // wrap original task to introduce uniqueness at every insertion
-
         if (producerContext.chunk == null) {
             // allocate new chunk, put it into producer context
             if (!getChunk(force)) return false;
         }
 
-        // working chunk is not null
-        producerContext.chunk.getTasks().set(producerContext.prodIdx, task);
+        // working chunk is not null, wrap original task to introduce uniqueness at every insertion
+        if (tracing) producerContext.chunk.getEnqueueNanos()[producerContext.prodIdx] = System.nanoTime();
+        producerContext.chunk.getTasks().setRelease(producerContext.prodIdx,
+                wrap(task, producerContext.chunk, producerContext.prodIdx)); // publish
         producerContext.prodIdx++;
+        if (producedTasks != null) countProduced(producerContext.producerId, 1);
 
         if (producerContext.prodIdx == chunkSize) {
             // the chunk is full
@@ -108,54 +190,258 @@ public class SalsaSCPool implements SCPool {
         return true;
     }
 
+    /**
+     * Fills chunks with the tasks. Tasks are published with release writes, which keep their order, so consumers
+     * never see a gap.
+     */
+    @Override
+    public int produceAll(List<? extends Runnable> tasks, int from) {
+        checkProducerRegistration();
+        ProducerContext producerContext = pContextTL.get();
+
+        final long now = tracing ? System.nanoTime() : 0L; // the whole batch is inserted at once
+        int next = from;
+        while (next < tasks.size()) {
+            if (producerContext.chunk == null && !getChunk(true)) break; // bounded and full
+
+            AtomicReferenceArray<Runnable> slots = producerContext.chunk.getTasks();
+            int n = Math.min(chunkSize - producerContext.prodIdx, tasks.size() - next);
+            int last = producerContext.prodIdx + n - 1;
+            for (; producerContext.prodIdx <= last; producerContext.prodIdx++) {
+                SalsaTask task = wrap(tasks.get(next), producerContext.chunk, producerContext.prodIdx);
+                if (tracing) producerContext.chunk.getEnqueueNanos()[producerContext.prodIdx] = now;
+                slots.setRelease(producerContext.prodIdx, task);
+                next++;
+            }
+            if (producedTasks != null) countProduced(producerContext.producerId, n);
+
+            if (producerContext.prodIdx == chunkSize) {
+                // the chunk is full
+                producerContext.chunk = null;
+            }
+        }
+
+        return next - from;
+    }
+
     private boolean getChunk(boolean force) {
         ProducerContext producerContext = pContextTL.get();
 
-        Chunk newChunk = chunkPool.poll();
-        if (newChunk == null) {
-            // no available chunks in the pool
-            if (!force) return false;
-            newChunk = new Chunk(chunkSize, consumerId);
+        SWMRLinkedList<Node> chunkList = chunkLists.get(producerContext.producerId);
+        if (compactRequests.get(producerContext.producerId) != 0) {
+            // the owner has trimmed its pool, get rid of all the dead nodes left after the burst
+            compactRequests.set(producerContext.producerId, 0);
+            chunkList.compact(chunkLists.deadNode());
         }
 
-        final Node node = new Node(newChunk);
         // add new node to producer's own chunk list
-        SWMRLinkedList<Node> chunkList = chunkLists.get(producerContext.producerId);
-        chunkList.cleanup(aNode -> aNode.getChunk() == null); // lazy cleanup
-        chunkList.add(node); // <-- visible to consumers
+        Chunk newChunk = addChunk(chunkList, producerContext.tenant, force, false);
+        if (newChunk == null) return false;
+
         producerContext.chunk = newChunk;
         producerContext.prodIdx = 0;
         return true;
     }
 
+    /**
+     * Takes a spare chunk (or allocates a new one if {@code force} is set) and appends it to the {@code chunkList},
+     * which must be written only by the calling thread.
+     *
+     * @param chunkList      list to add chunk to
+     * @param tenant         tenant of the tasks, {@link Chunk#NO_TENANT} for spawned ones
+     * @param force          allow allocation
+     * @param ignoreCapacity add the chunk even if the pool is full, it is not accounted in the capacity then
+     * @return added chunk or {@code null} if no spare chunks are available and {@code force} is not set,
+     * or if the pool is full
+     */
+    private Chunk addChunk(SWMRLinkedList<Node> chunkList, int tenant, boolean force, boolean ignoreCapacity) {
+        // a partially filled spawn chunk may never be retired, it must not keep the producers out
+        AtomicInteger counter = ignoreCapacity ? spawnChunks : liveChunks;
+        if (!reserveChunk(counter, ignoreCapacity)) return null;
+
+        Chunk newChunk = chunkPool.poll();
+        if (newChunk == null) {
+            // no available chunks in the pool
+            if (!force) {
+                counter.decrementAndGet(); // give the reservation back
+                return null;
+            }
+            newChunk = new Chunk(chunkSize, consumerId, tracing);
+        } else {
+            spareChunks.decrementAndGet();
+        }
+        newChunk.bindLiveChunks(counter);
+        newChunk.bindTenant(tenant);
+
+        chunkLists.add(chunkList, new Node(newChunk));
+        return newChunk;
+    }
+
+    /**
+     * Accounts one more live chunk, if the capacity allows. The check is made once per chunk, not per task.
+     *
+     * @param counter        live chunks to account the chunk in
+     * @param ignoreCapacity account the chunk even if the pool is full
+     * @return {@code false} if the pool is full
+     */
+    private boolean reserveChunk(AtomicInteger counter, boolean ignoreCapacity) {
+        if (ignoreCapacity || maxChunks == Integer.MAX_VALUE) {
+            counter.incrementAndGet();
+            return true;
+        }
+
+        int current;
+        do {
+            current = counter.get();
+            if (current >= maxChunks) return false;
+        } while (!counter.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Lets a producer drop its oldest chunk, that still has pending tasks. The chunk is taken away from
+     * the owner the same way as during stealing: by CAS of the chunk owner, so the owner might win only
+     * the task it has already started to take. The remaining tasks are marked as taken.
+     *
+     * @return discarded tasks, empty if the producer has no pending tasks in the pool
+     */
+    @Override
+    public List<Runnable> dropOldest() {
+        checkProducerRegistration();
+        ProducerContext producerContext = pContextTL.get();
+
+        SWMRLinkedListIterator<Node> it = chunkLists.get(producerContext.producerId).consistentIterator();
+        Node node = it.next();
+        while (node != null) {
+            Chunk chunk = node.getChunk();
+            if (chunk != null) {
+                int stamp = chunk.getOwner().getStamp();
+                int prevIdx = node.getIdx();
+                if (chunk.getOwner().getReference() == consumerId && getTaskAt(chunk, prevIdx + 1) != null
+                        && chunk.getOwner().compareAndSet(consumerId, DROPPED, stamp, stamp + 1)) {
+                    List<Runnable> dropped = discardTasks(node, chunk);
+                    if (chunk == producerContext.chunk) producerContext.chunk = null; // stop filling it
+                    if (producedTasks != null) countProduced(producerContext.producerId, -dropped.size());
+                    if (!dropped.isEmpty()) return dropped;
+                }
+            }
+
+            node = it.next();
+        }
+
+        return Collections.emptyList();
+    }
+
+    private List<Runnable> discardTasks(Node node, Chunk chunk) {
+        List<Runnable> dropped = new ArrayList<>();
+        for (int i = node.getIdx() + 1; i < chunkSize; i++) {
+            Runnable task = chunk.getTasks().getAcquire(i);
+            if (task == null) break; // not produced yet, won't be anymore
+            if (!SalsaTask.TAKEN.equals(task) && chunk.getTasks().compareAndSet(i, task, SalsaTask.TAKEN)) {
+                dropped.add(((SalsaTask) task).getTask());
+            }
+        }
+
+        node.setChunk(null); // the node is removed by the lazy cleanup of the producer list
+        chunk.retire();
+        return dropped;
+    }
+
+    /**
+     * Inserts a task, forked by the owner, into the owner's spawn list. The chunks of this list are stolen
+     * the same way as producer chunks. With the LIFO slot enabled the newest task is kept in the slot instead
+     * and the previous occupant of the slot is inserted. Thieves take the task in the slot only when the pool
+     * has no stealable chunks.
+     *
+     * @param task task to be inserted
+     */
+    @Override
+    public void spawn(Runnable task) {
+        checkOwnerRegistration();
+        OwnerContext ownerContext = ownerContextTL.get();
+
+        if (lifoSlot) {
+            Runnable previous = nextTask.getAndSet(task);
+            if (previous == null) return;
+            task = previous;
+        }
+
+        if (ownerContext.spawnChunk == null) {
+            ownerContext.spawnChunk = addChunk(chunkLists.get(nProducers + 1), Chunk.NO_TENANT, true, true); // never reject owner
+            ownerContext.spawnIdx = 0;
+        }
+
+        if (tracing) ownerContext.spawnChunk.getEnqueueNanos()[ownerContext.spawnIdx] = System.nanoTime();
+        ownerContext.spawnChunk.getTasks().setRelease(ownerContext.spawnIdx,
+                wrap(task, ownerContext.spawnChunk, ownerContext.spawnIdx));
+        ownerContext.spawnIdx++;
+
+        if (ownerContext.spawnIdx == chunkSize) {
+            // the chunk is full
+            ownerContext.spawnChunk = null;
+        }
+    }
+
     @Override
     public Runnable consume() {
         checkOwnerRegistration();
         OwnerContext ownerContext = ownerContextTL.get();
 
+        if (lifoSlot) {
+            // the most recently spawned task, still hot in cache, unless stolen
+            Runnable task = nextTask.getAndSet(null);
+            if (task != null) {
+                clearIndicator(); // for isEmpty()
+                return task;
+            }
+        }
+
         if (ownerContext.currentNode != null) {
             // common case
-            Runnable task = takeTask(ownerContext.currentNode);
+            Runnable task = takeTask(ownerContext.currentNode, ownerContext.currentNodeStolen);
             if (task != null) return ((SalsaTask) task).getTask();
         }
 
-        // wasn't able to get a task from the currentNode (null/empty/stolen), traverse chunkLists
-        for (SWMRLinkedList<Node> chunkList : chunkLists) {
-            SWMRLinkedListIterator<Node> it = chunkList.consistentIterator();
-            Node node = it.next();
-            while (node != null) {
-                Chunk chunk = node.getChunk();
-                if (chunk != null && chunk.getOwner().getReference() == consumerId) {
-                    // found owned chunk
-                    Runnable task = takeTask(node);
-                    if (task != null) {
-                        ownerContext.currentNode = node;
-                        return ((SalsaTask) task).getTask();
-                    }
-                }
+        if (tenantWeights != null) return consumeByShare(ownerContext);
+
+        // wasn't able to get a task from the currentNode (null/empty/stolen), traverse chunkLists,
+        // starting after the list of the previous current node, so that no producer's chunks starve
+        final int nLists = nProducers + 2;
+        for (int i = ownerContext.scanStart; i < ownerContext.scanStart + nLists; i++) {
+            int listIdx = i % nLists;
+            Runnable task = takeFromList(ownerContext, listIdx);
+            if (task != null) {
+                ownerContext.scanStart = (listIdx + 1) % nLists;
+                return task;
+            }
+        }
 
-                node = it.next();
+        // failed to take a task from owned SCPool
+        ownerContext.currentNode = null;
+        return null;
+    }
+
+    /**
+     * Chooses the next chunk by weighted fair share: deficit round-robin over the tenants, where the turn of
+     * a tenant lasts for as many chunks as its weight, and the steal and spawn lists take one more turn
+     * of weight 1. A tenant without pending chunks loses the rest of its turn, so credit is not hoarded.
+     * Producers of the same tenant are rotated, as in {@link #consume()}.
+     */
+    private Runnable consumeByShare(OwnerContext ownerContext) {
+        final int nTurns = tenantWeights.length + 1;
+        for (int i = 0; i < nTurns; i++) {
+            int turn = ownerContext.tenantTurn;
+            boolean ownLists = turn == tenantWeights.length;
+            if (ownerContext.turnCredit == 0) ownerContext.turnCredit = ownLists ? 1 : tenantWeights[turn];
+
+            Runnable task = ownLists ? takeFromOwnLists(ownerContext) : takeFromTenant(ownerContext, turn);
+            if (task != null) {
+                if (--ownerContext.turnCredit == 0) ownerContext.tenantTurn = (turn + 1) % nTurns;
+                return task;
             }
+
+            ownerContext.turnCredit = 0;
+            ownerContext.tenantTurn = (turn + 1) % nTurns;
         }
 
         // failed to take a task from owned SCPool
@@ -163,14 +449,62 @@ public class SalsaSCPool implements SCPool {
         return null;
     }
 
+    private Runnable takeFromTenant(OwnerContext ownerContext, int tenant) {
+        for (int i = ownerContext.scanStart; i < ownerContext.scanStart + nProducers; i++) {
+            int pId = i % nProducers;
+            if (producerTenants.get(pId) != tenant) continue;
+
+            Runnable task = takeFromList(ownerContext, pId);
+            if (task != null) {
+                ownerContext.scanStart = (pId + 1) % nProducers;
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private Runnable takeFromOwnLists(OwnerContext ownerContext) {
+        Runnable task = takeFromList(ownerContext, nProducers); // steal list
+        return task != null ? task : takeFromList(ownerContext, nProducers + 1); // spawn list
+    }
+
+    /**
+     * Takes a task from the first owned chunk of the list, which becomes the current node.
+     *
+     * @param ownerContext context of the owner
+     * @param listIdx      index in the {@code chunkLists}
+     * @return unwrapped task or {@code null}
+     */
+    private Runnable takeFromList(OwnerContext ownerContext, int listIdx) {
+        boolean stolen = listIdx == nProducers;
+        SWMRLinkedListIterator<Node> it = chunkLists.get(listIdx).consistentIterator();
+        Node node = it.next();
+        while (node != null) {
+            Chunk chunk = node.getChunk();
+            if (chunk != null && chunk.getOwner().getReference() == consumerId) {
+                // found owned chunk
+                Runnable task = takeTask(node, stolen);
+                if (task != null) {
+                    ownerContext.currentNode = node;
+                    ownerContext.currentNodeStolen = stolen;
+                    return ((SalsaTask) task).getTask();
+                }
+            }
+
+            node = it.next();
+        }
+        return null;
+    }
+
     /**
      * Tries to extract a task from the given node. Can be called only by scPool owner.
      * Owner competes with the stealer for the found task, if not {@code null}.
      *
-     * @param node some node to retrieve a task from
+     * @param node   some node to retrieve a task from
+     * @param stolen whether the node is in the steal list, for tracing
      * @return retrieved task or {@code null}
      */
-    private Runnable takeTask(Node node) {
+    private Runnable takeTask(Node node, boolean stolen) {
         Chunk chunk = node.getChunk();
         if (chunk == null) return null; // chunk has been stolen
 
@@ -179,13 +513,37 @@ public class SalsaSCPool implements SCPool {
 
         if (chunk.getOwner().getReference() != consumerId) return null; // chunk is stolen
 
+        if (task == SalsaTask.TAKEN) {
+            // withdrawn by cancelled tasks: move over them, nobody takes a TAKEN slot, so there's nothing to race for
+            int idx = chunk.isFullyCancelled() ? chunkSize - 1 : node.getIdx() + 1;
+            while ((task = getTaskAt(chunk, idx + 1)) == SalsaTask.TAKEN) idx++;
+            node.setIdx(idx);
+            if (task == null) {
+                checkLast(node, null);
+                return null;
+            }
+            if (chunk.getOwner().getReference() != consumerId) return null; // chunk is stolen
+        }
+
         node.setIdx(node.getIdx() + 1); // tell the world you're going to take a task from idx + 1
                                         // atomicity is not needed since only the owner of the SCPool can update idx
+                                        // the volatile write is the only full fence on the path: the owner re-read
+                                        // below must not pass it, or a stealer could take the same task
 
         if (chunk.getOwner().getReference() == consumerId) {
             // common case
             Runnable next = getTaskAt(chunk, node.getIdx() + 1); // for checkLast()
-            chunk.getTasks().set(node.getIdx(), SalsaTask.TAKEN);
+            if (task instanceof CancellableSalsaTask) {
+                // the task can withdraw itself meanwhile
+                if (!chunk.getTasks().compareAndSet(node.getIdx(), task, SalsaTask.TAKEN)) {
+                    checkLast(node, next);
+                    return null;
+                }
+            } else {
+                chunk.getTasks().setRelease(node.getIdx(), SalsaTask.TAKEN); // nobody else takes it, only publish
+            }
+            recordDelay(chunk, node.getIdx(), stolen);
+            if (takenTasks != null) countTaken(chunk);
             checkLast(node, next);
             return task;
         }
@@ -195,14 +553,18 @@ public class SalsaSCPool implements SCPool {
         boolean success = !SalsaTask.TAKEN.equals(task)
                 && chunk.getTasks().compareAndSet(node.getIdx(), task, SalsaTask.TAKEN);
 
-        if (success) checkLast(node, next);
+        if (success) {
+            recordDelay(chunk, node.getIdx(), stolen);
+            if (takenTasks != null) countTaken(chunk);
+            checkLast(node, next);
+        }
         ownerContextTL.get().currentNode = null; // chunk from this node was stolen
 
         return success ? task : null;
     }
 
     private Runnable getTaskAt(Chunk chunk, int idx) {
-        return idx < chunkSize ? chunk.getTasks().get(idx) : null;
+        return idx < chunkSize ? chunk.getTasks().getAcquire(idx) : null;
     }
 
     /**
@@ -216,15 +578,138 @@ public class SalsaSCPool implements SCPool {
     private void checkLast(Node node, Runnable taskNextToCurrent) {
         if (node.getIdx() + 1 == chunkSize) {
             // finished the chunk
+            Chunk chunk = node.getChunk();
             node.setChunk(null);
-            chunkPool.add(new Chunk(chunkSize, consumerId));
-            ownerContextTL.get().currentNode = null;
+            if (chunk == null || chunk.retire()) recycleChunk(); // unless retired by cancellation already
+            OwnerContext ownerContext = ownerContextTL.get();
+            ownerContext.currentNode = null;
+            ownerContext.trimNeeded = true;
             clearIndicator();
         }
 
         if (taskNextToCurrent == null) clearIndicator(); // pool could have become empty, tell others to check this
     }
 
+    /**
+     * Replaces a retired chunk with a spare one, unless the pool already has enough spare chunks.
+     * Called by the owner and by cancelling threads, so the spare chunks are counted in a CAS loop.
+     */
+    private void recycleChunk() {
+        int current;
+        do {
+            current = spareChunks.get();
+            if (current >= spareHighWater) return;
+        } while (!spareChunks.compareAndSet(current, current + 1));
+
+        chunkPool.add(new Chunk(chunkSize, consumerId, tracing));
+    }
+
+    /**
+     * Trims spare chunks down to the low-water mark and compacts the chunk lists, written by the owner.
+     * Producers are asked to compact their lists at the next chunk allocation, since only the writer of a list
+     * can delete nodes from it. Does nothing unless a chunk has been retired since the last call.
+     */
+    @Override
+    public void trim() {
+        checkOwnerRegistration();
+        OwnerContext ownerContext = ownerContextTL.get();
+        if (!ownerContext.trimNeeded) return;
+        ownerContext.trimNeeded = false;
+
+        int excess = spareChunks.get() - spareLowWater;
+        while (excess-- > 0 && chunkPool.poll() != null) {
+            spareChunks.decrementAndGet();
+        }
+
+        chunkLists.stealList().compact(chunkLists.deadNode());
+        chunkLists.get(nProducers + 1).compact(chunkLists.deadNode()); // spawn list
+        for (int i = 0; i < nProducers; i++) compactRequests.set(i, 1);
+    }
+
+    /**
+     * Estimates the memory retained by the chunks of this pool, live and spare. Tasks are not accounted.
+     *
+     * @return approximate size in bytes
+     */
+    public long retainedBytes() {
+        long slotBytes = REFERENCE_BYTES + (tracing ? Long.BYTES : 0); // a task and its timestamp
+        long chunks = liveChunks.get() + (long) spawnChunks.get() + spareChunks.get();
+        return chunks * (CHUNK_OVERHEAD_BYTES + slotBytes * chunkSize);
+    }
+
+    /**
+     * Records the time the task at {@code idx} spent in the pool. Only the owner calls it.
+     */
+    private void recordDelay(Chunk chunk, int idx, boolean stolen) {
+        if (!tracing) return;
+        long[] enqueueNanos = chunk.getEnqueueNanos();
+        if (enqueueNanos == null) return; // stolen from an untraced pool
+        (stolen ? stolenDelays : localDelays).record(System.nanoTime() - enqueueNanos[idx]);
+    }
+
+    /**
+     * @param stolen stolen or local tasks
+     * @return queueing delays (nanoseconds) of the tasks, taken by the owner, empty unless tracing is enabled
+     * @see TaskPoolConfig#withTracing(boolean)
+     */
+    public LatencyHistogram.Snapshot queueingDelays(boolean stolen) {
+        if (!tracing) return LatencyHistogram.Snapshot.empty();
+        return (stolen ? stolenDelays : localDelays).snapshot();
+    }
+
+    /**
+     * Single writer per producer, like {@link LatencyHistogram#record(long)}.
+     */
+    private void countProduced(int pId, int n) {
+        producedTasks.lazySet(pId, producedTasks.get(pId) + n);
+    }
+
+    /**
+     * Counts a task, taken by the owner, for the tenant of its chunk. Only the owner calls it.
+     */
+    private void countTaken(Chunk chunk) {
+        int tenant = chunk.getTenant();
+        if (tenant != Chunk.NO_TENANT) takenTasks.lazySet(tenant, takenTasks.get(tenant) + 1);
+    }
+
+    /**
+     * @param tenant tenant id
+     * @return tasks, inserted into this pool by the producers of the tenant and not dropped by them,
+     * 0 unless tenants are configured
+     * @see TaskPoolConfig#withTenants(int...)
+     */
+    public long producedTasks(int tenant) {
+        if (producedTasks == null) return 0;
+        long produced = 0;
+        for (int pId = 0; pId < nProducers; pId++) {
+            if (producerTenants.get(pId) == tenant) produced += producedTasks.get(pId);
+        }
+        return produced;
+    }
+
+    /**
+     * @param tenant tenant id
+     * @return tasks of the tenant, taken by the owner of this pool (locally or stolen from other pools),
+     * 0 unless tenants are configured
+     * @see TaskPoolConfig#withTenants(int...)
+     */
+    public long takenTasks(int tenant) {
+        return takenTasks != null ? takenTasks.get(tenant) : 0;
+    }
+
+    /**
+     * @param tenant tenant id
+     * @return tasks of the tenant, withdrawn from this pool by cancellation, 0 unless tenants are configured
+     * @see TaskPoolConfig#withTenants(int...)
+     */
+    public long withdrawnTasks(int tenant) {
+        return withdrawnTasks != null ? withdrawnTasks.get(tenant) : 0;
+    }
+
+    int getSpareChunkCount() {
+        return spareChunks.get();
+    }
+
     /**
      * Called by pool owner to steal a task (and a chunk, holding it) from another consumer.
      * Throws {@link IllegalArgumentException} when called with SCPool, other than {@link SalsaSCPool}.
@@ -245,8 +730,8 @@ public class SalsaSCPool implements SCPool {
         checkOwnerRegistration();
         if (otherSalsaSCPool == this) throw new IllegalArgumentException("Stealing from yourself is not supported");
 
-        Node prevNode = getNode(otherSalsaSCPool);
-        if (prevNode == null) return null; // no chunks found
+        Node prevNode = otherSalsaSCPool.chunkLists.findStealable(otherSalsaSCPool.consumerId, STEALABLE);
+        if (prevNode == null) return otherSalsaSCPool.stealNextTask(); // no chunks found, the last resort
 
         Chunk chunk = prevNode.getChunk();
         if (chunk == null) return null;
@@ -256,9 +741,8 @@ public class SalsaSCPool implements SCPool {
         int prevIdx = prevNode.getIdx();
         if (prevIdx + 1 == chunkSize || getTaskAt(chunk, prevIdx + 1) == null) return null; // no tasks in the chunk
 
-        SWMRLinkedList<Node> myStealList = chunkLists.get(nProducers);
-        myStealList.cleanup(aNode -> aNode.getChunk() == null); // lazy cleanup
-        myStealList.add(prevNode); // make it stealable from my list
+        SWMRLinkedList<Node> myStealList = chunkLists.stealList();
+        chunkLists.add(myStealList, prevNode); // make it stealable from my list
 
         if (!chunk.getOwner().compareAndSet(otherSalsaSCPool.consumerId, consumerId, stamp, stamp + 1)) {
             myStealList.remove(prevNode); // failed to steal (somebody else stole it), remove it
@@ -274,7 +758,7 @@ public class SalsaSCPool implements SCPool {
             return null;
         }
 
-        Runnable task = chunk.getTasks().get(idx + 1);
+        Runnable task = chunk.getTasks().getAcquire(idx + 1);
         if (task != null) {
             // found the task
             if (chunk.getOwner().getReference() != consumerId && idx != prevIdx) {
@@ -284,8 +768,7 @@ public class SalsaSCPool implements SCPool {
             idx++;
         }
 
-        Node newNode = new Node(prevNode); // make snapshot copy
-        newNode.setIdx(idx);
+        Node newNode = new Node(prevNode, idx); // make snapshot copy, published by the replace
 
         myStealList.replace(prevNode, newNode);
 
@@ -295,89 +778,62 @@ public class SalsaSCPool implements SCPool {
         if (task == null) return null; // still no task at idx
         Runnable next = getTaskAt(chunk, idx + 1); // for isEmpty()
         if (SalsaTask.TAKEN.equals(task) || !chunk.getTasks().compareAndSet(idx, task, SalsaTask.TAKEN)) task = null;
+        if (task != null) {
+            recordDelay(chunk, idx, true);
+            if (takenTasks != null) countTaken(chunk);
+        }
 
         checkLast(newNode, next);
 
-        if (chunk.getOwner().getReference() == consumerId) ownerContextTL.get().currentNode = newNode;
+        if (chunk.getOwner().getReference() == consumerId) {
+            OwnerContext ownerContext = ownerContextTL.get();
+            ownerContext.currentNode = newNode;
+            ownerContext.currentNodeStolen = true;
+        }
         return task != null ? ((SalsaTask) task).getTask() : null;
     }
 
     /**
-     * Called to steal a chunk from the scPool, other than that of current consumer thread.
-     * Used to search for a node with possibly not empty {@link Chunk}, belonging to the specified consumer.
-     *
-     * @param otherSCPool other consumer's {@link SalsaSCPool}
-     * @return found node
+     * Takes the task out of the LIFO slot of this pool on behalf of another consumer.
      */
-    private Node getNode(SalsaSCPool otherSCPool) {
-        int size = nProducers + 1;
-        int startIdx = ThreadLocalRandom.current().nextInt(size); // [0, nProducers + 1) accounts for steal-list
-
-        // traverse all entries from a random start circularly to find not empty node
-        for (int i = startIdx; i < size + startIdx; i++) {
-            if (i % size == nProducers) continue; // todo: Temporary silver bullet. Find out why stealing from
-                                                  //  other consumer's steal-list messes the things up and delete this
-            SWMRLinkedListIterator<Node> it = otherSCPool.chunkLists.get(i % size).consistentIterator();
-            Node node = it.next();
-            while (node != null) {
-                Chunk chunk = node.getChunk();
-                if (chunk != null && node.getIdx() + 1 < chunkSize) {
-                    if (chunk.getOwner().getReference() == otherSCPool.consumerId) {
-                        // the chunk belongs to the pool owner,
-                        // we can try to steal it from this node
-                        return node;
-                    }
-                }
-
-                node = it.next();
-            }
-        }
-
-        return null;
+    private Runnable stealNextTask() {
+        if (!lifoSlot || nextTask.get() == null) return null;
+        Runnable task = nextTask.getAndSet(null);
+        if (task != null) clearIndicator(); // for isEmpty()
+        return task;
     }
 
     @Override
     public boolean isEmpty() {
-        for (SWMRLinkedList<Node> chunkList : chunkLists) {
-            SWMRLinkedListIterator<Node> it = chunkList.consistentIterator();
-            Node node = it.next();
-            while (node != null) {
-                Chunk chunk = node.getChunk();
-                if (chunk == null) {
-                    node = it.next();
-                    continue;
-                }
-                int idx = node.getIdx();
-                for (int i = idx + 1; i < chunkSize; i++) {
-                    Runnable task = chunk.getTasks().get(i);
-                    // found non empty task
-                    if (task != null && !SalsaTask.TAKEN.equals(task)) return false;
-                }
-
-                node = it.next();
-            }
-        }
-        return true;
+        if (lifoSlot && nextTask.get() != null) return false;
+        return chunkLists.isEmpty((chunk, idx) -> {
+            Runnable task = chunk.getTasks().getAcquire(idx);
+            return task != null && !SalsaTask.TAKEN.equals(task);
+        });
     }
 
     @Override
     public void setIndicator(int consumerId) {
-        int indicator;
-        int upBit;
-        do {
-            indicator = emptyIndicator.get();
-            upBit = indicator | (1 << consumerId);
-        } while (!emptyIndicator.compareAndSet(indicator, upBit) && !Thread.currentThread().isInterrupted());
+        emptyIndicator.set(consumerId);
     }
 
     @Override
     public boolean checkIndicator(int consumerId) {
-        int indicator = emptyIndicator.get();
-        return ((indicator >> consumerId) & 1) == 1;
+        return emptyIndicator.check(consumerId);
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public void setActive(boolean active) {
+        this.active = active;
     }
 
     private void clearIndicator() {
-        emptyIndicator.set(0);
+        emptyIndicator.clear();
     }
 
     /**
@@ -385,11 +841,13 @@ public class SalsaSCPool implements SCPool {
      */
     private static class ProducerContext {
         private final int producerId;
+        private final int tenant;
         private Chunk chunk; // current chunk to work with
         private int prodIdx; // where to add next task
 
-        public ProducerContext(int producerId) {
+        public ProducerContext(int producerId, int tenant) {
             this.producerId = producerId;
+            this.tenant = tenant;
             this.chunk = null;
             this.prodIdx = 0;
         }
@@ -400,6 +858,24 @@ public class SalsaSCPool implements SCPool {
      */
     private static class OwnerContext {
         private Node currentNode = null;
+        private boolean currentNodeStolen = false; // the currentNode is in the steal list
+        private int scanStart = 0; // chunk list to start the next traversal from, rotates round-robin
+        private int tenantTurn = 0; // tenant, whose chunks are taken, only used with tenants
+        private int turnCredit = 0; // chunks, left in the turn of the tenant
+        private Chunk spawnChunk = null; // current chunk for spawned tasks
+        private int spawnIdx = 0; // where to add next spawned task
+        private boolean trimNeeded = false; // a chunk has been retired since the last trim
+    }
+
+    /**
+     * Wraps a task for the slot {@code idx} of the {@code chunk}. A {@link CancellableTask} is bound to the slot.
+     */
+    private SalsaTask wrap(Runnable task, Chunk chunk, int idx) {
+        if (!(task instanceof CancellableTask)) return new SalsaTask(task);
+
+        CancellableSalsaTask wrapper = new CancellableSalsaTask(task, chunk, idx);
+        ((CancellableTask) task).bind(wrapper);
+        return wrapper;
     }
 
     /**
@@ -440,4 +916,30 @@ public class SalsaSCPool implements SCPool {
                     '}';
         }
     }
+
+    /**
+     * Wrapper of a {@link CancellableTask}, that knows its slot. Withdrawal marks the slot {@code TAKEN} by CAS,
+     * exactly like a consumer, so either the consumer or the cancellation wins. A fully withdrawn chunk is retired
+     * and replaced with a spare one right away, unless it has been stolen.
+     */
+    private class CancellableSalsaTask extends SalsaTask implements CancellableTask.Slot {
+        private final Chunk chunk;
+        private final int idx;
+
+        private CancellableSalsaTask(Runnable task, Chunk chunk, int idx) {
+            super(task);
+            this.chunk = chunk;
+            this.idx = idx;
+        }
+
+        @Override
+        public boolean withdraw() {
+            if (!chunk.getTasks().compareAndSet(idx, this, SalsaTask.TAKEN)) return false; // taken or dropped
+            int tenant = chunk.getTenant();
+            if (withdrawnTasks != null && tenant != Chunk.NO_TENANT) withdrawnTasks.incrementAndGet(tenant);
+            // a stolen chunk is not replaced: it has been taken out of this pool by the thief
+            if (chunk.cancelSlot() && chunk.getOwner().getReference() == consumerId) recycleChunk();
+            return true;
+        }
+    }
 }
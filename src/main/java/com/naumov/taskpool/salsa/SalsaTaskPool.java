@@ -2,7 +2,9 @@ package com.naumov.taskpool.salsa;
 
 import com.naumov.taskpool.AbstractTaskPool;
 import com.naumov.taskpool.InitializationException;
+import com.naumov.taskpool.LatencyHistogram;
 import com.naumov.taskpool.SCPool;
+import com.naumov.taskpool.TaskPoolConfig;
 
 public class SalsaTaskPool extends AbstractTaskPool {
 
@@ -10,9 +12,80 @@ public class SalsaTaskPool extends AbstractTaskPool {
         super(nProducers, nConsumers, chunkSize, cleanupCycles);
     }
 
+    public SalsaTaskPool(int nProducers, int nConsumers, int chunkSize, int cleanupCycles, TaskPoolConfig config) {
+        super(nProducers, nConsumers, chunkSize, cleanupCycles, checkCapacity(nProducers, chunkSize, config));
+    }
+
+    /**
+     * Every producer holds a partially filled chunk of an SCPool, that takes up capacity until the producer fills it.
+     * With less than a chunk per producer, those chunks could take up all of it, and producers, waiting for space,
+     * would never get any. Chunks of tasks, spawned by consumers, don't take up the capacity.
+     */
+    private static TaskPoolConfig checkCapacity(int nProducers, int chunkSize, TaskPoolConfig config) {
+        if (config.isBounded() && config.getCapacity() < (long) nProducers * chunkSize) {
+            throw new IllegalArgumentException("capacity must be at least nProducers * chunkSize = "
+                    + (long) nProducers * chunkSize + ", got " + config.getCapacity());
+        }
+        return config;
+    }
+
     @Override
-    protected SCPool newSCPool(int consumerId, int nProducers, int nConsumers, int chunkSize, int cleanupCycles) {
-        return new SalsaSCPool(consumerId, nProducers, nConsumers, chunkSize, cleanupCycles);
+    protected SCPool newSCPool(int consumerId, int nProducers, int nConsumers, int chunkSize, int cleanupCycles,
+                               TaskPoolConfig config) {
+        return new SalsaSCPool(consumerId, nProducers, nConsumers, chunkSize, cleanupCycles, config);
+    }
+
+    /**
+     * Estimates the memory retained by the chunks of all SCPools, see {@link SalsaSCPool#retainedBytes()}.
+     *
+     * @return approximate size in bytes
+     */
+    public long retainedBytes() {
+        long bytes = 0;
+        for (SCPool scPool : getSCPools()) bytes += ((SalsaSCPool) scPool).retainedBytes();
+        return bytes;
+    }
+
+    /**
+     * Merges the queueing delays, recorded by all consumers, see {@link SalsaSCPool#queueingDelays(boolean)}.
+     *
+     * @param stolen stolen or local tasks
+     * @return delays in nanoseconds, empty unless tracing is enabled
+     */
+    public LatencyHistogram.Snapshot queueingDelays(boolean stolen) {
+        LatencyHistogram.Snapshot merged = LatencyHistogram.Snapshot.empty();
+        for (SCPool scPool : getSCPools()) merged = merged.merge(((SalsaSCPool) scPool).queueingDelays(stolen));
+        return merged;
+    }
+
+    /**
+     * Sums the per-tenant counters of all SCPools. Cancelled tasks stop counting once withdrawn.
+     *
+     * @param tenant tenant id
+     * @return tasks of the tenant, inserted into the pool and not taken yet, 0 unless tenants are configured
+     * @see TaskPoolConfig#withTenants(int...)
+     */
+    public long tenantBacklog(int tenant) {
+        long backlog = 0;
+        for (SCPool scPool : getSCPools()) {
+            SalsaSCPool salsaSCPool = (SalsaSCPool) scPool;
+            backlog += salsaSCPool.producedTasks(tenant) - salsaSCPool.takenTasks(tenant)
+                    - salsaSCPool.withdrawnTasks(tenant);
+        }
+        return Math.max(backlog, 0); // the counters are read one by one
+    }
+
+    /**
+     * Sums the per-tenant counters of all SCPools, sample it twice to get the throughput.
+     *
+     * @param tenant tenant id
+     * @return tasks of the tenant, taken by all consumers so far, 0 unless tenants are configured
+     * @see TaskPoolConfig#withTenants(int...)
+     */
+    public long tenantTakenTasks(int tenant) {
+        long taken = 0;
+        for (SCPool scPool : getSCPools()) taken += ((SalsaSCPool) scPool).takenTasks(tenant);
+        return taken;
     }
 
     @Override
@@ -24,7 +97,7 @@ public class SalsaTaskPool extends AbstractTaskPool {
             throw new InitializationException("Couldn't register producer on SCPool since it's not an instance of" +
                     SalsaSCPool.class.getSimpleName());
         }
-        salsaSCPool.registerCurrentThreadAsProducer(pId);
+        salsaSCPool.registerCurrentThreadAsProducer(pId, currentTenant());
     }
 
     @Override
@@ -38,4 +111,9 @@ public class SalsaTaskPool extends AbstractTaskPool {
         }
         salsaSCPool.registerCurrentThreadAsOwner();
     }
+
+    @Override
+    protected void unregCurrentThreadAsOwner(SCPool scPool) {
+        ((SalsaSCPool) scPool).unregisterCurrentThreadAsOwner();
+    }
 }
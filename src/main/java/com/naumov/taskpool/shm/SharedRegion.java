@@ -0,0 +1,360 @@
+package com.naumov.taskpool.shm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Memory-mapped file, shared by the processes of a {@link ShmTaskPool}. All fields are 8-byte words, accessed
+ * through a {@link VarHandle} view of the mapped buffer, so atomic operations work across processes.
+ * <p>
+ * Layout: a header of {@code HEADER_BYTES}, a table of {@code nPools} pool slots, a cache line each, then
+ * {@code nChunks} chunks. A chunk is a header line ({@code [owner][next free][taken][idx][generation][producer]})
+ * followed by {@code chunkSize} slots of {@code [state][payload]}. Pool slots and producers are tagged with
+ * {@code pid + 1} of their process, so that the ones of dead processes can be reclaimed.
+ * <ul>
+ *     <li>owner: {@code stamp << 32 | pool id}, {@link #NONE} for a free chunk. The stamp is incremented
+ *     by every change, so a stale CAS of a thief fails, like with {@code AtomicStampedReference}.</li>
+ *     <li>state: {@code generation << 2 | EMPTY/FULL/TAKEN}. The generation of the chunk is incremented on
+ *     recycling, which empties all the slots at once: a slot of an older generation reads as empty.</li>
+ *     <li>free chunks form a Treiber stack, the head is {@code stamp << 32 | chunk + 1}.</li>
+ * </ul>
+ */
+final class SharedRegion {
+    static final int NONE = -1; // owner of free chunks
+    static final long EMPTY = 0;
+    static final long FULL = 1;
+    static final long TAKEN = 2;
+
+    private static final long MAGIC = 0x53414c53415f5348L; // written last by the creator
+    private static final long ATTACH_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(10);
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.nativeOrder());
+
+    // header
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CHUNK_SIZE_OFFSET = 8;
+    private static final int N_CHUNKS_OFFSET = 16;
+    private static final int N_POOLS_OFFSET = 24;
+    private static final int FREE_HEAD_OFFSET = 32;
+    private static final int HEADER_BYTES = 64;
+    private static final int POOL_BYTES = 64;
+
+    // chunk header
+    private static final int OWNER_OFFSET = 0;
+    private static final int NEXT_FREE_OFFSET = 8;
+    private static final int TAKEN_OFFSET = 16; // slots, taken in this generation
+    private static final int IDX_OFFSET = 24; // hint: slots up to idx are taken
+    private static final int GEN_OFFSET = 32;
+    private static final int PRODUCER_OFFSET = 40; // tag of the process, filling the chunk, 0 when done
+    private static final int CHUNK_HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 16;
+
+    private final MappedByteBuffer buffer;
+    private final int chunkSize;
+    private final int nChunks;
+    private final int nPools;
+    private final int chunksOffset;
+    private final int chunkBytes;
+
+    private SharedRegion(MappedByteBuffer buffer, int nPools, int nChunks, int chunkSize) {
+        this.buffer = buffer;
+        this.chunkSize = chunkSize;
+        this.nChunks = nChunks;
+        this.nPools = nPools;
+        this.chunksOffset = HEADER_BYTES + nPools * POOL_BYTES;
+        this.chunkBytes = CHUNK_HEADER_BYTES + chunkSize * SLOT_BYTES;
+    }
+
+    /**
+     * Creates the region file or attaches to the existing one, waiting for its creator to initialize it.
+     *
+     * @throws IllegalStateException if the existing file has different parameters or is not initialized in time
+     */
+    static SharedRegion open(Path path, int nPools, int nChunks, int chunkSize) {
+        if (nPools < 1 || nChunks < 1 || chunkSize < 1)
+            throw new IllegalArgumentException("Expected positive nPools, nChunks and chunkSize, got nPools=" + nPools
+                    + ", nChunks=" + nChunks + ", chunkSize=" + chunkSize);
+        long size = HEADER_BYTES + (long) nPools * POOL_BYTES
+                + (long) nChunks * (CHUNK_HEADER_BYTES + (long) chunkSize * SLOT_BYTES);
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Region of " + size + " bytes is too large");
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            SharedRegion region = new SharedRegion(channel.map(FileChannel.MapMode.READ_WRITE, 0, size),
+                    nPools, nChunks, chunkSize);
+            region.init();
+            return region;
+        } catch (FileAlreadyExistsException e) {
+            return attach(path, size, nPools, nChunks, chunkSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't create shared region " + path, e);
+        }
+    }
+
+    private static SharedRegion attach(Path path, long size, int nPools, int nChunks, int chunkSize) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            long deadline = System.nanoTime() + ATTACH_TIMEOUT_NS;
+            while ((long) LONGS.getAcquire(buffer, MAGIC_OFFSET) != MAGIC) {
+                if (System.nanoTime() - deadline >= 0)
+                    throw new IllegalStateException(path + " has not been initialized as a shared region");
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+
+            if ((long) LONGS.get(buffer, CHUNK_SIZE_OFFSET) != chunkSize
+                    || (long) LONGS.get(buffer, N_CHUNKS_OFFSET) != nChunks
+                    || (long) LONGS.get(buffer, N_POOLS_OFFSET) != nPools)
+                throw new IllegalStateException(path + " has been created with different parameters");
+            return new SharedRegion(buffer, nPools, nChunks, chunkSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't attach to shared region " + path, e);
+        }
+    }
+
+    /**
+     * Formats a new file: all the chunks are free, of generation 1, so the zeroed slots read as empty.
+     */
+    private void init() {
+        LONGS.set(buffer, CHUNK_SIZE_OFFSET, (long) chunkSize);
+        LONGS.set(buffer, N_CHUNKS_OFFSET, (long) nChunks);
+        LONGS.set(buffer, N_POOLS_OFFSET, (long) nPools);
+        for (int c = 0; c < nChunks; c++) {
+            LONGS.set(buffer, chunkOffset(c) + OWNER_OFFSET, (long) NONE & 0xffffffffL);
+            LONGS.set(buffer, chunkOffset(c) + NEXT_FREE_OFFSET, c + 1 < nChunks ? c + 2L : 0L);
+            LONGS.set(buffer, chunkOffset(c) + IDX_OFFSET, -1L);
+            LONGS.set(buffer, chunkOffset(c) + GEN_OFFSET, 1L);
+        }
+        LONGS.set(buffer, FREE_HEAD_OFFSET, 1L); // chunk 0 on top
+        LONGS.setRelease(buffer, MAGIC_OFFSET, MAGIC); // <-- visible to other processes
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    int getChunkCount() {
+        return nChunks;
+    }
+
+    int getPoolCount() {
+        return nPools;
+    }
+
+    // pool slots
+
+    /**
+     * Takes a free pool slot for a consumer, or one of a dead process.
+     *
+     * @param tag {@link #tagOf(long)} of the calling process
+     * @return pool id or {@link #NONE} if all the slots are taken
+     */
+    int attachPool(long tag) {
+        for (int id = 0; id < nPools; id++) {
+            if (LONGS.compareAndSet(buffer, poolOffset(id), 0L, tag)) return id;
+        }
+        for (int id = 0; id < nPools; id++) {
+            long current = (long) LONGS.getVolatile(buffer, poolOffset(id));
+            if (!isAlive(current) && LONGS.compareAndSet(buffer, poolOffset(id), current, tag)) return id;
+        }
+        return NONE;
+    }
+
+    void releasePool(int id) {
+        LONGS.setVolatile(buffer, poolOffset(id), 0L);
+    }
+
+    boolean isPoolAttached(int id) {
+        return isAlive((long) LONGS.getVolatile(buffer, poolOffset(id)));
+    }
+
+    static long tagOf(long pid) {
+        return pid + 1;
+    }
+
+    /**
+     * @return {@code false} for 0 and tags of processes, that have exited (or crashed)
+     */
+    static boolean isAlive(long tag) {
+        if (tag == 0L) return false;
+        if (tag == tagOf(ProcessHandle.current().pid())) return true;
+        return ProcessHandle.of(tag - 1).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    // free chunks
+
+    /**
+     * @return free chunk or {@link #NONE} if the region is full
+     */
+    int popFree() {
+        while (true) {
+            long head = (long) LONGS.getVolatile(buffer, FREE_HEAD_OFFSET);
+            int top = (int) head - 1;
+            if (top == NONE) return NONE;
+            long next = (long) LONGS.getVolatile(buffer, chunkOffset(top) + NEXT_FREE_OFFSET); // may be stale,
+                                                                                           // then the CAS fails
+            if (LONGS.compareAndSet(buffer, FREE_HEAD_OFFSET, head, nextStamp(head) | next)) return top;
+        }
+    }
+
+    private void pushFree(int chunk) {
+        while (true) {
+            long head = (long) LONGS.getVolatile(buffer, FREE_HEAD_OFFSET);
+            LONGS.setVolatile(buffer, chunkOffset(chunk) + NEXT_FREE_OFFSET, head & 0xffffffffL);
+            if (LONGS.compareAndSet(buffer, FREE_HEAD_OFFSET, head, nextStamp(head) | (chunk + 1L))) return;
+        }
+    }
+
+    /**
+     * Empties a chunk, whose every slot has been taken, and returns it to the free stack. The owner is reset
+     * first, so thieves stop choosing it, then the generation, that empties the slots.
+     */
+    void recycle(int chunk) {
+        long word;
+        do {
+            word = owner(chunk);
+        } while (!LONGS.compareAndSet(buffer, chunkOffset(chunk) + OWNER_OFFSET, word,
+                nextStamp(word) | ((long) NONE & 0xffffffffL)));
+
+        LONGS.setVolatile(buffer, chunkOffset(chunk) + TAKEN_OFFSET, 0L);
+        LONGS.setVolatile(buffer, chunkOffset(chunk) + IDX_OFFSET, -1L);
+        LONGS.setVolatile(buffer, chunkOffset(chunk) + PRODUCER_OFFSET, 0L);
+        LONGS.setVolatile(buffer, chunkOffset(chunk) + GEN_OFFSET, generation(chunk) + 1);
+        pushFree(chunk);
+    }
+
+    // chunk header
+
+    long owner(int chunk) {
+        return (long) LONGS.getVolatile(buffer, chunkOffset(chunk) + OWNER_OFFSET);
+    }
+
+    static int ownerOf(long ownerWord) {
+        return (int) ownerWord;
+    }
+
+    /**
+     * Transfers the chunk, like {@code AtomicStampedReference.compareAndSet} with the stamp incremented.
+     *
+     * @param expected owner word, read before
+     * @param newOwner pool id
+     * @return {@code true} if the owner word hasn't changed since it was read
+     */
+    boolean casOwner(int chunk, long expected, int newOwner) {
+        return LONGS.compareAndSet(buffer, chunkOffset(chunk) + OWNER_OFFSET, expected,
+                nextStamp(expected) | (newOwner & 0xffffffffL));
+    }
+
+    long generation(int chunk) {
+        return (long) LONGS.getVolatile(buffer, chunkOffset(chunk) + GEN_OFFSET);
+    }
+
+    int getIdx(int chunk) {
+        return (int) (long) LONGS.getAcquire(buffer, chunkOffset(chunk) + IDX_OFFSET);
+    }
+
+    void setIdx(int chunk, int idx) {
+        LONGS.setRelease(buffer, chunkOffset(chunk) + IDX_OFFSET, (long) idx);
+    }
+
+    /**
+     * @return slots, taken in the current generation, including this one
+     */
+    long incrementTaken(int chunk) {
+        return addTaken(chunk, 1);
+    }
+
+    long addTaken(int chunk, long delta) {
+        return (long) LONGS.getAndAdd(buffer, chunkOffset(chunk) + TAKEN_OFFSET, delta) + delta;
+    }
+
+    long producer(int chunk) {
+        return (long) LONGS.getVolatile(buffer, chunkOffset(chunk) + PRODUCER_OFFSET);
+    }
+
+    void setProducer(int chunk, long tag) {
+        LONGS.setVolatile(buffer, chunkOffset(chunk) + PRODUCER_OFFSET, tag);
+    }
+
+    /**
+     * Claims sealing of a chunk, whose producer has stopped, so that only one process seals it.
+     */
+    boolean casProducer(int chunk, long expected, long tag) {
+        return LONGS.compareAndSet(buffer, chunkOffset(chunk) + PRODUCER_OFFSET, expected, tag);
+    }
+
+    /**
+     * Marks the slots, that have not been published in the current generation, as taken, so that the chunk
+     * is recycled once the published ones are taken. Called by the producer of the chunk, or on behalf
+     * of a dead one.
+     *
+     * @return number of sealed slots, to add to the taken ones
+     */
+    int seal(int chunk, long generation) {
+        int sealed = 0;
+        for (int i = 0; i < chunkSize; i++) {
+            long state = slotState(chunk, i);
+            if (state >>> 2 < generation // published in an older generation, i.e. empty
+                    && LONGS.compareAndSet(buffer, slotOffset(chunk, i), state, state(generation, TAKEN))) {
+                sealed++;
+            }
+        }
+        return sealed;
+    }
+
+    // slots
+
+    static long state(long generation, long state) {
+        return generation << 2 | state;
+    }
+
+    long slotState(int chunk, int idx) {
+        return (long) LONGS.getAcquire(buffer, slotOffset(chunk, idx));
+    }
+
+    /**
+     * Writes the payload and publishes it by the release write of the state. Only the producer, that has popped
+     * the chunk, calls it.
+     */
+    void publish(int chunk, int idx, long generation, long payload) {
+        LONGS.set(buffer, slotOffset(chunk, idx) + 8, payload);
+        LONGS.setRelease(buffer, slotOffset(chunk, idx), state(generation, FULL)); // <-- visible to consumers
+    }
+
+    boolean take(int chunk, int idx, long generation) {
+        return LONGS.compareAndSet(buffer, slotOffset(chunk, idx), state(generation, FULL),
+                state(generation, TAKEN));
+    }
+
+    /**
+     * @return payload, valid only after the slot has been taken by the caller
+     */
+    long payload(int chunk, int idx) {
+        return (long) LONGS.get(buffer, slotOffset(chunk, idx) + 8);
+    }
+
+    private static long nextStamp(long word) {
+        return ((word >>> 32) + 1) << 32;
+    }
+
+    private int poolOffset(int id) {
+        return HEADER_BYTES + id * POOL_BYTES;
+    }
+
+    private int chunkOffset(int chunk) {
+        return chunksOffset + chunk * chunkBytes;
+    }
+
+    private int slotOffset(int chunk, int idx) {
+        return chunkOffset(chunk) + CHUNK_HEADER_BYTES + idx * SLOT_BYTES;
+    }
+}
@@ -0,0 +1,360 @@
+package com.naumov.taskpool.shm;
+
+import com.naumov.taskpool.LongTaskPool;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+import static com.naumov.taskpool.shm.SharedRegion.FULL;
+import static com.naumov.taskpool.shm.SharedRegion.NONE;
+import static com.naumov.taskpool.shm.SharedRegion.TAKEN;
+import static com.naumov.taskpool.shm.SharedRegion.state;
+
+/**
+ * Inter-process {@link LongTaskPool}: the chunks of the SALSA design in a memory-mapped file (e.g. on
+ * {@code /dev/shm}), shared by several processes. Every consumer thread attaches a pool slot of the file,
+ * a chunk is owned by a pool, and a consumer, whose pool is empty, steals whole chunks from any other pool
+ * by CAS of the stamped owner, no matter which process has produced them. So an idle process takes over
+ * the backlog of an overloaded neighbour.
+ * <p>
+ * Differences from {@link com.naumov.taskpool.salsa.LongSalsaSCPool}, imposed by the fixed shared layout:
+ * <ul>
+ *     <li>there are no chunk lists: consumers find their chunks (and chunks to steal) by scanning the chunk
+ *     headers of the file, which stay small and cache-friendly;</li>
+ *     <li>every slot is taken by CAS, the index of the owner is only a hint, since there are no per-owner
+ *     node snapshots to make the CAS-free owner path safe;</li>
+ *     <li>the file has a fixed number of chunks, producers wait for a free one when the pool is full.</li>
+ * </ul>
+ * A producer, that stops in the middle of a chunk, seals it by {@link #detachProducer()} or {@link #close()}:
+ * the rest of the slots are marked taken, so the chunk is recycled once the published ones are consumed.
+ * Chunks of producer threads, that have exited without that, and of producer processes, that have died, are
+ * sealed on their behalf by a producer, that finds the pool full. Pools of consumers, that have died, are stolen
+ * from, and their slots are reused. A process is recognized by its pid, a dead process, whose pid has been
+ * reused, is taken for a live one. The file is not deleted by the pool.
+ */
+public class ShmTaskPool implements LongTaskPool, AutoCloseable {
+    private static final int FULL_POOL_SPINS = 64; // retries before a producer starts parking on a full pool
+    private static final long MAX_FULL_POOL_PARK_NS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long RECLAIM_PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(1); // of abandoned chunk scans
+
+    private final SharedRegion region;
+    private final int chunkSize;
+    private final int nChunks;
+    private final int nPools;
+    private final long tag = SharedRegion.tagOf(ProcessHandle.current().pid()); // mark of the pools and chunks
+    private final List<Integer> localPools = new CopyOnWriteArrayList<>(); // attached by this instance
+    private final Queue<ProducerContext> producers = new ConcurrentLinkedQueue<>(); // of this instance
+    private volatile long lastReclaimNanos = System.nanoTime() - RECLAIM_PERIOD_NS;
+
+    // ThreadLocals
+    private final ThreadLocal<ProducerContext> pContextTL = ThreadLocal.withInitial(() -> {
+        ProducerContext producerContext = new ProducerContext(Thread.currentThread());
+        producers.add(producerContext);
+        return producerContext;
+    });
+    private final ThreadLocal<OwnerContext> ownerContextTL = ThreadLocal.withInitial(() -> null);
+
+    private ShmTaskPool(SharedRegion region) {
+        this.region = region;
+        this.chunkSize = region.getChunkSize();
+        this.nChunks = region.getChunkCount();
+        this.nPools = region.getPoolCount();
+    }
+
+    /**
+     * Creates the shared file or attaches to the one, created by another process with the same parameters.
+     *
+     * @param file      path of the file, e.g. in {@code /dev/shm}
+     * @param nPools    max number of consumer threads of all the processes
+     * @param nChunks   capacity of the pool in chunks
+     * @param chunkSize payloads per chunk
+     * @return pool, backed by the file
+     */
+    public static ShmTaskPool open(Path file, int nPools, int nChunks, int chunkSize) {
+        return new ShmTaskPool(SharedRegion.open(file, nPools, nChunks, chunkSize));
+    }
+
+    /**
+     * Inserts the payload, waiting for a free chunk if the pool is full.
+     *
+     * @param payload a payload for consumers
+     * @throws RejectedExecutionException if interrupted while waiting
+     */
+    @Override
+    public void put(long payload) {
+        long parkNs = 1000L;
+        for (int attempt = 0; !offer(payload); attempt++) {
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for space in the task pool");
+            }
+
+            if (attempt < FULL_POOL_SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, parkNs);
+                parkNs = Math.min(parkNs << 1, MAX_FULL_POOL_PARK_NS);
+            }
+        }
+    }
+
+    /**
+     * Inserts the payload into the current chunk of the calling producer. A new chunk is given to a pool of
+     * this process, or to any attached pool if this process has no consumers. If there are no free chunks,
+     * the abandoned ones are sealed, see {@link ShmTaskPool}.
+     *
+     * @param payload a payload for consumers
+     * @return {@code false} if the pool is full
+     */
+    public boolean offer(long payload) {
+        ProducerContext producerContext = pContextTL.get();
+        if (producerContext.chunk == NONE) {
+            int chunk = region.popFree();
+            if (chunk == NONE && reclaimAbandoned()) chunk = region.popFree();
+            if (chunk == NONE) return false;
+
+            long owner = region.owner(chunk);
+            region.casOwner(chunk, owner, choosePool()); // nobody else changes the owner of a free chunk
+            region.setProducer(chunk, tag);
+            producerContext.chunk = chunk;
+            producerContext.generation = region.generation(chunk);
+            producerContext.prodIdx = 0;
+        }
+
+        region.publish(producerContext.chunk, producerContext.prodIdx, producerContext.generation, payload);
+        producerContext.prodIdx++;
+
+        if (producerContext.prodIdx == chunkSize) {
+            // the chunk is full
+            producerContext.chunk = NONE;
+        }
+        return true;
+    }
+
+    /**
+     * Seals the current chunk of the calling producer, so that it is recycled once its payloads are consumed.
+     * The thread may produce again afterwards.
+     */
+    public void detachProducer() {
+        ProducerContext producerContext = pContextTL.get();
+        pContextTL.remove();
+        if (producers.remove(producerContext) && producerContext.chunk != NONE) {
+            seal(producerContext.chunk, producerContext.generation);
+        }
+    }
+
+    /**
+     * Seals the chunks of the producer threads of this instance, that have exited, and the ones of the producer
+     * processes, that have died. Runs at most once per {@link #RECLAIM_PERIOD_NS}, since it scans all the chunks.
+     *
+     * @return {@code true} if a chunk has been recycled
+     */
+    private boolean reclaimAbandoned() {
+        long now = System.nanoTime();
+        if (now - lastReclaimNanos < RECLAIM_PERIOD_NS) return false;
+        lastReclaimNanos = now;
+
+        boolean recycled = false;
+        for (ProducerContext producerContext : producers) {
+            if (!producerContext.thread.isAlive() && producers.remove(producerContext)
+                    && producerContext.chunk != NONE) {
+                recycled |= seal(producerContext.chunk, producerContext.generation);
+            }
+        }
+
+        Map<Long, Boolean> alive = new HashMap<>();
+        for (int chunk = 0; chunk < nChunks; chunk++) {
+            long generation = region.generation(chunk); // before the producer, so a recycled chunk is left intact
+            long producer = region.producer(chunk);
+            if (producer != 0L && producer != tag && !alive.computeIfAbsent(producer, SharedRegion::isAlive)
+                    && region.casProducer(chunk, producer, 0L)) {
+                recycled |= seal(chunk, generation);
+            }
+        }
+        return recycled;
+    }
+
+    /**
+     * @return {@code true} if the chunk has been recycled, since all its published payloads were taken
+     */
+    private boolean seal(int chunk, long generation) {
+        int sealed = region.seal(chunk, generation);
+        if (sealed > 0 && region.addTaken(chunk, sealed) == chunkSize) {
+            region.recycle(chunk);
+            return true;
+        }
+        return false;
+    }
+
+    private int choosePool() {
+        int nLocal = localPools.size();
+        if (nLocal > 0) return localPools.get(ThreadLocalRandom.current().nextInt(nLocal));
+
+        int startIdx = ThreadLocalRandom.current().nextInt(nPools);
+        for (int i = startIdx; i < nPools + startIdx; i++) {
+            if (region.isPoolAttached(i % nPools)) return i % nPools;
+        }
+        return startIdx; // nobody consumes yet, the chunk will be stolen
+    }
+
+    /**
+     * Takes a payload from the pool of the calling consumer, or steals a chunk from another pool.
+     * The first call attaches a pool slot of the file for the thread.
+     *
+     * @throws IllegalStateException if all the pool slots are taken
+     */
+    @Override
+    public boolean get(LongConsumer action) {
+        OwnerContext ownerContext = ownerContextTL.get();
+        if (ownerContext == null) ownerContext = attach();
+
+        if (ownerContext.chunk != NONE && takeFrom(ownerContext, action)) return true; // common case
+
+        // traverse the chunks, starting after the previous current one, first the own ones, then the others
+        for (int i = ownerContext.scanStart; i < ownerContext.scanStart + nChunks; i++) {
+            int chunk = i % nChunks;
+            if (SharedRegion.ownerOf(region.owner(chunk)) == ownerContext.poolId && hasTask(chunk)
+                    && takeFrom(setCurrent(ownerContext, chunk), action)) {
+                ownerContext.scanStart = (chunk + 1) % nChunks;
+                return true;
+            }
+        }
+
+        int startIdx = ThreadLocalRandom.current().nextInt(nChunks);
+        for (int i = startIdx; i < nChunks + startIdx; i++) {
+            int chunk = i % nChunks;
+            long owner = region.owner(chunk);
+            int ownerId = SharedRegion.ownerOf(owner);
+            if (ownerId != NONE && ownerId != ownerContext.poolId && hasTask(chunk)
+                    && region.casOwner(chunk, owner, ownerContext.poolId)
+                    && takeFrom(setCurrent(ownerContext, chunk), action)) {
+                return true;
+            }
+        }
+
+        ownerContext.chunk = NONE;
+        return false;
+    }
+
+    private OwnerContext attach() {
+        int poolId = region.attachPool(tag);
+        if (poolId == NONE) throw new IllegalStateException("Too many consumers");
+
+        localPools.add(poolId);
+        OwnerContext ownerContext = new OwnerContext(poolId);
+        ownerContextTL.set(ownerContext);
+        return ownerContext;
+    }
+
+    private OwnerContext setCurrent(OwnerContext ownerContext, int chunk) {
+        ownerContext.chunk = chunk;
+        ownerContext.generation = region.generation(chunk);
+        ownerContext.next = region.getIdx(chunk) + 1;
+        return ownerContext;
+    }
+
+    /**
+     * Takes the first pending payload of the current chunk, while the chunk is owned by the consumer.
+     * The consumer that takes the last slot recycles the chunk.
+     */
+    private boolean takeFrom(OwnerContext ownerContext, LongConsumer action) {
+        final int chunk = ownerContext.chunk;
+        final long generation = ownerContext.generation;
+        for (int i = Math.max(ownerContext.next, region.getIdx(chunk) + 1); i < chunkSize; i++) {
+            long state = region.slotState(chunk, i);
+            if (state == state(generation, TAKEN)) continue;
+            if (state != state(generation, FULL)) return false; // not produced yet, or the chunk has been recycled
+            if (SharedRegion.ownerOf(region.owner(chunk)) != ownerContext.poolId) break; // stolen
+            if (!region.take(chunk, i, generation)) continue; // taken by a thief
+
+            long payload = region.payload(chunk, i);
+            region.setIdx(chunk, i);
+            ownerContext.next = i + 1;
+            if (region.incrementTaken(chunk) == chunkSize) {
+                region.recycle(chunk);
+                ownerContext.chunk = NONE;
+            }
+            action.accept(payload);
+            return true;
+        }
+
+        ownerContext.chunk = NONE; // used up or stolen
+        return false;
+    }
+
+    private boolean hasTask(int chunk) {
+        long generation = region.generation(chunk);
+        for (int i = region.getIdx(chunk) + 1; i < chunkSize; i++) {
+            long state = region.slotState(chunk, i);
+            if (state == state(generation, FULL)) return true;
+            if (state != state(generation, TAKEN)) return false;
+        }
+        return false;
+    }
+
+    /**
+     * Scans all the chunks of the file. Unlike {@link com.naumov.taskpool.salsa.LongSalsaSCPool#isEmpty()}, is not
+     * linearizable: a payload, moving between chunks, can't be missed, but one, inserted during the scan, can.
+     */
+    @Override
+    public boolean isEmpty() {
+        for (int chunk = 0; chunk < nChunks; chunk++) {
+            if (SharedRegion.ownerOf(region.owner(chunk)) != NONE && hasTask(chunk)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Seals the current chunks of the producers and releases the pool slots of the consumers of this instance.
+     * Chunks the consumers still own are stolen by others. Must be called once the producers and the consumers
+     * have stopped.
+     */
+    @Override
+    public void close() {
+        ProducerContext producerContext;
+        while ((producerContext = producers.poll()) != null) {
+            if (producerContext.chunk != NONE) seal(producerContext.chunk, producerContext.generation);
+        }
+        for (int poolId : localPools) region.releasePool(poolId);
+        localPools.clear();
+    }
+
+    /**
+     * Thread-local producer variables.
+     */
+    private static class ProducerContext {
+        private final Thread thread;
+        private int chunk = NONE; // current chunk to work with
+        private long generation; // of the current chunk
+        private int prodIdx; // where to add next payload
+
+        private ProducerContext(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    /**
+     * Thread-local owner consumer variables.
+     */
+    private static class OwnerContext {
+        private final int poolId;
+        private int chunk = NONE;
+        private long generation;
+        private int next; // next slot to try in the current chunk
+        private int scanStart = 0; // chunk to start the next traversal from
+
+        private OwnerContext(int poolId) {
+            this.poolId = poolId;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.naumov;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class PipelineTest {
+
+    @Test(timeout = 60_000)
+    public void itemsPassAllStages() throws Exception {
+        AtomicLong sum = new AtomicLong();
+        Pipeline<String> pipeline = Pipeline.<String>builder(1, 8, 16) // small stages, producers wait for space
+                .map("parse", 2, Integer::parseInt)
+                .<Integer>stage("split", 2, (n, out) -> {
+                    out.accept(n);
+                    out.accept(-n + 1);
+                })
+                .sink("sum", 2, sum::addAndGet);
+
+        for (int i = 0; i < 1000; i++) pipeline.submit(String.valueOf(i));
+        pipeline.awaitDrained(); // partial batches are flushed by idle consumers
+
+        assertEquals(1000, sum.get());
+        List<Pipeline.StageStats> stats = pipeline.stats();
+        assertEquals("parse", stats.get(0).getName());
+        assertEquals(1000, stats.get(1).getProcessed());
+        assertEquals(2000, stats.get(2).getProcessed());
+        for (Pipeline.StageStats stage : stats) assertEquals(0, stage.getBacklog());
+        pipeline.close();
+    }
+
+    @Test(timeout = 60_000)
+    public void failedItemsAreCountedAndDropped() throws Exception {
+        AtomicLong sum = new AtomicLong();
+        Pipeline<Integer> pipeline = Pipeline.<Integer>builder(1, 8, 16)
+                .map("check", 2, n -> {
+                    if (n % 2 != 0) throw new IllegalArgumentException("odd " + n);
+                    return n;
+                })
+                .sink("sum", 2, sum::addAndGet);
+
+        for (int i = 0; i < 100; i++) pipeline.submit(i);
+        pipeline.awaitDrained();
+
+        assertEquals(2450, sum.get()); // even items only
+        Pipeline.StageStats check = pipeline.stats().get(0);
+        assertEquals(100, check.getProcessed());
+        assertEquals(50, check.getFailed());
+        assertTrue(check.getFirstFailure() instanceof IllegalArgumentException);
+        assertNull(pipeline.stats().get(1).getFirstFailure());
+
+        Thread.currentThread().interrupt();
+        pipeline.close(); // doesn't wait, keeps the interrupt status
+        assertTrue(Thread.interrupted());
+    }
+}
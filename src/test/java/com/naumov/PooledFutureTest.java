@@ -0,0 +1,78 @@
+package com.naumov;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class PooledFutureTest {
+
+    @Test
+    public void reArmedFutureReportsNewResult() throws Exception {
+        PooledFuture<Integer> future = new PooledFuture<>();
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            future.arm(() -> value);
+            assertFalse(future.isDone());
+            future.run();
+            assertEquals(Integer.valueOf(i), future.get());
+        }
+
+        future.arm(() -> {
+            throw new IllegalStateException("expected");
+        });
+        future.run();
+        ExecutionException failure = assertThrows(ExecutionException.class, future::get);
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+
+        future.arm(() -> 1); // a failed future is re-armed too
+        future.run();
+        assertEquals(Integer.valueOf(1), future.get());
+    }
+
+    @Test
+    public void pendingFutureCannotBeReArmed() {
+        PooledFuture<Integer> future = new PooledFuture<>();
+        future.arm(() -> 1);
+        assertThrows(IllegalStateException.class, () -> future.arm(() -> 2));
+    }
+
+    @Test
+    public void staleRunAfterCancelRunsOnlyNewTask() throws Exception {
+        PooledFuture<Integer> future = new PooledFuture<>();
+        future.arm(() -> 1);
+        assertTrue(future.cancel(false));
+        assertThrows(CancellationException.class, future::get);
+
+        future.arm(() -> 2);
+        future.run(); // the insertion of the cancelled task, e.g. left in a LIFO slot
+        future.run(); // the insertion of the new one
+        assertEquals(Integer.valueOf(2), future.get());
+    }
+
+    @Test(timeout = 30_000)
+    public void staleRunDuringReArmNeverFails() throws Exception {
+        final PooledFuture<Integer> future = new PooledFuture<>();
+        final AtomicBoolean stop = new AtomicBoolean();
+        Thread stale = new Thread(() -> {
+            while (!stop.get()) future.run(); // stale insertions, racing with arm()
+        });
+        stale.start();
+
+        try {
+            for (int i = 0; i < 100_000; i++) {
+                final int value = i;
+                future.arm(() -> value);
+                future.run(); // no-op if the stale thread has been first
+                assertEquals(Integer.valueOf(i), future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            stop.set(true);
+            stale.join();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.naumov;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ScheduledTaskPoolExecutorTest {
+    private ScheduledTaskPoolExecutor executor;
+
+    @Before
+    public void initExecutor() {
+        executor = MyExecutors.newSalsaScheduledThreadPool(1, 2, 10, 1, 1000);
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 30_000)
+    public void scheduledTaskRunsAfterDelay() throws Exception {
+        long start = System.nanoTime();
+        ScheduledFuture<Long> future = executor.schedule(System::nanoTime, 50, TimeUnit.MILLISECONDS);
+        assertTrue(future.get() - start >= TimeUnit.MILLISECONDS.toNanos(50)); // never early
+        assertTrue(future.isDone());
+    }
+
+    @Test(timeout = 30_000)
+    public void cancelledTaskNeverRuns() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> cancelled = executor.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel(false));
+        assertThrows(CancellationException.class, cancelled::get);
+
+        // expires after the cancelled one
+        executor.schedule(() -> true, 100, TimeUnit.MILLISECONDS).get();
+        assertEquals(0, runs.get());
+    }
+
+    @Test(timeout = 30_000)
+    public void fixedRateTaskRunsUntilCancelled() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch ranThrice = new CountDownLatch(3);
+        ScheduledFuture<?> periodic = executor.scheduleAtFixedRate(() -> {
+            runs.incrementAndGet();
+            ranThrice.countDown();
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(ranThrice.await(10, TimeUnit.SECONDS));
+        assertFalse(periodic.isDone());
+        assertTrue(periodic.cancel(false));
+
+        int afterCancel = runs.get();
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertTrue(runs.get() <= afterCancel + 1); // at most the run, that has been in progress
+    }
+
+    @Test(timeout = 30_000)
+    public void shutdownCancelsPendingTimers() throws Exception {
+        ScheduledFuture<?> delayed = executor.schedule(() -> true, 1, TimeUnit.HOURS);
+        ScheduledFuture<?> periodic = executor.scheduleAtFixedRate(() -> {
+        }, 1, 1, TimeUnit.HOURS);
+
+        executor.shutdown();
+        assertThrows(CancellationException.class, delayed::get); // doesn't hang
+        assertThrows(CancellationException.class, periodic::get);
+        assertThrows(RejectedExecutionException.class,
+                () -> executor.schedule(() -> true, 1, TimeUnit.MILLISECONDS));
+    }
+}
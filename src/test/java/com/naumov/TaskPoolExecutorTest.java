@@ -0,0 +1,638 @@
+package com.naumov;
+
+import com.naumov.taskpool.TaskPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class TaskPoolExecutorTest {
+    private static final int N_CONSUMERS = 4;
+
+    private TaskPoolExecutor executor;
+    private Thread.UncaughtExceptionHandler defaultHandler;
+
+    @Before
+    public void initExecutor() {
+        executor = (TaskPoolExecutor) MyExecutors.newSalsaThreadPool(2, N_CONSUMERS, 10, 1, 0);
+        defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+    }
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+        Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+    }
+
+    @Test
+    public void keyedTasksRunInOrder() throws InterruptedException {
+        final int nKeys = 50;
+        final int tasksPerKey = 2000;
+        final int[] lastSeen = new int[nKeys];
+        final AtomicBoolean[] running = new AtomicBoolean[nKeys];
+        final AtomicInteger violations = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(nKeys * tasksPerKey);
+        for (int k = 0; k < nKeys; k++) running[k] = new AtomicBoolean(false);
+
+        for (int i = 1; i <= tasksPerKey; i++) {
+            for (int k = 0; k < nKeys; k++) {
+                final int key = k;
+                final int seq = i;
+                executor.execute(key, () -> {
+                    if (!running[key].compareAndSet(false, true)) violations.incrementAndGet(); // ran in parallel
+                    if (lastSeen[key] != seq - 1) violations.incrementAndGet(); // ran out of order
+                    lastSeen[key] = seq;
+                    running[key].set(false);
+                    done.countDown();
+                });
+            }
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, violations.get());
+    }
+
+    @Test
+    public void failedKeyedTaskDoesNotBlockTheKey() throws InterruptedException {
+        executor.setTaskExceptionHandler((thread, ex) -> {
+        });
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(42L, () -> {
+            throw new IllegalStateException("expected");
+        });
+        executor.execute(42L, done::countDown);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void elasticConsumersFollowTheLoad() throws Exception {
+        TaskPoolExecutor elastic = MyExecutors.newElasticSalsaThreadPool(1, 1, N_CONSUMERS, 10, 1, 1000,
+                50, TimeUnit.MILLISECONDS);
+        try {
+            for (int round = 0; round < 2; round++) { // the second round reuses the pools of retired consumers
+                // the only consumer is busy until the pool has scaled up
+                final CountDownLatch released = new CountDownLatch(1);
+                CompletableFuture<Boolean> busy = elastic.submitAsync(() -> released.await(30, TimeUnit.SECONDS));
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (elastic.getPoolSize() == 1 && System.nanoTime() < deadline) TimeUnit.MILLISECONDS.sleep(1);
+                assertTrue(elastic.getPoolSize() > 1); // scaled up
+
+                released.countDown();
+                assertTrue(busy.get());
+                awaitPoolSize(elastic, 1); // scaled down
+            }
+        } finally {
+            elastic.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failingTasksDoNotKillConsumers() throws InterruptedException {
+        final AtomicInteger failures = new AtomicInteger();
+        executor.setTaskExceptionHandler((thread, ex) -> failures.incrementAndGet());
+
+        final int nTasks = 10_000;
+        final CountDownLatch done = new CountDownLatch(nTasks);
+        for (int i = 0; i < nTasks; i++) {
+            if (i % 2 == 0) {
+                executor.execute(() -> {
+                    done.countDown();
+                    throw new IllegalStateException("expected");
+                });
+            } else {
+                executor.execute(done::countDown);
+            }
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        awaitCount(failures, nTasks / 2);
+        assertEquals(N_CONSUMERS, executor.getPoolSize());
+        awaitLiveConsumers(executor, N_CONSUMERS);
+
+        // all the consumers still take tasks: batches of tasks per SCPool until every consumer has run one
+        final Set<Thread> runners = ConcurrentHashMap.newKeySet();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (runners.size() < N_CONSUMERS && System.nanoTime() < deadline) {
+            for (int i = 0; i < N_CONSUMERS; i++) executor.execute(() -> runners.add(Thread.currentThread()), i);
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        assertEquals(N_CONSUMERS, runners.size());
+        assertEquals(nTasks / 2, failures.get());
+    }
+
+    @Test
+    public void deadConsumersAreReplaced() throws InterruptedException {
+        final AtomicInteger failures = new AtomicInteger();
+        executor.setTaskExceptionHandler((thread, ex) -> {
+            failures.incrementAndGet();
+            throw new IllegalStateException("handler failed too"); // kills the consumer
+        });
+        Thread.setDefaultUncaughtExceptionHandler((thread, ex) -> { // restored after the test
+        });
+
+        final int nTasks = 1000;
+        final CountDownLatch done = new CountDownLatch(nTasks);
+        for (int i = 0; i < nTasks; i++) {
+            if (i % 10 == 0) {
+                executor.execute(() -> {
+                    done.countDown();
+                    throw new IllegalStateException("expected");
+                });
+            } else {
+                executor.execute(done::countDown);
+            }
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS)); // tasks of dead consumers are run by their successors
+        awaitCount(failures, nTasks / 10);
+        assertEquals(N_CONSUMERS, executor.getPoolSize());
+        awaitLiveConsumers(executor, N_CONSUMERS);
+    }
+
+    @Test
+    public void handoffLosesNoTasks() throws InterruptedException {
+        TaskPoolExecutor handoff = MyExecutors.newSalsaThreadPool(2, N_CONSUMERS, 10, 1, 1000,
+                TaskPoolConfig.defaults().withHandoff(true)); // consumers park on backoff, handoffs unpark them
+        try {
+            // one at a time: consumers are idle and waiting, tasks are handed off
+            for (int i = 0; i < 500; i++) {
+                CountDownLatch done = new CountDownLatch(1);
+                handoff.execute(done::countDown);
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+            }
+            assertTrue("tasks handed off", handoff.getHandoffCount() > 0);
+
+            // bursts: most of the tasks go to the chunks
+            final int nTasks = 20_000;
+            final CountDownLatch done = new CountDownLatch(nTasks);
+            for (int i = 0; i < nTasks; i++) {
+                handoff.execute(done::countDown);
+                if (i % 1000 == 0) TimeUnit.MILLISECONDS.sleep(1); // let consumers go idle
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        } finally {
+            handoff.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void pooledFutureIsReusedAcrossSubmissions() throws Exception {
+        PooledFuture<Integer> future = new PooledFuture<>();
+        for (int i = 0; i < 1000; i++) {
+            final int value = i;
+            assertSame(future, executor.submit(() -> value, future));
+            assertEquals(Integer.valueOf(i), future.get());
+        }
+
+        final CountDownLatch released = new CountDownLatch(1);
+        PooledFuture<Boolean> blocked = executor.submit(() -> released.await(10, TimeUnit.SECONDS),
+                new PooledFuture<>());
+        assertThrows(IllegalStateException.class, () -> executor.submit(() -> false, blocked)); // pending or running
+        released.countDown();
+        assertTrue(blocked.get());
+    }
+
+    @Test(timeout = 30_000)
+    public void submitAsyncCompletesFuture() throws Exception {
+        assertEquals("done", executor.submitAsync(() -> "done").get());
+
+        CompletableFuture<Object> failed = executor.submitAsync(() -> {
+            throw new IllegalStateException("expected");
+        });
+        ExecutionException failure = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+
+        // composed without blocking
+        assertEquals(Integer.valueOf(42), executor.submitAsync(() -> 21).thenApply(x -> x * 2).get());
+    }
+
+    @Test(timeout = 30_000)
+    public void completionHandlerIsCalledOnConsumer() throws Exception {
+        final CompletableFuture<Integer> completed = new CompletableFuture<>();
+        final CompletableFuture<Throwable> failed = new CompletableFuture<>();
+        final Set<Thread> callers = ConcurrentHashMap.newKeySet();
+        TaskCompletionHandler<Integer> handler = new TaskCompletionHandler<Integer>() {
+            @Override
+            public void completed(Integer result) {
+                callers.add(Thread.currentThread());
+                completed.complete(result);
+            }
+
+            @Override
+            public void failed(Throwable ex) {
+                callers.add(Thread.currentThread());
+                failed.complete(ex);
+            }
+        };
+
+        executor.execute(() -> 7, handler);
+        executor.execute(() -> {
+            throw new IllegalStateException("expected");
+        }, handler);
+
+        assertEquals(Integer.valueOf(7), completed.get());
+        assertTrue(failed.get() instanceof IllegalStateException);
+        for (Thread caller : callers) assertTrue(caller instanceof TaskPoolExecutor.Worker);
+    }
+
+    @Test
+    public void taskGroupAwaitsAllTasks() throws Exception {
+        for (int nTasks : new int[]{0, 1, 500, 10_000}) {
+            final AtomicInteger ran = new AtomicInteger();
+            TaskGroup group = executor.newGroup(10);
+            for (int i = 0; i < nTasks; i++) group.add(ran::incrementAndGet);
+            group.await();
+            assertTrue(group.isDone());
+            assertEquals(nTasks, ran.get());
+            assertEquals(0, group.getPendingBatchCount()); // completed batches are dropped
+        }
+    }
+
+    @Test
+    public void taskGroupPropagatesFirstFailure() throws InterruptedException {
+        final AtomicInteger ran = new AtomicInteger();
+        TaskGroup group = executor.newGroup(10);
+        group.add(() -> {
+            throw new IllegalStateException("expected");
+        });
+        for (int i = 0; i < 10_000; i++) {
+            group.add(() -> {
+                LockSupport.parkNanos(100_000);
+                ran.incrementAndGet();
+            });
+        }
+
+        ExecutionException ex = assertThrows(ExecutionException.class, group::await);
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        assertTrue(ran.get() < 10_000); // the rest is withdrawn or skipped
+    }
+
+    @Test
+    public void capacityBelowAChunkPerProducerIsRejected() {
+        TaskPoolConfig config = TaskPoolConfig.defaults().withCapacity(16);
+        assertThrows(IllegalArgumentException.class, () -> MyExecutors.newSalsaThreadPool(4, 1, 8, 1, 0, config));
+        MyExecutors.newSalsaThreadPool(2, 1, 8, 1, 0, config).shutdownNow();
+    }
+
+    @Test(timeout = 30_000)
+    public void droppingOldestChunkKeepsKeyedTasks() throws InterruptedException {
+        TaskPoolExecutor bounded = MyExecutors.newSalsaThreadPool(1, 1, 2, 1, 0,
+                TaskPoolConfig.defaults().withCapacity(2), RejectionPolicy.DROP_OLDEST_CHUNK);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch keyed = new CountDownLatch(2);
+        bounded.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+
+        bounded.execute(1L, keyed::countDown); // its mailbox shares the only chunk with the next task
+        bounded.execute(() -> {
+        });
+        bounded.execute(() -> { // drops the chunk
+        });
+        release.countDown();
+
+        bounded.execute(1L, keyed::countDown); // would wait behind the dropped mailbox forever
+        assertTrue(keyed.await(10, TimeUnit.SECONDS));
+        assertEquals(1, bounded.getDroppedTaskCount());
+        bounded.shutdownNow();
+    }
+
+    @Test(timeout = 30_000)
+    public void subscriberSerializesSubscriptionCalls() throws Exception {
+        final int nItems = 500;
+        AtomicLong requested = new AtomicLong();
+        AtomicInteger inRequest = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        AtomicInteger handled = new AtomicInteger();
+        TaskPoolSubscriber<Integer> subscriber = new TaskPoolSubscriber<>(executor, 1, item -> {
+            handled.incrementAndGet(); // every handled item requests more, from any consumer
+        });
+
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (inRequest.getAndIncrement() != 0) overlapped.set(true);
+                LockSupport.parkNanos(10_000);
+                requested.addAndGet(n);
+                inRequest.decrementAndGet();
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        for (int emitted = 0; emitted < nItems; ) {
+            if (emitted < requested.get()) subscriber.onNext(emitted++);
+            else Thread.yield();
+        }
+        subscriber.onComplete();
+
+        subscriber.whenDone().get(10, TimeUnit.SECONDS);
+        assertEquals(nItems, handled.get());
+        assertFalse(overlapped.get());
+    }
+
+    @Test(timeout = 30_000)
+    public void subscriberRequestsAndRunsBatches() throws Exception {
+        Queue<Long> requests = new ConcurrentLinkedQueue<>();
+        AtomicInteger handled = new AtomicInteger();
+        TaskPoolSubscriber<Integer> subscriber = new TaskPoolSubscriber<>(executor, 4, item -> handled.incrementAndGet());
+
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requests.add(n);
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        assertEquals(List.of(8L), new ArrayList<>(requests)); // two batches are prefetched
+
+        for (int i = 0; i < 3; i++) subscriber.onNext(i);
+        Thread.sleep(100);
+        assertEquals(0, handled.get()); // the batch hasn't filled up
+
+        subscriber.onNext(3);
+        while (requests.size() < 2) Thread.yield();
+        assertEquals(4, handled.get());
+        assertEquals(List.of(8L, 4L), new ArrayList<>(requests)); // a drained batch is requested again
+
+        subscriber.onNext(4);
+        subscriber.onNext(5);
+        subscriber.onComplete(); // flushes the partial batch
+        subscriber.whenDone().get(10, TimeUnit.SECONDS);
+        assertEquals(6, handled.get());
+        assertEquals(List.of(8L, 4L), new ArrayList<>(requests));
+    }
+
+    @Test(timeout = 30_000)
+    public void subscriberDropsBufferedBatchOnError() throws Exception {
+        AtomicInteger handled = new AtomicInteger();
+        TaskPoolSubscriber<Integer> subscriber = new TaskPoolSubscriber<>(executor, 4, item -> handled.incrementAndGet());
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+
+        subscriber.onNext(0);
+        subscriber.onNext(1);
+        IllegalStateException failure = new IllegalStateException("publisher failed");
+        subscriber.onError(failure);
+
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> subscriber.whenDone().get());
+        assertSame(failure, ex.getCause());
+        Thread.sleep(100);
+        assertEquals(0, handled.get());
+    }
+
+    @Test(timeout = 30_000)
+    public void publisherEmitsNoMoreThanRequested() throws Exception {
+        final int nTasks = 10;
+        Queue<Integer> received = new ConcurrentLinkedQueue<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        TaskPoolPublisher<Integer> publisher = new TaskPoolPublisher<>(executor, nTasks);
+        publisher.subscribe(new Flow.Subscriber<Integer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.set(s);
+                s.request(3);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+
+        for (int i = 0; i < nTasks; i++) {
+            final int result = i;
+            publisher.submit(() -> result);
+        }
+        publisher.close();
+
+        while (received.size() < 3) Thread.yield();
+        Thread.sleep(100);
+        assertEquals(3, received.size());
+        assertEquals(1, completed.getCount()); // undelivered results hold the completion back
+
+        subscription.get().request(nTasks - 3);
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertEquals(nTasks, received.size());
+        assertEquals(IntStream.range(0, nTasks).boxed().collect(Collectors.toSet()), new HashSet<>(received));
+    }
+
+    @Test
+    public void parallelForVisitsEveryIndexOnce() throws Exception {
+        for (int size : new int[]{0, 1, 7, 100_000}) {
+            final AtomicIntegerArray visits = new AtomicIntegerArray(size);
+            executor.parallelFor(0, size, visits::incrementAndGet);
+            for (int i = 0; i < size; i++) assertEquals(1, visits.get(i));
+        }
+
+        // from a consumer: the loop is nested into a task
+        CompletableFuture<Long> nested = executor.submitAsync(() -> executor.parallelReduce(-500, 500,
+                () -> new long[1], (acc, i) -> acc[0] += i + 500, (a, b) -> new long[]{a[0] + b[0]})[0]);
+        assertEquals(Long.valueOf(999 * 1000 / 2), nested.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 30_000)
+    public void managedBlockLetsSpareRunPendingTasks() throws Exception {
+        TaskPoolExecutor single = MyExecutors.newSalsaThreadPool(2, 1, 10, 1, 0, TaskPoolConfig.defaults());
+        try {
+            for (int round = 0; round < 3; round++) { // spares are parked and reused
+                final CountDownLatch started = new CountDownLatch(1);
+                final CountDownLatch released = new CountDownLatch(1);
+                CompletableFuture<Boolean> blocked = single.submitAsync(() -> {
+                    started.countDown();
+                    single.managedBlock(latchBlocker(released));
+                    return true;
+                });
+
+                started.await();
+                single.execute(released::countDown); // would wait behind the only consumer, if it were blocked
+                assertTrue(blocked.get());
+            }
+
+            awaitPoolSize(single, 1); // spares have stepped aside
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void unblockedTaskCompletesFutureJoinedBySpare() throws Exception {
+        TaskPoolExecutor single = MyExecutors.newSalsaThreadPool(2, 1, 10, 1, 0, TaskPoolConfig.defaults());
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch released = new CountDownLatch(1);
+            final CompletableFuture<Integer> unblocked = new CompletableFuture<>();
+            CompletableFuture<Integer> blocked = single.submitAsync(() -> {
+                started.countDown();
+                single.managedBlock(latchBlocker(released));
+                unblocked.complete(1); // without an SCPool: the spare holds the only one, joining this future
+                return single.join(single.submitAsync(() -> 2)); // forked without an SCPool too
+            });
+
+            started.await();
+            CompletableFuture<Integer> joining = single.submitAsync(() -> single.join(unblocked)); // run by the spare
+            released.countDown();
+
+            assertEquals(Integer.valueOf(2), blocked.get(10, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(1), joining.get(10, TimeUnit.SECONDS));
+            assertTrue(single.submitAsync(() -> true).get(10, TimeUnit.SECONDS)); // SCPool taken back
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void shutdownStopsWorkerInJoin() throws Exception {
+        TaskPoolExecutor single = MyExecutors.newSalsaThreadPool(2, 1, 10, 1, 0, TaskPoolConfig.defaults());
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        single.execute(() -> {
+            started.countDown();
+            try {
+                single.join(new CompletableFuture<>()); // never completed
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+                Thread.currentThread().interrupt(); // the worker stops after the task
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        started.await();
+        single.shutdownNow(); // the worker must not keep polling the pool in join()
+        awaitLiveConsumers(single, 0);
+        assertTrue(interrupted.get());
+    }
+
+    @Test(timeout = 30_000)
+    public void shutdownStopsWorkerInManagedBlock() throws Exception {
+        TaskPoolExecutor single = MyExecutors.newSalsaThreadPool(2, 1, 10, 1, 0, TaskPoolConfig.defaults());
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        single.execute(() -> {
+            started.countDown();
+            try {
+                single.managedBlock(latchBlocker(new CountDownLatch(1))); // never released
+            } catch (InterruptedException e) {
+                interrupted.set(Thread.currentThread().isInterrupted()); // re-asserted for the worker
+            }
+        });
+
+        started.await();
+        single.shutdownNow(); // the spare has taken the only SCPool, the blocked worker must not wait for it
+        awaitLiveConsumers(single, 0);
+        assertTrue(interrupted.get());
+    }
+
+    @Test(timeout = 30_000)
+    public void unblockedWorkerTakesSCPoolOfRetiredOne() throws Exception {
+        TaskPoolExecutor elastic = MyExecutors.newElasticSalsaThreadPool(1, 1, 2, 10, 1, 1000,
+                20, TimeUnit.MILLISECONDS);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch released = new CountDownLatch(1);
+            CompletableFuture<Boolean> blocked = elastic.submitAsync(() -> {
+                started.countDown();
+                elastic.managedBlock(latchBlocker(released));
+                return true;
+            });
+
+            started.await();
+            awaitPoolSize(elastic, 1); // the spare has retired, its SCPool is free
+            released.countDown();
+            assertTrue(blocked.get());
+
+            // the unblocked worker has taken the free SCPool, nobody has given its own up for it
+            assertTrue(elastic.submitAsync(() -> true).get());
+            assertEquals(0, elastic.getSpareCount());
+        } finally {
+            elastic.shutdownNow();
+        }
+    }
+
+    private static ForkJoinPool.ManagedBlocker latchBlocker(CountDownLatch latch) {
+        return new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() throws InterruptedException {
+                latch.await();
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return latch.getCount() == 0;
+            }
+        };
+    }
+
+    private static void awaitPoolSize(TaskPoolExecutor executor, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (executor.getPoolSize() != expected && System.nanoTime() < deadline) TimeUnit.MILLISECONDS.sleep(1);
+        assertEquals(expected, executor.getPoolSize());
+    }
+
+    private static void awaitCount(AtomicInteger counter, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (counter.get() < expected && System.nanoTime() < deadline) TimeUnit.MILLISECONDS.sleep(1);
+        assertEquals(expected, counter.get());
+    }
+
+    private static void awaitLiveConsumers(TaskPoolExecutor executor, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (executor.getLiveConsumerCount() != expected && System.nanoTime() < deadline)
+            TimeUnit.MILLISECONDS.sleep(1);
+        assertEquals(expected, executor.getLiveConsumerCount());
+    }
+}
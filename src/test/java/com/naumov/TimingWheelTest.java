@@ -0,0 +1,98 @@
+package com.naumov;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+// simple sequential tests
+public class TimingWheelTest {
+    private TimingWheel<TestTimeout> wheel;
+    private final List<TestTimeout> expired = new ArrayList<>();
+
+    private static class TestTimeout implements TimingWheel.Timeout {
+        private final long deadlineTick;
+
+        private TestTimeout(long deadlineTick) {
+            this.deadlineTick = deadlineTick;
+        }
+
+        @Override
+        public long getDeadlineTick() {
+            return deadlineTick;
+        }
+    }
+
+    @Before
+    public void initWheel() {
+        wheel = new TimingWheel<>(0);
+        expired.clear();
+    }
+
+    @Test
+    public void dueTimeoutExpiresOnAdd() {
+        wheel.add(new TestTimeout(0), expired::add);
+        assertEquals(1, expired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void expiresExactlyAtDeadline() {
+        long[] deadlines = {1, 255, 256, 257, 65535, 65536, 100_000, 1L << 24, (1L << 24) + 3};
+        for (long deadline : deadlines) wheel.add(new TestTimeout(deadline), expired::add);
+        assertEquals(deadlines.length, wheel.size());
+
+        for (long deadline : deadlines) {
+            wheel.advance(deadline - 1, expired::add);
+            assertTrue(expired.stream().allMatch(t -> t.getDeadlineTick() < deadline)); // never early
+
+            wheel.advance(deadline, expired::add);
+            assertEquals(deadline, expired.get(expired.size() - 1).getDeadlineTick());
+        }
+        assertEquals(deadlines.length, expired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void timeoutBeyondTopLevel() {
+        long deadline = (1L << 32) + 5; // more than a turn of the top level wheel
+        wheel.add(new TestTimeout(deadline), expired::add);
+
+        wheel.advance(1L << 32, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advance(deadline, expired::add);
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void advanceAfterAddingInTheMiddle() {
+        wheel.advance(1000, expired::add);
+        wheel.add(new TestTimeout(1300), expired::add);
+        wheel.add(new TestTimeout(1001), expired::add);
+
+        wheel.advance(1001, expired::add);
+        assertEquals(1, expired.size());
+        wheel.advance(2000, expired::add);
+        assertEquals(2, expired.size());
+    }
+
+    @Test
+    public void purgedTimeoutsNeverExpire() {
+        List<TestTimeout> kept = new ArrayList<>();
+        for (long deadline = 1; deadline < 100_000; deadline += 97) {
+            TestTimeout timeout = new TestTimeout(deadline);
+            wheel.add(timeout, expired::add);
+            if (deadline % 2 == 0) kept.add(timeout);
+        }
+        int added = wheel.size();
+
+        assertEquals(added - kept.size(), wheel.purge(t -> t.getDeadlineTick() % 2 != 0));
+        assertEquals(kept.size(), wheel.size());
+        wheel.advance(100_000, expired::add);
+        assertEquals(kept, expired);
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,74 @@
+package com.naumov.taskpool;
+
+import com.naumov.taskpool.salsa.SalsaTaskPool;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AbstractTaskPoolTest {
+    private static final int N_CONSUMERS = 3;
+
+    @Test
+    public void sameHintLandsInSameHomePool() throws InterruptedException {
+        SalsaTaskPool pool = new SalsaTaskPool(1, N_CONSUMERS, 4, 1);
+        for (int i = 0; i < N_CONSUMERS; i++) runInNewThread(pool::attachConsumer); // every SCPool is active
+
+        for (int i = 0; i < 3; i++) pool.put(() -> {
+        }, 4);
+        assertNonEmptyPools(pool, 1); // 4 mod 3
+
+        pool.put(() -> {
+        }, -2);
+        assertNonEmptyPools(pool, 1); // floorMod, negative hints are fine
+    }
+
+    @Test
+    public void inactiveHomePoolFallsBackToAnyPool() throws InterruptedException {
+        SalsaTaskPool pool = new SalsaTaskPool(1, N_CONSUMERS, 4, 1);
+        runInNewThread(pool::attachConsumer);
+        runInNewThread(pool::attachConsumer);
+        runInNewThread(() -> {
+            assertTrue(pool.attachConsumer());
+            assertTrue(pool.detachConsumer(false)); // SCPool 2 has no owner
+        });
+
+        for (int i = 0; i < 10; i++) pool.put(() -> {
+        }, 2);
+        assertTrue(pool.getSCPools().get(2).isEmpty());
+        assertFalse(pool.getSCPools().get(0).isEmpty() && pool.getSCPools().get(1).isEmpty());
+    }
+
+    @Test
+    public void fullHomePoolFallsBackToAnyPool() throws InterruptedException {
+        SalsaTaskPool pool = new SalsaTaskPool(1, N_CONSUMERS, 2, 1,
+                TaskPoolConfig.defaults().withCapacity(2)); // a chunk per SCPool
+        for (int i = 0; i < N_CONSUMERS; i++) runInNewThread(pool::attachConsumer);
+
+        pool.put(() -> {
+        }, 0);
+        pool.put(() -> {
+        }, 0);
+        assertNonEmptyPools(pool, 0);
+
+        pool.put(() -> {
+        }, 0); // SCPool 0 is full
+        assertFalse(pool.getSCPools().get(1).isEmpty() && pool.getSCPools().get(2).isEmpty());
+    }
+
+    private static void assertNonEmptyPools(AbstractTaskPool pool, int expected) {
+        for (int i = 0; i < N_CONSUMERS; i++) {
+            assertEquals("SCPool " + i, i != expected, pool.getSCPools().get(i).isEmpty());
+        }
+    }
+
+    private static void runInNewThread(Runnable action) throws InterruptedException {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(action);
+        thread.setUncaughtExceptionHandler((t, ex) -> failure.set(ex));
+        thread.start();
+        thread.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+    }
+}
@@ -0,0 +1,60 @@
+package com.naumov.taskpool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptySnapshot() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+        assertEquals(0, snapshot.getMax());
+    }
+
+    @Test
+    public void bucketsCoverAllValues() {
+        long previousHighest = -1;
+        for (int bucket = 0; bucket < LatencyHistogram.bucketOf(Long.MAX_VALUE) + 1; bucket++) {
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(previousHighest + 1)); // no gaps
+            assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+            previousHighest = highest;
+        }
+        assertEquals(Long.MAX_VALUE, previousHighest);
+    }
+
+    @Test
+    public void percentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 10_000; v++) histogram.record(v * 1000);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10_000, snapshot.getCount());
+        assertWithin(5_000_000, snapshot.getValueAtPercentile(50));
+        assertWithin(9_900_000, snapshot.getValueAtPercentile(99));
+        assertWithin(10_000_000, snapshot.getMax());
+    }
+
+    @Test
+    public void mergeSnapshots() {
+        LatencyHistogram local = new LatencyHistogram();
+        LatencyHistogram stolen = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) local.record(100);
+        stolen.record(1_000_000);
+        stolen.record(-5); // counted as zero
+
+        LatencyHistogram.Snapshot merged = local.snapshot().merge(stolen.snapshot());
+        assertEquals(101, merged.getCount());
+        assertEquals(0, merged.getValueAtPercentile(0));
+        assertWithin(100, merged.getValueAtPercentile(50));
+        assertWithin(1_000_000, merged.getMax());
+    }
+
+    // values are rounded up to the bucket bound, that is no more than 1/8 away
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + ", got " + actual, actual >= expected && actual <= expected + expected / 8);
+    }
+}
@@ -0,0 +1,188 @@
+package com.naumov.taskpool.durable;
+
+import com.naumov.MyExecutors;
+import com.naumov.TaskPoolExecutor;
+import com.naumov.taskpool.ReplayableTask;
+import com.naumov.taskpool.salsa.SalsaTaskPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ObjectInputFilter;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class DurableTaskPoolTest {
+    private static final int CHUNK_SIZE = 4;
+    private static final Set<Integer> RUN = ConcurrentHashMap.newKeySet();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DurableTaskPool newPool(Path dir, Durability durability, int segmentBytes) {
+        return new DurableTaskPool(new SalsaTaskPool(2, 1, CHUNK_SIZE, 1), dir, durability, CHUNK_SIZE, segmentBytes);
+    }
+
+    @Test
+    public void unfinishedTasksAreReplayed() throws Exception {
+        RUN.clear();
+        Path dir = folder.getRoot().toPath();
+        DurableTaskPool pool = newPool(dir, Durability.CHUNK, 1024); // a few tasks per segment
+        for (int i = 0; i < 20; i++) pool.put(new RecordingTask(i));
+        consume(pool, 8); // then "crash"
+
+        assertEquals(8, RUN.size());
+        RUN.clear();
+        DurableTaskPool restarted = newPool(dir, Durability.CHUNK, 1024);
+        assertEquals(12, restarted.recover());
+        consume(restarted, 12);
+
+        for (int i = 8; i < 20; i++) assertTrue("task " + i, RUN.contains(i));
+        assertEquals(12, RUN.size());
+        assertEquals(0, newPool(dir, Durability.CHUNK, 1024).recover()); // nothing left
+    }
+
+    @Test
+    public void finishedSegmentsAreDeleted() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        DurableTaskPool pool = newPool(dir, Durability.ASYNC, 1024);
+        for (int i = 0; i < 40; i++) pool.put(new RecordingTask(i));
+        consume(pool, 40);
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count()); // only the segment, still being appended to
+        }
+    }
+
+    @Test
+    public void nonSerializableTasksAreRejected() {
+        DurableTaskPool pool = newPool(folder.getRoot().toPath(), Durability.ASYNC, 1024);
+        assertThrows(IllegalArgumentException.class, () -> pool.put(() -> {
+        }));
+    }
+
+    @Test
+    public void tornRecordEndsTheSegment() throws Exception {
+        RUN.clear();
+        Path dir = folder.getRoot().toPath();
+        DurableTaskPool pool = newPool(dir, Durability.TASK, 1024);
+        for (int i = 0; i < 3; i++) pool.put(new RecordingTask(i));
+
+        // the state of the last record has reached the file, but a page of its task has not
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.findFirst().get();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(Integer.BYTES + 1);
+            int recordBytes = 1 + 2 * Integer.BYTES + file.readInt(); // all the records are of the same size
+            long lastByte = Integer.BYTES + 3L * recordBytes - 1;
+            file.seek(lastByte);
+            int b = file.read();
+            file.seek(lastByte);
+            file.write(b ^ 0xff);
+        }
+
+        DurableTaskPool restarted = newPool(dir, Durability.TASK, 1024);
+        assertEquals(2, restarted.recover());
+        consume(restarted, 2);
+        assertEquals(Set.of(0, 1), RUN);
+    }
+
+    @Test
+    public void rejectedClassesAreNotReplayed() {
+        Path dir = folder.getRoot().toPath();
+        newPool(dir, Durability.TASK, 1024).put(new RecordingTask(0));
+
+        DurableTaskPool restarted = new DurableTaskPool(new SalsaTaskPool(2, 1, CHUNK_SIZE, 1), dir, Durability.TASK,
+                CHUNK_SIZE, 1024, ObjectInputFilter.Config.createFilter("!" + RecordingTask.class.getName()));
+        assertThrows(IllegalStateException.class, restarted::recover);
+    }
+
+    @Test
+    public void replayableTasksAreLoggedWithoutWrapper() throws Exception {
+        RUN.clear();
+        Path dir = folder.getRoot().toPath();
+        DurableTaskPool pool = newPool(dir, Durability.TASK, 1024);
+        RecordingTask task = new RecordingTask(7);
+        pool.put(new ReplayableTask() { // not serializable
+            @Override
+            public Runnable replayable() {
+                return task;
+            }
+
+            @Override
+            public void run() {
+                task.run();
+            }
+        });
+
+        DurableTaskPool restarted = newPool(dir, Durability.TASK, 1024);
+        assertEquals(1, restarted.recover());
+        consume(restarted, 1);
+        assertEquals(Set.of(7), RUN);
+    }
+
+    @Test(timeout = 30_000)
+    public void executorReplaysAndAcceptsSubmittedTasks() throws Exception {
+        RUN.clear();
+        Path dir = folder.getRoot().toPath();
+        DurableTaskPool pool = newPool(dir, Durability.TASK, 1024);
+        for (int i = 0; i < 3; i++) pool.put(new RecordingTask(i));
+
+        // the only producer slot is left to the calling thread, the recovery takes an extra one
+        TaskPoolExecutor executor = MyExecutors.newDurableSalsaThreadPool(1, 1, CHUNK_SIZE, 1, 0, dir,
+                Durability.TASK, 1024);
+        executor.submit(new RecordingTask(3)).get(10, TimeUnit.SECONDS);
+        Callable<Integer> call = (Callable<Integer> & Serializable) () -> 42;
+        assertEquals(Integer.valueOf(42), executor.submit(call).get(10, TimeUnit.SECONDS));
+        while (RUN.size() < 4) Thread.sleep(1); // the replayed tasks
+        assertEquals(Set.of(0, 1, 2, 3), RUN);
+        executor.shutdownNow();
+    }
+
+    // consumes from another thread, since the producer can't be a consumer of the same pool
+    private static void consume(DurableTaskPool pool, int n) throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < n; i++) {
+                    Runnable task;
+                    while ((task = pool.get()) == null) Thread.onSpinWait();
+                    task.run();
+                }
+            } catch (Throwable ex) {
+                failure.set(ex);
+            }
+        });
+        consumer.start();
+        consumer.join(10_000);
+        assertFalse(consumer.isAlive());
+        assertNull(failure.get());
+    }
+
+    private static class RecordingTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int id;
+
+        private RecordingTask(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            RUN.add(id);
+        }
+    }
+}
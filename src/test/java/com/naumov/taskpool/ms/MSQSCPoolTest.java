@@ -0,0 +1,46 @@
+package com.naumov.taskpool.ms;
+
+import com.naumov.taskpool.CancellableTask;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+// simple sequential tests
+public class MSQSCPoolTest {
+
+    @Test
+    public void cancelledTasksAreSkipped() {
+        MSQSCPool pool = new MSQSCPool(1, 2);
+
+        TestCancellableTask[] tasks = new TestCancellableTask[2];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new TestCancellableTask();
+            assertTrue(pool.produce(tasks[i]));
+        }
+        assertFalse(pool.produce(() -> {
+        })); // full
+
+        assertTrue(tasks[1].slot.withdraw());
+        assertFalse(tasks[1].slot.withdraw()); // only once
+        assertTrue(pool.produce(() -> {
+        })); // the withdrawn task has freed its place
+        assertSame(tasks[0], pool.consume());
+        assertFalse(tasks[0].slot.withdraw()); // taken already
+        assertNotNull(pool.consume()); // skips the withdrawn one
+        assertNull(pool.consume());
+        assertTrue(pool.isEmpty());
+    }
+
+    private static class TestCancellableTask implements CancellableTask {
+        private Slot slot;
+
+        @Override
+        public void bind(Slot slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
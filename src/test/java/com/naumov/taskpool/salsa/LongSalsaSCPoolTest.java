@@ -0,0 +1,74 @@
+package com.naumov.taskpool.salsa;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+// simple sequential tests
+public class LongSalsaSCPoolTest {
+    private LongSalsaSCPool zeroOwnerPool;
+    private final List<Long> consumed = new ArrayList<>();
+
+    @Before
+    public void initSCPool() {
+        zeroOwnerPool = new LongSalsaSCPool(0, 10, 10, 4, Integer.MAX_VALUE);
+        consumed.clear();
+    }
+
+    @Test
+    public void emptyAtStart() {
+        assertTrue(zeroOwnerPool.isEmpty());
+    }
+
+    @Test
+    public void produceWithoutRegistration() {
+        assertThrows(IllegalCallerException.class, () -> zeroOwnerPool.produce(1L));
+        assertThrows(IllegalCallerException.class, () -> zeroOwnerPool.consume(consumed::add));
+    }
+
+    @Test
+    public void tryProduceToEmptyPool() {
+        zeroOwnerPool.registerCurrentThreadAsProducer(0);
+
+        // newly initialized pool has no spare chunks
+        assertFalse(zeroOwnerPool.tryProduce(1L));
+        assertTrue(zeroOwnerPool.isEmpty());
+    }
+
+    @Test
+    public void consumeNormally() {
+        zeroOwnerPool.registerCurrentThreadAsProducer(0);
+        zeroOwnerPool.registerCurrentThreadAsOwner();
+
+        for (long i = 0; i < 10; i++) zeroOwnerPool.produce(i); // spans 3 chunks
+        assertFalse(zeroOwnerPool.isEmpty());
+
+        while (zeroOwnerPool.consume(consumed::add)) ;
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), consumed);
+        assertTrue(zeroOwnerPool.isEmpty());
+
+        // used up chunks are recycled
+        assertTrue(zeroOwnerPool.tryProduce(10L));
+    }
+
+    @Test
+    public void steal() {
+        LongSalsaSCPool otherPool = new LongSalsaSCPool(1, 10, 10, 4, Integer.MAX_VALUE);
+        otherPool.registerCurrentThreadAsProducer(0);
+        for (long i = 0; i < 3; i++) otherPool.produce(i);
+
+        zeroOwnerPool.registerCurrentThreadAsOwner();
+        assertTrue(zeroOwnerPool.steal(otherPool, consumed::add));
+        assertTrue(otherPool.isEmpty()); // the whole chunk is stolen
+
+        // the rest of the stolen chunk is consumed from the own pool
+        while (zeroOwnerPool.consume(consumed::add)) ;
+        assertEquals(Arrays.asList(0L, 1L, 2L), consumed);
+        assertFalse(zeroOwnerPool.steal(otherPool, consumed::add));
+    }
+}
@@ -0,0 +1,83 @@
+package com.naumov.taskpool.salsa;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class LongSalsaTaskPoolTest {
+
+    @Test
+    public void countsAreChecked() {
+        assertThrows(IllegalArgumentException.class, () -> new LongSalsaTaskPool(0, 1, 4, 1));
+        assertThrows(IllegalArgumentException.class, () -> new LongSalsaTaskPool(1, 33, 4, 1));
+    }
+
+    @Test
+    public void actorsKeepTheirRoles() throws InterruptedException {
+        LongSalsaTaskPool pool = new LongSalsaTaskPool(1, 1, 4, 1);
+        pool.put(1L); // registered as the only producer
+        assertThrows(IllegalCallerException.class, () -> pool.get(payload -> {
+        }));
+
+        runInNewThread(() -> {
+            assertThrows(IllegalStateException.class, () -> pool.put(2L)); // too many producers
+
+            assertTrue(pool.get(payload -> assertEquals(1L, payload))); // the only consumer
+            assertTrue(pool.isEmpty());
+            assertThrows(IllegalCallerException.class, () -> pool.put(3L));
+        });
+        runInNewThread(() -> assertThrows(IllegalStateException.class, pool::isEmpty)); // too many consumers
+    }
+
+    @Test(timeout = 30_000)
+    public void everyPayloadIsConsumedOnce() throws InterruptedException {
+        final int nProducers = 2;
+        final int nConsumers = 3;
+        final int perProducer = 50_000;
+        final LongSalsaTaskPool pool = new LongSalsaTaskPool(nProducers, nConsumers, 16, 1);
+        final AtomicIntegerArray seen = new AtomicIntegerArray(nProducers * perProducer);
+        final AtomicLong consumed = new AtomicLong();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(nProducers + nConsumers);
+
+        for (int p = 0; p < nProducers; p++) {
+            final int base = p * perProducer;
+            new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) pool.put(base + i);
+                done.countDown();
+            }).start();
+        }
+
+        for (int c = 0; c < nConsumers; c++) {
+            new Thread(() -> {
+                while (consumed.get() < (long) nProducers * perProducer) {
+                    pool.get(payload -> {
+                        if (seen.incrementAndGet((int) payload) != 1) failed.set(true); // consumed twice
+                        consumed.incrementAndGet();
+                    });
+                }
+                done.countDown();
+            }).start();
+        }
+
+        assertTrue(done.await(20, TimeUnit.SECONDS));
+        assertFalse(failed.get());
+        for (int i = 0; i < seen.length(); i++) assertEquals(1, seen.get(i));
+    }
+
+    private static void runInNewThread(Runnable action) throws InterruptedException {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = new Thread(action);
+        thread.setUncaughtExceptionHandler((t, ex) -> failure.set(ex));
+        thread.start();
+        thread.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+    }
+}
@@ -0,0 +1,115 @@
+package com.naumov.taskpool.salsa;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+// concurrent tests: producers, owners and stealers race on small chunks, every task must run exactly once
+public class SalsaSCPoolStressTest {
+    private static final int N_PRODUCERS = 3;
+    private static final int N_CONSUMERS = 3;
+    private static final int CHUNK_SIZE = 8; // small chunks, many steals
+    private static final int TASKS_PER_PRODUCER = 30_000;
+    private static final long TIMEOUT_MS = 60_000;
+    private static final ThreadLocal<SalsaSCPool> OWN_POOL = new ThreadLocal<>();
+
+    @Test
+    public void everyTaskRunsExactlyOnce() throws InterruptedException {
+        runRound(false);
+    }
+
+    @Test
+    public void everyTaskRunsExactlyOnceWithSpawns() throws InterruptedException {
+        runRound(true);
+    }
+
+    private void runRound(boolean spawn) throws InterruptedException {
+        final int total = N_PRODUCERS * TASKS_PER_PRODUCER * (spawn ? 2 : 1);
+        final SalsaSCPool[] pools = new SalsaSCPool[N_CONSUMERS];
+        for (int i = 0; i < N_CONSUMERS; i++) {
+            pools[i] = new SalsaSCPool(i, N_PRODUCERS, N_CONSUMERS, CHUNK_SIZE, 1);
+        }
+
+        final AtomicIntegerArray runs = new AtomicIntegerArray(total);
+        final AtomicInteger done = new AtomicInteger(0);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int c = 0; c < N_CONSUMERS; c++) {
+            final int cId = c;
+            threads.add(new Thread(() -> {
+                SalsaSCPool own = pools[cId];
+                own.registerCurrentThreadAsOwner();
+                OWN_POOL.set(own);
+                while (done.get() < total && failure.get() == null) {
+                    Runnable task = own.consume();
+                    if (task == null) {
+                        SalsaSCPool victim = pools[ThreadLocalRandom.current().nextInt(N_CONSUMERS)];
+                        if (victim != own) task = own.steal(victim);
+                    }
+                    if (task == null) {
+                        Thread.yield();
+                        continue;
+                    }
+
+                    task.run();
+                }
+            }, "consumer-" + c));
+        }
+
+        for (int p = 0; p < N_PRODUCERS; p++) {
+            final int pId = p;
+            threads.add(new Thread(() -> {
+                for (SalsaSCPool pool : pools) pool.registerCurrentThreadAsProducer(pId);
+                for (int i = 0; i < TASKS_PER_PRODUCER; i++) {
+                    int id = pId * TASKS_PER_PRODUCER + i;
+                    SalsaSCPool pool = pools[i % N_CONSUMERS];
+                    pool.produce(new CountingTask(id, runs, done, failure,
+                            spawn ? N_PRODUCERS * TASKS_PER_PRODUCER + id : -1));
+                }
+            }, "producer-" + p));
+        }
+
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT_MS);
+            assertFalse("lost tasks: " + (total - done.get()), thread.isAlive());
+        }
+
+        assertNull(failure.get());
+        assertEquals(total, done.get());
+        for (int i = 0; i < total; i++) assertEquals("task " + i, 1, runs.get(i));
+        for (SalsaSCPool pool : pools) assertTrue(pool.isEmpty());
+    }
+
+    private static class CountingTask implements Runnable {
+        private final int id;
+        private final AtomicIntegerArray runs;
+        private final AtomicInteger done;
+        private final AtomicReference<Throwable> failure;
+        private final int childId; // spawned by the consumer, that runs this task, -1 for none
+
+        CountingTask(int id, AtomicIntegerArray runs, AtomicInteger done, AtomicReference<Throwable> failure,
+                     int childId) {
+            this.id = id;
+            this.runs = runs;
+            this.done = done;
+            this.failure = failure;
+            this.childId = childId;
+        }
+
+        @Override
+        public void run() {
+            if (runs.incrementAndGet(id) != 1) failure.compareAndSet(null, new AssertionError("task " + id + " ran twice"));
+            if (childId >= 0) OWN_POOL.get().spawn(new CountingTask(childId, runs, done, failure, -1));
+            done.incrementAndGet();
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package com.naumov.taskpool.salsa;
 
+import com.naumov.taskpool.CancellableTask;
+import com.naumov.taskpool.TaskPoolConfig;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.*;
 
 // simple sequential tests
@@ -168,4 +172,435 @@ public class SalsaSCPoolTest {
 
         for (int i = 0; i < 32; i++) assertFalse(otherPool.checkIndicator(i)); // indicators should have been cleaned
     }
-}
\ No newline at end of file
+
+    @Test
+    public void spawnWithoutRegistration() {
+        assertThrows(IllegalCallerException.class, () -> zeroOwnerPool.spawn(() -> {
+        }));
+    }
+
+    @Test
+    public void spawnAndConsume() {
+        zeroOwnerPool.registerCurrentThreadAsOwner();
+
+        Runnable runnable0 = () -> {
+        };
+        Runnable runnable1 = () -> {
+        };
+        zeroOwnerPool.spawn(runnable0);
+        zeroOwnerPool.spawn(runnable1);
+        assertFalse(zeroOwnerPool.isEmpty());
+
+        assertEquals(zeroOwnerPool.consume(), runnable0); // spawn chunks are FIFO
+        assertEquals(zeroOwnerPool.consume(), runnable1);
+        assertNull(zeroOwnerPool.consume());
+        assertTrue(zeroOwnerPool.isEmpty());
+    }
+
+    @Test
+    public void stealSpawned() {
+        SalsaSCPool otherPool = unpopulatedPool(1);
+        otherPool.registerCurrentThreadAsOwner(); // same thread owns both pools in this sequential test
+
+        Runnable runnable = () -> {
+        };
+        otherPool.spawn(runnable);
+        assertFalse(otherPool.isEmpty());
+
+        zeroOwnerPool.registerCurrentThreadAsOwner();
+        assertEquals(zeroOwnerPool.steal(otherPool), runnable);
+        assertTrue(otherPool.isEmpty());
+    }
+
+    @Test
+    public void spawnWithLifoSlot() {
+        SalsaSCPool lifoPool = new SalsaSCPool(0, 10, 10, 1000, Integer.MAX_VALUE,
+                TaskPoolConfig.defaults().withLifoSlot(true));
+        lifoPool.registerCurrentThreadAsOwner();
+
+        Runnable runnable0 = () -> {
+        };
+        Runnable runnable1 = () -> {
+        };
+        lifoPool.spawn(runnable0);
+        assertFalse(lifoPool.isEmpty()); // the task in the slot is visible
+        lifoPool.spawn(runnable1);
+        assertFalse(lifoPool.isEmpty()); // runnable0 was pushed out to the spawn chunk
+
+        assertEquals(lifoPool.consume(), runnable1); // the newest first
+        assertEquals(lifoPool.consume(), runnable0);
+        assertNull(lifoPool.consume());
+        assertTrue(lifoPool.isEmpty());
+    }
+
+    @Test
+    public void stealFromLifoSlot() {
+        TaskPoolConfig config = TaskPoolConfig.defaults().withLifoSlot(true);
+        SalsaSCPool victim = new SalsaSCPool(0, 10, 10, 1000, Integer.MAX_VALUE, config);
+        SalsaSCPool thief = new SalsaSCPool(1, 10, 10, 1000, Integer.MAX_VALUE, config);
+        victim.registerCurrentThreadAsOwner();
+        thief.registerCurrentThreadAsOwner();
+
+        Runnable runnable0 = () -> {
+        };
+        Runnable runnable1 = () -> {
+        };
+        victim.spawn(runnable0);
+        victim.spawn(runnable1);
+
+        assertEquals(thief.steal(victim), runnable0); // the spawn chunk first
+        assertEquals(thief.steal(victim), runnable1); // then the slot, since nothing else is left
+        assertTrue(victim.isEmpty());
+        assertNull(victim.consume());
+    }
+
+    @Test
+    public void produceToFullPool() {
+        SalsaSCPool boundedPool = new SalsaSCPool(0, 10, 10, 2, Integer.MAX_VALUE,
+                TaskPoolConfig.defaults().withCapacity(3)); // rounded up to 2 chunks of 2 tasks
+        boundedPool.registerCurrentThreadAsProducer(0);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(boundedPool.produce(() -> {
+            }));
+        }
+        assertFalse(boundedPool.produce(() -> {
+        }));
+
+        // consuming a whole chunk frees the capacity
+        boundedPool.registerCurrentThreadAsOwner();
+        assertNotNull(boundedPool.consume());
+        assertFalse(boundedPool.produce(() -> {
+        }));
+        assertNotNull(boundedPool.consume());
+        assertTrue(boundedPool.tryProduce(() -> {
+        })); // the spare chunk is reused
+    }
+
+    @Test
+    public void spawnedChunkTakesNoCapacity() {
+        SalsaSCPool boundedPool = new SalsaSCPool(0, 1, 10, 2, Integer.MAX_VALUE,
+                TaskPoolConfig.defaults().withCapacity(2)); // the minimum: a chunk per producer
+        boundedPool.registerCurrentThreadAsOwner();
+        boundedPool.registerCurrentThreadAsProducer(0);
+
+        boundedPool.spawn(() -> {
+        }); // the spawn chunk stays partially filled, it is never retired
+
+        for (int round = 0; round < 3; round++) {
+            assertTrue(boundedPool.produce(() -> {
+            }));
+            assertTrue(boundedPool.produce(() -> {
+            }));
+            assertFalse(boundedPool.produce(() -> {
+            })); // the producer chunk is full
+
+            // the chunk is retired once consumed, the producer gets a new one
+            while (boundedPool.consume() != null) ;
+        }
+    }
+
+    @Test
+    public void dropOldest() {
+        SalsaSCPool boundedPool = new SalsaSCPool(0, 10, 10, 2, Integer.MAX_VALUE,
+                TaskPoolConfig.defaults().withCapacity(2));
+        boundedPool.registerCurrentThreadAsProducer(0);
+
+        Runnable runnable0 = () -> {
+        };
+        Runnable runnable1 = () -> {
+        };
+        Runnable runnable2 = () -> {
+        };
+        boundedPool.produce(runnable0);
+        boundedPool.produce(runnable1);
+        assertFalse(boundedPool.produce(runnable2));
+
+        assertEquals(boundedPool.dropOldest(), Arrays.asList(runnable0, runnable1));
+        assertTrue(boundedPool.isEmpty());
+        assertTrue(boundedPool.dropOldest().isEmpty());
+
+        assertTrue(boundedPool.produce(runnable2));
+        boundedPool.registerCurrentThreadAsOwner();
+        assertEquals(boundedPool.consume(), runnable2);
+        assertNull(boundedPool.consume());
+    }
+
+    @Test
+    public void trimSpareChunks() {
+        SalsaSCPool pool = new SalsaSCPool(0, 10, 10, 2, Integer.MAX_VALUE,
+                TaskPoolConfig.defaults().withSpareChunks(1, 2));
+        pool.registerCurrentThreadAsProducer(0);
+        pool.registerCurrentThreadAsOwner();
+
+        for (int i = 0; i < 10; i++) { // a burst of 5 chunks
+            pool.produce(() -> {
+            });
+        }
+        long burstBytes = pool.retainedBytes();
+
+        for (int i = 0; i < 10; i++) assertNotNull(pool.consume());
+        assertNull(pool.consume());
+        assertEquals(2, pool.getSpareChunkCount()); // capped by the high-water mark
+
+        pool.trim();
+        assertEquals(1, pool.getSpareChunkCount()); // trimmed down to the low-water mark
+        assertTrue(pool.retainedBytes() < burstBytes);
+
+        // the spare chunk is reused
+        assertTrue(pool.tryProduce(() -> {
+        }));
+        assertEquals(0, pool.getSpareChunkCount());
+    }
+
+    @Test
+    public void produceAll() {
+        SalsaSCPool pool = new SalsaSCPool(0, 10, 10, 4, Integer.MAX_VALUE);
+        pool.registerCurrentThreadAsProducer(0);
+        pool.registerCurrentThreadAsOwner();
+
+        Runnable[] tasks = new Runnable[10];
+        for (int i = 0; i < tasks.length; i++) tasks[i] = () -> {
+        };
+        pool.produce(tasks[0]);
+        assertEquals(9, pool.produceAll(Arrays.asList(tasks), 1)); // continues the current chunk
+
+        for (Runnable task : tasks) assertSame(task, pool.consume());
+        assertNull(pool.consume());
+    }
+
+    @Test
+    public void produceAllToFullPool() {
+        SalsaSCPool boundedPool = new SalsaSCPool(0, 10, 10, 2, Integer.MAX_VALUE,
+                TaskPoolConfig.defaults().withCapacity(4));
+        boundedPool.registerCurrentThreadAsProducer(0);
+
+        Runnable[] tasks = new Runnable[5];
+        Arrays.fill(tasks, (Runnable) () -> {
+        });
+        assertEquals(4, boundedPool.produceAll(Arrays.asList(tasks), 0));
+    }
+
+    @Test
+    public void traceQueueingDelays() {
+        TaskPoolConfig tracing = TaskPoolConfig.defaults().withTracing(true);
+        SalsaSCPool pool = new SalsaSCPool(0, 10, 10, 4, Integer.MAX_VALUE, tracing);
+        SalsaSCPool otherPool = new SalsaSCPool(1, 10, 10, 4, Integer.MAX_VALUE, tracing);
+        pool.registerCurrentThreadAsProducer(0);
+        pool.registerCurrentThreadAsOwner();
+        otherPool.registerCurrentThreadAsProducer(0);
+
+        for (int i = 0; i < 3; i++) pool.produce(() -> {
+        });
+        for (int i = 0; i < 2; i++) otherPool.produce(() -> {
+        });
+
+        while (pool.consume() != null) ;
+        assertNotNull(pool.steal(otherPool));
+        assertNotNull(pool.consume()); // the rest of the stolen chunk
+
+        assertEquals(3, pool.queueingDelays(false).getCount());
+        assertEquals(2, pool.queueingDelays(true).getCount());
+    }
+
+    @Test
+    public void noQueueingDelaysWithoutTracing() {
+        zeroOwnerPool.registerCurrentThreadAsProducer(0);
+        zeroOwnerPool.registerCurrentThreadAsOwner();
+        zeroOwnerPool.produce(() -> {
+        });
+        assertNotNull(zeroOwnerPool.consume());
+
+        assertEquals(0, zeroOwnerPool.queueingDelays(false).getCount());
+    }
+
+    @Test
+    public void cancelledTasksAreSkipped() {
+        SalsaSCPool pool = new SalsaSCPool(0, 10, 10, 4, Integer.MAX_VALUE);
+        pool.registerCurrentThreadAsProducer(0);
+        pool.registerCurrentThreadAsOwner();
+
+        TestCancellableTask[] tasks = new TestCancellableTask[3];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new TestCancellableTask();
+            pool.produce(tasks[i]);
+        }
+
+        assertTrue(tasks[1].slot.withdraw());
+        assertTrue(tasks[2].slot.withdraw());
+        assertFalse(tasks[2].slot.withdraw()); // only once
+        assertSame(tasks[0], pool.consume());
+        assertFalse(tasks[0].slot.withdraw()); // taken already
+        assertNull(pool.consume());
+        assertTrue(pool.isEmpty());
+    }
+
+    @Test
+    public void fullyCancelledChunkIsRetired() {
+        SalsaSCPool boundedPool = new SalsaSCPool(0, 10, 10, 2, Integer.MAX_VALUE,
+                TaskPoolConfig.defaults().withCapacity(2));
+        boundedPool.registerCurrentThreadAsProducer(0);
+
+        TestCancellableTask task0 = new TestCancellableTask();
+        TestCancellableTask task1 = new TestCancellableTask();
+        boundedPool.produce(task0);
+        boundedPool.produce(task1);
+        assertFalse(boundedPool.produce(() -> {
+        }));
+
+        assertTrue(task0.slot.withdraw());
+        assertTrue(task1.slot.withdraw());
+        assertTrue(boundedPool.isEmpty());
+        assertEquals(1, boundedPool.getSpareChunkCount()); // replaced right away
+
+        Runnable runnable = () -> {
+        };
+        assertTrue(boundedPool.tryProduce(runnable)); // the capacity is freed, the spare chunk is reused
+        boundedPool.registerCurrentThreadAsOwner();
+        assertSame(runnable, boundedPool.consume());
+        assertNull(boundedPool.consume());
+    }
+
+    @Test
+    public void stolenCancelledChunkIsNotReplaced() {
+        SalsaSCPool victim = new SalsaSCPool(0, 10, 10, 2, Integer.MAX_VALUE);
+        SalsaSCPool thief = new SalsaSCPool(1, 10, 10, 2, Integer.MAX_VALUE);
+        victim.registerCurrentThreadAsProducer(0);
+        thief.registerCurrentThreadAsOwner();
+
+        TestCancellableTask task0 = new TestCancellableTask();
+        TestCancellableTask task1 = new TestCancellableTask();
+        victim.produce(task0);
+        victim.produce(task1);
+
+        assertTrue(task0.slot.withdraw());
+        assertNull(thief.steal(victim)); // the chunk is stolen, but its first task is withdrawn
+        assertTrue(task1.slot.withdraw());
+        assertEquals(0, victim.getSpareChunkCount());
+    }
+
+    @Test(timeout = 30_000)
+    public void concurrentWithdrawalsKeepSpareChunksCapped() throws InterruptedException {
+        final int nThreads = 4;
+        final int nChunks = 1000;
+        SalsaSCPool pool = new SalsaSCPool(0, 10, 10, 2, Integer.MAX_VALUE,
+                TaskPoolConfig.defaults().withSpareChunks(1, 2));
+        pool.registerCurrentThreadAsProducer(0);
+
+        final TestCancellableTask[] tasks = new TestCancellableTask[nChunks * 2];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new TestCancellableTask();
+            pool.produce(tasks[i]);
+        }
+
+        Thread[] threads = new Thread[nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            final int first = t;
+            threads[t] = new Thread(() -> {
+                for (int i = first; i < tasks.length; i += nThreads) tasks[i].slot.withdraw();
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertTrue(pool.isEmpty());
+        assertEquals(2, pool.getSpareChunkCount()); // capped by the high-water mark
+    }
+
+    @Test
+    public void producerListsAreScannedRoundRobin() throws InterruptedException {
+        SalsaSCPool pool = new SalsaSCPool(0, 2, 10, 2, Integer.MAX_VALUE);
+        Runnable[] tasks0 = new Runnable[4];
+        Runnable[] tasks1 = new Runnable[2];
+        for (int i = 0; i < tasks0.length; i++) tasks0[i] = () -> {
+        };
+        for (int i = 0; i < tasks1.length; i++) tasks1[i] = () -> {
+        };
+
+        pool.registerCurrentThreadAsProducer(0);
+        for (Runnable task : tasks0) pool.produce(task); // two chunks
+        Thread producer1 = new Thread(() -> {
+            pool.registerCurrentThreadAsProducer(1);
+            for (Runnable task : tasks1) pool.produce(task);
+        });
+        producer1.start();
+        producer1.join();
+
+        // a chunk of producer 0, then a chunk of producer 1, then producer 0 again
+        pool.registerCurrentThreadAsOwner();
+        assertSame(tasks0[0], pool.consume());
+        assertSame(tasks0[1], pool.consume());
+        assertSame(tasks1[0], pool.consume());
+        assertSame(tasks1[1], pool.consume());
+        assertSame(tasks0[2], pool.consume());
+        assertSame(tasks0[3], pool.consume());
+        assertNull(pool.consume());
+    }
+
+    @Test
+    public void tenantsShareOwnerByWeight() throws InterruptedException {
+        SalsaSCPool pool = new SalsaSCPool(0, 2, 10, 2, Integer.MAX_VALUE,
+                TaskPoolConfig.defaults().withTenants(2, 1));
+        Runnable[] tasks0 = new Runnable[8];
+        Runnable[] tasks1 = new Runnable[4];
+        for (int i = 0; i < tasks0.length; i++) tasks0[i] = () -> {
+        };
+        for (int i = 0; i < tasks1.length; i++) tasks1[i] = () -> {
+        };
+
+        pool.registerCurrentThreadAsProducer(0, 0);
+        for (Runnable task : tasks0) pool.produce(task); // four chunks, flooding
+        Thread producer1 = new Thread(() -> {
+            pool.registerCurrentThreadAsProducer(1, 1);
+            for (Runnable task : tasks1) pool.produce(task);
+        });
+        producer1.start();
+        producer1.join();
+        assertEquals(8, pool.producedTasks(0));
+        assertEquals(4, pool.producedTasks(1));
+
+        // two chunks of tenant 0 per chunk of tenant 1
+        pool.registerCurrentThreadAsOwner();
+        Runnable[] expected = {tasks0[0], tasks0[1], tasks0[2], tasks0[3], tasks1[0], tasks1[1],
+                tasks0[4], tasks0[5], tasks0[6], tasks0[7], tasks1[2], tasks1[3]};
+        for (Runnable task : expected) assertSame(task, pool.consume());
+        assertNull(pool.consume());
+        assertEquals(8, pool.takenTasks(0));
+        assertEquals(4, pool.takenTasks(1));
+    }
+
+    @Test
+    public void withdrawnTasksLeaveTenantBacklog() {
+        SalsaSCPool pool = new SalsaSCPool(0, 2, 10, 4, Integer.MAX_VALUE,
+                TaskPoolConfig.defaults().withTenants(1, 1));
+        pool.registerCurrentThreadAsProducer(0, 1);
+        TestCancellableTask[] tasks = new TestCancellableTask[3];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new TestCancellableTask();
+            pool.produce(tasks[i]);
+        }
+
+        assertTrue(tasks[1].slot.withdraw());
+        assertEquals(3, pool.producedTasks(1));
+        assertEquals(1, pool.withdrawnTasks(1));
+
+        pool.registerCurrentThreadAsOwner();
+        assertSame(tasks[0], pool.consume());
+        assertSame(tasks[2], pool.consume());
+        assertNull(pool.consume());
+        assertEquals(0, pool.producedTasks(1) - pool.takenTasks(1) - pool.withdrawnTasks(1));
+    }
+
+    private static class TestCancellableTask implements CancellableTask {
+        private Slot slot;
+
+        @Override
+        public void bind(Slot slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
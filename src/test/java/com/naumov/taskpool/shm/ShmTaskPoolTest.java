@@ -0,0 +1,175 @@
+package com.naumov.taskpool.shm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ShmTaskPoolTest {
+    private static final int N_POOLS = 4;
+    private static final int N_CHUNKS = 16;
+    private static final int CHUNK_SIZE = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void consumerStealsChunksOfAnotherInstance() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("pool");
+        ShmTaskPool owner = ShmTaskPool.open(file, N_POOLS, N_CHUNKS, CHUNK_SIZE);
+        ShmTaskPool thief = ShmTaskPool.open(file, N_POOLS, N_CHUNKS, CHUNK_SIZE);
+
+        assertFalse(owner.get(p -> fail())); // attaches a pool, that gets all the chunks of the owner's producer
+        for (long i = 1; i <= 100; i++) owner.put(i);
+        assertFalse(owner.isEmpty());
+
+        AtomicLong sum = new AtomicLong();
+        Thread consumer = new Thread(() -> {
+            while (thief.get(sum::addAndGet)) ;
+        });
+        consumer.start();
+        consumer.join();
+
+        assertEquals(5050, sum.get());
+        assertTrue(owner.isEmpty());
+        for (long i = 1; i <= 100; i++) owner.put(i); // over the capacity, unless the chunks have been recycled
+        owner.close();
+        thief.close();
+    }
+
+    @Test(timeout = 120_000)
+    public void processesShareTasks() throws Exception {
+        final int n = 20_000;
+        Path file = folder.getRoot().toPath().resolve("pool");
+        ShmTaskPool pool = ShmTaskPool.open(file, N_POOLS, N_CHUNKS, CHUNK_SIZE);
+        AtomicLong count = new AtomicLong();
+        AtomicLong sum = new AtomicLong();
+        assertFalse(pool.get(p -> fail()));
+
+        Process consumer = startChild("consume", file, n);
+        BufferedReader consumerOut = new BufferedReader(new InputStreamReader(consumer.getInputStream(),
+                StandardCharsets.UTF_8));
+        assertEquals("ready", consumerOut.readLine());
+
+        Process producer = startChild("produce", file, n);
+        while (producer.isAlive() || !pool.isEmpty()) {
+            pool.get(p -> {
+                count.incrementAndGet();
+                sum.addAndGet(p);
+            });
+        }
+        assertEquals(0, producer.waitFor());
+
+        try (OutputStream in = consumer.getOutputStream()) {
+            in.write("stop\n".getBytes(StandardCharsets.UTF_8));
+        }
+        String[] childResult = consumerOut.readLine().split(" ");
+        assertTrue(consumer.waitFor(30, TimeUnit.SECONDS));
+
+        assertTrue("consumed in this process", count.get() > 0);
+        assertEquals(n, count.get() + Long.parseLong(childResult[0]));
+        assertEquals((long) n * (n + 1) / 2, sum.get() + Long.parseLong(childResult[1]));
+        pool.close();
+    }
+
+    @Test(timeout = 60_000)
+    public void partialChunksOfStoppedProducerThreadsAreRecycled() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("pool");
+        ShmTaskPool pool = ShmTaskPool.open(file, N_POOLS, N_CHUNKS, CHUNK_SIZE);
+        assertFalse(pool.get(p -> fail()));
+
+        for (int round = 0; round < N_CHUNKS + 2; round++) { // every producer takes a new chunk
+            final boolean detach = round % 2 == 0; // exited threads are found by the producer, that runs out of chunks
+            Thread producer = new Thread(() -> {
+                for (long i = 1; i < CHUNK_SIZE; i++) pool.put(i);
+                if (detach) pool.detachProducer();
+            });
+            producer.start();
+            producer.join();
+            assertEquals(CHUNK_SIZE - 1, drain(pool));
+        }
+
+        for (long i = 1; i <= N_CHUNKS * CHUNK_SIZE; i++) pool.put(i); // over the capacity, unless all are recycled
+        assertFalse(pool.offer(0));
+        pool.close();
+    }
+
+    @Test(timeout = 120_000)
+    public void partialChunksOfDeadProducerProcessesAreRecycled() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("pool");
+        ShmTaskPool pool = ShmTaskPool.open(file, N_POOLS, N_CHUNKS, CHUNK_SIZE);
+        assertFalse(pool.get(p -> fail()));
+
+        for (int round = 0; round < N_CHUNKS + 2; round++) {
+            Process producer = startChild("produce", file, CHUNK_SIZE - 1); // exits without closing the pool
+            assertEquals(0, producer.waitFor());
+            assertEquals(CHUNK_SIZE - 1, drain(pool));
+        }
+        pool.close();
+    }
+
+    private static int drain(ShmTaskPool pool) {
+        int[] count = new int[1];
+        while (pool.get(p -> count[0]++)) ;
+        return count[0];
+    }
+
+    private static Process startChild(String role, Path file, int n) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ShmTaskPoolTest.class.getName(), role, file.toString(), String.valueOf(n))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    /**
+     * Child process of {@link #processesShareTasks()}: {@code produce <file> <n>} puts {@code 1..n},
+     * {@code consume <file> <n>} consumes until "stop" is read from the standard input, then drains its pool
+     * and prints the count and the sum of the payloads.
+     */
+    public static void main(String[] args) throws Exception {
+        ShmTaskPool pool = ShmTaskPool.open(Paths.get(args[1]), N_POOLS, N_CHUNKS, CHUNK_SIZE);
+        int n = Integer.parseInt(args[2]);
+        if (args[0].equals("produce")) {
+            for (long i = 1; i <= n; i++) pool.put(i);
+            return;
+        }
+
+        long[] result = new long[2];
+        pool.get(p -> fail()); // attach
+        System.out.println("ready");
+        System.out.flush();
+
+        Thread stopper = new Thread(() -> {
+            try {
+                new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)).readLine();
+            } catch (IOException ignored) {
+            }
+        });
+        stopper.start();
+        while (stopper.isAlive()) {
+            pool.get(p -> {
+                result[0]++;
+                result[1] += p;
+            });
+        }
+        while (pool.get(p -> {
+            result[0]++;
+            result[1] += p;
+        })) ;
+
+        pool.close();
+        System.out.println(result[0] + " " + result[1]);
+    }
+}